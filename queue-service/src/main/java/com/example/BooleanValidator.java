@@ -0,0 +1,28 @@
+package com.example;
+
+import org.apache.log4j.Logger;
+
+// Validates attributes which are switched on or off with "true" or "false" (case insensitive)
+public class BooleanValidator implements AttributeValidator {
+	private final boolean defaultValue;
+	private final static Logger logger = Logger.getLogger(BooleanValidator.class);
+	
+	public BooleanValidator(boolean defaultValue) {
+		this.defaultValue = defaultValue;
+	}
+	
+	@Override
+	public boolean validate(String value) {
+		if("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value))
+			return true;
+		
+		logger.error(String.format("Invalid value - expected true or false %s", value));
+		return false;
+	}
+
+	@Override
+	public String getDefault() {
+		return String.valueOf(defaultValue);
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.example;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Threads for the background work of the queues. The short periodic and delayed tasks (retention expiry,
+// checkpoints, journal commits, message moves and send lingers) share one scheduler instead of a thread per kind of
+// task; it has two threads, so a checkpoint or a commit waiting for the disk does not hold up the other timers.
+// Executors which need threads of their own, such as the SQS senders, take them from threadFactory(). Every thread
+// is a daemon, so it never keeps the JVM alive.
+public class DaemonExecutors {
+	private final static int schedulerThreads = 2;
+	private final static ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(schedulerThreads, threadFactory("queue-scheduler"));
+
+	private DaemonExecutors() {
+	}
+
+	public static ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+
+	// daemon threads named namePrefix-1, namePrefix-2, ...
+	public static ThreadFactory threadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,168 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Message deduplication ids pushed to a queue within the deduplication window, mapped to the id of the message
+// which was accepted for them. An entry remembers the time bucket it was added in, so a lookup is a single
+// ConcurrentHashMap access plus a comparison, and entries are never timed one by one: the ids of a bucket are
+// listed in the bucket, and the buckets which fell out of the window are evicted as a whole by the first producer
+// which starts a new bucket. Only that rollover takes a lock. The number of entries is bounded by maximumSize;
+// beyond it the oldest buckets are evicted early, which shortens the window instead of growing the heap.
+public class DeduplicationCache {
+
+	public final static long defaultWindowMillis = 5 * 60 * 1000L;
+	public final static long defaultBucketMillis = 10 * 1000L;
+
+	private static class Entry {
+		final String messageId;
+		final long bucketIndex;
+
+		Entry(String messageId, long bucketIndex) {
+			this.messageId = messageId;
+			this.bucketIndex = bucketIndex;
+		}
+	}
+
+	private static class Bucket {
+		final long index;
+		// deduplication ids added in the bucket; ids which were added again later are skipped by the eviction
+		final ConcurrentLinkedQueue<String> deduplicationIds = new ConcurrentLinkedQueue<>();
+
+		Bucket(long index) {
+			this.index = index;
+		}
+	}
+
+	private final long bucketMillis;
+	// number of buckets which make up the window, including the current one
+	private final long windowBuckets;
+	private final int maximumSize;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicInteger size = new AtomicInteger();
+	// buckets of the window, the oldest first; guarded by itself
+	private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+	private volatile Bucket currentBucket = new Bucket(Long.MIN_VALUE);
+
+	public DeduplicationCache(int maximumSize) {
+		this(defaultWindowMillis, defaultBucketMillis, maximumSize);
+	}
+
+	public DeduplicationCache(long windowMillis, long bucketMillis, int maximumSize) {
+		if(bucketMillis < 1 || windowMillis < bucketMillis || maximumSize < 1)
+			throw new IllegalArgumentException(String.format("Invalid window %d, bucket %d or size %d", windowMillis, bucketMillis, maximumSize));
+
+		this.bucketMillis = bucketMillis;
+		this.windowBuckets = (windowMillis + bucketMillis - 1) / bucketMillis;
+		this.maximumSize = maximumSize;
+	}
+
+	// records messageId for deduplicationId unless a message was accepted for it within the window; returns the id
+	// of that message, or null if messageId was recorded
+	public String putIfAbsent(String deduplicationId, String messageId, long now) {
+		long bucketIndex = Math.floorDiv(now, bucketMillis);
+		Bucket bucket = currentBucket;
+
+		if(bucket.index != bucketIndex)
+			bucket = startBucket(bucketIndex);
+
+		Entry entry = new Entry(messageId, bucket.index);
+
+		while(true) {
+			Entry existingEntry = entries.putIfAbsent(deduplicationId, entry);
+
+			if(existingEntry == null) {
+				size.incrementAndGet();
+				break;
+			}
+
+			if(isLive(existingEntry, bucketIndex))
+				return existingEntry.messageId;
+
+			// an expired entry which was not evicted yet is replaced; the size stays
+			if(entries.replace(deduplicationId, existingEntry, entry))
+				break;
+		}
+
+		bucket.deduplicationIds.add(deduplicationId);
+
+		if(size.get() > maximumSize)
+			evictOldestBucket();
+
+		return null;
+	}
+
+	// forgets deduplicationId if it still maps to messageId, e.g., when the push of the message failed
+	public void remove(String deduplicationId, String messageId) {
+		Entry entry = entries.get(deduplicationId);
+
+		if(entry != null && Objects.equals(entry.messageId, messageId) && entries.remove(deduplicationId, entry))
+			size.decrementAndGet();
+	}
+
+	// id of the message accepted for deduplicationId within the window at now; null if there is none
+	public String get(String deduplicationId, long now) {
+		Entry entry = entries.get(deduplicationId);
+
+		return entry != null && isLive(entry, Math.floorDiv(now, bucketMillis)) ? entry.messageId : null;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public void clear() {
+		synchronized(buckets) {
+			buckets.clear();
+			entries.clear();
+			size.set(0);
+			currentBucket = new Bucket(Long.MIN_VALUE);
+		}
+	}
+
+	private boolean isLive(Entry entry, long bucketIndex) {
+		return entry.bucketIndex > bucketIndex - windowBuckets;
+	}
+
+	// makes the bucket of bucketIndex the current one and evicts the buckets which fell out of the window; a
+	// producer with a clock behind the current bucket keeps adding to the current bucket
+	private Bucket startBucket(long bucketIndex) {
+		synchronized(buckets) {
+			Bucket bucket = currentBucket;
+
+			if(bucket.index >= bucketIndex)
+				return bucket;
+
+			bucket = new Bucket(bucketIndex);
+			buckets.addLast(bucket);
+			currentBucket = bucket;
+
+			while(buckets.getFirst().index <= bucketIndex - windowBuckets)
+				evict(buckets.removeFirst());
+
+			return bucket;
+		}
+	}
+
+	private void evictOldestBucket() {
+		synchronized(buckets) {
+			// the current bucket is never evicted, so a burst beyond maximumSize within one bucket is kept
+			if(size.get() > maximumSize && buckets.size() > 1)
+				evict(buckets.removeFirst());
+		}
+	}
+
+	// removes the entries which were added in the bucket and not added again since
+	private void evict(Bucket bucket) {
+		for(String deduplicationId: bucket.deduplicationIds) {
+			Entry entry = entries.get(deduplicationId);
+
+			if(entry != null && entry.bucketIndex == bucket.index && entries.remove(deduplicationId, entry))
+				size.decrementAndGet();
+		}
+	}
+}
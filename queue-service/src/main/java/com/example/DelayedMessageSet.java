@@ -0,0 +1,109 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Messages which become available at a later time, ordered by the time they are due. Due times are rounded up to the
+// resolution and every rounded due time is a bucket of messages in push order, so the set holds one tree entry per
+// resolution tick instead of one per message: a push looks up its bucket in O(log ticks) and promoting a due bucket
+// moves all its messages at once. With a queue specific DelaySeconds the due times only grow, so pushes append to the
+// last bucket. Not thread safe, the owning queue guards it.
+public class DelayedMessageSet implements Iterable<Message> {
+
+	private final long resolutionMillis;
+	private final TreeMap<Long, ArrayDeque<Message>> buckets = new TreeMap<>();
+	private int size;
+
+	public DelayedMessageSet(long resolutionMillis) {
+		if(resolutionMillis < 1)
+			throw new IllegalArgumentException(String.format("Invalid resolution %d", resolutionMillis));
+
+		this.resolutionMillis = resolutionMillis;
+	}
+
+	// adds the message due at the given time in milliseconds; returns the rounded due time it becomes available at
+	public long add(Message message, long dueTime) {
+		long roundedDueTime = ((dueTime + resolutionMillis - 1) / resolutionMillis) * resolutionMillis;
+		Map.Entry<Long, ArrayDeque<Message>> lastBucket = buckets.lastEntry();
+		ArrayDeque<Message> bucket;
+
+		if(lastBucket != null && lastBucket.getKey() == roundedDueTime) {
+			bucket = lastBucket.getValue();
+		}
+		else {
+			bucket = buckets.get(roundedDueTime);
+			if(bucket == null) {
+				bucket = new ArrayDeque<>();
+				buckets.put(roundedDueTime, bucket);
+			}
+		}
+
+		bucket.addLast(message);
+		size++;
+
+		return roundedDueTime;
+	}
+
+	// removes the messages which are due at now, the earliest first
+	public List<Message> pollDue(long now) {
+		List<Message> dueMessages = new ArrayList<>();
+
+		while(!buckets.isEmpty() && buckets.firstKey() <= now) {
+			dueMessages.addAll(buckets.pollFirstEntry().getValue());
+		}
+
+		size -= dueMessages.size();
+		return dueMessages;
+	}
+
+	// rounded due time of the earliest message; Long.MAX_VALUE if the set is empty
+	public long getNextDueTime() {
+		return buckets.isEmpty() ? Long.MAX_VALUE : buckets.firstKey();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		buckets.clear();
+		size = 0;
+	}
+
+	// visits the messages in due time order
+	@Override
+	public Iterator<Message> iterator() {
+		final Iterator<ArrayDeque<Message>> bucketIterator = buckets.values().iterator();
+
+		return new Iterator<Message>() {
+			private Iterator<Message> messageIterator;
+
+			@Override
+			public boolean hasNext() {
+				while((messageIterator == null || !messageIterator.hasNext()) && bucketIterator.hasNext())
+					messageIterator = bucketIterator.next().iterator();
+
+				return messageIterator != null && messageIterator.hasNext();
+			}
+
+			@Override
+			public Message next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+
+				return messageIterator.next();
+			}
+		};
+	}
+}
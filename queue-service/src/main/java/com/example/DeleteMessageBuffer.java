@@ -0,0 +1,132 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+
+// Coalesces the deletes of one SQS queue into DeleteMessageBatch requests without delaying them. A caller sends the
+// pending deletes, its own among them, right away unless maxConcurrentBatches batches are in flight; then it waits,
+// and the deletes which piled up meanwhile go out together with the next batch. So a lone consumer pays a round trip
+// per delete as before, while concurrent consumers share them, up to maxBatchSize deletes per request. A caller sends
+// batches only until its own delete is done, so no consumer keeps serving the others.
+public class DeleteMessageBuffer {
+
+	public final static int maxBatchSize = 10;
+
+	private final static Logger logger = Logger.getLogger(DeleteMessageBuffer.class);
+
+	private static class PendingDelete {
+		final String receiptHandle;
+		boolean done;
+		boolean deleted;
+
+		PendingDelete(String receiptHandle) {
+			this.receiptHandle = receiptHandle;
+		}
+	}
+
+	private final AmazonSQSClient sqsClient;
+	private final QueueUrlCache queueUrlCache;
+	private final String qName;
+	private final String queueUrl;
+	private final int maxConcurrentBatches;
+	// deletes which were not sent yet, the oldest first, and the number of batches in flight; guarded by this
+	private final ArrayDeque<PendingDelete> pendingDeletes = new ArrayDeque<>();
+	private int sendingBatches;
+
+	public DeleteMessageBuffer(AmazonSQSClient sqsClient, QueueUrlCache queueUrlCache, String qName, String queueUrl, int maxConcurrentBatches) {
+		if(maxConcurrentBatches < 1)
+			throw new IllegalArgumentException(String.format("Invalid number of concurrent batches %d", maxConcurrentBatches));
+
+		this.sqsClient = sqsClient;
+		this.queueUrlCache = queueUrlCache;
+		this.qName = qName;
+		this.queueUrl = queueUrl;
+		this.maxConcurrentBatches = maxConcurrentBatches;
+	}
+
+	// returns once the message is deleted; false if the delete failed (the error is logged) or the caller was interrupted
+	public boolean delete(String receiptHandle) {
+		PendingDelete pendingDelete = new PendingDelete(receiptHandle);
+
+		synchronized(this) {
+			pendingDeletes.addLast(pendingDelete);
+		}
+
+		while(true) {
+			List<PendingDelete> batch = new ArrayList<>(maxBatchSize);
+
+			synchronized(this) {
+				try{
+					// wait while all the senders are busy or the own delete is in flight
+					while(!pendingDelete.done && (sendingBatches >= maxConcurrentBatches || pendingDeletes.isEmpty()))
+						wait();
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					pendingDeletes.remove(pendingDelete);
+					return pendingDelete.deleted;
+				}
+
+				if(pendingDelete.done)
+					return pendingDelete.deleted;
+
+				while(batch.size() < maxBatchSize && !pendingDeletes.isEmpty())
+					batch.add(pendingDeletes.pollFirst());
+				sendingBatches++;
+			}
+
+			try{
+				sendBatch(batch);
+			}finally {
+				synchronized(this) {
+					for(PendingDelete batchDelete: batch)
+						batchDelete.done = true;
+					sendingBatches--;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	public synchronized int getNumberOfPendingDeletes() {
+		return pendingDeletes.size();
+	}
+
+	// entry ids are the positions of the deletes in the batch; sets the outcome of each delete, the caller marks them done
+	private void sendBatch(List<PendingDelete> batch) {
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+
+		for(int i = 0; i < batch.size(); i++)
+			entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), batch.get(i).receiptHandle));
+
+		try{
+			DeleteMessageBatchResult result = sqsClient.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries));
+
+			for(DeleteMessageBatchResultEntry entry: result.getSuccessful())
+				setDeleted(batch.get(Integer.parseInt(entry.getId())));
+			for(BatchResultErrorEntry entry: result.getFailed())
+				logger.error(String.format("Failed to delete message from the queue %s. Error code:%s, Error message: %s ", qName, entry.getCode(), entry.getMessage()));
+		}catch(AmazonServiceException e) {
+			if(SqsQueueService.isNonExistentQueue(e))
+				queueUrlCache.invalidate(qName);
+			logger.error(String.format("Failed to delete messages from the queue %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	    }
+	}
+
+	private synchronized void setDeleted(PendingDelete pendingDelete) {
+		pendingDelete.deleted = true;
+	}
+}
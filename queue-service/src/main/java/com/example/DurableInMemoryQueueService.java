@@ -0,0 +1,64 @@
+package com.example;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.util.StringUtils;
+
+// InMemoryQueueService whose queues survive a restart: every queue keeps a write-ahead journal and periodic snapshots
+// in the journal directory (see InMemoryQueue.checkpoint()), and the queues found there are restored on construction,
+// with their attributes and messages. Queues are created with Durability interval unless the request says otherwise;
+// a queue created with Durability none is not persisted. Queue names are restricted to the SQS ones, since they
+// name the files.
+public class DurableInMemoryQueueService extends InMemoryQueueService {
+	
+	private final static String durabilityAttribute = "Durability";
+	private final static String defaultDurability = "interval";
+	private final static Logger logger = Logger.getLogger(DurableInMemoryQueueService.class);
+	
+	public DurableInMemoryQueueService(File journalDirectory) {
+		this(new InMemoryQueueFactory(RefreshScheduler.getDefault(), TimeOrderedIdGenerator.getDefault(), journalDirectory));
+	}
+	
+	public DurableInMemoryQueueService(InMemoryQueueFactory queueFactory) {
+		super(queueFactory);
+		
+		for(CreateQueueRequest createQueueRequest: queueFactory.getStoredQueues())
+			createQueue(createQueueRequest);
+	}
+	
+	@Override
+	public boolean createQueue(CreateQueueRequest createQueueRequest) {
+		if(createQueueRequest != null && !StringUtils.isNullOrEmpty(createQueueRequest.getQueueName())) {
+			if(!FileQueueFactory.queueNamePattern.matcher(createQueueRequest.getQueueName()).matches()) {
+				logger.error(String.format("Invalid queue name for a durable queue: %s", createQueueRequest.getQueueName()));
+				return false;
+			}
+			
+			Map<String, String> attributes = new HashMap<>(createQueueRequest.getAttributes());
+			
+			if(!attributes.containsKey(durabilityAttribute))
+				attributes.put(durabilityAttribute, defaultDurability);
+			
+			createQueueRequest = createQueueRequest.clone().withAttributes(attributes);
+		}
+		
+		return super.createQueue(createQueueRequest);
+	}
+	
+	// writes a snapshot of every queue right away instead of waiting for their journals to grow
+	public void checkpoint() {
+		for(String qName: getQueueNames())
+			((InMemoryQueue) getQueue(qName)).checkpoint();
+	}
+	
+	// checkpoints and closes all the queues; their files stay on disk for the next DurableInMemoryQueueService
+	public void close() {
+		for(String qName: getQueueNames())
+			((InMemoryQueue) getQueue(qName)).close();
+	}
+}
@@ -0,0 +1,33 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+// Validates attributes which take one of a fixed set of values (case sensitive)
+public class EnumValidator implements AttributeValidator {
+	private final List<String> acceptedValues;
+	private final String defaultValue;
+	private final static Logger logger = Logger.getLogger(EnumValidator.class);
+	
+	public EnumValidator(String defaultValue, String... acceptedValues) {
+		this.defaultValue = defaultValue;
+		this.acceptedValues = Arrays.asList(acceptedValues);
+	}
+	
+	@Override
+	public boolean validate(String value) {
+		if(acceptedValues.contains(value))
+			return true;
+		
+		logger.error(String.format("Invalid value - expected one of %s %s", acceptedValues, value));
+		return false;
+	}
+
+	@Override
+	public String getDefault() {
+		return defaultValue;
+	}
+
+}
@@ -0,0 +1,671 @@
+package com.example;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// MessageQueue whose messages live in a SegmentedLog in the queue directory. The heap only holds the log positions
+// of the available messages (8 bytes each) and the inflight messages which were materialized by pull(). Deletes and
+// purges are appended to the log as well, so reopening the directory restores every message which was not deleted;
+// messages which were inflight become available again, as if their visibility timeout expired. The attributes are
+// kept next to the log in queue.properties.
+// Visibility handling, long polling and locking follow InMemoryQueue.
+public class FileMessageQueue implements MessageQueue{
+
+	private final static byte messageRecord = 1;
+	// payload: the position of the deleted message record
+	private final static byte deleteRecord = 2;
+	// deletes every message record in front of it
+	private final static byte purgeRecord = 3;
+	private final static String attributesFileName = "queue.properties";
+	private final static String lockFileName = "queue.lock";
+
+	private String name;
+	private File directory;
+	// queue specific attributes, such as visibility timeout
+	private Map<String, String> attributes;
+
+	// exclusive lock on the queue directory, held until the queue is released
+	private FileChannel lockChannel;
+	private FileLock directoryLock;
+	private SegmentedLog log;
+	// reused for encoding the message records, grows with the largest message
+	private ByteBuffer encodeBuffer = ByteBuffer.allocate(1024);
+	private char[] encodeChars = new char[1024];
+	// log positions of the messages which are available for processing
+	private LongDeque availablePositions;
+	// inflight messages indexed by receipt handle and ordered by visibility deadline, and their log positions
+	private InflightMessageIndex inflightMessages;
+	private Map<String, Long> inflightPositions;
+
+	private RefreshScheduler refreshScheduler;
+	private IdGenerator receiptHandleGenerator;
+	// earliest refresh deadline requested from the scheduler; Long.MAX_VALUE if none is pending
+	private long scheduledRefreshTime = Long.MAX_VALUE;
+
+	private int waitingConsumers;
+	private boolean released;
+
+	QueueAttributeValidator attributesValidator;
+	private final static Logger logger = Logger.getLogger(FileMessageQueue.class);
+
+	// opens the queue stored in directory, or creates an empty one
+	public FileMessageQueue(String qName, QueueAttributeValidator attributesValidator, File directory, int segmentSize,
+			RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator) throws IOException {
+		this.name = qName;
+		this.directory = directory;
+		this.attributesValidator = attributesValidator;
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
+		this.attributes = attributesValidator.getDefaultAttributeValues();
+
+		availablePositions = new LongDeque();
+		inflightMessages = new InflightMessageIndex();
+		inflightPositions = new HashMap<>();
+
+		lockDirectory();
+		try{
+			recover(segmentSize);
+		}catch(IOException | RuntimeException e) {
+			unlockDirectory();
+			throw e;
+		}
+	}
+
+	// two queues appending to the same log, in this JVM or another one, overwrite each other's records; so only one
+	// queue at a time may open the directory
+	private void lockDirectory() throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException(String.format("Failed to create queue directory %s", directory));
+
+		lockChannel = FileChannel.open(new File(directory, lockFileName).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try{
+			directoryLock = lockChannel.tryLock();
+		}catch(OverlappingFileLockException e) {
+			// held by another queue of this JVM
+			directoryLock = null;
+		}catch(IOException e) {
+			lockChannel.close();
+			throw e;
+		}
+
+		if(directoryLock == null) {
+			lockChannel.close();
+			throw new IOException(String.format("Queue directory %s is locked by another queue", directory));
+		}
+	}
+
+	private void unlockDirectory() {
+		try{
+			directoryLock.release();
+			lockChannel.close();
+		}catch(IOException e) {
+			logger.error(String.format("Unable to unlock the queue directory %s", directory), e);
+		}
+	}
+
+	private void recover(int segmentSize) throws IOException {
+		final LongDeque messagePositions = new LongDeque();
+		final Set<Long> deletedPositions = new HashSet<>();
+
+		log = new SegmentedLog(directory, segmentSize, new SegmentedLog.RecordHandler() {
+			@Override
+			public void handle(long position, byte type, ByteBuffer payload) {
+				if(type == messageRecord) {
+					messagePositions.addLast(position);
+				}
+				else if(type == deleteRecord) {
+					deletedPositions.add(payload.getLong(0));
+				}
+				else if(type == purgeRecord) {
+					messagePositions.clear();
+					deletedPositions.clear();
+				}
+			}
+		});
+
+		for(int i = 0; i < messagePositions.size(); i++) {
+			long position = messagePositions.get(i);
+
+			if(!deletedPositions.contains(position)) {
+				availablePositions.addLast(position);
+				log.retain(position);
+			}
+		}
+
+		log.deleteReleasedSegments();
+		loadAttributes();
+	}
+
+	private void scheduleRefresh(long deadline) {
+		if(released || deadline >= scheduledRefreshTime)
+			return;
+
+		scheduledRefreshTime = deadline;
+		refreshScheduler.schedule(this, deadline);
+	}
+
+	private long getVisibilityTimeoutMillis() {
+		return QueueAttributes.getVisibilityTimeoutMillis(attributes);
+	}
+
+	// messages with a MessageGroupId or MessageDeduplicationId fail (null message id)
+	public synchronized void push(Message message) {
+		if(!QueueAttributes.isStandardMessage(message, name)) {
+			message.setMessageId(null);
+			return;
+		}
+		
+		try{
+			availablePositions.addLast(appendMessage(message));
+			signalWaitingConsumers(1);
+		}catch(Exception e) {
+			logger.error(String.format("Exception while adding message in queue: %s", name), e);
+			message.setMessageId(null);
+		}
+	}
+
+	// delayed messages are not supported; a push with a delay fails (null message id)
+	@Override
+	public void push(Message message, int delaySeconds) {
+		if(delaySeconds > 0) {
+			logger.error(String.format("Delayed messages are not supported by queue %s", name));
+			message.setMessageId(null);
+			return;
+		}
+		
+		push(message);
+	}
+
+	// the messages are encoded back to back and appended to the log as one write; a message which cannot be encoded
+	// gets a null message id and the others are still appended, as does a message with a MessageGroupId or
+	// MessageDeduplicationId
+	public synchronized void pushAll(List<Message> messages) {
+		List<Message> encodedMessages = new ArrayList<>(messages.size());
+		int[] payloadLengths = new int[messages.size()];
+
+		encodeBuffer.clear();
+		for(Message message: messages) {
+			if(!QueueAttributes.isStandardMessage(message, name)) {
+				message.setMessageId(null);
+				continue;
+			}
+			
+			try{
+				payloadLengths[encodedMessages.size()] = encodeMessage(message);
+				encodedMessages.add(message);
+			}catch(Exception e) {
+				logger.error(String.format("Exception while adding messages in queue: %s", name), e);
+				message.setMessageId(null);
+			}
+		}
+		encodeBuffer.flip();
+
+		int availableCount = availablePositions.size();
+
+		try{
+			log.appendAll(messageRecord, encodeBuffer, payloadLengths, encodedMessages.size(), true, availablePositions);
+		}catch(Exception e) {
+			logger.error(String.format("Exception while adding messages in queue: %s", name), e);
+
+			// the messages behind the last record which was written are lost
+			for(int i = availablePositions.size() - availableCount; i < encodedMessages.size(); i++)
+				encodedMessages.get(i).setMessageId(null);
+		}
+
+		signalWaitingConsumers(availablePositions.size() - availableCount);
+	}
+
+	private long appendMessage(Message message) throws IOException {
+		encodeBuffer.clear();
+		encodeMessage(message);
+		encodeBuffer.flip();
+
+		return log.append(messageRecord, encodeBuffer, true);
+	}
+
+	// appends the record payload of the message to encodeBuffer, which grows as needed, and returns its length.
+	// Payload: [short id length][id][short MD5 length][MD5][body], strings in UTF-8; an MD5 length of 0 means none
+	private int encodeMessage(Message message) {
+		String md5OfBody = message.getMD5OfBody() == null ? "" : message.getMD5OfBody();
+		int start = encodeBuffer.position();
+
+		putString(message.getMessageId(), true);
+		putString(md5OfBody, true);
+		putString(message.getBody(), false);
+
+		return encodeBuffer.position() - start;
+	}
+
+	// writes str in UTF-8 to encodeBuffer, optionally preceded by its encoded length as a short. ASCII strings, such
+	// as the ids, are copied char by char, which saves the intermediate byte array of String.getBytes().
+	private void putString(String str, boolean withLength) {
+		int length = str.length();
+		int lengthSize = withLength ? 2 : 0;
+
+		// room for the worst case of 3 bytes per char
+		if(encodeBuffer.remaining() < lengthSize + 3 * length) {
+			ByteBuffer grownBuffer = ByteBuffer.allocate(Math.max(encodeBuffer.position() + lengthSize + 3 * length, 2 * encodeBuffer.capacity()));
+			encodeBuffer.flip();
+			encodeBuffer = grownBuffer.put(encodeBuffer);
+		}
+
+		if(encodeChars.length < length)
+			encodeChars = new char[Math.max(length, 2 * encodeChars.length)];
+		str.getChars(0, length, encodeChars, 0);
+
+		byte[] bytes = encodeBuffer.array();
+		char[] chars = encodeChars;
+		int offset = encodeBuffer.arrayOffset() + encodeBuffer.position() + lengthSize;
+		int i = 0;
+
+		while(i < length) {
+			char c = chars[i];
+
+			if(c >= 0x80)
+				break;
+
+			bytes[offset + i++] = (byte) c;
+		}
+
+		if(i < length) {
+			byte[] encoded = str.getBytes(StandardCharsets.UTF_8);
+			System.arraycopy(encoded, 0, bytes, offset, encoded.length);
+			length = encoded.length;
+		}
+
+		if(withLength)
+			encodeBuffer.putShort((short) length);
+		encodeBuffer.position(encodeBuffer.position() + length);
+	}
+
+	private Message readMessage(long position) {
+		ByteBuffer payload = log.read(position);
+		Message message = new Message();
+
+		message.setMessageId(readString(payload, payload.getShort()));
+		int md5Length = payload.getShort();
+		if(md5Length > 0)
+			message.setMD5OfBody(readString(payload, md5Length));
+		message.setBody(readString(payload, payload.remaining()));
+
+		return message;
+	}
+
+	private static String readString(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public synchronized Message pull() {
+		return pull(QueueAttributes.getReceiveMessageWaitTimeSeconds(attributes));
+	}
+
+	// pull method reads the message at the head of the available positions from the log and puts it in the
+	// inflight index, keyed by a new receipt handle.
+	public synchronized Message pull(int waitTimeSeconds) {
+		Message message = null;
+
+		try{
+			if(awaitAvailableMessages(waitTimeSeconds * 1000L)) {
+				long receiptTime = System.currentTimeMillis();
+				long deadline = receiptTime + getVisibilityTimeoutMillis();
+				message = receiveMessage(receiptTime, deadline, false);
+				scheduleRefresh(deadline);
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while pulling message from queue %s", name), e);
+		}
+
+		return message;
+	}
+
+	public synchronized List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds) {
+		return pull(maxNumberOfMessages, waitTimeSeconds, QueueAttributes.useQueueVisibilityTimeout);
+	}
+
+	public synchronized List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout) {
+		List<Message> messages = new ArrayList<>();
+
+		try{
+			if(awaitAvailableMessages(waitTimeSeconds * 1000L)) {
+				int count = QueueAttributes.getReceiveCount(attributes, maxNumberOfMessages);
+				long receiptTime = System.currentTimeMillis();
+				boolean fixedDeadline = visibilityTimeout >= 0;
+				long deadline = receiptTime + (fixedDeadline ? visibilityTimeout * 1000L : getVisibilityTimeoutMillis());
+
+				while(messages.size() < count && !availablePositions.isEmpty())
+					messages.add(receiveMessage(receiptTime, deadline, fixedDeadline));
+
+				scheduleRefresh(deadline);
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while pulling messages from queue %s", name), e);
+		}
+
+		return messages;
+	}
+
+	// must be called while holding the monitor
+	private Message receiveMessage(long receiptTime, long deadline, boolean fixedDeadline) {
+		long position = availablePositions.pollFirst();
+		Message message = readMessage(position);
+		message.setReceiptHandle(receiptHandleGenerator.generateId());
+		inflightMessages.add(message, message.getReceiptHandle(), receiptTime, deadline, fixedDeadline);
+		inflightPositions.put(message.getReceiptHandle(), position);
+
+		return message;
+	}
+
+	private boolean awaitAvailableMessages(long waitTimeMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+
+		while(availablePositions.isEmpty() && !released) {
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+			if(remainingMillis <= 0)
+				return false;
+
+			waitingConsumers++;
+			try{
+				wait(remainingMillis);
+			}finally{
+				waitingConsumers--;
+			}
+		}
+
+		return !released && !availablePositions.isEmpty();
+	}
+
+	private void signalWaitingConsumers(int availableCount) {
+		for(int i = 0; i < availableCount && i < waitingConsumers; i++)
+			notify();
+	}
+
+	// the delete record is appended before the message leaves the inflight index, so a message is either deleted
+	// on disk and in memory or not at all
+	public synchronized boolean delete(String receiptHandle) {
+		boolean status = false;
+
+		try{
+			status = deleteInflightMessage(receiptHandle);
+
+			if(!status)
+				logger.error("ReceiptHandle does not exist.");
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while deleting message from queue %s", name), e);
+		}
+
+		return status;
+	}
+
+	public synchronized Set<String> delete(Collection<String> receiptHandles) {
+		Set<String> deletedReceiptHandles = new HashSet<>();
+
+		try{
+			for(String receiptHandle: receiptHandles) {
+				if(deleteInflightMessage(receiptHandle))
+					deletedReceiptHandles.add(receiptHandle);
+			}
+
+			if(deletedReceiptHandles.size() < receiptHandles.size())
+				logger.error(String.format("%d receipt handles do not exist.", receiptHandles.size() - deletedReceiptHandles.size()));
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while deleting messages from queue %s", name), e);
+		}
+
+		return deletedReceiptHandles;
+	}
+
+	// must be called while holding the monitor
+	private boolean deleteInflightMessage(String receiptHandle) throws IOException {
+		Long position = inflightPositions.get(receiptHandle);
+
+		if(position == null)
+			return false;
+
+		log.append(deleteRecord, ByteBuffer.allocate(8).putLong(position).array(), false);
+		inflightMessages.remove(receiptHandle);
+		inflightPositions.remove(receiptHandle);
+		log.release(position);
+
+		return true;
+	}
+
+	public synchronized boolean changeMessageVisibility(String receiptHandle, int visibilityTimeout) {
+		boolean status = false;
+
+		try{
+			status = changeVisibility(receiptHandle, visibilityTimeout, System.currentTimeMillis());
+
+			if(!status)
+				logger.error("ReceiptHandle does not exist.");
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while changing message visibility in queue %s", name), e);
+		}
+
+		return status;
+	}
+
+	public synchronized Set<String> changeMessageVisibility(Map<String, Integer> visibilityTimeouts) {
+		Set<String> changedReceiptHandles = new HashSet<>();
+
+		try{
+			long now = System.currentTimeMillis();
+
+			for(Map.Entry<String, Integer> entry: visibilityTimeouts.entrySet()) {
+				if(changeVisibility(entry.getKey(), entry.getValue(), now))
+					changedReceiptHandles.add(entry.getKey());
+			}
+
+			if(changedReceiptHandles.size() < visibilityTimeouts.size())
+				logger.error(String.format("%d receipt handles do not exist.", visibilityTimeouts.size() - changedReceiptHandles.size()));
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while changing message visibility in queue %s", name), e);
+		}
+
+		return changedReceiptHandles;
+	}
+
+	// must be called while holding the monitor
+	private boolean changeVisibility(String receiptHandle, int visibilityTimeout, long now) {
+		InflightMessageIndex.Entry entry = inflightMessages.get(receiptHandle);
+
+		if(entry == null)
+			return false;
+
+		if(visibilityTimeout == 0) {
+			inflightMessages.remove(receiptHandle);
+			availablePositions.addFirst(inflightPositions.remove(receiptHandle));
+			signalWaitingConsumers(1);
+		}
+		else {
+			long deadline = now + visibilityTimeout * 1000L;
+			inflightMessages.updateDeadline(entry, deadline);
+			scheduleRefresh(deadline);
+		}
+
+		return true;
+	}
+
+	@Override
+	public int getApproximateNumberOfMessages() {
+		return availablePositions.size();
+	}
+
+	// messages are never delayed
+	@Override
+	public int getApproximateNumberOfMessagesDelayed() {
+		return 0;
+	}
+
+	// puts the positions of the timed-out messages back in front of the available positions; the messages are
+	// read from the log again when they are received the next time
+	@Override
+	public synchronized void refreshQueue() {
+		long now = System.currentTimeMillis();
+
+		if(now >= scheduledRefreshTime)
+			scheduledRefreshTime = Long.MAX_VALUE;
+
+		LongDeque expiredPositions = new LongDeque();
+
+		try{
+			while(!inflightMessages.isEmpty()) {
+				InflightMessageIndex.Entry entry = inflightMessages.peek();
+
+				if(now >= entry.getDeadline()) {
+					inflightMessages.poll();
+					expiredPositions.addLast(inflightPositions.remove(entry.getReceiptHandle()));
+				}
+				else {
+					scheduleRefresh(entry.getDeadline());
+					break;
+				}
+			}
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while refreshing queue %s", name), e);
+		}finally{
+			for(int i = expiredPositions.size() - 1; i >= 0; i--)
+				availablePositions.addFirst(expiredPositions.get(i));
+
+			signalWaitingConsumers(expiredPositions.size());
+		}
+	}
+
+	@Override
+	public synchronized boolean purge() {
+
+		try{
+			log.append(purgeRecord, new byte[0], false);
+
+			while(!availablePositions.isEmpty())
+				log.release(availablePositions.pollFirst());
+
+			for(Long position: inflightPositions.values())
+				log.release(position);
+
+			inflightMessages.clear();
+			inflightPositions.clear();
+		}catch(Exception e) {
+			logger.error(String.format("Execption caught while purging queue %s", name), e);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized void setAttributes(Map<String, String> attributes) {
+		if(!QueueAttributes.update(this.attributes, attributes, attributesValidator, name))
+			return;
+
+		if(attributes.containsKey(QueueAttributes.visibilityTimeoutAttribute) && !inflightMessages.isEmpty()) {
+			inflightMessages.resetDeadlines(getVisibilityTimeoutMillis());
+			scheduleRefresh(inflightMessages.peek().getDeadline());
+		}
+
+		storeAttributes();
+	}
+
+	@Override
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	// the stored attributes were validated when they were set; the ones the validator no longer knows, e.g., the
+	// attributes of InMemoryQueue stored by older versions, are skipped
+	private void loadAttributes() throws IOException {
+		File attributesFile = new File(directory, attributesFileName);
+
+		if(!attributesFile.isFile())
+			return;
+
+		Properties properties = new Properties();
+
+		try(InputStream input = new FileInputStream(attributesFile)) {
+			properties.load(input);
+		}
+
+		for(String attributeName: properties.stringPropertyNames()) {
+			if(attributesValidator.validateAttributeName(attributeName))
+				attributes.put(attributeName, properties.getProperty(attributeName));
+		}
+	}
+
+	// written to a temporary file first so that a crash never leaves half of the attributes behind
+	private void storeAttributes() {
+		Properties properties = new Properties();
+		properties.putAll(attributes);
+		File temporaryFile = new File(directory, attributesFileName + ".tmp");
+
+		try(OutputStream output = new FileOutputStream(temporaryFile)) {
+			properties.store(output, null);
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while storing attributes of queue %s", name), e);
+			return;
+		}
+
+		if(!temporaryFile.renameTo(new File(directory, attributesFileName)))
+			logger.error(String.format("Failed to store attributes of queue %s", name));
+	}
+
+	private int getIntegerAttribute(String attributeName, int defaultValue) {
+		return QueueAttributes.getIntegerAttribute(attributes, attributeName, defaultValue);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getNumberOfInflightMessages() {
+		return inflightMessages.size();
+	}
+
+	public synchronized int getNumberOfSegments() {
+		return log.getNumberOfSegments();
+	}
+
+	// also flushes and closes the log; the queue directory stays on disk
+	@Override
+	public synchronized void releaseResources() {
+		if(released)
+			return;
+
+		released = true;
+		refreshScheduler.cancel(this);
+		notifyAll();
+		log.close();
+		unlockDirectory();
+	}
+}
@@ -0,0 +1,94 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// creates a FileMessageQueue in the sub directory <baseDirectory>/<queue name>; an existing directory is reopened
+public class FileQueueFactory implements QueueFactory{
+	
+	// 64 MB segments keep the number of files and mappings low while a segment of deleted messages is still 
+	// released reasonably soon
+	public final static int defaultSegmentSize = 64 * 1024 * 1024;
+	// SQS queue names, which are also safe directory names
+	final static Pattern queueNamePattern = Pattern.compile("[A-Za-z0-9_-]{1,80}");
+	private final static Logger logger = Logger.getLogger(FileQueueFactory.class);
+	
+	private final File baseDirectory;
+	private final int segmentSize;
+	private final RefreshScheduler refreshScheduler;
+	private final IdGenerator receiptHandleGenerator;
+	
+	public FileQueueFactory(File baseDirectory) {
+		this(baseDirectory, defaultSegmentSize);
+	}
+	
+	public FileQueueFactory(File baseDirectory, int segmentSize) {
+		this(baseDirectory, segmentSize, RefreshScheduler.getDefault(), TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public FileQueueFactory(File baseDirectory, int segmentSize, RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator) {
+		this.baseDirectory = baseDirectory;
+		this.segmentSize = segmentSize;
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
+	}
+
+	@Override
+	public synchronized MessageQueue create(CreateQueueRequest createQueueRequest) {
+		String qName = createQueueRequest.getQueueName();
+		
+		if(!queueNamePattern.matcher(qName).matches()) {
+			logger.error(String.format("Invalid queue name for a file based queue: %s", qName));
+			return null;
+		}
+		
+		MessageQueue queue = null;
+		
+		try{
+			queue = new FileMessageQueue(qName, new QueueAttributeValidatorImpl(QueueAttributeValidatorImpl.inMemoryQueueAttributes), 
+					new File(baseDirectory, qName), segmentSize, refreshScheduler, receiptHandleGenerator);
+			queue.setAttributes(createQueueRequest.getAttributes());
+		}catch(IOException | IllegalArgumentException e) {
+			logger.error(String.format("Exception caught while opening the files of queue %s", qName), e);
+		}
+		
+		return queue;
+	}
+	
+	// names of the queues which have a directory below the base directory
+	public List<String> getStoredQueueNames() {
+		List<String> queueNames = new ArrayList<>();
+		File[] queueDirectories = baseDirectory.listFiles();
+		
+		if(queueDirectories != null) {
+			for(File queueDirectory: queueDirectories) {
+				if(queueDirectory.isDirectory() && queueNamePattern.matcher(queueDirectory.getName()).matches())
+					queueNames.add(queueDirectory.getName());
+			}
+		}
+		
+		return queueNames;
+	}
+	
+	// removes the directory of a queue which was released; returns false if a file could not be deleted
+	public boolean deleteQueueFiles(String qName) {
+		File queueDirectory = new File(baseDirectory, qName);
+		File[] files = queueDirectory.listFiles();
+		boolean status = true;
+		
+		if(files != null) {
+			for(File file: files)
+				status &= file.delete();
+		}
+		
+		return queueDirectory.delete() && status;
+	}
+
+}
@@ -1,6 +1,49 @@
 package com.example;
 
-public abstract class FileQueueService implements QueueService {
-  // File based Queue Service to enable message communication among various producers-consumers 
-  // residing in different JVMs. Tentative solution: Inter-process communication via socket programming or REST API.
+import java.io.File;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// File based Queue Service: every queue is an append-only, memory-mapped segmented log (see FileMessageQueue) in its 
+// own directory below the base directory, so the messages survive a restart of the JVM. The service contract, 
+// including validation and the batch operations, is the one of InMemoryQueueService, which makes both 
+// interchangeable (see QueueServiceFactory). The queues found in the base directory are reopened on construction.
+public class FileQueueService extends InMemoryQueueService {
+	
+	private FileQueueFactory queueFactory;
+	private final static Logger logger = Logger.getLogger(FileQueueService.class);
+	
+	public FileQueueService(File baseDirectory) {
+		this(new FileQueueFactory(baseDirectory));
+	}
+	
+	public FileQueueService(FileQueueFactory queueFactory) {
+		super(queueFactory);
+		this.queueFactory = queueFactory;
+		
+		for(String qName: queueFactory.getStoredQueueNames())
+			createQueue(new CreateQueueRequest(qName));
+	}
+	
+	// deleting a queue also removes its files
+	@Override
+	public boolean deleteQueue(String qName) {
+		if(!super.deleteQueue(qName))
+			return false;
+		
+		if(!queueFactory.deleteQueueFiles(qName)) {
+			logger.error(String.format("Failed to delete the files of queue %s", qName));
+			return false;
+		}
+		
+		return true;
+	}
+	
+	// flushes and closes all the queues; their files stay on disk for the next FileQueueService
+	public void close() {
+		for(String qName: getQueueNames())
+			getQueue(qName).releaseResources();
+	}
 }
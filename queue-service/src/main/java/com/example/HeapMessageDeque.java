@@ -0,0 +1,46 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// keeps the Message objects on the heap; the default storage of an InMemoryQueue
+public class HeapMessageDeque implements MessageDeque {
+	private final ArrayDeque<Message> messages = new ArrayDeque<>();
+
+	@Override
+	public void addFirst(Message message) {
+		messages.addFirst(message);
+	}
+
+	@Override
+	public void addLast(Message message) {
+		messages.addLast(message);
+	}
+
+	@Override
+	public Message removeFirst() {
+		return messages.removeFirst();
+	}
+
+	@Override
+	public int size() {
+		return messages.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return messages.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		messages.clear();
+	}
+
+	@Override
+	public Iterator<Message> iterator() {
+		return messages.iterator();
+	}
+}
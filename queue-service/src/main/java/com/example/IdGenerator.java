@@ -0,0 +1,9 @@
+package com.example;
+
+// Generates message ids and receipt handles. Implementations must be thread safe and should not block,
+// since queues call generateId() while holding their monitor.
+public interface IdGenerator {
+	
+	public String generateId();
+	
+}
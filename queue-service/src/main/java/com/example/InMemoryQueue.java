@@ -1,15 +1,22 @@
 package com.example;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Timer;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.util.StringUtils;
 
 public class InMemoryQueue implements MessageQueue{
 
@@ -17,87 +24,604 @@ public class InMemoryQueue implements MessageQueue{
 	// queue specific attributes, such as visibility timeout
 	private Map<String, String> attributes;
 	
-	// messages which are available for processing
-	private LinkedList<Message> availableMessages;
-	// inflight messages are kept in a separate map so that the object can be accessed based on the receipt handle in O(1) time
-	private Map<String, Message> inflightMessageObjectMap;
-	// <ReceiptHandle, LatestReceiptTime> pairs for inflight messages
-	private Map<String, Long> inflightMessageReceiptTimeMap;
-	private Queue<Message> inflightMessages; 
+	// messages which are available for processing; on the heap or, depending on MessageStorage, encoded in native
+	// memory or partly spilled to files in spillDirectory
+	private MessageDeque availableMessages;
+	// sent times of availableMessages, in the same order, for the MessageRetentionPeriod
+	private RetentionSegments sentTimes;
+	// MessageStorage value which availableMessages implements
+	private String messageStorage = heapMessageStorage;
+	private File spillDirectory;
+	// inflight messages indexed by receipt handle (O(1) lookup) and ordered by visibility deadline (O(log n) removal)
+	private InflightMessageIndex inflightMessages;
+	// messages pushed with a delay, ordered by the time they become available; refreshQueue() promotes them to
+	// availableMessages once they are due
+	private DelayedMessageSet delayedMessages;
+	// <MessageId, ApproximateReceiveCount> of the messages which were received at least once; kept apart from the
+	// messages, since off-heap and spill storage do not keep the attributes of a message
+	private final Map<String, Integer> receiveCounts = new HashMap<>();
+	// RedrivePolicy attribute, null if none, and the queue it names, which the owning queue service looks up;
+	// timed-out messages which were received maxReceiveCount times move there
+	private RedrivePolicy redrivePolicy;
+	private MessageQueue deadLetterQueue;
+	// message groups of a FIFO queue (FifoQueue attribute), null otherwise: only the oldest message of every group is
+	// in availableMessages or inflight, the others wait in their group. Read by producers without the monitor.
+	private volatile MessageGroupSet messageGroups;
+	// MessageDeduplicationIds accepted within the deduplication window; thread safe, so producers check it before they
+	// take the monitor. With ContentBasedDeduplication a message without an id is deduplicated by its body.
+	private final DeduplicationCache deduplicationCache = new DeduplicationCache(maximumDeduplicationIds);
+	private volatile boolean contentBasedDeduplication;
 	
-	private Timer refreshQueueTimer;
-	// The timer is called at regular interval
-	private long interval = 100L;
+	// shared scheduler which calls refreshQueue() once the earliest inflight message times out or delayed message is due
+	private RefreshScheduler refreshScheduler;
+	// generates the receipt handles; called while holding the monitor, so it must not block
+	private IdGenerator receiptHandleGenerator;
+	// earliest refresh deadline requested from the scheduler; Long.MAX_VALUE if none is pending
+	private long scheduledRefreshTime = Long.MAX_VALUE;
+	
+	// number of consumers parked in pull() waiting for a message; producers only signal when this is non-zero
+	private int waitingConsumers;
+	// set once the queue is deleted so that parked consumers return immediately
+	private boolean released;
+	// MessageRetentionPeriod in milliseconds; messages sent longer ago are dropped
+	private long retentionMillis;
+	// pending expireMessages() call and its time; Long.MAX_VALUE if none is pending
+	private ScheduledFuture<?> expiryTask;
+	private long scheduledExpiryTime = Long.MAX_VALUE;
+	
+	// messages and body bytes held by the queue, available or inflight, against MaximumNumberOfMessages and
+	// MaximumQueueKilobytes. Producers reserve their room before they take the monitor.
+	private final QueueCapacity capacity = new QueueCapacity();
+	// body bytes of the available and inflight messages; unlike capacity it excludes the reservations of producers
+	// which did not add their messages yet
+	private long heldBytes;
+	
+	// write-ahead journal and snapshots of the queue; journaling only while the Durability attribute asks for it.
+	// Creating the queue again in the same journal directory restores its messages (see checkpoint()).
+	private final QueueJournal queueJournal;
+	
+	private final static String durabilityAttribute = "Durability";
+	private final static String delaySecondsAttribute = "DelaySeconds";
+	private final static String messageRetentionPeriodAttribute = "MessageRetentionPeriod";
+	private final static String redrivePolicyAttribute = "RedrivePolicy";
+	private final static String approximateReceiveCountAttribute = "ApproximateReceiveCount";
+	private final static String fifoQueueAttribute = "FifoQueue";
+	private final static String messageGroupIdAttribute = "MessageGroupId";
+	private final static String messageDeduplicationIdAttribute = "MessageDeduplicationId";
+	private final static String contentBasedDeduplicationAttribute = "ContentBasedDeduplication";
+	// bounds the deduplication cache to a few dozen megabytes; a queue which accepts more ids within the window
+	// deduplicates over a shorter time
+	private final static int maximumDeduplicationIds = 100000;
+	private final static int defaultMessageRetentionPeriod = 4 * 24 * 3600;
+	private final static int useQueueDelaySeconds = -1;
+	// due times of delayed messages are rounded up to the tick of the default RefreshScheduler, so that the messages
+	// which become due in one tick are promoted by one refresh
+	private final static long delayResolutionMillis = 10L;
+	private final static String messageStorageAttribute = "MessageStorage";
+	private final static String heapMessageStorage = "heap";
+	private final static String offHeapMessageStorage = "offheap";
+	private final static String spillMessageStorage = "spill";
+	private final static String spillThresholdKilobytesAttribute = "SpillThresholdKilobytes";
+	private final static int defaultSpillThresholdKilobytes = 64 * 1024;
+	private final static String maximumNumberOfMessagesAttribute = "MaximumNumberOfMessages";
+	private final static String maximumQueueKilobytesAttribute = "MaximumQueueKilobytes";
+	private final static String overflowPolicyAttribute = "OverflowPolicy";
+	private final static String overflowWaitTimeSecondsAttribute = "OverflowWaitTimeSeconds";
 	
 	QueueAttributeValidator attributesValidator;
 	private final static Logger logger = Logger.getLogger(InMemoryQueue.class);
 	
 	public InMemoryQueue(String qName, QueueAttributeValidator attributesValidator) {
+		this(qName, attributesValidator, RefreshScheduler.getDefault());
+	}
+	
+	public InMemoryQueue(String qName, QueueAttributeValidator attributesValidator, RefreshScheduler refreshScheduler) {
+		this(qName, attributesValidator, refreshScheduler, TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public InMemoryQueue(String qName, QueueAttributeValidator attributesValidator, RefreshScheduler refreshScheduler,
+			IdGenerator receiptHandleGenerator) {
+		this(qName, attributesValidator, refreshScheduler, receiptHandleGenerator, null);
+	}
+	
+	// journalDirectory may be null if the queue is never made durable
+	public InMemoryQueue(String qName, QueueAttributeValidator attributesValidator, RefreshScheduler refreshScheduler,
+			IdGenerator receiptHandleGenerator, File journalDirectory) {
+		this(qName, attributesValidator, refreshScheduler, receiptHandleGenerator, journalDirectory, null);
+	}
+	
+	// spillDirectory holds the spill files of MessageStorage spill; null for the temporary directory of the JVM
+	public InMemoryQueue(String qName, QueueAttributeValidator attributesValidator, RefreshScheduler refreshScheduler,
+			IdGenerator receiptHandleGenerator, File journalDirectory, File spillDirectory) {
 		this.name = qName;
+		this.queueJournal = new QueueJournal(this, qName, journalDirectory);
+		this.spillDirectory = spillDirectory != null ? spillDirectory : new File(System.getProperty("java.io.tmpdir"));
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
 		this.attributes = new HashMap<>();
 		
 		this.attributesValidator = attributesValidator;
 		populateDefaultAttributes();
+		updateCapacity();
+		retentionMillis = getIntegerAttribute(messageRetentionPeriodAttribute, defaultMessageRetentionPeriod) * 1000L;
 		
-		availableMessages = new LinkedList<>();
-		inflightMessages = new LinkedList<>();
-		inflightMessageObjectMap = new HashMap<>();
-		inflightMessageReceiptTimeMap = new HashMap<>();
-		
-		setRefreshQueueTimer();
+		availableMessages = new HeapMessageDeque();
+		sentTimes = new RetentionSegments();
+		inflightMessages = new InflightMessageIndex();
+		delayedMessages = new DelayedMessageSet(delayResolutionMillis);
 	}
 
-	private void setRefreshQueueTimer() {
-		long delay = 100L;
-		refreshQueueTimer = new Timer();
-		refreshQueueTimer.scheduleAtFixedRate(new ScheduledTask(this), delay, interval);
+	// asks the scheduler for a refresh at the given deadline unless an earlier one is already pending.
+	// Must be called while holding the monitor.
+	private void scheduleRefresh(long deadline) {
+		if(released || deadline >= scheduledRefreshTime)
+			return;
+		
+		scheduledRefreshTime = deadline;
+		refreshScheduler.schedule(this, deadline);
 	}
 	
-	public synchronized void push(Message message) {
-		try{
-			availableMessages.addLast(message);
-		}catch(Exception e) {
-			logger.error(String.format("Exception while adding message in queue: %s", name), e);
+	private long getVisibilityTimeoutMillis() {
+		return QueueAttributes.getVisibilityTimeoutMillis(attributes);
+	}
+	
+	private long getDelayMillis(int delaySeconds) {
+		return (delaySeconds < 0 ? getIntegerAttribute(delaySecondsAttribute, 0) : delaySeconds) * 1000L;
+	}
+	
+	// makes the message available right away or, with a delay, once it is due; must be called while holding the monitor
+	private void addMessage(Message message, long delayMillis, long now) {
+		if(delayMillis > 0) {
+			scheduleRefresh(delayedMessages.add(message, now + delayMillis));
+		}
+		else {
+			makeAvailable(message, now);
+			scheduleExpiry();
+		}
+	}
+	
+	// appends the message to availableMessages unless it belongs to an active message group of a FIFO queue, where it
+	// waits for the messages before it. Must be called while holding the monitor.
+	private void makeAvailable(Message message, long sentTime) {
+		if(messageGroups != null) {
+			String groupId = getMessageGroupId(message);
+			
+			if(messageGroups.isActive(groupId)) {
+				messageGroups.add(groupId, message, sentTime);
+				return;
+			}
+			messageGroups.activate(groupId);
+		}
+		
+		availableMessages.addLast(message);
+		sentTimes.addLast(sentTime);
+	}
+	
+	// makes the next message of the group of a message which left the queue for good available; must be called while
+	// holding the monitor
+	private void releaseMessageGroup(Message message) {
+		if(messageGroups == null)
+			return;
+		
+		MessageGroupSet.Entry entry = messageGroups.release(getMessageGroupId(message));
+		
+		if(entry != null) {
+			availableMessages.addLast(entry.getMessage());
+			sentTimes.addLast(entry.getSentTime());
+			signalWaitingConsumers(1);
+			scheduleExpiry();
+		}
+	}
+	
+	private static String getMessageGroupId(Message message) {
+		return message.getAttributes().get(messageGroupIdAttribute);
+	}
+	
+	// a FIFO queue takes messages with a MessageGroupId only, and delays all of them by its DelaySeconds so that
+	// messages never overtake each other; logs why a message is rejected
+	private boolean isAcceptedMessage(Message message, int delaySeconds) {
+		if(messageGroups == null)
+			return true;
+		
+		if(delaySeconds != useQueueDelaySeconds) {
+			logger.error(String.format("Per-message delays are not supported by FIFO queue %s", name));
+			return false;
+		}
+		
+		if(StringUtils.isNullOrEmpty(getMessageGroupId(message))) {
+			logger.error(String.format("MessageGroupId is required by FIFO queue %s", name));
+			return false;
+		}
+		
+		return true;
+	}
+	
+	// asks the shared daemon scheduler for expireMessages() once the earliest available message expires unless an
+	// earlier call is already pending; a queue has at most one pending call. Must be called while holding the monitor.
+	private void scheduleExpiry() {
+		long expiryTime = sentTimes.getNextExpiryTime(retentionMillis);
+		
+		if(released || expiryTime >= scheduledExpiryTime)
+			return;
+		
+		if(expiryTask != null)
+			expiryTask.cancel(false);
+		
+		scheduledExpiryTime = expiryTime;
+		expiryTask = DaemonExecutors.getScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				expireMessages();
+			}
+		}, Math.max(0, expiryTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	}
+	
+	// drops the available messages which outlived the MessageRetentionPeriod, segment by segment from the head, and
+	// schedules the next call
+	public synchronized void expireMessages() {
+		scheduledExpiryTime = Long.MAX_VALUE;
+		expiryTask = null;
+		
+		int droppedCount = dropExpiredMessages(System.currentTimeMillis() - retentionMillis);
+		if(droppedCount > 0)
+			logger.warn(String.format("Dropped %d messages of queue %s after the retention period", droppedCount, name));
+		
+		scheduleExpiry();
+	}
+	
+	public void push(Message message) {
+		push(message, useQueueDelaySeconds);
+	}
+	
+	// with a journal the push event is appended under the monitor, so the journal order matches the queue order,
+	// but the group commit is awaited outside of it, so that concurrent pushers share one force(). The room for the
+	// message is reserved before the monitor is taken (see reserveCapacity()). A delayed message takes up room in the
+	// queue from the push on.
+	// A duplicate of a message accepted within the deduplication window is not added; it gets the message id of the
+	// original instead.
+	public void push(Message message, int delaySeconds) {
+		MessageJournal pushJournal = null;
+		long journalSequence = 0;
+		long bodySize = QueueCapacity.getBodySize(message);
+		
+		if(!isAcceptedMessage(message, delaySeconds)) {
 			message.setMessageId(null);
+			return;
+		}
+		
+		String deduplicationId = getDeduplicationId(message);
+		if(deduplicationId != null && isDuplicate(message, deduplicationId))
+			return;
+		
+		if(!reserveCapacity(1, bodySize, true)) {
+			failPush(message, deduplicationId);
+			return;
+		}
+		
+		synchronized(this) {
+			try{
+				pushJournal = queueJournal.getJournal();
+				if(pushJournal != null)
+					journalSequence = pushJournal.appendPush(message);
+				
+				long delayMillis = getDelayMillis(delaySeconds);
+				addMessage(message, delayMillis, System.currentTimeMillis());
+				heldBytes += bodySize;
+				if(delayMillis == 0)
+					signalWaitingConsumers(1);
+			}catch(Exception e) {
+				logger.error(String.format("Exception while adding message in queue: %s", name), e);
+				capacity.release(1, bodySize);
+				failPush(message, deduplicationId);
+				return;
+			}
+		}
+		
+		awaitDurablePush(pushJournal, journalSequence, Collections.singletonList(message));
+	}
+	
+	// the room for all the messages is reserved at once; a batch which does not fit fails as a whole. The messages are
+	// delayed by the queue specific DelaySeconds. Duplicates get the message id of their original, as in push().
+	public void pushAll(List<Message> messages) {
+		pushAll(messages, false);
+	}
+	
+	// messages which move from another queue are not deduplicated, since they were accepted once already, and never
+	// wait for room, since they are moved by the shared scheduler threads (see transferMessages())
+	private void pushAll(List<Message> batch, boolean transfer) {
+		MessageJournal pushJournal = null;
+		long journalSequence = 0;
+		long bodySize = 0;
+		
+		for(Message message: batch) {
+			if(!isAcceptedMessage(message, useQueueDelaySeconds)) {
+				for(Message rejectedMessage: batch)
+					rejectedMessage.setMessageId(null);
+				return;
+			}
+		}
+		
+		List<Message> messages = new ArrayList<>(batch.size());
+		List<String> deduplicationIds = new ArrayList<>(batch.size());
+		
+		for(Message message: batch) {
+			String deduplicationId = transfer ? null : getDeduplicationId(message);
+			
+			if(deduplicationId == null || !isDuplicate(message, deduplicationId)) {
+				messages.add(message);
+				deduplicationIds.add(deduplicationId);
+				bodySize += QueueCapacity.getBodySize(message);
+			}
+		}
+		
+		if(messages.isEmpty())
+			return;
+		
+		if(!reserveCapacity(messages.size(), bodySize, !transfer)) {
+			for(int i = 0; i < messages.size(); i++)
+				failPush(messages.get(i), deduplicationIds.get(i));
+			return;
+		}
+		
+		synchronized(this) {
+			int addedCount = 0;
+			
+			try{
+				pushJournal = queueJournal.getJournal();
+				if(pushJournal != null) {
+					for(Message message: messages)
+						journalSequence = pushJournal.appendPush(message);
+				}
+				
+				long delayMillis = getDelayMillis(useQueueDelaySeconds);
+				long now = System.currentTimeMillis();
+				
+				for(Message message: messages) {
+					addMessage(message, delayMillis, now);
+					heldBytes += QueueCapacity.getBodySize(message);
+					addedCount++;
+				}
+				if(delayMillis == 0)
+					signalWaitingConsumers(messages.size());
+			}catch(Exception e) {
+				logger.error(String.format("Exception while adding messages in queue: %s", name), e);
+				
+				for(int i = addedCount; i < messages.size(); i++) {
+					capacity.release(1, QueueCapacity.getBodySize(messages.get(i)));
+					failPush(messages.get(i), deduplicationIds.get(i));
+				}
+				return;
+			}
+		}
+		
+		awaitDurablePush(pushJournal, journalSequence, messages);
+	}
+	
+	// explicit MessageDeduplicationId of the message, or the digest of its body with ContentBasedDeduplication; null
+	// if the message is not deduplicated
+	private String getDeduplicationId(Message message) {
+		String deduplicationId = message.getAttributes().get(messageDeduplicationIdAttribute);
+		
+		if(deduplicationId == null && contentBasedDeduplication)
+			deduplicationId = MessageCreator.generateContentDeduplicationId(message.getBody());
+		
+		return deduplicationId;
+	}
+	
+	// records the message for its deduplication id unless a message was accepted for that id within the window, in
+	// which case the message takes the id of the original and true is returned
+	private boolean isDuplicate(Message message, String deduplicationId) {
+		String originalMessageId = deduplicationCache.putIfAbsent(deduplicationId, message.getMessageId(), System.currentTimeMillis());
+		
+		if(originalMessageId == null)
+			return false;
+		
+		message.setMessageId(originalMessageId);
+		return true;
+	}
+	
+	// reports a push as failed (null message id) and forgets its deduplication id, so that the producer can retry
+	private void failPush(Message message, String deduplicationId) {
+		if(deduplicationId != null)
+			deduplicationCache.remove(deduplicationId, message.getMessageId());
+		message.setMessageId(null);
+	}
+	
+	// reserves room for count messages of bodySize bytes in all according to the OverflowPolicy: a full queue fails
+	// the push right away, blocks it for up to OverflowWaitTimeSeconds (unless mayBlock is false, in which case it
+	// fails right away too) or drops the oldest available messages. Must not be called while holding the monitor;
+	// returns false if the queue stays full.
+	private boolean reserveCapacity(int count, long bodySize, boolean mayBlock) {
+		if(capacity.tryReserve(count, bodySize))
+			return true;
+		
+		QueueCapacity.OverflowPolicy overflowPolicy = capacity.getOverflowPolicy();
+		
+		try{
+			if(overflowPolicy == QueueCapacity.OverflowPolicy.BLOCK && mayBlock && capacity.reserve(count, bodySize, capacity.getOverflowWaitTimeMillis()))
+				return true;
+			
+			if(overflowPolicy == QueueCapacity.OverflowPolicy.DROP_OLDEST && dropOldestMessages(count, bodySize))
+				return true;
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		logger.error(String.format("Queue %s is full", name));
+		return false;
+	}
+	
+	// removes available messages from the head until the reservation fits; false if it does not fit even though no
+	// message is available any more. Inflight and delayed messages are never dropped.
+	private synchronized boolean dropOldestMessages(int count, long bodySize) {
+		int droppedCount = 0;
+		
+		try{
+			while(!capacity.tryReserve(count, bodySize)) {
+				if(availableMessages.isEmpty() || released)
+					return false;
+				
+				Message message = availableMessages.removeFirst();
+				sentTimes.removeFirst();
+				dropMessage(message);
+				droppedCount++;
+			}
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while dropping messages from queue %s", name), e);
+			return false;
 		}finally{
-			notifyAll();
+			if(droppedCount > 0)
+				logger.warn(String.format("Dropped the %d oldest messages of queue %s", droppedCount, name));
 		}
+		
+		return true;
 	}
 	
-	// pull method extracts the message from the available queue and puts it in the inflight queue.
-	// also keeps the <receipthandle, receipttime> pair and <receipthandle, message> pair in maps 
-	// for O(1) delete operation.
+	// gives back the room of a message which left the queue; must be called while holding the monitor
+	private void releaseCapacity(Message message) {
+		long bodySize = QueueCapacity.getBodySize(message);
+		heldBytes -= bodySize;
+		capacity.release(1, bodySize);
+	}
+	
+	// in group-commit mode a push returns once its journal record is on the storage device. The messages of a failed
+	// commit stay in the queue but are reported as failed (null message id), so the producer may send them again.
+	private void awaitDurablePush(MessageJournal pushJournal, long journalSequence, List<Message> messages) {
+		if(pushJournal == null || pushJournal.getDurability() != MessageJournal.Durability.GROUP_COMMIT)
+			return;
+		
+		try{
+			pushJournal.awaitDurable(journalSequence);
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while committing the journal of queue %s", name), e);
+			for(Message message: messages)
+				message.setMessageId(null);
+		}
+	}
+	
+	// pull() long polls for the queue specific ReceiveMessageWaitTimeSeconds; 0 returns immediately.
 	public synchronized Message pull() {
+		return pull(QueueAttributes.getReceiveMessageWaitTimeSeconds(attributes));
+	}
+	
+	// pull method extracts the message from the available queue and puts it in the inflight index,
+	// keyed by a new receipt handle for O(1) delete operation.
+	public synchronized Message pull(int waitTimeSeconds) {
 		Message message = null;
 		
 		try{
-			if(availableMessages.size() > 0) {
-				message = availableMessages.removeFirst();
-				message.setReceiptHandle(String.valueOf(UUID.randomUUID()));
-				inflightMessageObjectMap.put(message.getReceiptHandle(), message);
-				inflightMessageReceiptTimeMap.put(message.getReceiptHandle(), System.currentTimeMillis());
-				inflightMessages.offer(message);
+			if(awaitAvailableMessages(waitTimeSeconds * 1000L)) {
+				long receiptTime = System.currentTimeMillis();
+				long deadline = receiptTime + getVisibilityTimeoutMillis();
+				message = receiveMessage(receiptTime, deadline, false);
+				scheduleRefresh(deadline);
 			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}catch(Exception e) {
 			logger.error(String.format("Exception caught while pulling message from queue %s", name), e);
-		} finally{
-			notifyAll();
 		}
 			
 		return message;
 	}
+	
+	// drains up to maxNumberOfMessages (capped by the queue specific MaximumNumberOfMessagesPerReceive) in one 
+	// critical section; waits up to waitTimeSeconds only while no message is available at all.
+	public synchronized List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds) {
+		return pull(maxNumberOfMessages, waitTimeSeconds, QueueAttributes.useQueueVisibilityTimeout);
+	}
+	
+	// same as above, but the received messages stay invisible for visibilityTimeout seconds instead of the 
+	// queue specific VisibilityTimeout. A negative visibilityTimeout means the queue specific one.
+	public synchronized List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout) {
+		List<Message> messages = new ArrayList<>();
+		
+		try{
+			if(awaitAvailableMessages(waitTimeSeconds * 1000L)) {
+				int count = QueueAttributes.getReceiveCount(attributes, maxNumberOfMessages);
+				long receiptTime = System.currentTimeMillis();
+				boolean fixedDeadline = visibilityTimeout >= 0;
+				long deadline = receiptTime + (fixedDeadline ? visibilityTimeout * 1000L : getVisibilityTimeoutMillis());
+				
+				while(messages.size() < count && !availableMessages.isEmpty())
+					messages.add(receiveMessage(receiptTime, deadline, fixedDeadline));
+				
+				scheduleRefresh(deadline);
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while pulling messages from queue %s", name), e);
+		}
+		
+		return messages;
+	}
+	
+	// moves the head of availableMessages to the inflight state; must be called while holding the monitor.
+	private Message receiveMessage(long receiptTime, long deadline, boolean fixedDeadline) throws IOException {
+		Message message = availableMessages.removeFirst();
+		long sentTime = sentTimes.removeFirst();
+		Integer receiveCount = receiveCounts.get(message.getMessageId());
+		receiveCount = receiveCount == null ? 1 : receiveCount + 1;
+		receiveCounts.put(message.getMessageId(), receiveCount);
+		message.getAttributes().put(approximateReceiveCountAttribute, String.valueOf(receiveCount));
+		message.setReceiptHandle(receiptHandleGenerator.generateId());
+		inflightMessages.add(message, message.getReceiptHandle(), receiptTime, deadline, fixedDeadline, sentTime);
+		
+		MessageJournal journal = queueJournal.getJournal();
+		if(journal != null)
+			journal.appendReceive(message.getMessageId(), message.getReceiptHandle(), receiptTime, deadline);
+		
+		return message;
+	}
+	
+	// removes an inflight message for good; must be called while holding the monitor
+	private boolean deleteInflightMessage(String receiptHandle) throws IOException {
+		InflightMessageIndex.Entry entry = inflightMessages.remove(receiptHandle);
+		
+		if(entry == null)
+			return false;
+		
+		dropMessage(entry.getMessage());
+		
+		return true;
+	}
+	
+	// parks the caller on the queue monitor until a message is available, the wait expires or the queue is released.
+	// Must be called while holding the monitor; returns true if a message can be removed from availableMessages.
+	private boolean awaitAvailableMessages(long waitTimeMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+		
+		while(availableMessages.isEmpty() && !released) {
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			
+			if(remainingMillis <= 0)
+				return false;
+			
+			waitingConsumers++;
+			try{
+				wait(remainingMillis);
+			}finally{
+				waitingConsumers--;
+			}
+		}
+		
+		return !released && !availableMessages.isEmpty();
+	}
+	
+	// wakes up at most one parked consumer per newly available message instead of the whole wait set
+	private void signalWaitingConsumers(int availableCount) {
+		for(int i = 0; i < availableCount && i < waitingConsumers; i++)
+			notify();
+	}
 
-	// delete operation gets the message object from the inflightMessageObjectMap and removes this object 
-	// from inflightQueue in O(1) time.
+	// delete operation looks up the receipt handle in O(1) time and removes its entry from the 
+	// deadline ordered inflight index in O(log n) time.
 	public synchronized boolean delete(String receiptHandle) {
 		boolean status = false;
 		
 		try{
-			if(inflightMessageObjectMap.containsKey(receiptHandle)) {
-				Message message = inflightMessageObjectMap.get(receiptHandle);
-				inflightMessages.remove( message );
-				inflightMessageObjectMap.remove(receiptHandle);
-				inflightMessageReceiptTimeMap.remove(receiptHandle);
+			if(deleteInflightMessage(receiptHandle)) {
 				status = true;
 			}
 			else {
@@ -105,65 +629,367 @@ public class InMemoryQueue implements MessageQueue{
 			}
 		}catch(Exception e) {
 			logger.error(String.format("Exception caught while deleting message from queue %s", name), e);
-		}finally{
-			notifyAll();
 		}
 		
 		return status;
 	}
 
+	// deletes all the receipt handles in a single critical section and returns the ones which were deleted.
+	public synchronized Set<String> delete(Collection<String> receiptHandles) {
+		Set<String> deletedReceiptHandles = new HashSet<>();
+		
+		try{
+			for(String receiptHandle: receiptHandles) {
+				if(deleteInflightMessage(receiptHandle))
+					deletedReceiptHandles.add(receiptHandle);
+			}
+			
+			if(deletedReceiptHandles.size() < receiptHandles.size())
+				logger.error(String.format("%d receipt handles do not exist.", receiptHandles.size() - deletedReceiptHandles.size()));
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while deleting messages from queue %s", name), e);
+		}
+		
+		return deletedReceiptHandles;
+	}
+
+	// moves the visibility deadline of an inflight message to visibilityTimeout seconds from now. A timeout of 0
+	// makes the message available again right away, ahead of the messages which were never received.
+	public synchronized boolean changeMessageVisibility(String receiptHandle, int visibilityTimeout) {
+		boolean status = false;
+		
+		try{
+			status = changeVisibility(receiptHandle, visibilityTimeout, System.currentTimeMillis());
+			
+			if(!status)
+				logger.error("ReceiptHandle does not exist.");
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while changing message visibility in queue %s", name), e);
+		}
+		
+		return status;
+	}
+	
+	// changes the visibility of all the <ReceiptHandle, VisibilityTimeout> pairs in a single critical section 
+	// and returns the receipt handles which were changed.
+	public synchronized Set<String> changeMessageVisibility(Map<String, Integer> visibilityTimeouts) {
+		Set<String> changedReceiptHandles = new HashSet<>();
+		
+		try{
+			long now = System.currentTimeMillis();
+			
+			for(Map.Entry<String, Integer> entry: visibilityTimeouts.entrySet()) {
+				if(changeVisibility(entry.getKey(), entry.getValue(), now))
+					changedReceiptHandles.add(entry.getKey());
+			}
+			
+			if(changedReceiptHandles.size() < visibilityTimeouts.size())
+				logger.error(String.format("%d receipt handles do not exist.", visibilityTimeouts.size() - changedReceiptHandles.size()));
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while changing message visibility in queue %s", name), e);
+		}
+		
+		return changedReceiptHandles;
+	}
+	
+	// must be called while holding the monitor. The journal records the change as a receive with the new deadline.
+	private boolean changeVisibility(String receiptHandle, int visibilityTimeout, long now) throws IOException {
+		InflightMessageIndex.Entry entry = inflightMessages.get(receiptHandle);
+		
+		if(entry == null)
+			return false;
+		
+		MessageJournal journal = queueJournal.getJournal();
+		if(journal != null)
+			journal.appendReceive(entry.getMessage().getMessageId(), receiptHandle, entry.getReceiptTime(), now + visibilityTimeout * 1000L);
+		
+		// a message which is due for the dead-letter queue times out right away; refreshQueue() moves it
+		if(visibilityTimeout == 0 && isDeadLetter(entry.getMessage())) {
+			inflightMessages.updateDeadline(entry, now);
+			scheduleRefresh(now);
+		}
+		else if(visibilityTimeout == 0) {
+			inflightMessages.remove(receiptHandle);
+			entry.getMessage().setReceiptHandle(null);
+			availableMessages.addFirst(entry.getMessage());
+			sentTimes.addFirst(entry.getSentTime());
+			scheduleExpiry();
+			signalWaitingConsumers(1);
+		}
+		else {
+			long deadline = now + visibilityTimeout * 1000L;
+			inflightMessages.updateDeadline(entry, deadline);
+			scheduleRefresh(deadline);
+		}
+		
+		return true;
+	}
+
 	@Override
 	public int getApproximateNumberOfMessages() {
-		return availableMessages.size();
+		MessageGroupSet groups = messageGroups;
+		return availableMessages.size() + (groups == null ? 0 : groups.size());
+	}
+	
+	@Override
+	public synchronized int getApproximateNumberOfMessagesDelayed() {
+		return delayedMessages.size();
 	}
 
 	// refreshQueue activates the timed-out messages for reprocessing. For simplicity, it depends on 
-	// the queue specific VisibilityTimeout, not the message specific attribute.
+	// the queue specific VisibilityTimeout, not the message specific attribute. It is called by the
+	// RefreshScheduler when the earliest inflight message times out or the earliest delayed message is due, and
+	// schedules the next refresh. Timed-out messages which outlived the MessageRetentionPeriod are dropped instead
+	// of being reprocessed, and the ones which were received maxReceiveCount times of the RedrivePolicy move to the
+	// dead-letter queue; due delayed messages are appended behind the available messages.
 	@Override
-	public synchronized void refreshQueue() {
-		long visibilityTimeout = Integer.valueOf(attributes.get("VisibilityTimeout")) * 1000L;
+	public void refreshQueue() {
+		List<Message> deadLetters = new ArrayList<>();
+		List<Long> deadLetterSentTimes = new ArrayList<>();
+		MessageQueue deadLetterTarget;
+		
+		synchronized(this) {
+			refreshMessages(deadLetters, deadLetterSentTimes);
+			deadLetterTarget = deadLetterQueue;
+		}
+		
+		// the dead-letter queue is pushed to outside of the monitor, so that a cycle of redrive policies never deadlocks
+		if(!deadLetters.isEmpty()) {
+			int movedCount = transferMessages(deadLetters, deadLetterSentTimes, deadLetterTarget);
+			
+			if(movedCount > 0)
+				logger.warn(String.format("Moved %d messages of queue %s to dead-letter queue %s", movedCount, name, deadLetterTarget.getName()));
+		}
+	}
+	
+	// must be called while holding the monitor; the messages for the dead-letter queue are removed from the queue and
+	// returned in deadLetters with their sent times
+	private void refreshMessages(List<Message> deadLetters, List<Long> deadLetterSentTimes) {
+		long now = System.currentTimeMillis();
+		long retentionCutoff = now - retentionMillis;
+		int droppedCount = 0;
 		
-		int index = 0;
+		if(now >= scheduledRefreshTime)
+			scheduledRefreshTime = Long.MAX_VALUE;
+		
+		List<InflightMessageIndex.Entry> expiredEntries = new ArrayList<>();
 		
 		try{
 			while(!inflightMessages.isEmpty()) {
-				String receiptHandle = inflightMessages.peek().getReceiptHandle();
-				long receiptTime = inflightMessageReceiptTimeMap.get(receiptHandle);
+				InflightMessageIndex.Entry entry = inflightMessages.peek();
 				
-				if(System.currentTimeMillis() - receiptTime >= visibilityTimeout) {
-					Message message = inflightMessages.poll();
-					inflightMessageObjectMap.remove(message.getReceiptHandle());
-					inflightMessageReceiptTimeMap.remove(message.getReceiptHandle());
+				if(now >= entry.getDeadline()) {
+					inflightMessages.poll();
+					entry.getMessage().setReceiptHandle(null);
 					
-					message.setReceiptHandle(null);
-					availableMessages.add(index, message); 
-					index++;
+					if(sentTimes.isExpired(entry.getSentTime(), retentionCutoff)) {
+						dropMessage(entry.getMessage());
+						droppedCount++;
+					}
+					else if(isDeadLetter(entry.getMessage())) {
+						releaseCapacity(entry.getMessage());
+						receiveCounts.remove(entry.getMessage().getMessageId());
+						deadLetters.add(entry.getMessage());
+						deadLetterSentTimes.add(entry.getSentTime());
+					}
+					else {
+						expiredEntries.add(entry);
+					}
 				}
-				else 
+				else {
+					scheduleRefresh(entry.getDeadline());
 					break;
+				}
 			}
 		}catch(Exception e) {
 			logger.error(String.format("Exception caught while refreshing queue %s", name), e);
 		}finally{
-			notifyAll();
+			// the expired messages are reprocessed before the ones which were never received
+			for(int i = expiredEntries.size() - 1; i >= 0; i--) {
+				availableMessages.addFirst(expiredEntries.get(i).getMessage());
+				sentTimes.addFirst(expiredEntries.get(i).getSentTime());
+			}
+			signalWaitingConsumers(expiredEntries.size());
+			scheduleExpiry();
 		}
 		
+		if(droppedCount > 0)
+			logger.warn(String.format("Dropped %d messages of queue %s after the retention period", droppedCount, name));
+		
+		promoteDelayedMessages(now);
+	}
+	
+	// drops the leading segments of available messages which were sent before the cutoff; returns their number.
+	// Must be called while holding the monitor.
+	private int dropExpiredMessages(long retentionCutoff) {
+		int expiredCount = sentTimes.removeExpired(retentionCutoff);
+		IOException journalFailure = null;
+		
+		// the messages are dropped even if the journal fails, so that availableMessages stays in step with sentTimes
+		for(int i = 0; i < expiredCount; i++) {
+			try{
+				dropMessage(availableMessages.removeFirst());
+			}catch(IOException e) {
+				journalFailure = e;
+			}
+		}
+		
+		if(journalFailure != null)
+			logger.error(String.format("Exception caught while dropping expired messages of queue %s", name), journalFailure);
+		
+		return expiredCount;
+	}
+	
+	// removes a message which is no longer in availableMessages or inflight for good; must be called while holding
+	// the monitor
+	private void dropMessage(Message message) throws IOException {
+		releaseCapacity(message);
+		receiveCounts.remove(message.getMessageId());
+		releaseMessageGroup(message);
+		MessageJournal journal = queueJournal.getJournal();
+		if(journal != null)
+			journal.appendDelete(message.getMessageId());
+	}
+	
+	// true if the message was received as often as the RedrivePolicy allows and has a dead-letter queue to go to;
+	// must be called while holding the monitor
+	private boolean isDeadLetter(Message message) {
+		if(redrivePolicy == null || deadLetterQueue == null)
+			return false;
+		
+		Integer receiveCount = receiveCounts.get(message.getMessageId());
+		return receiveCount != null && receiveCount >= redrivePolicy.getMaxReceiveCount();
+	}
+	
+	// moves up to maxNumberOfMessages available messages from the head to target, e.g., to redrive the messages of a
+	// dead-letter queue back to their source queue. The message objects are handed over, not copied, and their receive
+	// counts start over. Returns the number of messages which target took.
+	public int moveAvailableMessages(MessageQueue target, int maxNumberOfMessages) {
+		List<Message> messages = new ArrayList<>();
+		List<Long> messageSentTimes = new ArrayList<>();
+		
+		synchronized(this) {
+			while(messages.size() < maxNumberOfMessages && !availableMessages.isEmpty()) {
+				Message message = availableMessages.removeFirst();
+				messageSentTimes.add(sentTimes.removeFirst());
+				releaseCapacity(message);
+				receiveCounts.remove(message.getMessageId());
+				messages.add(message);
+			}
+		}
+		
+		return messages.isEmpty() ? 0 : transferMessages(messages, messageSentTimes, target);
+	}
+	
+	// pushes messages which were taken out of the queue, and whose room was released, to target and deletes them for
+	// good once target accepted them; the ones target rejects are put back at the head with their sent times. A full
+	// target rejects them right away whatever its OverflowPolicy, since the refresh and move tasks run on threads which
+	// all the queues share. Must not be called while holding the monitor, so that a cycle of redrive policies never
+	// deadlocks. Returns the number of accepted messages.
+	private int transferMessages(List<Message> messages, List<Long> messageSentTimes, MessageQueue target) {
+		List<String> messageIds = new ArrayList<>(messages.size());
+		int transferredCount = 0;
+		
+		for(Message message: messages) {
+			messageIds.add(message.getMessageId());
+			message.setReceiptHandle(null);
+		}
+		
+		try{
+			if(target instanceof InMemoryQueue)
+				((InMemoryQueue) target).pushAll(messages, true);
+			else
+				target.pushAll(messages);
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while moving messages of queue %s to queue %s", name, target.getName()), e);
+			for(Message message: messages)
+				message.setMessageId(null);
+		}
+		
+		synchronized(this) {
+			int rejectedCount = 0;
+			
+			for(int i = messages.size() - 1; i >= 0; i--) {
+				Message message = messages.get(i);
+				
+				if(message.getMessageId() != null) {
+					transferredCount++;
+					releaseMessageGroup(message);
+					try{
+						MessageJournal journal = queueJournal.getJournal();
+						if(journal != null)
+							journal.appendDelete(message.getMessageId());
+					}catch(IOException e) {
+						logger.error(String.format("Exception caught while journaling a moved message of queue %s", name), e);
+					}
+				}
+				else if(!released) {
+					// taken back even beyond the limits, as when the queue is restored
+					message.setMessageId(messageIds.get(i));
+					long bodySize = QueueCapacity.getBodySize(message);
+					capacity.add(1, bodySize);
+					heldBytes += bodySize;
+					availableMessages.addFirst(message);
+					sentTimes.addFirst(messageSentTimes.get(i));
+					rejectedCount++;
+				}
+			}
+			
+			if(rejectedCount > 0) {
+				logger.error(String.format("Queue %s rejected %d messages of queue %s", target.getName(), rejectedCount, name));
+				signalWaitingConsumers(rejectedCount);
+				scheduleExpiry();
+			}
+		}
+		
+		return transferredCount;
+	}
+	
+	// RedrivePolicy attribute of the queue; null if it has none
+	public synchronized RedrivePolicy getRedrivePolicy() {
+		return redrivePolicy;
+	}
+	
+	// called by the owning queue service with the queue named by the RedrivePolicy, or null if there is no such queue
+	public synchronized void setDeadLetterQueue(MessageQueue deadLetterQueue) {
+		this.deadLetterQueue = deadLetterQueue;
+	}
+	
+	// moves the due delayed messages to availableMessages and schedules the refresh for the next ones; must be called
+	// while holding the monitor
+	private void promoteDelayedMessages(long now) {
+		List<Message> dueMessages = delayedMessages.pollDue(now);
+		
+		for(Message message: dueMessages)
+			makeAvailable(message, now);
+		signalWaitingConsumers(dueMessages.size());
+		scheduleExpiry();
+		
+		if(!delayedMessages.isEmpty())
+			scheduleRefresh(delayedMessages.getNextDueTime());
 	}
 
 	@Override
 	public synchronized boolean purge() {
 		
 		try{
+			MessageJournal journal = queueJournal.getJournal();
+			if(journal != null)
+				journal.appendPurge();
+			
+			capacity.release(getApproximateNumberOfMessages() + inflightMessages.size() + delayedMessages.size(), heldBytes);
+			heldBytes = 0;
 			availableMessages.clear();
-			inflightMessageObjectMap.clear();
-			inflightMessageReceiptTimeMap.clear();
+			sentTimes.clear();
 			inflightMessages.clear();
+			delayedMessages.clear();
+			receiveCounts.clear();
+			if(messageGroups != null)
+				messageGroups.clear();
 			
 		}catch(Exception e) {
 			logger.error(String.format("Execption caught while purging queue %s", name), e);
 			return false;
-		}finally{
-			notifyAll();
 		}
 		
 		return true;
@@ -171,26 +997,165 @@ public class InMemoryQueue implements MessageQueue{
 
 	@Override
 	public synchronized void setAttributes(Map<String, String> attributes) {
-		if(attributes == null || attributes.size() == 0) {
-			logger.warn(String.format("No attributes to set for queue %s", name));
+		if(!QueueAttributes.update(this.attributes, attributes, attributesValidator, name))
 			return;
+		
+		// a changed VisibilityTimeout moves the deadlines of the inflight messages
+		if(attributes.containsKey(QueueAttributes.visibilityTimeoutAttribute) && !inflightMessages.isEmpty()) {
+			inflightMessages.resetDeadlines(getVisibilityTimeoutMillis());
+			scheduleRefresh(inflightMessages.peek().getDeadline());
 		}
 		
-		for(Map.Entry<String, String> entry: attributes.entrySet()) {
-			if(attributesValidator.validateAttributeName(entry.getKey())){ 
-				if(attributesValidator.validateAttributeValue(entry.getKey(), entry.getValue()))
-					this.attributes.put(entry.getKey(), entry.getValue());
-				else {
-					this.attributes.put(entry.getKey(), attributesValidator.getDefaultValue(entry.getKey()));
-					logger.error(String.format("Invalid attribute value (%s) found while setting attributes for queue %s", entry.getValue(), name));
-				}
+		updateCapacity();
+		
+		if(attributes.containsKey(redrivePolicyAttribute))
+			updateRedrivePolicy();
+		
+		if(attributes.containsKey(fifoQueueAttribute))
+			updateFifoQueue();
+		
+		if(attributes.containsKey(contentBasedDeduplicationAttribute))
+			contentBasedDeduplication = Boolean.parseBoolean(this.attributes.get(contentBasedDeduplicationAttribute));
+		
+		// a shorter retention period may expire messages right away
+		if(attributes.containsKey(messageRetentionPeriodAttribute)) {
+			retentionMillis = getIntegerAttribute(messageRetentionPeriodAttribute, defaultMessageRetentionPeriod) * 1000L;
+			scheduleExpiry();
+		}
+		
+		if(attributes.containsKey(messageStorageAttribute) || attributes.containsKey(spillThresholdKilobytesAttribute))
+			updateMessageStorage();
+		
+		if(attributes.containsKey(durabilityAttribute))
+			queueJournal.update(MessageJournal.Durability.fromAttributeValue(this.attributes.get(durabilityAttribute)));
+	}
+	
+	// an invalid policy was replaced by the default, i.e., no policy, when the attribute was set
+	private void updateRedrivePolicy() {
+		try{
+			redrivePolicy = RedrivePolicy.parse(this.attributes.get(redrivePolicyAttribute));
+		}catch(IllegalArgumentException e) {
+			redrivePolicy = null;
+		}
+	}
+	
+	// the queue type is fixed once it holds messages, i.e., in practice it is chosen by createQueue(); must be called
+	// while holding the monitor
+	private void updateFifoQueue() {
+		boolean fifoQueue = Boolean.parseBoolean(this.attributes.get(fifoQueueAttribute));
+		
+		if(fifoQueue == (messageGroups != null))
+			return;
+		
+		if(getApproximateNumberOfMessages() + inflightMessages.size() + delayedMessages.size() > 0) {
+			this.attributes.put(fifoQueueAttribute, String.valueOf(!fifoQueue));
+			logger.error(String.format("FifoQueue cannot be changed for queue %s which holds messages", name));
+			return;
+		}
+		
+		messageGroups = fifoQueue ? new MessageGroupSet() : null;
+	}
+	
+	// the limits and the overflow policy are read by producers without the monitor, so they are kept in capacity
+	private void updateCapacity() {
+		capacity.setLimits(getIntegerAttribute(maximumNumberOfMessagesAttribute, 0), getIntegerAttribute(maximumQueueKilobytesAttribute, 0) * 1024L);
+		capacity.setOverflowPolicy(QueueCapacity.OverflowPolicy.fromAttributeValue(this.attributes.get(overflowPolicyAttribute)), 
+				getIntegerAttribute(overflowWaitTimeSecondsAttribute, 0) * 1000L);
+	}
+	
+	// moves the available messages to the storage selected by the MessageStorage attribute; must be called while 
+	// holding the monitor
+	private void updateMessageStorage() {
+		String storage = this.attributes.get(messageStorageAttribute);
+		long spillThreshold = getIntegerAttribute(spillThresholdKilobytesAttribute, defaultSpillThresholdKilobytes) * 1024L;
+		
+		if(storage == null)
+			storage = heapMessageStorage;
+		
+		if(storage.equals(messageStorage)) {
+			if(availableMessages instanceof SpillingMessageDeque)
+				((SpillingMessageDeque) availableMessages).setSpillThreshold(spillThreshold);
+			return;
+		}
+		
+		MessageDeque messages;
+		if(storage.equals(offHeapMessageStorage))
+			messages = new OffHeapMessageDeque();
+		else if(storage.equals(spillMessageStorage))
+			messages = new SpillingMessageDeque(spillDirectory, spillThreshold);
+		else
+			messages = new HeapMessageDeque();
+		
+		for(Message message: availableMessages)
+			messages.addLast(message);
+		
+		availableMessages.clear();
+		availableMessages = messages;
+		messageStorage = storage;
+	}
+	
+	// a copy of the current state as the snapshot of the given generation. Only references are copied; must be called
+	// while holding the monitor. Delayed messages are kept as available ones, like the push records of the journal,
+	// so a restored queue delivers them right away.
+	QueueSnapshot createSnapshot(long generation) {
+		QueueSnapshot snapshot = new QueueSnapshot(generation, attributes);
+		for(InflightMessageIndex.Entry entry: inflightMessages.getEntries())
+			snapshot.addInflightMessage(entry.getMessage(), entry.getReceiptHandle(), entry.getReceiptTime(), entry.getDeadline());
+		for(Message message: availableMessages)
+			snapshot.addAvailableMessage(message);
+		if(messageGroups != null) {
+			for(Message message: messageGroups)
+				snapshot.addAvailableMessage(message);
+		}
+		for(Message message: delayedMessages)
+			snapshot.addAvailableMessage(message);
+		
+		return snapshot;
+	}
+	
+	// restores the messages recovered from the journal: messages whose last receipt is still invisible become inflight
+	// again with their receipt handle, all the others become available. The inflight messages are restored first, so
+	// that the other messages of their groups wait behind them. Must be called while holding the monitor.
+	void restoreMessages(Collection<Message> messages, Map<String, QueueSnapshot.Receipt> receipts, long now) {
+		List<Message> visibleMessages = new ArrayList<>();
+		
+		for(Message message: messages) {
+			QueueSnapshot.Receipt receipt = receipts.get(message.getMessageId());
+			long bodySize = QueueCapacity.getBodySize(message);
+			// restored messages are kept even beyond the limits
+			capacity.add(1, bodySize);
+			heldBytes += bodySize;
+			
+			// the journal does not keep the sent times, so the retention period starts over
+			if(receipt != null && receipt.deadline > now) {
+				message.setReceiptHandle(receipt.receiptHandle);
+				inflightMessages.add(message, receipt.receiptHandle, receipt.receiptTime, receipt.deadline, true, now);
+				if(messageGroups != null)
+					messageGroups.activate(getMessageGroupId(message));
 			}
 			else {
-				logger.error(String.format("Invalid attribute name (%s) found while setting attributes for queue %s", entry.getKey(), name));
+				visibleMessages.add(message);
 			}
 		}
 		
-		notifyAll();
+		for(Message message: visibleMessages)
+			makeAvailable(message, now);
+		
+		if(!inflightMessages.isEmpty())
+			scheduleRefresh(inflightMessages.peek().getDeadline());
+		scheduleExpiry();
+		signalWaitingConsumers(availableMessages.size());
+	}
+	
+	// the journal of a queue with a Durability attribute other than none, otherwise null
+	public synchronized MessageJournal getJournal() {
+		return queueJournal.getJournal();
+	}
+	
+	// writes a snapshot of the queue and continues with an empty delta journal (see QueueJournal.checkpoint()).
+	// Returns false if the queue has no journal or the checkpoint failed.
+	public boolean checkpoint() {
+		return queueJournal.checkpoint();
 	}
 
 	@Override
@@ -201,6 +1166,10 @@ public class InMemoryQueue implements MessageQueue{
 	private void populateDefaultAttributes() {
 		attributes = attributesValidator.getDefaultAttributeValues();
 	}
+	
+	private int getIntegerAttribute(String attributeName, int defaultValue) {
+		return QueueAttributes.getIntegerAttribute(attributes, attributeName, defaultValue);
+	}
 
 	@Override
 	public String getName() {
@@ -213,9 +1182,50 @@ public class InMemoryQueue implements MessageQueue{
 	}
 
 	@Override
+	// also removes the snapshot and the journals, since the queue is deleted
 	public synchronized void releaseResources() {
-		refreshQueueTimer.cancel();
+		released = true;
+		refreshScheduler.cancel(this);
+		cancelExpiry();
 		notifyAll();	
+		capacity.close();
+		// frees the native memory of off-heap storage
+		availableMessages.clear();
+		sentTimes.clear();
+		delayedMessages.clear();
+		receiveCounts.clear();
+		if(messageGroups != null)
+			messageGroups.clear();
+		deduplicationCache.clear();
+		queueJournal.delete();
+	}
+	
+	private void cancelExpiry() {
+		if(expiryTask != null)
+			expiryTask.cancel(false);
+		expiryTask = null;
+	}
+	
+	// checkpoints a durable queue and closes its journal, keeping the files, so that the queue can be restored by
+	// creating it again in the same journal directory. Parked consumers return as after releaseResources().
+	public void close() {
+		queueJournal.close(new Runnable() {
+			@Override
+			public void run() {
+				released = true;
+				refreshScheduler.cancel(InMemoryQueue.this);
+				cancelExpiry();
+				InMemoryQueue.this.notifyAll();
+				capacity.close();
+				
+				availableMessages.clear();
+				sentTimes.clear();
+				delayedMessages.clear();
+				receiveCounts.clear();
+				if(messageGroups != null)
+					messageGroups.clear();
+			}
+		});
 	}
   
 }
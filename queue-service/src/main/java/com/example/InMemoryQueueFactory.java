@@ -1,16 +1,90 @@
 package com.example;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
 
-// creates an InMemoryQueue instance
+// creates an InMemoryQueue instance; all the queues created by a factory share one RefreshScheduler
 public class InMemoryQueueFactory implements QueueFactory{
+	
+	private final RefreshScheduler refreshScheduler;
+	private final IdGenerator receiptHandleGenerator;
+	// directory of the write-ahead journals of queues with a Durability attribute; null if not configured
+	private final File journalDirectory;
+	// directory of the spill files of queues with MessageStorage spill; null for the temporary directory of the JVM
+	private final File spillDirectory;
+	private final static String snapshotFileSuffix = ".snapshot";
+	private final static Logger logger = Logger.getLogger(InMemoryQueueFactory.class);
+	
+	public InMemoryQueueFactory() {
+		this(RefreshScheduler.getDefault());
+	}
+	
+	public InMemoryQueueFactory(RefreshScheduler refreshScheduler) {
+		this(refreshScheduler, TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public InMemoryQueueFactory(RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator) {
+		this(refreshScheduler, receiptHandleGenerator, null);
+	}
+	
+	public InMemoryQueueFactory(RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator, File journalDirectory) {
+		this(refreshScheduler, receiptHandleGenerator, journalDirectory, null);
+	}
+	
+	public InMemoryQueueFactory(RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator, File journalDirectory, File spillDirectory) {
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
+		this.journalDirectory = journalDirectory;
+		this.spillDirectory = spillDirectory;
+	}
 
 	@Override
 	public synchronized MessageQueue create(CreateQueueRequest createQueueRequest) {
-		MessageQueue queue = new InMemoryQueue(createQueueRequest.getQueueName(), new QueueAttributeValidatorImpl());
+		MessageQueue queue = new InMemoryQueue(createQueueRequest.getQueueName(), new QueueAttributeValidatorImpl(), refreshScheduler, receiptHandleGenerator, 
+				journalDirectory, spillDirectory);
 		queue.setAttributes(createQueueRequest.getAttributes());
 		
 		return queue;
 	}
+	
+	// requests which recreate the durable queues found in the journal directory with the attributes of their last
+	// snapshot; creating them restores their messages. Empty if there is no journal directory.
+	public List<CreateQueueRequest> getStoredQueues() {
+		List<CreateQueueRequest> createQueueRequests = new ArrayList<>();
+		String[] fileNames = journalDirectory == null ? null : journalDirectory.list();
+		
+		if(fileNames == null)
+			return createQueueRequests;
+		
+		Arrays.sort(fileNames);
+		for(String fileName: fileNames) {
+			if(!fileName.endsWith(snapshotFileSuffix))
+				continue;
+			
+			File snapshotFile = new File(journalDirectory, fileName);
+			
+			try{
+				Map<String, String> attributes = QueueSnapshot.readAttributes(snapshotFile);
+				
+				if(attributes == null)
+					logger.error(String.format("Ignoring snapshot %s without a valid header", snapshotFile));
+				else
+					createQueueRequests.add(new CreateQueueRequest(fileName.substring(0, fileName.length() - snapshotFileSuffix.length()))
+							.withAttributes(attributes));
+			}catch(IOException e) {
+				logger.error(String.format("Exception caught while reading snapshot %s", snapshotFile), e);
+			}
+		}
+		
+		return createQueueRequests;
+	}
 
 }
@@ -1,25 +1,55 @@
 package com.example;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
 import com.amazonaws.util.StringUtils;
 
 public class InMemoryQueueService implements QueueService {
 	private ConcurrentMap<String, MessageQueue> queueMap;
+	// <source queue name, task> of the message moves started by startMessageMoveTask()
+	private ConcurrentMap<String, MessageMoveTask> messageMoveTasks;
 	private QueueFactory queueFactory;
+	private IdGenerator messageIdGenerator;
+	private final static int useQueueVisibilityTimeout = -1;
+	private final static int useQueueDelaySeconds = -1;
+	private final static int maximumDelaySeconds = 900;
+	private final static int maximumMessagesPerSecond = 500;
+	private final static int maximumMessageGroupIdLength = 128;
+	private final static int maximumDeduplicationIdLength = 128;
+	private final static String messageGroupIdAttribute = "MessageGroupId";
+	private final static String messageDeduplicationIdAttribute = "MessageDeduplicationId";
+	private final static String computeMD5OfBodyAttribute = "ComputeMD5OfBody";
 	private final static Logger logger = Logger.getLogger(InMemoryQueueService.class);
 	
 	public InMemoryQueueService(QueueFactory queueFactory) {
+		this(queueFactory, TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public InMemoryQueueService(QueueFactory queueFactory, IdGenerator messageIdGenerator) {
 		queueMap = new ConcurrentHashMap<>();
+		messageMoveTasks = new ConcurrentHashMap<>();
 		this.queueFactory = queueFactory;
+		this.messageIdGenerator = messageIdGenerator;
 	}
 	
 	public boolean createQueue(CreateQueueRequest createQueueRequest) {
@@ -52,6 +82,8 @@ public class InMemoryQueueService implements QueueService {
 			return false;
 		}
 		
+		// the new queue may be the dead-letter queue of others, or have one itself
+		updateDeadLetterQueues();
 		return true;
 	}
 	
@@ -63,8 +95,10 @@ public class InMemoryQueueService implements QueueService {
 		
 		try{
 			MessageQueue queue = getQueue(qName);
-			queue.releaseResources();
+			cancelMessageMoveTasks(queue);
 			queueMap.remove(qName);
+			updateDeadLetterQueues();
+			queue.releaseResources();
 		}catch(Exception e) {
 			logger.error(String.format("Exception caught while deleting queue %s", qName), e);
 			return false;
@@ -72,6 +106,87 @@ public class InMemoryQueueService implements QueueService {
 		
 		return true;
 	}
+	
+	// hands every in-memory queue with a RedrivePolicy the queue the policy names, or null if there is no such queue;
+	// messages only move to a dead-letter queue which exists in this service. Called whenever a queue or a policy
+	// changes.
+	private void updateDeadLetterQueues() {
+		for(MessageQueue queue: queueMap.values()) {
+			if(!(queue instanceof InMemoryQueue))
+				continue;
+			
+			InMemoryQueue inMemoryQueue = (InMemoryQueue) queue;
+			RedrivePolicy redrivePolicy = inMemoryQueue.getRedrivePolicy();
+			MessageQueue deadLetterQueue = redrivePolicy == null ? null : queueMap.get(redrivePolicy.getDeadLetterTargetQueue());
+			
+			inMemoryQueue.setDeadLetterQueue(deadLetterQueue == queue ? null : deadLetterQueue);
+		}
+	}
+	
+	// moves the available messages of sourceQName, e.g., a dead-letter queue, to destinationQName at up to
+	// maxMessagesPerSecond (1 to 500) in the background, until sourceQName is drained; a source has at most one
+	// unfinished move task
+	public boolean startMessageMoveTask(String sourceQName, String destinationQName, int maxMessagesPerSecond) {
+		if(!isValidQueueName(sourceQName) || !isValidQueueName(destinationQName)) {
+			logger.error(String.format("Queue name not found. Failed to move messages from %s to %s", sourceQName, destinationQName));
+			return false;
+		}
+		
+		if(sourceQName.equals(destinationQName) || !(getQueue(sourceQName) instanceof InMemoryQueue)) {
+			logger.error(String.format("Invalid source queue. Failed to move messages from %s to %s", sourceQName, destinationQName));
+			return false;
+		}
+		
+		if(maxMessagesPerSecond < 1 || maxMessagesPerSecond > maximumMessagesPerSecond) {
+			logger.error(String.format("Invalid rate (%d messages per second). Failed to move messages from %s", maxMessagesPerSecond, sourceQName));
+			return false;
+		}
+		
+		MessageMoveTask task = new MessageMoveTask((InMemoryQueue) getQueue(sourceQName), getQueue(destinationQName), maxMessagesPerSecond);
+		MessageMoveTask runningTask = messageMoveTasks.get(sourceQName);
+		
+		// a finished task only stays for getMessageMoveTask()
+		if(runningTask != null && runningTask.isFinished())
+			messageMoveTasks.remove(sourceQName, runningTask);
+		
+		if(messageMoveTasks.putIfAbsent(sourceQName, task) != null) {
+			logger.error(String.format("A message move task is running for queue %s", sourceQName));
+			return false;
+		}
+		
+		task.start();
+		return true;
+	}
+	
+	// stops the message move task of sourceQName; false if none is running
+	public boolean cancelMessageMoveTask(String sourceQName) {
+		MessageMoveTask task = StringUtils.isNullOrEmpty(sourceQName) ? null : messageMoveTasks.remove(sourceQName);
+		
+		if(task == null || task.isFinished()) {
+			logger.error(String.format("No message move task is running for queue %s", sourceQName));
+			return false;
+		}
+		
+		task.cancel();
+		return true;
+	}
+	
+	// the message move task of sourceQName, which may have finished; null if none was started
+	public MessageMoveTask getMessageMoveTask(String sourceQName) {
+		return StringUtils.isNullOrEmpty(sourceQName) ? null : messageMoveTasks.get(sourceQName);
+	}
+	
+	// stops the message move tasks from or to a queue which is deleted
+	private void cancelMessageMoveTasks(MessageQueue queue) {
+		for(Map.Entry<String, MessageMoveTask> entry: messageMoveTasks.entrySet()) {
+			MessageMoveTask task = entry.getValue();
+			
+			if(task.getSource() == queue || task.getDestination() == queue) {
+				task.cancel();
+				messageMoveTasks.remove(entry.getKey(), task);
+			}
+		}
+	}
 
 	private boolean isValidQueueName(String qName) {
 		return !StringUtils.isNullOrEmpty(qName) && queueMap.containsKey(qName);
@@ -85,6 +200,56 @@ public class InMemoryQueueService implements QueueService {
 	
 	@Override
 	public String push(String qName, String messageBody) {
+		return pushMessage(qName, messageBody, useQueueDelaySeconds, null, null);
+	}
+	
+	@Override
+	public String push(String qName, String messageBody, int delaySeconds) {
+		if(delaySeconds < 0 || delaySeconds > maximumDelaySeconds) {
+			logger.error(String.format("Invalid delay (%d seconds). Failed to push message into queue %s", delaySeconds, qName));
+			return null;
+		}
+		
+		return pushMessage(qName, messageBody, delaySeconds, null, null);
+	}
+	
+	@Override
+	public String push(String qName, String messageBody, String messageGroupId) {
+		if(!isValidMessageGroupId(messageGroupId)) {
+			logger.error(String.format("Invalid message group id (%s). Failed to push message into queue %s", messageGroupId, qName));
+			return null;
+		}
+		
+		return pushMessage(qName, messageBody, useQueueDelaySeconds, messageGroupId, null);
+	}
+	
+	@Override
+	public String push(String qName, String messageBody, String messageGroupId, String messageDeduplicationId) {
+		if(messageGroupId != null && !isValidMessageGroupId(messageGroupId)) {
+			logger.error(String.format("Invalid message group id (%s). Failed to push message into queue %s", messageGroupId, qName));
+			return null;
+		}
+		
+		if(messageDeduplicationId != null && !isValidDeduplicationId(messageDeduplicationId)) {
+			logger.error(String.format("Invalid message deduplication id (%s). Failed to push message into queue %s", messageDeduplicationId, qName));
+			return null;
+		}
+		
+		return pushMessage(qName, messageBody, useQueueDelaySeconds, messageGroupId, messageDeduplicationId);
+	}
+	
+	// only the length of the ids is checked here
+	private boolean isValidMessageGroupId(String messageGroupId) {
+		return !StringUtils.isNullOrEmpty(messageGroupId) && messageGroupId.length() <= maximumMessageGroupIdLength;
+	}
+	
+	private boolean isValidDeduplicationId(String messageDeduplicationId) {
+		return !StringUtils.isNullOrEmpty(messageDeduplicationId) && messageDeduplicationId.length() <= maximumDeduplicationIdLength;
+	}
+	
+	// useQueueDelaySeconds leaves the delay to the queue specific DelaySeconds; messageGroupId is null unless the
+	// message is for a FIFO queue, messageDeduplicationId is null unless the producer gave one
+	private String pushMessage(String qName, String messageBody, int delaySeconds, String messageGroupId, String messageDeduplicationId) {
 		if(!isValidQueueName(qName)) {
 			logger.error(String.format("Queue name not found. Failed to push message into %s", qName));
 			return null;
@@ -96,13 +261,76 @@ public class InMemoryQueueService implements QueueService {
 		}
 		
 		MessageQueue queue = getQueue(qName);
-		Message message = MessageCreator.createMessage(messageBody);
-		queue.push(message);
+		Message message = MessageCreator.createMessage(messageBody, messageIdGenerator, isMD5OfBodyEnabled(queue));
+		if(messageGroupId != null)
+			message.getAttributes().put(messageGroupIdAttribute, messageGroupId);
+		if(messageDeduplicationId != null)
+			message.getAttributes().put(messageDeduplicationIdAttribute, messageDeduplicationId);
+		
+		if(delaySeconds == useQueueDelaySeconds)
+			queue.push(message);
+		else
+			queue.push(message, delaySeconds);
 		
 		return message.getMessageId();
 	}
 
-	private MessageQueue getQueue(String qName) {
+	@Override
+	public SendMessageBatchResult pushBatch(String qName, List<String> messageBodies) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to push messages into %s", qName));
+			return null;
+		}
+		
+		if(messageBodies == null || messageBodies.isEmpty()) {
+			logger.error(String.format("Message batch is null or empty. Failed to push messages into queue %s", qName));
+			return null;
+		}
+		
+		SendMessageBatchResult result = new SendMessageBatchResult();
+		List<Message> messages = new ArrayList<>(messageBodies.size());
+		List<String> entryIds = new ArrayList<>(messageBodies.size());
+		
+		boolean computeMD5OfBody = isMD5OfBodyEnabled(getQueue(qName));
+		
+		for(int i = 0; i < messageBodies.size(); i++) {
+			String messageBody = messageBodies.get(i);
+			
+			if(StringUtils.isNullOrEmpty(messageBody)) {
+				result.withFailed(createBatchErrorEntry(String.valueOf(i), "Message body is null or empty"));
+				continue;
+			}
+			
+			messages.add(MessageCreator.createMessage(messageBody, messageIdGenerator, computeMD5OfBody));
+			entryIds.add(String.valueOf(i));
+		}
+		
+		if(!messages.isEmpty())
+			getQueue(qName).pushAll(messages);
+		
+		for(int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			
+			if(message.getMessageId() == null)
+				result.withFailed(createBatchErrorEntry(entryIds.get(i), "Failed to push message into queue"));
+			else
+				result.withSuccessful(new SendMessageBatchResultEntry().withId(entryIds.get(i)).withMessageId(message.getMessageId()));
+		}
+		
+		return result;
+	}
+	
+	private BatchResultErrorEntry createBatchErrorEntry(String id, String errorMessage) {
+		return new BatchResultErrorEntry().withId(id).withSenderFault(true).withCode("InvalidMessageContents").withMessage(errorMessage);
+	}
+
+	// digesting is on unless the queue attribute ComputeMD5OfBody is explicitly false
+	private boolean isMD5OfBodyEnabled(MessageQueue queue) {
+		Map<String, String> attributes = queue.getAttributes();
+		return attributes == null || !"false".equalsIgnoreCase(attributes.get(computeMD5OfBodyAttribute));
+	}
+
+	protected MessageQueue getQueue(String qName) {
 		return queueMap.get(qName);
 	}
 
@@ -117,6 +345,61 @@ public class InMemoryQueueService implements QueueService {
 		return queue.pull();
 	}
 
+	@Override
+	public Message pull(String qName, int waitTimeSeconds) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to pull message from %s", qName));
+			return null;
+		}
+		
+		if(waitTimeSeconds < ReceiveMessageWaitTimeSecondsValidator.minValue || waitTimeSeconds > ReceiveMessageWaitTimeSecondsValidator.maxValue) {
+			logger.error(String.format("Invalid wait time (%d). Failed to pull message from %s", waitTimeSeconds, qName));
+			return null;
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		return queue.pull(waitTimeSeconds);
+	}
+
+	@Override
+	public List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds) {
+		return pullBatch(qName, maxNumberOfMessages, waitTimeSeconds, useQueueVisibilityTimeout);
+	}
+	
+	@Override
+	public List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to pull messages from %s", qName));
+			return null;
+		}
+		
+		if(maxNumberOfMessages < 1) {
+			logger.error(String.format("Invalid maximum number of messages (%d). Failed to pull messages from %s", maxNumberOfMessages, qName));
+			return null;
+		}
+		
+		if(waitTimeSeconds < ReceiveMessageWaitTimeSecondsValidator.minValue || waitTimeSeconds > ReceiveMessageWaitTimeSecondsValidator.maxValue) {
+			logger.error(String.format("Invalid wait time (%d). Failed to pull messages from %s", waitTimeSeconds, qName));
+			return null;
+		}
+		
+		if(visibilityTimeout != useQueueVisibilityTimeout && !isValidVisibilityTimeout(visibilityTimeout)) {
+			logger.error(String.format("Invalid visibility timeout (%d). Failed to pull messages from %s", visibilityTimeout, qName));
+			return null;
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		
+		if(visibilityTimeout == useQueueVisibilityTimeout)
+			return queue.pull(maxNumberOfMessages, waitTimeSeconds);
+		
+		return queue.pull(maxNumberOfMessages, waitTimeSeconds, visibilityTimeout);
+	}
+	
+	private boolean isValidVisibilityTimeout(int visibilityTimeout) {
+		return visibilityTimeout >= VisibilityTimeoutValidator.minValue && visibilityTimeout <= VisibilityTimeoutValidator.maxValue;
+	}
+
 	@Override
 	public boolean delete(String qName, String receiptHandle) {
 		if(!isValidQueueName(qName)) {
@@ -128,6 +411,127 @@ public class InMemoryQueueService implements QueueService {
 		return queue.delete(receiptHandle);
 	}
 
+	@Override
+	public DeleteMessageBatchResult deleteBatch(String qName, Collection<String> receiptHandles) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to delete messages from %s", qName));
+			return null;
+		}
+		
+		if(receiptHandles == null || receiptHandles.isEmpty()) {
+			logger.error(String.format("Receipt handle batch is null or empty. Failed to delete messages from %s", qName));
+			return null;
+		}
+		
+		// receipt handles are the entry ids, which must be distinct; a repeated one fails once and is not deleted
+		Set<String> distinctReceiptHandles = new HashSet<>();
+		Set<String> repeatedReceiptHandles = new HashSet<>();
+		
+		for(String receiptHandle: receiptHandles) {
+			if(!distinctReceiptHandles.add(receiptHandle))
+				repeatedReceiptHandles.add(receiptHandle);
+		}
+		
+		Collection<String> deletableReceiptHandles = receiptHandles;
+		
+		if(!repeatedReceiptHandles.isEmpty()) {
+			deletableReceiptHandles = new ArrayList<>(receiptHandles.size());
+			for(String receiptHandle: receiptHandles) {
+				if(!repeatedReceiptHandles.contains(receiptHandle))
+					deletableReceiptHandles.add(receiptHandle);
+			}
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		Set<String> deletedReceiptHandles = deletableReceiptHandles.isEmpty() ? new HashSet<String>() : queue.delete(deletableReceiptHandles);
+		DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+		
+		for(String receiptHandle: receiptHandles) {
+			if(repeatedReceiptHandles.contains(receiptHandle)) {
+				if(distinctReceiptHandles.remove(receiptHandle))
+					result.withFailed(new BatchResultErrorEntry().withId(receiptHandle).withSenderFault(true)
+							.withCode("BatchEntryIdsNotDistinct").withMessage("ReceiptHandle is repeated in the batch."));
+			}else if(deletedReceiptHandles.contains(receiptHandle))
+				result.withSuccessful(new DeleteMessageBatchResultEntry().withId(receiptHandle));
+			else
+				result.withFailed(new BatchResultErrorEntry().withId(receiptHandle).withSenderFault(true)
+						.withCode("ReceiptHandleIsInvalid").withMessage("ReceiptHandle does not exist."));
+		}
+		
+		return result;
+	}
+
+	@Override
+	public boolean changeMessageVisibility(String qName, String receiptHandle, int visibilityTimeout) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to change message visibility in %s", qName));
+			return false;
+		}
+		
+		if(!isValidVisibilityTimeout(visibilityTimeout)) {
+			logger.error(String.format("Invalid visibility timeout (%d). Failed to change message visibility in %s", visibilityTimeout, qName));
+			return false;
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		return queue.changeMessageVisibility(receiptHandle, visibilityTimeout);
+	}
+	
+	@Override
+	public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(String qName, List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to change message visibility in %s", qName));
+			return null;
+		}
+		
+		if(entries == null || entries.isEmpty()) {
+			logger.error(String.format("Visibility change batch is null or empty. Failed to change message visibility in %s", qName));
+			return null;
+		}
+		
+		// the entries are keyed by receipt handle below, so every entry of a receipt handle which is repeated in the 
+		// batch fails and is not applied
+		Set<String> distinctReceiptHandles = new HashSet<>();
+		Set<String> repeatedReceiptHandles = new HashSet<>();
+		
+		for(ChangeMessageVisibilityBatchRequestEntry entry: entries) {
+			if(!distinctReceiptHandles.add(entry.getReceiptHandle()))
+				repeatedReceiptHandles.add(entry.getReceiptHandle());
+		}
+		
+		ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+		Map<String, Integer> visibilityTimeouts = new HashMap<>();
+		
+		for(ChangeMessageVisibilityBatchRequestEntry entry: entries) {
+			Integer visibilityTimeout = entry.getVisibilityTimeout();
+			
+			if(repeatedReceiptHandles.contains(entry.getReceiptHandle()))
+				result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+						.withCode("InvalidParameterValue").withMessage("ReceiptHandle is repeated in the batch."));
+			else if(visibilityTimeout == null || !isValidVisibilityTimeout(visibilityTimeout))
+				result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+						.withCode("InvalidParameterValue").withMessage(String.format("Invalid visibility timeout (%s)", visibilityTimeout)));
+			else
+				visibilityTimeouts.put(entry.getReceiptHandle(), visibilityTimeout);
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		Set<String> changedReceiptHandles = visibilityTimeouts.isEmpty() ? new HashSet<String>() : queue.changeMessageVisibility(visibilityTimeouts);
+		
+		for(ChangeMessageVisibilityBatchRequestEntry entry: entries) {
+			if(!visibilityTimeouts.containsKey(entry.getReceiptHandle()))
+				continue;
+			
+			if(changedReceiptHandles.contains(entry.getReceiptHandle()))
+				result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+			else
+				result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+						.withCode("ReceiptHandleIsInvalid").withMessage("ReceiptHandle does not exist."));
+		}
+		
+		return result;
+	}
+
 	@Override
 	public int getApproximateNumberOfMessages(String qName) {
 		if(!isValidQueueName(qName)) {
@@ -138,6 +542,17 @@ public class InMemoryQueueService implements QueueService {
 		MessageQueue queue = getQueue(qName);
 		return queue.getApproximateNumberOfMessages();
 	}
+	
+	@Override
+	public int getApproximateNumberOfMessagesDelayed(String qName) {
+		if(!isValidQueueName(qName)) {
+			logger.error(String.format("Queue name not found. Failed to count delayed messages in %s", qName));
+			return -1;
+		}
+		
+		MessageQueue queue = getQueue(qName);
+		return queue.getApproximateNumberOfMessagesDelayed();
+	}
 
 	@Override
 	public void setQueueAttributes(String qName, Map<String, String> attributes) {
@@ -148,6 +563,7 @@ public class InMemoryQueueService implements QueueService {
 		
 		MessageQueue queue = getQueue(qName);
 		queue.setAttributes(attributes);
+		updateDeadLetterQueues();
 	}
 
 	@Override
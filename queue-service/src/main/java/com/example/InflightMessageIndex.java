@@ -0,0 +1,231 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Keeps the inflight messages of a queue in one structure: a <ReceiptHandle, Entry> map for O(1) lookup and an
+// indexed binary min-heap ordered by visibility deadline. Every entry knows its heap position, so removing an
+// arbitrary receipt handle or moving its deadline costs O(log n) and the earliest deadline is found in O(1).
+// Entries are compared by identity only; the message body is never looked at. Not thread safe, the owning
+// queue guards it with its monitor.
+public class InflightMessageIndex {
+
+	public static class Entry {
+		private final Message message;
+		private final String receiptHandle;
+		private final long receiptTime;
+		// time the message was sent at, as far as the queue tracks it (see RetentionSegments)
+		private final long sentTime;
+		private long deadline;
+		// true if the deadline was given for this message (per receive override or ChangeMessageVisibility),
+		// false if it follows the queue specific VisibilityTimeout
+		private boolean fixedDeadline;
+		private int heapIndex;
+
+		private Entry(Message message, String receiptHandle, long receiptTime, long deadline, boolean fixedDeadline, long sentTime) {
+			this.message = message;
+			this.receiptHandle = receiptHandle;
+			this.receiptTime = receiptTime;
+			this.sentTime = sentTime;
+			this.deadline = deadline;
+			this.fixedDeadline = fixedDeadline;
+		}
+
+		public Message getMessage() {
+			return message;
+		}
+
+		public String getReceiptHandle() {
+			return receiptHandle;
+		}
+
+		public long getReceiptTime() {
+			return receiptTime;
+		}
+
+		public long getSentTime() {
+			return sentTime;
+		}
+
+		// time in milliseconds at which the message becomes visible again
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public boolean hasFixedDeadline() {
+			return fixedDeadline;
+		}
+	}
+
+	private final static int initialCapacity = 16;
+
+	private Map<String, Entry> entries;
+	private Entry[] heap;
+	private int size;
+
+	public InflightMessageIndex() {
+		entries = new HashMap<>();
+		heap = new Entry[initialCapacity];
+	}
+
+	public Entry add(Message message, String receiptHandle, long receiptTime, long deadline) {
+		return add(message, receiptHandle, receiptTime, deadline, false);
+	}
+
+	// the sent time defaults to the receipt time
+	public Entry add(Message message, String receiptHandle, long receiptTime, long deadline, boolean fixedDeadline) {
+		return add(message, receiptHandle, receiptTime, deadline, fixedDeadline, receiptTime);
+	}
+
+	public Entry add(Message message, String receiptHandle, long receiptTime, long deadline, boolean fixedDeadline, long sentTime) {
+		Entry entry = new Entry(message, receiptHandle, receiptTime, deadline, fixedDeadline, sentTime);
+		entries.put(receiptHandle, entry);
+
+		if(size == heap.length)
+			heap = Arrays.copyOf(heap, size * 2);
+
+		entry.heapIndex = size;
+		heap[size++] = entry;
+		siftUp(entry.heapIndex);
+
+		return entry;
+	}
+
+	public Entry get(String receiptHandle) {
+		return entries.get(receiptHandle);
+	}
+
+	// removes the entry of the receipt handle; returns null if the receipt handle is not inflight
+	public Entry remove(String receiptHandle) {
+		Entry entry = entries.remove(receiptHandle);
+
+		if(entry != null)
+			removeAt(entry.heapIndex);
+
+		return entry;
+	}
+
+	// entry with the earliest deadline, or null if nothing is inflight
+	public Entry peek() {
+		return size == 0 ? null : heap[0];
+	}
+
+	public Entry poll() {
+		Entry entry = peek();
+
+		if(entry != null) {
+			entries.remove(entry.receiptHandle);
+			removeAt(0);
+		}
+
+		return entry;
+	}
+
+	// moves the deadline of a single message; it no longer follows the queue specific VisibilityTimeout
+	public void updateDeadline(Entry entry, long deadline) {
+		long previousDeadline = entry.deadline;
+		entry.deadline = deadline;
+		entry.fixedDeadline = true;
+
+		if(deadline < previousDeadline)
+			siftUp(entry.heapIndex);
+		else
+			siftDown(entry.heapIndex);
+	}
+
+	// recomputes the deadlines which follow the queue specific VisibilityTimeout from their receipt time, 
+	// e.g., after the VisibilityTimeout changed. O(n).
+	public void resetDeadlines(long visibilityTimeout) {
+		for(int i = 0; i < size; i++) {
+			if(!heap[i].fixedDeadline)
+				heap[i].deadline = heap[i].receiptTime + visibilityTimeout;
+		}
+
+		for(int i = size / 2 - 1; i >= 0; i--)
+			siftDown(i);
+	}
+
+	// all entries, in no particular order
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		entries.clear();
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+	}
+
+	private void removeAt(int index) {
+		int last = --size;
+
+		if(index != last) {
+			Entry moved = heap[last];
+			heap[index] = moved;
+			moved.heapIndex = index;
+			heap[last] = null;
+
+			siftDown(index);
+			if(heap[index] == moved)
+				siftUp(index);
+		}
+		else {
+			heap[last] = null;
+		}
+	}
+
+	private void siftUp(int index) {
+		Entry entry = heap[index];
+
+		while(index > 0) {
+			int parent = (index - 1) >>> 1;
+
+			if(heap[parent].deadline <= entry.deadline)
+				break;
+
+			place(heap[parent], index);
+			index = parent;
+		}
+
+		place(entry, index);
+	}
+
+	private void siftDown(int index) {
+		Entry entry = heap[index];
+		int half = size >>> 1;
+
+		while(index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+
+			if(right < size && heap[right].deadline < heap[child].deadline)
+				child = right;
+
+			if(entry.deadline <= heap[child].deadline)
+				break;
+
+			place(heap[child], index);
+			index = child;
+		}
+
+		place(entry, index);
+	}
+
+	private void place(Entry entry, int index) {
+		heap[index] = entry;
+		entry.heapIndex = index;
+	}
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+import org.apache.log4j.Logger;
+
+// Validates integer valued attributes against an inclusive [minValue, maxValue] range
+public class IntegerRangeValidator implements AttributeValidator {
+	private final int minValue;
+	private final int maxValue;
+	private final int defaultValue;
+	private final static Logger logger = Logger.getLogger(IntegerRangeValidator.class);
+	
+	public IntegerRangeValidator(int minValue, int maxValue, int defaultValue) {
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.defaultValue = defaultValue;
+	}
+	
+	@Override
+	public boolean validate(String value) {
+		boolean isValid = false;
+		
+		try{
+			int parsedValue = Integer.valueOf(value);
+			
+			if(parsedValue >= minValue && parsedValue <= maxValue)
+				isValid = true;
+			else 
+				logger.error(String.format("Invalid value - lies outside the acceptable range %s", value));
+			
+		}catch(NumberFormatException e) {
+			logger.error(String.format("Exception while parsing value %s", value), e);
+		}
+		
+		return isValid;
+	}
+
+	@Override
+	public String getDefault() {
+		return String.valueOf(defaultValue);
+	}
+
+}
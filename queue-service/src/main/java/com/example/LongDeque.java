@@ -0,0 +1,86 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Growable ring buffer of primitive longs. Keeps large numbers of log positions at 8 bytes each instead of a 
+// boxed Long plus a linked node per element. Not thread safe.
+public class LongDeque {
+	private final static int initialCapacity = 16;
+	
+	private long[] elements;
+	private int head;
+	private int size;
+	
+	public LongDeque() {
+		elements = new long[initialCapacity];
+	}
+	
+	public void addFirst(long value) {
+		ensureCapacity();
+		head = (head - 1 + elements.length) % elements.length;
+		elements[head] = value;
+		size++;
+	}
+	
+	public void addLast(long value) {
+		ensureCapacity();
+		elements[(head + size) % elements.length] = value;
+		size++;
+	}
+	
+	public long pollFirst() {
+		if(size == 0)
+			throw new NoSuchElementException();
+		
+		long value = elements[head];
+		head = (head + 1) % elements.length;
+		size--;
+		
+		return value;
+	}
+	
+	// i-th element counted from the head
+	public long get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		
+		return elements[(head + index) % elements.length];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+	
+	private void ensureCapacity() {
+		if(size < elements.length)
+			return;
+		
+		long[] grown = new long[elements.length * 2];
+		int firstPart = Math.min(size, elements.length - head);
+		System.arraycopy(elements, head, grown, 0, firstPart);
+		System.arraycopy(elements, 0, grown, firstPart, size - firstPart);
+		
+		elements = grown;
+		head = 0;
+	}
+	
+	@Override
+	public String toString() {
+		long[] values = new long[size];
+		
+		for(int i = 0; i < size; i++)
+			values[i] = get(i);
+		
+		return Arrays.toString(values);
+	}
+}
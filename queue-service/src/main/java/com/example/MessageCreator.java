@@ -1,52 +1,85 @@
 package com.example;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
 import com.amazonaws.services.sqs.model.Message;
 
 public class MessageCreator {
-	private static final String encoding = "UTF-8";
 	private static final String messageDigestAlgorithm = "MD5";
+	private static final String contentDigestAlgorithm = "SHA-256";
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
 	private static final Logger logger = Logger.getLogger(MessageCreator.class);
 	
+	// MessageDigest.getInstance() walks the security providers on every call and a digest is not thread safe,
+	// so every producer thread creates its digest once and reuses it. Null if MD5 is not available.
+	private static final ThreadLocal<MessageDigest> messageDigests = createDigests(messageDigestAlgorithm);
+	// digests of the content-based deduplication ids, which SQS derives from the body with SHA-256
+	private static final ThreadLocal<MessageDigest> contentDigests = createDigests(contentDigestAlgorithm);
+	
+	private static ThreadLocal<MessageDigest> createDigests(final String algorithm) {
+		return new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance(algorithm);
+				} catch (NoSuchAlgorithmException e) {
+					logger.error("Failed to get an instance of message digest", e);
+					return null;
+				}
+			}
+		};
+	}
+	
 	public static Message createMessage(String messageBody) {
+		return createMessage(messageBody, TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public static Message createMessage(String messageBody, IdGenerator messageIdGenerator) {
+		return createMessage(messageBody, messageIdGenerator, true);
+	}
+	
+	// computeMD5OfBody == false skips digesting; MD5OfBody is left null in that case
+	public static Message createMessage(String messageBody, IdGenerator messageIdGenerator, boolean computeMD5OfBody) {
 		Message message = null;
-		String digestOfBody = generateDigest(messageBody);
+		String digestOfBody = computeMD5OfBody ? generateDigest(messageBody) : null;
 		
-		if(digestOfBody != null) {
+		if(digestOfBody != null || !computeMD5OfBody) {
 			message = new Message();
-			message.setMessageId(String.valueOf(UUID.randomUUID()));
+			message.setMessageId(messageIdGenerator.generateId());
 			message.setBody(messageBody);
+			message.setMD5OfBody(digestOfBody);
 		}
 		
 		return message;
 	}
 
+	// hex encoded SHA-256 digest of the body, which stands for the MessageDeduplicationId of a message without one
+	// in a queue with ContentBasedDeduplication; null if SHA-256 is not available
+	public static String generateContentDeduplicationId(String messageBody) {
+		return generateDigest(contentDigests.get(), messageBody);
+	}
+	
+	// hex encoded MD5 digest of the UTF-8 bytes of str, as reported by SQS in MD5OfBody
 	private static String generateDigest(String str) {
-		String digestedString = null;
-		MessageDigest messageDigest = null;
+		return generateDigest(messageDigests.get(), str);
+	}
+	
+	private static String generateDigest(MessageDigest messageDigest, String str) {
+		if(messageDigest == null)
+			return null;
 		
-		try {
-			messageDigest = MessageDigest.getInstance(messageDigestAlgorithm);
-		} catch (NoSuchAlgorithmException e) {
-			logger.error("Failed to get an instance of message digest", e);
-		}
+		byte[] theDigest = messageDigest.digest(str.getBytes(StandardCharsets.UTF_8));
+		char[] hexDigest = new char[theDigest.length * 2];
 		
-		if(messageDigest != null) {
-			try {
-				byte[] bytesOfMessageBody = str.getBytes(encoding);
-				byte[] theDigest = messageDigest.digest(bytesOfMessageBody);
-				digestedString = String.valueOf(theDigest);
-			} catch (UnsupportedEncodingException e) {
-				logger.error("Unsupported encoding found while digesting message.", e);
-			}
+		for(int i = 0; i < theDigest.length; i++) {
+			hexDigest[2 * i] = hexDigits[(theDigest[i] >> 4) & 0xF];
+			hexDigest[2 * i + 1] = hexDigits[theDigest[i] & 0xF];
 		}
 		
-		return digestedString;
+		return new String(hexDigest);
 	}
 }
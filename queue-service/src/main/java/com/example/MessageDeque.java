@@ -0,0 +1,17 @@
+package com.example;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Storage of the available messages of an InMemoryQueue, selected by the MessageStorage attribute: the Message
+// objects themselves (HeapMessageDeque) or their encoded form outside of the heap (OffHeapMessageDeque). The messages
+// returned by an off-heap deque are new copies. Not thread safe, the owning queue guards it with its monitor.
+public interface MessageDeque extends Iterable<Message> {
+	void addFirst(Message message);
+	void addLast(Message message);
+	// throws NoSuchElementException if the deque is empty
+	Message removeFirst();
+	
+	int size();
+	boolean isEmpty();
+	void clear();
+}
@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Message groups of a FIFO queue. A group is active while one of its messages is available or inflight in the owning
+// queue; the messages pushed to an active group wait here in push order, and the next one is released to the queue
+// once the active message leaves it for good (deleted, expired or moved). So at most one message of a group is
+// visible or inflight at any time, which keeps the order within the group, while the heads of different groups are
+// delivered in parallel. Every operation is O(1). Not thread safe, the owning queue guards it.
+public class MessageGroupSet implements Iterable<Message> {
+
+	// a waiting message and the time it was sent, which the retention period of the owning queue counts from
+	public static class Entry {
+		private final Message message;
+		private final long sentTime;
+
+		Entry(Message message, long sentTime) {
+			this.message = message;
+			this.sentTime = sentTime;
+		}
+
+		public Message getMessage() {
+			return message;
+		}
+
+		public long getSentTime() {
+			return sentTime;
+		}
+	}
+
+	// waiting messages of the active groups; an active group without waiting messages has an empty deque
+	private final Map<String, ArrayDeque<Entry>> groups = new HashMap<>();
+	private int size;
+
+	public boolean isActive(String groupId) {
+		return groups.containsKey(groupId);
+	}
+
+	// marks the group of a message which was made available or inflight
+	public void activate(String groupId) {
+		if(!groups.containsKey(groupId))
+			groups.put(groupId, new ArrayDeque<Entry>());
+	}
+
+	// queues a message of an active group behind its other waiting messages
+	public void add(String groupId, Message message, long sentTime) {
+		ArrayDeque<Entry> waitingMessages = groups.get(groupId);
+
+		if(waitingMessages == null)
+			throw new IllegalStateException(String.format("Message group %s is not active", groupId));
+
+		waitingMessages.addLast(new Entry(message, sentTime));
+		size++;
+	}
+
+	// called once the active message of the group left the queue; returns the next waiting message, which becomes the
+	// active one, or null if there is none and the group is no longer active
+	public Entry release(String groupId) {
+		ArrayDeque<Entry> waitingMessages = groups.get(groupId);
+
+		if(waitingMessages == null)
+			return null;
+
+		if(waitingMessages.isEmpty()) {
+			groups.remove(groupId);
+			return null;
+		}
+
+		size--;
+		return waitingMessages.pollFirst();
+	}
+
+	// number of waiting messages
+	public int size() {
+		return size;
+	}
+
+	public int getNumberOfActiveGroups() {
+		return groups.size();
+	}
+
+	public void clear() {
+		groups.clear();
+		size = 0;
+	}
+
+	// visits the waiting messages group by group, each group in push order
+	@Override
+	public Iterator<Message> iterator() {
+		final Iterator<ArrayDeque<Entry>> groupIterator = groups.values().iterator();
+
+		return new Iterator<Message>() {
+			private Iterator<Entry> entryIterator;
+
+			@Override
+			public boolean hasNext() {
+				while((entryIterator == null || !entryIterator.hasNext()) && groupIterator.hasNext())
+					entryIterator = groupIterator.next().iterator();
+
+				return entryIterator != null && entryIterator.hasNext();
+			}
+
+			@Override
+			public Message next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+
+				return entryIterator.next().getMessage();
+			}
+		};
+	}
+}
@@ -0,0 +1,489 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Write-ahead journal of the push, receive, delete and purge events of one queue. Records are framed like the
+// SegmentedLog records ([int length of type and payload][int CRC32][byte type][payload]) and collected in a memory
+// buffer by append(); a commit writes the buffer to the journal file and forces it to the storage device.
+//
+// Group commit: a caller of awaitDurable() either finds its record already committed, waits for the commit in
+// progress, or becomes the leader which commits everything appended so far. Concurrent pushers are thereby coalesced
+// into one FileChannel.force(). In per-message mode every append() is committed on its own instead, and a background
+// task commits every syncIntervalMillis in all modes, so that records nobody waits for (receives, deletes) become
+// durable as well.
+public class MessageJournal {
+
+	public enum Durability {
+		NONE("none"), INTERVAL("interval"), GROUP_COMMIT("group-commit"), PER_MESSAGE("per-message");
+
+		private final String attributeValue;
+
+		private Durability(String attributeValue) {
+			this.attributeValue = attributeValue;
+		}
+
+		public String getAttributeValue() {
+			return attributeValue;
+		}
+
+		// NONE for null or unknown values
+		public static Durability fromAttributeValue(String attributeValue) {
+			for(Durability durability: values()) {
+				if(durability.attributeValue.equals(attributeValue))
+					return durability;
+			}
+
+			return NONE;
+		}
+	}
+
+	// replay callbacks, called in journal order
+	public interface JournalHandler {
+		void onPush(Message message);
+		void onReceive(String messageId, String receiptHandle, long receiptTime, long deadline);
+		void onDelete(String messageId);
+		void onPurge();
+	}
+
+	// visits the type and payload of every complete record, in file order
+	interface RecordHandler {
+		void handle(byte type, ByteBuffer payload);
+	}
+
+	final static byte pushRecord = 1;
+	final static byte receiveRecord = 2;
+	final static byte deleteRecord = 3;
+	final static byte purgeRecord = 4;
+	final static int recordHeaderSize = 9;
+	private final static String messageGroupIdAttribute = "MessageGroupId";
+	private final static int initialBufferSize = 64 * 1024;
+	public final static long defaultSyncIntervalMillis = 100L;
+	private final static Logger logger = Logger.getLogger(MessageJournal.class);
+
+	private final File file;
+	private final File temporaryFile;
+	private final FileChannel channel;
+	private final CRC32 crc;
+	private volatile Durability durability;
+	private final ScheduledFuture<?> syncTask;
+
+	// records appended but not yet written; swapped with writeBuffer by the committing thread
+	private ByteBuffer appendBuffer;
+	private ByteBuffer writeBuffer;
+	// number of records appended and number of records known to be on the storage device
+	private long appendedSequence;
+	private long durableSequence;
+	private boolean commitInProgress;
+	private IOException commitFailure;
+
+	// number of bytes appended, committed or not
+	private long appendedBytes;
+
+	// statistics for tuning the durability trade-off
+	private long commitCount;
+	private long committedRecordCount;
+	private long totalSyncNanos;
+	private long maxSyncNanos;
+
+	// starts a new, empty journal which is written under a temporary name until publish() moves it to file; an
+	// existing journal at file stays intact until then
+	public MessageJournal(File file, Durability durability, long syncIntervalMillis) throws IOException {
+		this.file = file;
+		this.temporaryFile = new File(file.getPath() + ".tmp");
+		this.durability = durability;
+		this.crc = new CRC32();
+		this.appendBuffer = ByteBuffer.allocate(initialBufferSize);
+		this.writeBuffer = ByteBuffer.allocate(initialBufferSize);
+		this.channel = new RandomAccessFile(temporaryFile, "rw").getChannel();
+		channel.truncate(0);
+
+		this.syncTask = DaemonExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					commit();
+				}catch(IOException e) {
+					logger.error(String.format("Exception caught while committing journal %s", MessageJournal.this.file), e);
+				}
+			}
+		}, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public Durability getDurability() {
+		return durability;
+	}
+
+	public void setDurability(Durability durability) {
+		this.durability = durability;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	// commits the records appended so far, typically a dump of the queue state, and atomically replaces the
+	// journal at file with this one
+	public void publish() throws IOException {
+		awaitDurable(appendedSequenceSnapshot());
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public long appendPush(Message message) throws IOException {
+		return append(pushRecord, encodePush(message));
+	}
+
+	public long appendReceive(String messageId, String receiptHandle, long receiptTime, long deadline) throws IOException {
+		return append(receiveRecord, encodeReceive(messageId, receiptHandle, receiptTime, deadline));
+	}
+
+	public long appendDelete(String messageId) throws IOException {
+		byte[] messageIdBytes = utf8(messageId);
+
+		ByteBuffer payload = ByteBuffer.allocate(4 + length(messageIdBytes));
+		putBytes(payload, messageIdBytes);
+
+		return append(deleteRecord, payload.array());
+	}
+
+	public long appendPurge() throws IOException {
+		return append(purgeRecord, new byte[0]);
+	}
+
+	// adds a record to the append buffer and returns its sequence number; in per-message mode the record is
+	// committed before append() returns
+	private long append(byte type, byte[] payload) throws IOException {
+		long sequence;
+
+		synchronized(this) {
+			int recordSize = recordHeaderSize + payload.length;
+
+			if(appendBuffer.remaining() < recordSize) {
+				ByteBuffer grownBuffer = ByteBuffer.allocate(Math.max(2 * appendBuffer.capacity(), appendBuffer.position() + recordSize));
+				appendBuffer.flip();
+				grownBuffer.put(appendBuffer);
+				appendBuffer = grownBuffer;
+			}
+
+			putRecord(appendBuffer, type, payload, crc);
+			appendedBytes += recordSize;
+			sequence = ++appendedSequence;
+		}
+
+		if(durability == Durability.PER_MESSAGE)
+			awaitDurable(sequence);
+
+		return sequence;
+	}
+
+	// blocks until the record with the given sequence number is on the storage device, committing it (and every
+	// record appended before it) if no other thread is doing so
+	public void awaitDurable(long sequence) throws IOException {
+		boolean interrupted = false;
+
+		try{
+			while(true) {
+				synchronized(this) {
+					while(durableSequence < sequence && commitInProgress) {
+						try{
+							wait();
+						}catch(InterruptedException e) {
+							// the record is committed by another thread anyway; finish waiting and restore the flag
+							interrupted = true;
+						}
+					}
+
+					if(commitFailure != null)
+						throw commitFailure;
+
+					if(durableSequence >= sequence)
+						return;
+				}
+
+				commit();
+			}
+		}finally{
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	// writes and forces all the records appended so far; returns at once if another commit is in progress
+	public void commit() throws IOException {
+		ByteBuffer buffer;
+		long sequence;
+
+		synchronized(this) {
+			if(commitInProgress || appendedSequence == durableSequence || commitFailure != null)
+				return;
+
+			commitInProgress = true;
+			buffer = appendBuffer;
+			appendBuffer = writeBuffer;
+			writeBuffer = buffer;
+			sequence = appendedSequence;
+		}
+
+		long startTime = System.nanoTime();
+		IOException failure = null;
+
+		try{
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}catch(IOException e) {
+			failure = e;
+		}finally{
+			buffer.clear();
+		}
+
+		long syncNanos = System.nanoTime() - startTime;
+
+		synchronized(this) {
+			if(failure == null) {
+				commitCount++;
+				committedRecordCount += sequence - durableSequence;
+				totalSyncNanos += syncNanos;
+				maxSyncNanos = Math.max(maxSyncNanos, syncNanos);
+				durableSequence = sequence;
+			}
+			else {
+				// the journal no longer matches the queue; every later commit fails as well
+				commitFailure = failure;
+			}
+
+			commitInProgress = false;
+			notifyAll();
+		}
+
+		if(failure != null)
+			throw failure;
+	}
+
+	// commits the pending records and closes the file
+	public void close() {
+		syncTask.cancel(false);
+
+		try{
+			awaitDurable(appendedSequenceSnapshot());
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while committing journal %s", file), e);
+		}
+
+		try{
+			channel.close();
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while closing journal %s", file), e);
+		}
+	}
+
+	// closes the journal and removes its files
+	public void delete() {
+		syncTask.cancel(false);
+
+		try{
+			channel.close();
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while closing journal %s", file), e);
+		}
+
+		temporaryFile.delete();
+		if(file.exists() && !file.delete())
+			logger.error(String.format("Failed to delete journal %s", file));
+	}
+
+	private synchronized long appendedSequenceSnapshot() {
+		return appendedSequence;
+	}
+
+	// size of the journal including the records which are not committed yet
+	public synchronized long getSize() {
+		return appendedBytes;
+	}
+
+	public synchronized long getCommitCount() {
+		return commitCount;
+	}
+
+	// average number of records made durable by one FileChannel.force()
+	public synchronized double getAverageCommitBatchSize() {
+		return commitCount == 0 ? 0 : (double) committedRecordCount / commitCount;
+	}
+
+	public synchronized long getAverageSyncLatencyMicros() {
+		return commitCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalSyncNanos / commitCount);
+	}
+
+	public synchronized long getMaxSyncLatencyMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxSyncNanos);
+	}
+
+	// replays the complete records of the journal at file. A torn or corrupt tail ends the replay and is truncated, so
+	// that records appended after a restart never follow garbage. Returns false if there is no journal.
+	public static boolean replay(File file, final JournalHandler journalHandler) throws IOException {
+		if(!file.isFile())
+			return false;
+
+		ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		int validLength = readRecords(journal, new RecordHandler() {
+			@Override
+			public void handle(byte type, ByteBuffer payload) {
+				replayRecord(type, payload, journalHandler);
+			}
+		});
+
+		if(validLength < journal.capacity()) {
+			logger.error(String.format("Truncating torn tail of journal %s at offset %d", file, validLength));
+
+			try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+				randomAccessFile.getChannel().truncate(validLength);
+			}
+		}
+
+		return true;
+	}
+
+	// hands the complete records at the start of data to recordHandler and returns the number of bytes they take up;
+	// the first record with an invalid length or checksum ends the iteration
+	static int readRecords(ByteBuffer data, RecordHandler recordHandler) {
+		CRC32 crc = new CRC32();
+
+		while(data.remaining() >= recordHeaderSize) {
+			int recordStart = data.position();
+			int length = data.getInt();
+			int checksum = data.getInt();
+
+			crc.reset();
+			if(length > 0 && length <= data.remaining())
+				crc.update(data.array(), data.arrayOffset() + data.position(), length);
+
+			if(length <= 0 || length > data.remaining() || (int) crc.getValue() != checksum) {
+				data.position(recordStart);
+				break;
+			}
+
+			byte type = data.get();
+			ByteBuffer payload = data.slice();
+			payload.limit(length - 1);
+			data.position(data.position() + length - 1);
+
+			recordHandler.handle(type, payload);
+		}
+
+		return data.position();
+	}
+
+	// frames a record into buffer, which must have recordHeaderSize + payload.length bytes remaining
+	static void putRecord(ByteBuffer buffer, byte type, byte[] payload, CRC32 crc) {
+		crc.reset();
+		crc.update(type);
+		crc.update(payload);
+
+		buffer.putInt(payload.length + 1).putInt((int) crc.getValue()).put(type).put(payload);
+	}
+
+	// the MessageGroupId of a message of a FIFO queue is appended to the record, so records without one keep the
+	// format of older journals
+	static byte[] encodePush(Message message) {
+		byte[] messageId = utf8(message.getMessageId());
+		byte[] md5OfBody = utf8(message.getMD5OfBody());
+		byte[] body = utf8(message.getBody());
+		byte[] messageGroupId = utf8(message.getAttributes().get(messageGroupIdAttribute));
+
+		ByteBuffer payload = ByteBuffer.allocate(12 + length(messageId) + length(md5OfBody) + length(body)
+				+ (messageGroupId == null ? 0 : 4 + messageGroupId.length));
+		putBytes(payload, messageId);
+		putBytes(payload, md5OfBody);
+		putBytes(payload, body);
+		if(messageGroupId != null)
+			putBytes(payload, messageGroupId);
+
+		return payload.array();
+	}
+
+	// payload must end with the record
+	static Message decodePush(ByteBuffer payload) {
+		Message message = new Message();
+		message.setMessageId(getString(payload));
+		message.setMD5OfBody(getString(payload));
+		message.setBody(getString(payload));
+		if(payload.hasRemaining())
+			message.getAttributes().put(messageGroupIdAttribute, getString(payload));
+
+		return message;
+	}
+
+	static byte[] encodeReceive(String messageId, String receiptHandle, long receiptTime, long deadline) {
+		byte[] messageIdBytes = utf8(messageId);
+		byte[] receiptHandleBytes = utf8(receiptHandle);
+
+		ByteBuffer payload = ByteBuffer.allocate(24 + length(messageIdBytes) + length(receiptHandleBytes));
+		putBytes(payload, messageIdBytes);
+		putBytes(payload, receiptHandleBytes);
+		payload.putLong(receiptTime).putLong(deadline);
+
+		return payload.array();
+	}
+
+	static void replayRecord(byte type, ByteBuffer payload, JournalHandler journalHandler) {
+		if(type == pushRecord) {
+			journalHandler.onPush(decodePush(payload));
+		}
+		else if(type == receiveRecord) {
+			String messageId = getString(payload);
+			String receiptHandle = getString(payload);
+			journalHandler.onReceive(messageId, receiptHandle, payload.getLong(), payload.getLong());
+		}
+		else if(type == deleteRecord) {
+			journalHandler.onDelete(getString(payload));
+		}
+		else if(type == purgeRecord) {
+			journalHandler.onPurge();
+		}
+	}
+
+	// strings are stored as [int length][UTF-8 bytes]; a length of -1 stands for null
+	static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static int length(byte[] bytes) {
+		return bytes == null ? 0 : bytes.length;
+	}
+
+	static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		if(bytes == null) {
+			buffer.putInt(-1);
+		}
+		else {
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+
+		if(length < 0)
+			return null;
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,78 @@
+package com.example;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+// Moves the available messages of a queue, typically a dead-letter queue, to another queue at a limited rate: every
+// tick moves a batch of a tenth of the rate, so a redrive of a large backlog neither floods the consumers of the
+// destination nor holds the monitor of the source for long. The task finishes once the source has no available
+// message left or the destination stops taking messages.
+public class MessageMoveTask implements Runnable {
+
+	// batches per second at the maximum rate
+	private final static int ticksPerSecond = 10;
+
+	private final static Logger logger = Logger.getLogger(MessageMoveTask.class);
+
+	private final InMemoryQueue source;
+	private final MessageQueue destination;
+	private final int batchSize;
+	private final long periodMillis;
+	private ScheduledFuture<?> future;
+	private volatile boolean finished;
+	private volatile int movedCount;
+
+	public MessageMoveTask(InMemoryQueue source, MessageQueue destination, int maxMessagesPerSecond) {
+		if(maxMessagesPerSecond < 1)
+			throw new IllegalArgumentException(String.format("Invalid rate %d", maxMessagesPerSecond));
+
+		this.source = source;
+		this.destination = destination;
+		this.batchSize = (maxMessagesPerSecond + ticksPerSecond - 1) / ticksPerSecond;
+		this.periodMillis = 1000L * batchSize / maxMessagesPerSecond;
+	}
+
+	public synchronized void start() {
+		future = DaemonExecutors.getScheduler().scheduleAtFixedRate(this, 0, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// stops the task after the batch in progress, if any
+	public synchronized void cancel() {
+		finished = true;
+		if(future != null)
+			future.cancel(false);
+	}
+
+	@Override
+	public void run() {
+		if(finished)
+			return;
+
+		int batchCount = source.moveAvailableMessages(destination, batchSize);
+		movedCount += batchCount;
+
+		if(batchCount == 0 || source.getApproximateNumberOfMessages() == 0) {
+			logger.info(String.format("Moved %d messages of queue %s to queue %s", movedCount, source.getName(), destination.getName()));
+			cancel();
+		}
+	}
+
+	public InMemoryQueue getSource() {
+		return source;
+	}
+
+	public MessageQueue getDestination() {
+		return destination;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	// number of messages moved so far
+	public int getMovedCount() {
+		return movedCount;
+	}
+}
@@ -1,6 +1,9 @@
 package com.example;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.amazonaws.services.sqs.model.Message;
 
@@ -8,11 +11,30 @@ public interface MessageQueue {
 	String getName();
 	
 	void push(Message message);
+	// the message becomes available delaySeconds from now; a negative delay means the queue specific DelaySeconds
+	void push(Message message, int delaySeconds);
+	// appends all the messages under a single lock acquisition
+	void pushAll(List<Message> messages);
+	// pull() waits up to the queue's ReceiveMessageWaitTimeSeconds for a message to become available
 	Message pull();
+	Message pull(int waitTimeSeconds);
+	// receives up to maxNumberOfMessages in one go; the list is empty if nothing arrived within waitTimeSeconds
+	List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds);
+	// overrides the queue specific VisibilityTimeout for the received messages; negative means no override
+	List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout);
 	boolean delete(String receiptHandle);
+	// deletes the receipt handles under a single lock acquisition; returns the receipt handles which were deleted
+	Set<String> delete(Collection<String> receiptHandles);
+	
+	// makes an inflight message visible again visibilityTimeout seconds from now (0 releases it right away)
+	boolean changeMessageVisibility(String receiptHandle, int visibilityTimeout);
+	// <ReceiptHandle, VisibilityTimeout> pairs under a single lock acquisition; returns the receipt handles which were changed
+	Set<String> changeMessageVisibility(Map<String, Integer> visibilityTimeouts);
 	
 	// get available number of messages
 	int getApproximateNumberOfMessages();
+	// number of messages which were pushed with a delay and are not available yet
+	int getApproximateNumberOfMessagesDelayed();
 	int getNumberOfInflightMessages();
 	
 	// refreshes the queue state - i.e., puts the expired messages in the available queue
@@ -22,6 +44,6 @@ public interface MessageQueue {
 	void setAttributes(Map<String, String> attributes);
 	Map<String, String> getAttributes();
 	
-	// cancels the timer for periodic refreshQueue()
+	// cancels the scheduled refreshQueue() calls and wakes up the waiting consumers
 	void releaseResources();
 }
@@ -0,0 +1,83 @@
+package com.example;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Keeps the message ids, digests and bodies in an OffHeapMessageStore and only their handles, in order, on the heap:
+// 16 bytes per message instead of a Message with its strings. A Message is decoded when it is removed, i.e., when it
+// is received, so only the inflight messages live on the heap. Iterating decodes every message.
+public class OffHeapMessageDeque implements MessageDeque {
+	private final OffHeapMessageStore store;
+	private final LongDeque handles;
+
+	public OffHeapMessageDeque() {
+		this(new OffHeapMessageStore());
+	}
+
+	public OffHeapMessageDeque(OffHeapMessageStore store) {
+		this.store = store;
+		this.handles = new LongDeque();
+	}
+
+	@Override
+	public void addFirst(Message message) {
+		handles.addFirst(store.add(message));
+	}
+
+	@Override
+	public void addLast(Message message) {
+		handles.addLast(store.add(message));
+	}
+
+	@Override
+	public Message removeFirst() {
+		int handle = (int) handles.pollFirst();
+		Message message = store.get(handle);
+		store.remove(handle);
+
+		return message;
+	}
+
+	@Override
+	public int size() {
+		return handles.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return handles.isEmpty();
+	}
+
+	// also frees the native memory of the store
+	@Override
+	public void clear() {
+		handles.clear();
+		store.clear();
+	}
+
+	public OffHeapMessageStore getStore() {
+		return store;
+	}
+
+	@Override
+	public Iterator<Message> iterator() {
+		return new Iterator<Message>() {
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < handles.size();
+			}
+
+			@Override
+			public Message next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+
+				return store.get((int) handles.get(index++));
+			}
+		};
+	}
+}
@@ -0,0 +1,284 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Keeps encoded messages (message id, MD5OfBody and UTF-8 body, as in a journal push record) outside of the Java heap,
+// in direct ByteBuffer slabs which are filled by appending. A stored message is known by an int handle; the heap only
+// holds the location of every handle, 8 bytes per message, so the garbage collector never traces the bodies.
+//
+// Slab record: [int handle][int length][length bytes]. Removing a message only subtracts its record from the live
+// bytes of its slab; a slab without live records is freed right away. Messages which are removed out of order, e.g.,
+// redelivered messages which were appended again, leave holes behind, and once the holes make up more than half of
+// the allocated bytes the sparsest slabs are compacted: their live records are copied to the current slab and their
+// handles moved, which never changes the handle of a message. Not thread safe, the owning queue guards it.
+//
+// A few freed slabs of the default size are kept for the next slabs, so a queue which fills and drains steadily
+// does not allocate; the other freed slabs are left to the garbage collector, which frees their native memory.
+public class OffHeapMessageStore {
+
+	public final static int defaultSlabSize = 1024 * 1024;
+	private final static int recordHeaderSize = 8;
+	private final static int initialCapacity = 16;
+	private final static int noHandle = -1;
+	private final static int maxPooledSlabs = 2;
+
+	private static class Slab {
+		final int index;
+		final ByteBuffer buffer;
+		int liveBytes;
+
+		Slab(int index, ByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+
+		int getFreeBytes() {
+			return buffer.capacity() - buffer.position();
+		}
+	}
+
+	private final int slabSize;
+	// indexed by slab number; null for freed slabs
+	private Slab[] slabs;
+	// slab which new records are appended to
+	private Slab currentSlab;
+	// cleared buffers of freed slabs of slabSize, at most maxPooledSlabs; not part of the allocated bytes
+	private final ArrayDeque<ByteBuffer> pooledBuffers = new ArrayDeque<>();
+	// <slab number, offset> of the record of every handle; a free handle holds -2 - the next free handle, which is
+	// negative unlike any location
+	private long[] locations;
+	private int firstFreeHandle;
+	private int size;
+	private long allocatedBytes;
+	private long liveBytes;
+	// holes left by the last compaction, which could not be compacted away
+	private long wasteAfterCompaction;
+
+	public OffHeapMessageStore() {
+		this(defaultSlabSize);
+	}
+
+	public OffHeapMessageStore(int slabSize) {
+		this.slabSize = slabSize;
+		slabs = new Slab[initialCapacity];
+		locations = new long[initialCapacity];
+		firstFreeHandle = noHandle;
+	}
+
+	// stores the message and returns its handle
+	public int add(Message message) {
+		byte[] payload = MessageJournal.encodePush(message);
+		int handle = allocateHandle();
+		locations[handle] = append(handle, ByteBuffer.wrap(payload));
+		size++;
+
+		return handle;
+	}
+
+	// decodes a new Message from the record of handle
+	public Message get(int handle) {
+		ByteBuffer record = getRecord(locations[handle]);
+		record.limit(record.position() + recordHeaderSize + record.getInt(record.position() + 4));
+		record.position(record.position() + recordHeaderSize);
+
+		return MessageJournal.decodePush(record);
+	}
+
+	// frees the record of handle; the handle may be returned by a later add()
+	public void remove(int handle) {
+		long location = locations[handle];
+		Slab slab = slabs[getSlabIndex(location)];
+		int recordSize = recordHeaderSize + slab.buffer.getInt(getOffset(location) + 4);
+
+		slab.liveBytes -= recordSize;
+		liveBytes -= recordSize;
+		locations[handle] = -2L - firstFreeHandle;
+		firstFreeHandle = handle;
+		size--;
+
+		if(slab.liveBytes == 0 && slab != currentSlab)
+			freeSlab(slab);
+		else if(isCompactionDue())
+			compact();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// bytes of the slabs, including the holes and the unused end of the current slab
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	// bytes of the stored records
+	public long getLiveBytes() {
+		return liveBytes;
+	}
+
+	// removes all the messages and frees all the slabs, pooled ones included
+	public void clear() {
+		for(Slab slab: slabs) {
+			if(slab != null)
+				freeSlab(slab);
+		}
+		pooledBuffers.clear();
+
+		currentSlab = null;
+		locations = new long[initialCapacity];
+		firstFreeHandle = noHandle;
+		size = 0;
+		wasteAfterCompaction = 0;
+	}
+
+	// the holes make up more than half of the allocated bytes, and at least one slab more than after the last compaction.
+	// A draining queue never qualifies, its holes are the consumed front of the oldest slab.
+	private boolean isCompactionDue() {
+		long waste = allocatedBytes - liveBytes;
+
+		return waste > Math.max(2L * slabSize, allocatedBytes / 2) && waste > wasteAfterCompaction + slabSize;
+	}
+
+	// copies the live records of the sparsest slabs to the current slab until the holes make up at most a quarter of
+	// the allocated bytes. Only slabs which are at most half full are moved, so every copied byte frees another one,
+	// and every slab is moved at most once.
+	private void compact() {
+		List<Slab> sparseSlabs = new ArrayList<>();
+
+		for(Slab slab: slabs) {
+			if(slab != null && slab != currentSlab && slab.liveBytes <= slab.buffer.capacity() / 2)
+				sparseSlabs.add(slab);
+		}
+
+		Collections.sort(sparseSlabs, new Comparator<Slab>() {
+			@Override
+			public int compare(Slab first, Slab second) {
+				return Integer.compare(first.liveBytes, second.liveBytes);
+			}
+		});
+
+		for(Slab slab: sparseSlabs) {
+			if(allocatedBytes - liveBytes <= allocatedBytes / 4)
+				break;
+
+			moveLiveRecords(slab);
+		}
+
+		wasteAfterCompaction = allocatedBytes - liveBytes;
+	}
+
+	private void moveLiveRecords(Slab slab) {
+		ByteBuffer buffer = slab.buffer;
+		int end = buffer.position();
+		int offset = 0;
+
+		while(offset < end) {
+			int handle = buffer.getInt(offset);
+			int length = buffer.getInt(offset + 4);
+
+			// the handle may have been freed and reused by a record elsewhere
+			if(handle < locations.length && locations[handle] == getLocation(slab, offset)) {
+				ByteBuffer payload = buffer.duplicate();
+				payload.limit(offset + recordHeaderSize + length).position(offset + recordHeaderSize);
+				locations[handle] = append(handle, payload);
+				slab.liveBytes -= recordHeaderSize + length;
+				liveBytes -= recordHeaderSize + length;
+			}
+
+			offset += recordHeaderSize + length;
+		}
+
+		freeSlab(slab);
+	}
+
+	// appends a record to the current slab, starting a new slab if it does not fit; returns its location
+	private long append(int handle, ByteBuffer payload) {
+		int recordSize = recordHeaderSize + payload.remaining();
+
+		if(currentSlab == null || currentSlab.getFreeBytes() < recordSize) {
+			if(currentSlab != null && currentSlab.liveBytes == 0)
+				freeSlab(currentSlab);
+			currentSlab = allocateSlab(Math.max(slabSize, recordSize));
+		}
+
+		long location = getLocation(currentSlab, currentSlab.buffer.position());
+		currentSlab.buffer.putInt(handle).putInt(payload.remaining()).put(payload);
+		currentSlab.liveBytes += recordSize;
+		liveBytes += recordSize;
+
+		return location;
+	}
+
+	private ByteBuffer getRecord(long location) {
+		ByteBuffer record = slabs[getSlabIndex(location)].buffer.duplicate();
+		record.position(getOffset(location));
+
+		return record;
+	}
+
+	private int allocateHandle() {
+		if(firstFreeHandle != noHandle) {
+			int handle = firstFreeHandle;
+			firstFreeHandle = (int) (-2L - locations[handle]);
+			return handle;
+		}
+
+		if(size == locations.length)
+			locations = Arrays.copyOf(locations, size * 2);
+
+		// all the handles below size are in use when there is no free handle
+		return size;
+	}
+
+	private Slab allocateSlab(int capacity) {
+		int index = 0;
+		while(index < slabs.length && slabs[index] != null)
+			index++;
+
+		if(index == slabs.length)
+			slabs = Arrays.copyOf(slabs, slabs.length * 2);
+
+		ByteBuffer buffer = capacity == slabSize ? pooledBuffers.pollFirst() : null;
+		Slab slab = new Slab(index, buffer != null ? buffer : ByteBuffer.allocateDirect(capacity));
+		slabs[index] = slab;
+		allocatedBytes += capacity;
+
+		return slab;
+	}
+
+	// pools the buffer for the next slab, or leaves it to the garbage collector
+	private void freeSlab(Slab slab) {
+		slabs[slab.index] = null;
+		allocatedBytes -= slab.buffer.capacity();
+		liveBytes -= slab.liveBytes;
+
+		if(slab == currentSlab)
+			currentSlab = null;
+		wasteAfterCompaction = Math.min(wasteAfterCompaction, allocatedBytes - liveBytes);
+
+		if(slab.buffer.capacity() == slabSize && pooledBuffers.size() < maxPooledSlabs) {
+			slab.buffer.clear();
+			pooledBuffers.addLast(slab.buffer);
+		}
+	}
+
+	private static long getLocation(Slab slab, int offset) {
+		return ((long) slab.index << 32) | offset;
+	}
+
+	private static int getSlabIndex(long location) {
+		return (int) (location >>> 32);
+	}
+
+	private static int getOffset(long location) {
+		return (int) location;
+	}
+}
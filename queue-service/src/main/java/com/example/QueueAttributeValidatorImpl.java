@@ -1,6 +1,10 @@
 package com.example;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -8,16 +12,72 @@ import org.apache.log4j.Logger;
 public class QueueAttributeValidatorImpl implements QueueAttributeValidator {
 	private Map<String, AttributeValidator> attributeValidatorMap;
 	private final static String visibilityTimeoutAttribute = "VisibilityTimeout";
+	private final static String receiveMessageWaitTimeSecondsAttribute = "ReceiveMessageWaitTimeSeconds";
+	private final static String maximumNumberOfMessagesPerReceiveAttribute = "MaximumNumberOfMessagesPerReceive";
+	private final static String computeMD5OfBodyAttribute = "ComputeMD5OfBody";
+	private final static String durabilityAttribute = "Durability";
+	private final static String messageStorageAttribute = "MessageStorage";
+	private final static String spillThresholdKilobytesAttribute = "SpillThresholdKilobytes";
+	private final static String maximumNumberOfMessagesAttribute = "MaximumNumberOfMessages";
+	private final static String maximumQueueKilobytesAttribute = "MaximumQueueKilobytes";
+	private final static String overflowPolicyAttribute = "OverflowPolicy";
+	private final static String overflowWaitTimeSecondsAttribute = "OverflowWaitTimeSeconds";
+	private final static String delaySecondsAttribute = "DelaySeconds";
+	private final static String messageRetentionPeriodAttribute = "MessageRetentionPeriod";
+	private final static String redrivePolicyAttribute = "RedrivePolicy";
+	private final static String fifoQueueAttribute = "FifoQueue";
+	private final static String contentBasedDeduplicationAttribute = "ContentBasedDeduplication";
 	private final static Logger logger = Logger.getLogger(QueueAttributeValidatorImpl.class);
 	
+	// attributes which only InMemoryQueue implements; the factories of the other engines leave them out, so that
+	// setting one of them fails instead of being ignored
+	public final static List<String> inMemoryQueueAttributes = Collections.unmodifiableList(Arrays.asList(durabilityAttribute, 
+			messageStorageAttribute, spillThresholdKilobytesAttribute, maximumNumberOfMessagesAttribute, maximumQueueKilobytesAttribute, 
+			overflowPolicyAttribute, overflowWaitTimeSecondsAttribute, delaySecondsAttribute, messageRetentionPeriodAttribute, 
+			redrivePolicyAttribute, fifoQueueAttribute, contentBasedDeduplicationAttribute));
+	
 	public QueueAttributeValidatorImpl() {
 		attributeValidatorMap = new HashMap<>();
 		populateAttributes();
 	}
+	
+	// knows all the attributes but the unsupported ones
+	public QueueAttributeValidatorImpl(Collection<String> unsupportedAttributes) {
+		this();
+		attributeValidatorMap.keySet().removeAll(unsupportedAttributes);
+	}
 
 	// In real world, these values may be populated from a config file.
 	private void populateAttributes() {
 		attributeValidatorMap.put(visibilityTimeoutAttribute, new VisibilityTimeoutValidator());
+		attributeValidatorMap.put(receiveMessageWaitTimeSecondsAttribute, new ReceiveMessageWaitTimeSecondsValidator());
+		// SQS caps a receive at 10 messages; in-memory queues may raise the ceiling for micro-batching consumers
+		attributeValidatorMap.put(maximumNumberOfMessagesPerReceiveAttribute, new IntegerRangeValidator(1, 10000, 10));
+		// trusted high rate producers may switch off the MD5OfBody digest
+		attributeValidatorMap.put(computeMD5OfBodyAttribute, new BooleanValidator(true));
+		// write-ahead journal of in-memory queues, see MessageJournal
+		attributeValidatorMap.put(durabilityAttribute, new EnumValidator("none", "none", "interval", "group-commit", "per-message"));
+		// available messages of in-memory queues on the heap, encoded in native memory (see OffHeapMessageDeque) or
+		// spilled to files beyond SpillThresholdKilobytes of bodies (see SpillingMessageDeque)
+		attributeValidatorMap.put(messageStorageAttribute, new EnumValidator("heap", "heap", "offheap", "spill"));
+		attributeValidatorMap.put(spillThresholdKilobytesAttribute, new IntegerRangeValidator(1, Integer.MAX_VALUE, 64 * 1024));
+		// bounds of the messages and UTF-8 body bytes held by an in-memory queue, 0 for unbounded, and what a push to a
+		// full queue does; see QueueCapacity
+		attributeValidatorMap.put(maximumNumberOfMessagesAttribute, new IntegerRangeValidator(0, Integer.MAX_VALUE, 0));
+		attributeValidatorMap.put(maximumQueueKilobytesAttribute, new IntegerRangeValidator(0, Integer.MAX_VALUE, 0));
+		attributeValidatorMap.put(overflowPolicyAttribute, new EnumValidator("reject", "block", "reject", "drop-oldest"));
+		attributeValidatorMap.put(overflowWaitTimeSecondsAttribute, new IntegerRangeValidator(0, 300, 20));
+		// how long a pushed message stays invisible, at most 15 minutes as in SQS; see DelayedMessageSet
+		attributeValidatorMap.put(delaySecondsAttribute, new IntegerRangeValidator(0, 900, 0));
+		// how long an in-memory queue keeps a message which is not deleted, 1 minute to 14 days as in SQS; see
+		// RetentionSegments
+		attributeValidatorMap.put(messageRetentionPeriodAttribute, new IntegerRangeValidator(60, 14 * 24 * 3600, 4 * 24 * 3600));
+		// dead-letter queue of an in-memory queue and the number of receives which sends a message there
+		attributeValidatorMap.put(redrivePolicyAttribute, new RedrivePolicyValidator());
+		// in-memory queues only; set by createQueue, see MessageGroupSet
+		attributeValidatorMap.put(fifoQueueAttribute, new BooleanValidator(false));
+		// deduplicates the messages of an in-memory queue without a MessageDeduplicationId by their body
+		attributeValidatorMap.put(contentBasedDeduplicationAttribute, new BooleanValidator(false));
 	}
 
 	@Override
@@ -0,0 +1,92 @@
+package com.example;
+
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Attribute handling shared by the MessageQueue implementations: the names and defaults of the attributes every
+// queue reads, the validation of attribute updates, integer reads which fall back to a default and the check of the
+// message attributes which only InMemoryQueue implements
+public class QueueAttributes {
+
+	public final static String visibilityTimeoutAttribute = "VisibilityTimeout";
+	public final static int defaultVisibilityTimeout = 30;
+	public final static String receiveMessageWaitTimeSecondsAttribute = "ReceiveMessageWaitTimeSeconds";
+	public final static String maximumNumberOfMessagesPerReceiveAttribute = "MaximumNumberOfMessagesPerReceive";
+	public final static int defaultMaximumNumberOfMessagesPerReceive = 10;
+	// visibility timeout argument of a receive which follows the queue specific VisibilityTimeout
+	public final static int useQueueVisibilityTimeout = -1;
+	public final static String messageGroupIdAttribute = "MessageGroupId";
+	public final static String messageDeduplicationIdAttribute = "MessageDeduplicationId";
+
+	private final static Logger logger = Logger.getLogger(QueueAttributes.class);
+
+	private QueueAttributes() {
+	}
+
+	// puts the updates into attributes: an invalid value is replaced by the default of the attribute and an unknown
+	// name is skipped, both with an error. Returns false, with a warning, if there is nothing to update.
+	public static boolean update(Map<String, String> attributes, Map<String, String> updates, QueueAttributeValidator attributesValidator, String qName) {
+		if(updates == null || updates.size() == 0) {
+			logger.warn(String.format("No attributes to set for queue %s", qName));
+			return false;
+		}
+
+		for(Map.Entry<String, String> entry: updates.entrySet()) {
+			if(attributesValidator.validateAttributeName(entry.getKey())){
+				if(attributesValidator.validateAttributeValue(entry.getKey(), entry.getValue()))
+					attributes.put(entry.getKey(), entry.getValue());
+				else {
+					attributes.put(entry.getKey(), attributesValidator.getDefaultValue(entry.getKey()));
+					logger.error(String.format("Invalid attribute value (%s) found while setting attributes for queue %s", entry.getValue(), qName));
+				}
+			}
+			else {
+				logger.error(String.format("Invalid attribute name (%s) found while setting attributes for queue %s", entry.getKey(), qName));
+			}
+		}
+
+		return true;
+	}
+
+	// false, with an error, if the message has a MessageGroupId or a MessageDeduplicationId; for the queues which
+	// provide neither ordering nor deduplication
+	public static boolean isStandardMessage(Message message, String qName) {
+		String messageGroupId = message.getAttributes().get(messageGroupIdAttribute);
+		String messageDeduplicationId = message.getAttributes().get(messageDeduplicationIdAttribute);
+
+		if(messageGroupId != null) {
+			logger.error(String.format("Message groups are not supported by queue %s. Message of group %s not pushed", qName, messageGroupId));
+			return false;
+		}
+
+		if(messageDeduplicationId != null) {
+			logger.error(String.format("Message deduplication is not supported by queue %s. Message with deduplication id %s not pushed", 
+					qName, messageDeduplicationId));
+			return false;
+		}
+
+		return true;
+	}
+
+	// the attribute may be missing when the validator does not know about it; fall back to the given default
+	public static int getIntegerAttribute(Map<String, String> attributes, String attributeName, int defaultValue) {
+		String value = attributes.get(attributeName);
+		return value == null ? defaultValue : Integer.valueOf(value);
+	}
+
+	public static long getVisibilityTimeoutMillis(Map<String, String> attributes) {
+		return getIntegerAttribute(attributes, visibilityTimeoutAttribute, defaultVisibilityTimeout) * 1000L;
+	}
+
+	public static int getReceiveMessageWaitTimeSeconds(Map<String, String> attributes) {
+		return getIntegerAttribute(attributes, receiveMessageWaitTimeSecondsAttribute, 0);
+	}
+
+	// number of messages a receive of up to maxNumberOfMessages takes, capped by MaximumNumberOfMessagesPerReceive
+	public static int getReceiveCount(Map<String, String> attributes, int maxNumberOfMessages) {
+		return Math.min(maxNumberOfMessages, getIntegerAttribute(attributes, maximumNumberOfMessagesPerReceiveAttribute, defaultMaximumNumberOfMessagesPerReceive));
+	}
+}
@@ -0,0 +1,198 @@
+package com.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Counts the messages and the UTF-8 body bytes held by a queue (available plus inflight) against the limits of its
+// MaximumNumberOfMessages and MaximumQueueKilobytes attributes; a limit of 0 means unbounded. Producers reserve room
+// with a CAS on each counter before they touch the queue, so a rejected push never takes the queue lock and an
+// accepted one costs two uncontended CAS operations. Producers which block on a full queue park on a separate monitor,
+// which release() only takes while some producer is parked.
+public class QueueCapacity {
+
+	// what a push does when the queue is full
+	public enum OverflowPolicy {
+		BLOCK("block"),
+		REJECT("reject"),
+		DROP_OLDEST("drop-oldest");
+
+		private final String attributeValue;
+
+		OverflowPolicy(String attributeValue) {
+			this.attributeValue = attributeValue;
+		}
+
+		public String getAttributeValue() {
+			return attributeValue;
+		}
+
+		// REJECT for null or unknown values
+		public static OverflowPolicy fromAttributeValue(String attributeValue) {
+			for(OverflowPolicy overflowPolicy: values()) {
+				if(overflowPolicy.attributeValue.equals(attributeValue))
+					return overflowPolicy;
+			}
+
+			return REJECT;
+		}
+	}
+
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private volatile long maximumMessages;
+	private volatile long maximumBytes;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+	// how long a BLOCK producer waits for room
+	private volatile long overflowWaitTimeMillis;
+
+	private final Object waitLock = new Object();
+	private final AtomicInteger waitingProducers = new AtomicInteger();
+	private volatile boolean closed;
+
+	// 0 for unbounded
+	public void setLimits(long maximumMessages, long maximumBytes) {
+		this.maximumMessages = maximumMessages;
+		this.maximumBytes = maximumBytes;
+		// raised limits may make room for parked producers
+		signalWaitingProducers();
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy, long overflowWaitTimeMillis) {
+		this.overflowPolicy = overflowPolicy;
+		this.overflowWaitTimeMillis = overflowWaitTimeMillis;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public long getOverflowWaitTimeMillis() {
+		return overflowWaitTimeMillis;
+	}
+
+	// reserves room for count messages of byteCount bytes if both limits allow it
+	public boolean tryReserve(long count, long byteCount) {
+		if(!tryAdd(messages, count, maximumMessages))
+			return false;
+
+		if(!tryAdd(bytes, byteCount, maximumBytes)) {
+			messages.addAndGet(-count);
+			return false;
+		}
+
+		return true;
+	}
+
+	// like tryReserve(), but waits up to timeoutMillis for consumers to make room; false if the wait expired or the
+	// capacity was closed
+	public boolean reserve(long count, long byteCount, long timeoutMillis) throws InterruptedException {
+		if(tryReserve(count, byteCount))
+			return true;
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		synchronized(waitLock) {
+			waitingProducers.incrementAndGet();
+
+			try{
+				// checked again after the producer is counted, so that a release() in between is not missed
+				while(!closed && !tryReserve(count, byteCount)) {
+					long remainingNanos = deadline - System.nanoTime();
+
+					if(remainingNanos <= 0)
+						return false;
+
+					// rounded up, so that the producer does not give up before the deadline
+					waitLock.wait(TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+				}
+			}finally{
+				waitingProducers.decrementAndGet();
+			}
+		}
+
+		return !closed;
+	}
+
+	// counts messages which are added regardless of the limits, e.g., when a durable queue is restored
+	public void add(long count, long byteCount) {
+		messages.addAndGet(count);
+		bytes.addAndGet(byteCount);
+	}
+
+	public void release(long count, long byteCount) {
+		messages.addAndGet(-count);
+		bytes.addAndGet(-byteCount);
+		signalWaitingProducers();
+	}
+
+	public long getMessages() {
+		return messages.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	// wakes up the parked producers, which give up
+	public void close() {
+		closed = true;
+
+		synchronized(waitLock) {
+			waitLock.notifyAll();
+		}
+	}
+
+	private void signalWaitingProducers() {
+		if(waitingProducers.get() == 0)
+			return;
+
+		synchronized(waitLock) {
+			waitLock.notifyAll();
+		}
+	}
+
+	// adds delta to counter unless that exceeds maximum; a maximum of 0 means unbounded
+	private static boolean tryAdd(AtomicLong counter, long delta, long maximum) {
+		if(maximum <= 0) {
+			counter.addAndGet(delta);
+			return true;
+		}
+
+		while(true) {
+			long current = counter.get();
+
+			if(current + delta > maximum)
+				return false;
+
+			if(counter.compareAndSet(current, current + delta))
+				return true;
+		}
+	}
+
+	// UTF-8 length of the body without encoding it
+	public static long getBodySize(Message message) {
+		String body = message.getBody();
+
+		if(body == null)
+			return 0;
+
+		long size = body.length();
+
+		for(int i = 0; i < body.length(); i++) {
+			char c = body.charAt(i);
+
+			if(c >= 0x800) {
+				// a surrogate pair is 4 bytes for two chars, any other char 3 bytes
+				size += Character.isSurrogate(c) ? 1 : 2;
+			}
+			else if(c >= 0x80) {
+				size += 1;
+			}
+		}
+
+		return size;
+	}
+}
@@ -0,0 +1,317 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Write-ahead journal and checkpoints of one durable InMemoryQueue. A queue named qName keeps
+// <journalDirectory>/<qName>.snapshot plus the delta journals <qName>.<generation>.journal, and opening the journal
+// again restores its messages into the queue (see checkpoint()). The queue appends its events to getJournal(); the
+// state of this class is guarded by the monitor of the queue, and checkpoints are serialized by a lock of their own
+// which is never acquired while holding that monitor.
+public class QueueJournal {
+
+	private final static long checkpointCheckIntervalMillis = 1000L;
+	private final static long minimumCheckpointBytes = 4L * 1024 * 1024;
+	private final static Logger logger = Logger.getLogger(QueueJournal.class);
+
+	private final InMemoryQueue queue;
+	private final String name;
+	private final File journalDirectory;
+	// delta journal of the queue events since the last snapshot; null unless the queue is durable
+	private MessageJournal journal;
+	// generation of the current delta journal, i.e., of the snapshot it continues
+	private long journalGeneration;
+	// size of the last snapshot; a checkpoint is due once the delta journal outgrows it
+	private long snapshotSize;
+	private ScheduledFuture<?> checkpointTask;
+	private final Object checkpointLock = new Object();
+
+	// journalDirectory may be null if the queue is never made durable
+	public QueueJournal(InMemoryQueue queue, String qName, File journalDirectory) {
+		this.queue = queue;
+		this.name = qName;
+		this.journalDirectory = journalDirectory;
+	}
+
+	// the current delta journal, null unless the queue is durable; must be called while holding the queue monitor
+	public MessageJournal getJournal() {
+		return journal;
+	}
+
+	// opens, retunes or drops the journal according to durability; must be called while holding the queue monitor
+	public void update(MessageJournal.Durability durability) {
+		if(durability == MessageJournal.Durability.NONE) {
+			delete();
+		}
+		else if(journal != null) {
+			journal.setDurability(durability);
+		}
+		else if(journalDirectory == null) {
+			logger.error(String.format("No journal directory configured. Durability %s is ignored for queue %s", durability.getAttributeValue(), name));
+		}
+		else {
+			try{
+				open(durability);
+			}catch(IOException e) {
+				logger.error(String.format("Exception caught while opening the journal of queue %s", name), e);
+			}
+		}
+	}
+
+	// restores the messages of the last snapshot and of the delta journals which continue it, then checkpoints the
+	// recovered state right away, which also compacts the journals away. Restoring therefore takes time in
+	// proportion to the snapshot plus at most one delta journal, not to the history of the queue.
+	private void open(MessageJournal.Durability durability) throws IOException {
+		if(!journalDirectory.isDirectory() && !journalDirectory.mkdirs())
+			throw new IOException(String.format("Failed to create journal directory %s", journalDirectory));
+
+		deleteFiles(true);
+		JournalRecovery journalRecovery = new JournalRecovery();
+		QueueSnapshot snapshot = QueueSnapshot.read(getSnapshotFile());
+		long snapshotGeneration = 0;
+
+		if(snapshot != null) {
+			snapshotGeneration = snapshot.getGeneration();
+			snapshot.replay(journalRecovery);
+		}
+
+		journalGeneration = snapshotGeneration;
+		for(long generation: getJournalGenerations()) {
+			if(generation >= snapshotGeneration)
+				MessageJournal.replay(getJournalFile(generation), journalRecovery);
+			journalGeneration = Math.max(journalGeneration, generation);
+		}
+
+		queue.restoreMessages(journalRecovery.messages.values(), journalRecovery.receipts, System.currentTimeMillis());
+
+		QueueSnapshot recoveredSnapshot = startGeneration(createJournal(journalGeneration + 1, durability));
+		snapshotSize = recoveredSnapshot.write(getSnapshotFile());
+		deleteJournalsBefore(recoveredSnapshot.getGeneration());
+
+		checkpointTask = DaemonExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if(isCheckpointDue())
+					checkpoint();
+			}
+		}, checkpointCheckIntervalMillis, checkpointCheckIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// creates and publishes the empty delta journal of a generation. Publishing forces the journal and moves it into
+	// place, so checkpoint() calls this outside the queue monitor.
+	private MessageJournal createJournal(long generation, MessageJournal.Durability durability) throws IOException {
+		MessageJournal nextJournal = new MessageJournal(getJournalFile(generation), durability, MessageJournal.defaultSyncIntervalMillis);
+		nextJournal.publish();
+
+		return nextJournal;
+	}
+
+	// switches to the published delta journal of the next generation and returns a copy of the queue as the snapshot
+	// of that generation; must be called while holding the queue monitor
+	private QueueSnapshot startGeneration(MessageJournal nextJournal) {
+		long generation = journalGeneration + 1;
+		QueueSnapshot snapshot = queue.createSnapshot(generation);
+		journal = nextJournal;
+		journalGeneration = generation;
+
+		return snapshot;
+	}
+
+	// writes a snapshot of the queue and continues with an empty delta journal. The queue is blocked only while its
+	// state is copied; the next delta journal is published before, and the snapshot is written and forced after, while
+	// the queue keeps serving. The older journals are deleted once the snapshot has replaced the previous one. A crash
+	// in between leaves the previous snapshot and all the journals which continue it. Attribute changes become durable
+	// with the next checkpoint. Returns false if the queue has no journal or the checkpoint failed.
+	public boolean checkpoint() {
+		synchronized(checkpointLock) {
+			MessageJournal previousJournal;
+			MessageJournal checkpointJournal;
+			MessageJournal.Durability durability;
+			long generation;
+			QueueSnapshot snapshot;
+
+			synchronized(queue) {
+				if(journal == null)
+					return false;
+
+				previousJournal = journal;
+				durability = journal.getDurability();
+				generation = journalGeneration + 1;
+			}
+
+			try{
+				checkpointJournal = createJournal(generation, durability);
+			}catch(IOException e) {
+				logger.error(String.format("Exception caught while starting a new journal for queue %s", name), e);
+				return false;
+			}
+
+			synchronized(queue) {
+				// the journal was dropped or reopened while the next one was published
+				if(journal != previousJournal) {
+					checkpointJournal.delete();
+					return false;
+				}
+
+				checkpointJournal.setDurability(journal.getDurability());
+				snapshot = startGeneration(checkpointJournal);
+			}
+
+			// commits the records which pushers may still be waiting for
+			previousJournal.close();
+
+			try{
+				long size = snapshot.writeTemporary(getSnapshotFile());
+
+				synchronized(queue) {
+					// the journal was dropped or the queue deleted while the snapshot was written
+					if(journal != checkpointJournal) {
+						snapshot.discard(getSnapshotFile());
+						return false;
+					}
+
+					snapshot.publish(getSnapshotFile());
+					snapshotSize = size;
+				}
+			}catch(IOException e) {
+				logger.error(String.format("Exception caught while writing the snapshot of queue %s", name), e);
+				snapshot.discard(getSnapshotFile());
+				return false;
+			}
+
+			deleteJournalsBefore(snapshot.getGeneration());
+			return true;
+		}
+	}
+
+	// checkpoints the queue and closes the journal, keeping the files. releaseQueue runs under the queue monitor
+	// right before the journal is closed, so no event of the queue slips in between.
+	public void close(Runnable releaseQueue) {
+		synchronized(checkpointLock) {
+			checkpoint();
+
+			synchronized(queue) {
+				releaseQueue.run();
+
+				if(journal != null) {
+					checkpointTask.cancel(false);
+					journal.close();
+					journal = null;
+				}
+			}
+		}
+	}
+
+	// stops journaling and deletes the snapshot and the journals, if any; must be called while holding the queue monitor
+	public void delete() {
+		if(journal == null)
+			return;
+
+		checkpointTask.cancel(false);
+		journal.delete();
+		journal = null;
+		deleteFiles(false);
+	}
+
+	private boolean isCheckpointDue() {
+		synchronized(queue) {
+			return journal != null && journal.getSize() >= Math.max(minimumCheckpointBytes, snapshotSize);
+		}
+	}
+
+	private File getSnapshotFile() {
+		return new File(journalDirectory, name + ".snapshot");
+	}
+
+	private File getJournalFile(long generation) {
+		return new File(journalDirectory, String.format("%s.%d.journal", name, generation));
+	}
+
+	// generations of the delta journals in the journal directory, in ascending order
+	private List<Long> getJournalGenerations() {
+		List<Long> generations = new ArrayList<>();
+		Pattern journalFilePattern = Pattern.compile(Pattern.quote(name) + "\\.(\\d+)\\.journal");
+		String[] fileNames = journalDirectory.list();
+
+		if(fileNames != null) {
+			for(String fileName: fileNames) {
+				Matcher matcher = journalFilePattern.matcher(fileName);
+				if(matcher.matches())
+					generations.add(Long.valueOf(matcher.group(1)));
+			}
+		}
+
+		Collections.sort(generations);
+		return generations;
+	}
+
+	private void deleteJournalsBefore(long generation) {
+		for(long journalGeneration: getJournalGenerations()) {
+			File journalFile = getJournalFile(journalGeneration);
+
+			if(journalGeneration < generation && !journalFile.delete())
+				logger.error(String.format("Failed to delete journal %s", journalFile));
+		}
+	}
+
+	// deletes all the files of the queue, including the temporary files of unfinished checkpoints, or only the
+	// temporary files left behind by a crash during a checkpoint
+	private void deleteFiles(boolean temporaryFilesOnly) {
+		Pattern queueFilePattern = Pattern.compile(Pattern.quote(name) + "\\.(snapshot|\\d+\\.journal)(\\.\\d+)?(\\.tmp)?");
+		File[] files = journalDirectory.listFiles();
+
+		if(files == null)
+			return;
+
+		for(File file: files) {
+			Matcher matcher = queueFilePattern.matcher(file.getName());
+
+			if(matcher.matches() && (!temporaryFilesOnly || matcher.group(3) != null) && !file.delete())
+				logger.error(String.format("Failed to delete journal file %s", file));
+		}
+	}
+
+	// collects the snapshot and journal events: the surviving messages in push order and the last receive of each
+	private static class JournalRecovery implements MessageJournal.JournalHandler {
+		private final Map<String, Message> messages = new LinkedHashMap<>();
+		// last receive of every message by message id
+		private final Map<String, QueueSnapshot.Receipt> receipts = new HashMap<>();
+
+		@Override
+		public void onPush(Message message) {
+			messages.put(message.getMessageId(), message);
+		}
+
+		@Override
+		public void onReceive(String messageId, String receiptHandle, long receiptTime, long deadline) {
+			if(messages.containsKey(messageId))
+				receipts.put(messageId, new QueueSnapshot.Receipt(receiptHandle, receiptTime, deadline));
+		}
+
+		@Override
+		public void onDelete(String messageId) {
+			messages.remove(messageId);
+			receipts.remove(messageId);
+		}
+
+		@Override
+		public void onPurge() {
+			messages.clear();
+			receipts.clear();
+		}
+	}
+}
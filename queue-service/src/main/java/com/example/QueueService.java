@@ -1,10 +1,15 @@
 package com.example;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 
 public interface QueueService {
 
@@ -24,15 +29,57 @@ public interface QueueService {
 	// gets the number of available messages in the queue
 	int getApproximateNumberOfMessages(String qName);
 	
+	// gets the number of messages which were pushed with a delay and are not available yet
+	int getApproximateNumberOfMessagesDelayed(String qName);
+	
 	// clears the specified queue
 	boolean purgeQueue(String qName);
 	
     // pushes a message onto a queue.
 	String push(String qName, String messageBody);
 	
+	// pushes a message which becomes available delaySeconds (0 to 900) from now, overriding the queue specific 
+	// DelaySeconds.
+	String push(String qName, String messageBody, int delaySeconds);
+	
+	// pushes a message of the given message group onto a FIFO queue; the messages of a group are delivered one at a 
+	// time in push order, the messages of different groups in parallel.
+	String push(String qName, String messageBody, String messageGroupId);
+	
+	// same as above with a MessageDeduplicationId: a message pushed with the id of a message accepted within the 
+	// last 5 minutes is not pushed again, and the id of the original message is returned. messageGroupId may be null
+	// for a queue which is not FIFO, and messageDeduplicationId may be null to push without an id; with both null
+	// this is a plain push.
+	String push(String qName, String messageBody, String messageGroupId, String messageDeduplicationId);
+	
+	// pushes several messages onto a queue (SendMessageBatch semantics). Entry ids are the positions of 
+	// the bodies in the list; every entry is reported either as successful or as failed.
+	SendMessageBatchResult pushBatch(String qName, List<String> messageBodies);
+	
     // retrieves a single message from a queue.
 	Message pull(String qName);
 	
+	// retrieves a single message from a queue, waiting up to waitTimeSeconds for one to arrive (long polling).
+	Message pull(String qName, int waitTimeSeconds);
+	
+	// retrieves up to maxNumberOfMessages from a queue at once, long polling for up to waitTimeSeconds if the 
+	// queue is empty. Returns an empty list if no message arrived and null if the request is invalid.
+	List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds);
+	
+	// same as above, but the received messages stay invisible for visibilityTimeout seconds instead of the 
+	// queue specific VisibilityTimeout.
+	List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout);
+	
 	// deletes a message from the queue that was received by pull().
 	boolean delete(String qName, String receiptHandle);
+	
+	// deletes several messages at once (DeleteMessageBatch semantics). Entry ids are the receipt handles; 
+	// every receipt handle is reported either as successful or as failed.
+	DeleteMessageBatchResult deleteBatch(String qName, Collection<String> receiptHandles);
+	
+	// makes a message received by pull() visible again visibilityTimeout seconds from now; 0 releases it immediately.
+	boolean changeMessageVisibility(String qName, String receiptHandle, int visibilityTimeout);
+	
+	// changes the visibility of several messages at once (ChangeMessageVisibilityBatch semantics).
+	ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(String qName, List<ChangeMessageVisibilityBatchRequestEntry> entries);
 }
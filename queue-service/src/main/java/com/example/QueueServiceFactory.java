@@ -0,0 +1,138 @@
+package com.example;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+
+// Creates the QueueService implementation selected by configuration, so producers and consumers which only
+// depend on QueueService can be moved between engines without code changes. Recognized properties:
+//   queue.service.type              inmemory (default), file, shared or sqs
+//   queue.service.file.directory    base directory of the file based queues (required for type file)
+//   queue.service.file.segmentSize  size of the log segment files in bytes (default 64 MB)
+//   queue.service.journal.directory directory of the journals and snapshots of the inmemory queues; with it the
+//                                   queues survive a restart (optional, see DurableInMemoryQueueService)
+//   queue.service.spill.directory   directory of the spill files of the inmemory queues with MessageStorage spill
+//                                   (default: the temporary directory of the JVM)
+//   queue.service.shared.directory  directory of the ring files shared by the JVMs of one host (required for type shared)
+//   queue.service.shared.slotCount  number of message slots of a new ring (default 4096)
+//   queue.service.shared.slotSize   maximum size of an encoded message in bytes (default 16 KB)
+//   queue.service.sqs.sendLingerMillis   maximum time a push to SQS waits to share a SendMessageBatch with other
+//                                        pushes; enables buffered sends (optional)
+//   queue.service.sqs.maxConcurrentSends maximum number of batches sent at a time with buffered sends (default 5)
+public class QueueServiceFactory {
+	
+	public final static String typeProperty = "queue.service.type";
+	public final static String fileDirectoryProperty = "queue.service.file.directory";
+	public final static String fileSegmentSizeProperty = "queue.service.file.segmentSize";
+	public final static String journalDirectoryProperty = "queue.service.journal.directory";
+	public final static String spillDirectoryProperty = "queue.service.spill.directory";
+	public final static String sharedDirectoryProperty = "queue.service.shared.directory";
+	public final static String sharedSlotCountProperty = "queue.service.shared.slotCount";
+	public final static String sharedSlotSizeProperty = "queue.service.shared.slotSize";
+	public final static String sqsSendLingerMillisProperty = "queue.service.sqs.sendLingerMillis";
+	public final static String sqsMaxConcurrentSendsProperty = "queue.service.sqs.maxConcurrentSends";
+	public final static int defaultMaxConcurrentSends = 5;
+	private final static Logger logger = Logger.getLogger(QueueServiceFactory.class);
+	
+	// returns null if the configuration is invalid
+	public static QueueService create(Properties properties) {
+		String type = properties.getProperty(typeProperty, "inmemory");
+		
+		switch(type) {
+			case "inmemory":
+				return createInMemoryQueueService(properties);
+			case "file":
+				return createFileQueueService(properties);
+			case "shared":
+				return createSharedMemoryQueueService(properties);
+			case "sqs":
+				return createSqsQueueService(properties);
+			default:
+				logger.error(String.format("Unknown queue service type %s", type));
+				return null;
+		}
+	}
+	
+	private static QueueService createInMemoryQueueService(Properties properties) {
+		String journalDirectory = properties.getProperty(journalDirectoryProperty);
+		String spillDirectory = properties.getProperty(spillDirectoryProperty);
+		InMemoryQueueFactory queueFactory = new InMemoryQueueFactory(RefreshScheduler.getDefault(), TimeOrderedIdGenerator.getDefault(), 
+				journalDirectory == null ? null : new File(journalDirectory), spillDirectory == null ? null : new File(spillDirectory));
+		
+		if(journalDirectory == null)
+			return new InMemoryQueueService(queueFactory);
+		
+		return new DurableInMemoryQueueService(queueFactory);
+	}
+	
+	private static QueueService createSqsQueueService(Properties properties) {
+		String sendLingerMillis = properties.getProperty(sqsSendLingerMillisProperty);
+		
+		if(sendLingerMillis == null)
+			return new SqsQueueService(new AmazonSQSClient());
+		
+		long maxLingerMillis;
+		int maxConcurrentSends;
+		
+		try{
+			maxLingerMillis = Long.parseLong(sendLingerMillis);
+			maxConcurrentSends = Integer.parseInt(properties.getProperty(sqsMaxConcurrentSendsProperty, String.valueOf(defaultMaxConcurrentSends)));
+		}catch(NumberFormatException e) {
+			logger.error(String.format("Invalid buffered sends %s ms x %s", sendLingerMillis, properties.getProperty(sqsMaxConcurrentSendsProperty)));
+			return null;
+		}
+		
+		if(maxLingerMillis < 0 || maxConcurrentSends < 1) {
+			logger.error(String.format("Invalid buffered sends %d ms x %d", maxLingerMillis, maxConcurrentSends));
+			return null;
+		}
+		
+		return new SqsQueueService(new AmazonSQSClient(), maxLingerMillis, maxConcurrentSends);
+	}
+	
+	private static QueueService createFileQueueService(Properties properties) {
+		String directory = properties.getProperty(fileDirectoryProperty);
+		
+		if(directory == null) {
+			logger.error(String.format("%s is required for the file based queue service", fileDirectoryProperty));
+			return null;
+		}
+		
+		int segmentSize = FileQueueFactory.defaultSegmentSize;
+		
+		try{
+			segmentSize = Integer.parseInt(properties.getProperty(fileSegmentSizeProperty, String.valueOf(segmentSize)));
+		}catch(NumberFormatException e) {
+			logger.error(String.format("Invalid segment size %s", properties.getProperty(fileSegmentSizeProperty)));
+			return null;
+		}
+		
+		return new FileQueueService(new FileQueueFactory(new File(directory), segmentSize));
+	}
+	
+	private static QueueService createSharedMemoryQueueService(Properties properties) {
+		String directory = properties.getProperty(sharedDirectoryProperty);
+		
+		if(directory == null) {
+			logger.error(String.format("%s is required for the shared memory queue service", sharedDirectoryProperty));
+			return null;
+		}
+		
+		int slotCount = SharedMemoryQueueFactory.defaultSlotCount;
+		int slotSize = SharedMemoryQueueFactory.defaultSlotSize;
+		
+		try{
+			slotCount = Integer.parseInt(properties.getProperty(sharedSlotCountProperty, String.valueOf(slotCount)));
+			slotSize = Integer.parseInt(properties.getProperty(sharedSlotSizeProperty, String.valueOf(slotSize)));
+		}catch(NumberFormatException e) {
+			logger.error(String.format("Invalid ring geometry %s x %s", properties.getProperty(sharedSlotCountProperty), 
+					properties.getProperty(sharedSlotSizeProperty)));
+			return null;
+		}
+		
+		return new SharedMemoryQueueService(new SharedMemoryQueueFactory(new File(directory), slotCount, slotSize));
+	}
+}
@@ -0,0 +1,269 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Point-in-time copy of the state of one durable InMemoryQueue: its attributes, its inflight messages with their
+// receipts and its available messages. The copy is taken under the queue monitor but only holds references, since
+// messages do not change once pushed; writing it to disk happens afterwards, while the queue keeps serving.
+//
+// A snapshot file uses the MessageJournal record framing: a header record with the generation and the attributes,
+// one push record per message plus a receive record per inflight message, and an end record with the number of
+// messages. It is written under a temporary name, forced and atomically renamed, and a file without a valid end
+// record is rejected as a whole. The generation names the delta journal which continues the snapshot.
+public class QueueSnapshot {
+
+	// receipt of an inflight message
+	static class Receipt {
+		final String receiptHandle;
+		final long receiptTime;
+		final long deadline;
+
+		Receipt(String receiptHandle, long receiptTime, long deadline) {
+			this.receiptHandle = receiptHandle;
+			this.receiptTime = receiptTime;
+			this.deadline = deadline;
+		}
+	}
+
+	private final static byte headerRecord = 16;
+	private final static byte endRecord = 17;
+	private final static int writeBufferSize = 256 * 1024;
+	private final static Logger logger = Logger.getLogger(QueueSnapshot.class);
+
+	private final long generation;
+	private final Map<String, String> attributes;
+	private final List<Message> messages;
+	// parallel to messages; null for the available messages
+	private final List<Receipt> receipts;
+
+	public QueueSnapshot(long generation, Map<String, String> attributes) {
+		this.generation = generation;
+		this.attributes = new HashMap<>(attributes);
+		this.messages = new ArrayList<>();
+		this.receipts = new ArrayList<>();
+	}
+
+	public void addInflightMessage(Message message, String receiptHandle, long receiptTime, long deadline) {
+		messages.add(message);
+		receipts.add(new Receipt(receiptHandle, receiptTime, deadline));
+	}
+
+	public void addAvailableMessage(Message message) {
+		messages.add(message);
+		receipts.add(null);
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public int getNumberOfMessages() {
+		return messages.size();
+	}
+
+	// feeds the messages to journalHandler as push events, followed by a receive event for the inflight ones
+	public void replay(MessageJournal.JournalHandler journalHandler) {
+		for(int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			Receipt receipt = receipts.get(i);
+			journalHandler.onPush(message);
+
+			if(receipt != null)
+				journalHandler.onReceive(message.getMessageId(), receipt.receiptHandle, receipt.receiptTime, receipt.deadline);
+		}
+	}
+
+	// writes the snapshot to file atomically; returns the size of the snapshot
+	public long write(File file) throws IOException {
+		long size = writeTemporary(file);
+		publish(file);
+
+		return size;
+	}
+
+	// writes and forces the snapshot under a temporary name next to file, which is specific to the generation, so
+	// that concurrent writers of different generations never interfere; returns the size of the snapshot
+	public long writeTemporary(File file) throws IOException {
+		File temporaryFile = getTemporaryFile(file);
+		CRC32 crc = new CRC32();
+		long size;
+
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile, "rw")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			channel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.allocate(writeBufferSize);
+
+			buffer = writeRecord(channel, buffer, headerRecord, encodeHeader(), crc);
+
+			for(int i = 0; i < messages.size(); i++) {
+				Message message = messages.get(i);
+				Receipt receipt = receipts.get(i);
+				buffer = writeRecord(channel, buffer, MessageJournal.pushRecord, MessageJournal.encodePush(message), crc);
+
+				if(receipt != null)
+					buffer = writeRecord(channel, buffer, MessageJournal.receiveRecord, MessageJournal.encodeReceive(message.getMessageId(),
+							receipt.receiptHandle, receipt.receiptTime, receipt.deadline), crc);
+			}
+
+			buffer = writeRecord(channel, buffer, endRecord, ByteBuffer.allocate(4).putInt(messages.size()).array(), crc);
+			flush(channel, buffer);
+			channel.force(true);
+			size = channel.size();
+		}
+
+		return size;
+	}
+
+	// atomically replaces the snapshot at file with the one written by writeTemporary()
+	public void publish(File file) throws IOException {
+		Files.move(getTemporaryFile(file).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// removes the temporary file of an unpublished snapshot
+	public void discard(File file) {
+		getTemporaryFile(file).delete();
+	}
+
+	private File getTemporaryFile(File file) {
+		return new File(String.format("%s.%d.tmp", file.getPath(), generation));
+	}
+
+	// reads the snapshot at file; returns null if there is none or if it is incomplete or corrupt
+	public static QueueSnapshot read(File file) throws IOException {
+		if(!file.isFile())
+			return null;
+
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		SnapshotReader snapshotReader = new SnapshotReader();
+		int validLength = MessageJournal.readRecords(data, snapshotReader);
+
+		if(snapshotReader.snapshot == null || !snapshotReader.complete || validLength != data.capacity()) {
+			logger.error(String.format("Ignoring incomplete or corrupt snapshot %s", file));
+			return null;
+		}
+
+		return snapshotReader.snapshot;
+	}
+
+	// reads only the header record, i.e., the attributes of the snapshotted queue, without loading the messages;
+	// returns null if there is no valid header
+	public static Map<String, String> readAttributes(File file) throws IOException {
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			if(randomAccessFile.length() < MessageJournal.recordHeaderSize)
+				return null;
+
+			int length = randomAccessFile.readInt();
+			if(length <= 0 || length > randomAccessFile.length() - 8)
+				return null;
+
+			ByteBuffer record = ByteBuffer.allocate(8 + length);
+			randomAccessFile.seek(0);
+			randomAccessFile.readFully(record.array());
+
+			SnapshotReader snapshotReader = new SnapshotReader();
+			MessageJournal.readRecords(record, snapshotReader);
+
+			return snapshotReader.snapshot == null ? null : snapshotReader.snapshot.attributes;
+		}
+	}
+
+	private byte[] encodeHeader() {
+		List<byte[]> strings = new ArrayList<>();
+		int size = 12;
+
+		for(Map.Entry<String, String> attribute: attributes.entrySet()) {
+			byte[] name = MessageJournal.utf8(attribute.getKey());
+			byte[] value = MessageJournal.utf8(attribute.getValue());
+			strings.add(name);
+			strings.add(value);
+			size += 8 + MessageJournal.length(name) + MessageJournal.length(value);
+		}
+
+		ByteBuffer payload = ByteBuffer.allocate(size);
+		payload.putLong(generation).putInt(attributes.size());
+		for(byte[] string: strings)
+			MessageJournal.putBytes(payload, string);
+
+		return payload.array();
+	}
+
+	// buffers a record and writes the buffer out once it is full; returns the buffer to continue with
+	private static ByteBuffer writeRecord(FileChannel channel, ByteBuffer buffer, byte type, byte[] payload, CRC32 crc) throws IOException {
+		int recordSize = MessageJournal.recordHeaderSize + payload.length;
+
+		if(buffer.remaining() < recordSize) {
+			flush(channel, buffer);
+
+			if(buffer.capacity() < recordSize)
+				buffer = ByteBuffer.allocate(recordSize);
+		}
+
+		MessageJournal.putRecord(buffer, type, payload, crc);
+
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	// rebuilds a snapshot from its records; complete once the end record matches the number of messages read
+	private static class SnapshotReader implements MessageJournal.RecordHandler {
+		private QueueSnapshot snapshot;
+		private boolean complete;
+
+		@Override
+		public void handle(byte type, ByteBuffer payload) {
+			if(type == headerRecord) {
+				long generation = payload.getLong();
+				int numberOfAttributes = payload.getInt();
+				Map<String, String> attributes = new HashMap<>();
+
+				for(int i = 0; i < numberOfAttributes; i++)
+					attributes.put(MessageJournal.getString(payload), MessageJournal.getString(payload));
+
+				snapshot = new QueueSnapshot(generation, attributes);
+			}
+			else if(snapshot == null || complete) {
+				return;
+			}
+			else if(type == MessageJournal.pushRecord) {
+				snapshot.addAvailableMessage(MessageJournal.decodePush(payload));
+			}
+			else if(type == MessageJournal.receiveRecord) {
+				int last = snapshot.messages.size() - 1;
+				String messageId = MessageJournal.getString(payload);
+				String receiptHandle = MessageJournal.getString(payload);
+
+				if(last >= 0 && Objects.equals(snapshot.messages.get(last).getMessageId(), messageId))
+					snapshot.receipts.set(last, new Receipt(receiptHandle, payload.getLong(), payload.getLong()));
+			}
+			else if(type == endRecord) {
+				complete = payload.getInt() == snapshot.messages.size();
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Queue URLs by queue name, so SqsQueueService resolves the URL of a queue once instead of paying a GetQueueUrl round
+// trip before every request. An entry expires ttlMillis after it was resolved, which bounds how long a stale URL is
+// used, and is invalidated as soon as a request reports that the queue does not exist. Beyond maximumSize the least
+// recently used entries are evicted. Thread safe.
+public class QueueUrlCache {
+
+	public final static long defaultTtlMillis = 5 * 60 * 1000L;
+	public final static int defaultMaximumSize = 1000;
+
+	private static class Entry {
+		final String queueUrl;
+		final long expiryTime;
+
+		Entry(String queueUrl, long expiryTime) {
+			this.queueUrl = queueUrl;
+			this.expiryTime = expiryTime;
+		}
+	}
+
+	private final long ttlMillis;
+	// access ordered, the least recently used entry first; guarded by this
+	private final LinkedHashMap<String, Entry> entries;
+
+	public QueueUrlCache() {
+		this(defaultTtlMillis, defaultMaximumSize);
+	}
+
+	public QueueUrlCache(long ttlMillis, final int maximumSize) {
+		if(ttlMillis < 1 || maximumSize < 1)
+			throw new IllegalArgumentException(String.format("Invalid time to live %d or size %d", ttlMillis, maximumSize));
+
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	// URL of the queue if it was resolved within the time to live at now; null otherwise
+	public synchronized String get(String qName, long now) {
+		Entry entry = entries.get(qName);
+
+		if(entry == null)
+			return null;
+
+		if(entry.expiryTime <= now) {
+			entries.remove(qName);
+			return null;
+		}
+
+		return entry.queueUrl;
+	}
+
+	public synchronized void put(String qName, String queueUrl, long now) {
+		entries.put(qName, new Entry(queueUrl, now + ttlMillis));
+	}
+
+	// forgets the URL of a queue which was deleted or reported as not existing
+	public synchronized void invalidate(String qName) {
+		entries.remove(qName);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
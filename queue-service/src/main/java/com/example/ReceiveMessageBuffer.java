@@ -0,0 +1,263 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+// Messages of one SQS queue received ahead of the consumers, so a pull is served locally instead of paying a
+// ReceiveMessage round trip. A background thread long polls for up to maxBatchSize messages at a time while fewer
+// than maxPrefetchedMessages are buffered. A received message is invisible for visibilityTimeoutSeconds from the
+// receive on, and it is handed out only while the consumer has at least a tenth of that timeout (at most a second)
+// left to delete it; older ones are dropped, since SQS delivers them again anyway. stop() hands the buffered
+// messages back to the queue.
+public class ReceiveMessageBuffer implements Runnable {
+
+	public final static int maxBatchSize = 10;
+	// pause after a failed receive
+	private final static long retryDelayMillis = 1000L;
+
+	private final static Logger logger = Logger.getLogger(ReceiveMessageBuffer.class);
+
+	private static class Entry {
+		final Message message;
+		// time the message must be handed out by
+		final long expiryTime;
+
+		Entry(Message message, long expiryTime) {
+			this.message = message;
+			this.expiryTime = expiryTime;
+		}
+	}
+
+	private final AmazonSQSClient sqsClient;
+	private final QueueUrlCache queueUrlCache;
+	private final String qName;
+	private final String queueUrl;
+	private final int maxPrefetchedMessages;
+	private final int waitTimeSeconds;
+	private final int visibilityTimeoutSeconds;
+	private final long minRemainingMillis;
+	// buffered messages in receive order, so the earliest expiry is at the head; guarded by this
+	private final ArrayDeque<Entry> messages = new ArrayDeque<>();
+	private int expiredCount;
+	private boolean stopped;
+	private Thread prefetchThread;
+
+	public ReceiveMessageBuffer(AmazonSQSClient sqsClient, QueueUrlCache queueUrlCache, String qName, String queueUrl, int maxPrefetchedMessages,
+			int waitTimeSeconds, int visibilityTimeoutSeconds) {
+		if(maxPrefetchedMessages < 1 || waitTimeSeconds < 1 || visibilityTimeoutSeconds < 1)
+			throw new IllegalArgumentException(String.format("Invalid number of messages %d, wait time %d or visibility timeout %d",
+					maxPrefetchedMessages, waitTimeSeconds, visibilityTimeoutSeconds));
+
+		this.sqsClient = sqsClient;
+		this.queueUrlCache = queueUrlCache;
+		this.qName = qName;
+		this.queueUrl = queueUrl;
+		this.maxPrefetchedMessages = maxPrefetchedMessages;
+		this.waitTimeSeconds = waitTimeSeconds;
+		this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+		this.minRemainingMillis = Math.min(1000L, visibilityTimeoutSeconds * 100L);
+	}
+
+	public synchronized void start() {
+		prefetchThread = new Thread(this, "sqs-prefetch-" + qName);
+		prefetchThread.setDaemon(true);
+		prefetchThread.start();
+	}
+
+	// stops the prefetching and makes the buffered messages visible again; a receive in progress is released once it
+	// returns
+	public void stop() {
+		List<Message> bufferedMessages = new ArrayList<>();
+
+		synchronized(this) {
+			stopped = true;
+			for(Entry entry: messages)
+				bufferedMessages.add(entry.message);
+			messages.clear();
+			notifyAll();
+		}
+
+		release(bufferedMessages);
+	}
+
+	// takes up to maxNumberOfMessages buffered messages, waiting up to waitTimeSeconds for the first one; an empty list
+	// if none arrived
+	public synchronized List<Message> take(int maxNumberOfMessages, int waitTimeSeconds) {
+		long deadline = System.currentTimeMillis() + waitTimeSeconds * 1000L;
+		List<Message> takenMessages = new ArrayList<>(maxNumberOfMessages);
+
+		dropExpired(System.currentTimeMillis());
+
+		try{
+			while(messages.isEmpty() && !stopped) {
+				long delay = deadline - System.currentTimeMillis();
+
+				if(delay <= 0)
+					break;
+
+				wait(delay);
+				dropExpired(System.currentTimeMillis());
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		while(takenMessages.size() < maxNumberOfMessages && !messages.isEmpty())
+			takenMessages.add(messages.pollFirst().message);
+
+		// the prefetch thread may receive again
+		if(!takenMessages.isEmpty())
+			notifyAll();
+
+		return takenMessages;
+	}
+
+	public synchronized int getNumberOfBufferedMessages() {
+		return messages.size();
+	}
+
+	// number of messages dropped because their visibility timeout ran out in the buffer
+	public synchronized int getNumberOfExpiredMessages() {
+		return expiredCount;
+	}
+
+	public synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	@Override
+	public void run() {
+		while(true) {
+			int maxNumberOfMessages = awaitSpace();
+
+			if(maxNumberOfMessages == 0)
+				return;
+
+			// the visibility timeout counts from about the time the request is sent
+			long receiveTime = System.currentTimeMillis();
+			ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(maxNumberOfMessages)
+					.withWaitTimeSeconds(waitTimeSeconds).withVisibilityTimeout(visibilityTimeoutSeconds).withAttributeNames("All");
+			List<Message> receivedMessages;
+
+			try{
+				receivedMessages = sqsClient.receiveMessage(receiveMessageRequest).getMessages();
+			}catch(AmazonServiceException e) {
+				// the messages of a deleted queue need no release
+				if(SqsQueueService.isNonExistentQueue(e)) {
+					queueUrlCache.invalidate(qName);
+					if(setStopped())
+						logger.error(String.format("Queue %s does not exist. Stopped prefetching its messages", qName));
+					return;
+				}
+
+				if(!isStopped())
+					logger.error(String.format("Failed to prefetch messages from the queue %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+				pause();
+				continue;
+			}catch (AmazonClientException e) {
+				if(!isStopped())
+					logger.error(String.format("Unable to reach message queue %s", qName), e);
+		        pause();
+		        continue;
+		    }
+
+			if(!add(receivedMessages, receiveTime + visibilityTimeoutSeconds * 1000L - minRemainingMillis)) {
+				release(receivedMessages);
+				return;
+			}
+		}
+	}
+
+	// waits until fewer than maxPrefetchedMessages are buffered and returns how many to receive; 0 once stopped
+	private synchronized int awaitSpace() {
+		try{
+			while(!stopped) {
+				long now = System.currentTimeMillis();
+				dropExpired(now);
+
+				if(messages.size() < maxPrefetchedMessages)
+					return Math.min(maxBatchSize, maxPrefetchedMessages - messages.size());
+
+				// a full buffer has room again once its first message expires at the latest
+				wait(Math.max(1L, messages.peekFirst().expiryTime - now));
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return 0;
+	}
+
+	// false if the buffer was stopped meanwhile
+	private synchronized boolean add(List<Message> receivedMessages, long expiryTime) {
+		if(stopped)
+			return false;
+
+		for(Message message: receivedMessages)
+			messages.addLast(new Entry(message, expiryTime));
+
+		if(!receivedMessages.isEmpty())
+			notifyAll();
+
+		return true;
+	}
+
+	// stops without releasing the buffered messages; false if it was stopped already
+	private synchronized boolean setStopped() {
+		if(stopped)
+			return false;
+
+		stopped = true;
+		messages.clear();
+		notifyAll();
+		return true;
+	}
+
+	private void dropExpired(long now) {
+		while(!messages.isEmpty() && messages.peekFirst().expiryTime <= now) {
+			messages.pollFirst();
+			expiredCount++;
+		}
+	}
+
+	private synchronized void pause() {
+		try{
+			if(!stopped)
+				wait(retryDelayMillis);
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// makes the messages visible again, so other consumers need not wait for their visibility timeout
+	private void release(List<Message> releasedMessages) {
+		for(int i = 0; i < releasedMessages.size(); i += maxBatchSize) {
+			List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(maxBatchSize);
+
+			for(int j = i; j < Math.min(i + maxBatchSize, releasedMessages.size()); j++)
+				entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(j - i), releasedMessages.get(j).getReceiptHandle())
+						.withVisibilityTimeout(0));
+
+			try{
+				sqsClient.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+			}catch(AmazonServiceException e) {
+				if(SqsQueueService.isNonExistentQueue(e))
+					return;
+				logger.error(String.format("Failed to release prefetched messages of the queue %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+			}catch (AmazonClientException e) {
+		        logger.error(String.format("Unable to reach message queue %s", qName), e);
+		    }
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.example;
+
+// ReceiveMessageWaitTimeSeconds is the default long-poll duration of pull(); 0 means return immediately
+public class ReceiveMessageWaitTimeSecondsValidator extends IntegerRangeValidator {
+	final static int minValue = 0;
+	final static int maxValue = 20;
+	private final static int defaultValue = 0;
+	
+	public ReceiveMessageWaitTimeSecondsValidator() {
+		super(minValue, maxValue, defaultValue);
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.example;
+
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.databind.JsonNode;
+
+// RedrivePolicy attribute of a queue in the SQS format, {"maxReceiveCount":"5","deadLetterTargetArn":"<queue ARN>"}.
+// The dead-letter queue is the queue named by the last element of the ARN, so a plain queue name works as well. A
+// message which was received maxReceiveCount times without being deleted moves to the dead-letter queue instead of
+// becoming visible again.
+public class RedrivePolicy {
+
+	final static int minMaxReceiveCount = 1;
+	final static int maxMaxReceiveCount = 1000;
+	private final static String maxReceiveCountField = "maxReceiveCount";
+	private final static String deadLetterTargetArnField = "deadLetterTargetArn";
+
+	private final int maxReceiveCount;
+	private final String deadLetterTargetQueue;
+
+	public RedrivePolicy(int maxReceiveCount, String deadLetterTargetQueue) {
+		this.maxReceiveCount = maxReceiveCount;
+		this.deadLetterTargetQueue = deadLetterTargetQueue;
+	}
+
+	public int getMaxReceiveCount() {
+		return maxReceiveCount;
+	}
+
+	// name of the dead-letter queue
+	public String getDeadLetterTargetQueue() {
+		return deadLetterTargetQueue;
+	}
+
+	// null for a null or empty value, i.e., no redrive policy; throws IllegalArgumentException for an invalid value
+	public static RedrivePolicy parse(String value) {
+		if(StringUtils.isNullOrEmpty(value))
+			return null;
+
+		JsonNode policy;
+		try{
+			policy = Jackson.jsonNodeOf(value);
+		}catch(RuntimeException e) {
+			throw new IllegalArgumentException(String.format("Invalid redrive policy %s", value), e);
+		}
+
+		JsonNode maxReceiveCountNode = policy == null ? null : policy.get(maxReceiveCountField);
+		JsonNode deadLetterTargetArnNode = policy == null ? null : policy.get(deadLetterTargetArnField);
+
+		if(maxReceiveCountNode == null || deadLetterTargetArnNode == null)
+			throw new IllegalArgumentException(String.format("Redrive policy lacks %s or %s: %s", maxReceiveCountField, deadLetterTargetArnField, value));
+
+		int maxReceiveCount;
+		try{
+			maxReceiveCount = Integer.parseInt(maxReceiveCountNode.asText());
+		}catch(NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("Invalid %s in redrive policy %s", maxReceiveCountField, value), e);
+		}
+
+		if(maxReceiveCount < minMaxReceiveCount || maxReceiveCount > maxMaxReceiveCount)
+			throw new IllegalArgumentException(String.format("Invalid %s in redrive policy %s", maxReceiveCountField, value));
+
+		String deadLetterTargetArn = deadLetterTargetArnNode.asText();
+		String deadLetterTargetQueue = deadLetterTargetArn.substring(deadLetterTargetArn.lastIndexOf(':') + 1);
+
+		if(deadLetterTargetQueue.isEmpty())
+			throw new IllegalArgumentException(String.format("Invalid %s in redrive policy %s", deadLetterTargetArnField, value));
+
+		return new RedrivePolicy(maxReceiveCount, deadLetterTargetQueue);
+	}
+}
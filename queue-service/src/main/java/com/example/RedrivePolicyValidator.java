@@ -0,0 +1,24 @@
+package com.example;
+
+import org.apache.log4j.Logger;
+
+// RedrivePolicy is a JSON document as in SQS (see RedrivePolicy); empty means no redrive policy
+public class RedrivePolicyValidator implements AttributeValidator {
+	private final static Logger logger = Logger.getLogger(RedrivePolicyValidator.class);
+
+	@Override
+	public boolean validate(String value) {
+		try{
+			RedrivePolicy.parse(value);
+			return true;
+		}catch(IllegalArgumentException e) {
+			logger.error(String.format("Invalid value - %s", e.getMessage()));
+			return false;
+		}
+	}
+
+	@Override
+	public String getDefault() {
+		return "";
+	}
+}
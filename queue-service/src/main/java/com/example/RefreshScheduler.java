@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+// Service wide scheduler for refreshQueue(). Instead of one timer thread per queue polling at a fixed rate, 
+// queues register the deadline of their earliest inflight message and a single thread refreshes them when 
+// that deadline has passed. Deadlines are rounded up to the tick resolution so that queues expiring 
+// around the same time are refreshed in one wakeup. Queues without inflight messages are never scheduled.
+public class RefreshScheduler {
+	private static RefreshScheduler defaultScheduler;
+	private final static long defaultTickMillis = 10L;
+	
+	// min-heap of pending refreshes ordered by deadline
+	private final PriorityQueue<ScheduledTask> tasks;
+	private final long tickMillis;
+	private final Thread schedulerThread;
+	private boolean shutdown;
+	private final static Logger logger = Logger.getLogger(RefreshScheduler.class);
+	
+	public RefreshScheduler(long tickMillis) {
+		if(tickMillis < 1)
+			throw new IllegalArgumentException(String.format("Invalid tick resolution %d", tickMillis));
+		
+		this.tickMillis = tickMillis;
+		this.tasks = new PriorityQueue<>();
+		
+		schedulerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runTasks();
+			}
+		}, "queue-refresh-scheduler");
+		schedulerThread.setDaemon(true);
+		schedulerThread.start();
+	}
+	
+	// scheduler shared by all the queues which are not given one explicitly
+	public static synchronized RefreshScheduler getDefault() {
+		if(defaultScheduler == null)
+			defaultScheduler = new RefreshScheduler(defaultTickMillis);
+		
+		return defaultScheduler;
+	}
+	
+	// schedules queue.refreshQueue() at the given time in milliseconds (rounded up to the next tick)
+	public synchronized void schedule(MessageQueue queue, long deadline) {
+		if(shutdown)
+			return;
+		
+		long roundedDeadline = ((deadline + tickMillis - 1) / tickMillis) * tickMillis;
+		ScheduledTask task = new ScheduledTask(queue, roundedDeadline);
+		tasks.offer(task);
+		
+		// only the scheduler thread waits on this monitor; wake it if the new task is now the earliest one
+		if(tasks.peek() == task)
+			notify();
+	}
+	
+	// drops all the pending refreshes of the queue, e.g., when it is deleted
+	public synchronized void cancel(MessageQueue queue) {
+		tasks.removeIf(task -> task.messageQueue == queue);
+	}
+	
+	public synchronized int getNumberOfScheduledTasks() {
+		return tasks.size();
+	}
+	
+	public synchronized void shutdown() {
+		shutdown = true;
+		tasks.clear();
+		notify();
+	}
+	
+	private void runTasks() {
+		while(true) {
+			ScheduledTask task = null;
+			
+			try{
+				task = takeDueTask();
+			}catch(InterruptedException e) {
+				return;
+			}
+			
+			if(task == null)
+				return;
+			
+			// the queue is refreshed outside the scheduler monitor so that queues can schedule while being refreshed
+			try{
+				task.run();
+			}catch(Exception e) {
+				logger.error(String.format("Exception caught while refreshing queue %s", task.messageQueue.getName()), e);
+			}
+		}
+	}
+	
+	// blocks until the earliest task is due; returns null once the scheduler is shut down
+	private synchronized ScheduledTask takeDueTask() throws InterruptedException {
+		while(!shutdown) {
+			ScheduledTask task = tasks.peek();
+			
+			if(task == null) {
+				wait();
+				continue;
+			}
+			
+			long delay = task.deadline - System.currentTimeMillis();
+			
+			if(delay <= 0)
+				return tasks.poll();
+			
+			wait(delay);
+		}
+		
+		return null;
+	}
+}
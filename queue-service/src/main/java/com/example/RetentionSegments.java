@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.ArrayDeque;
+
+// Sent times of the messages of a queue's available deque, run-length encoded in the same order: a segment is a run
+// of consecutive messages sent within the same window of windowMillis. Producers append to the last segment, so a
+// backlog costs one segment per window it spans instead of a timestamp per message, and expiring the messages sent
+// before a cutoff drops whole segments from the head. Messages put back at the head (redeliveries) or appended late
+// (promoted delayed messages) start segments of their own, so the order of the windows is not strictly ascending;
+// an expired segment behind a live one is dropped once it reaches the head. Not thread safe, the owning queue
+// guards it.
+public class RetentionSegments {
+
+	public final static long defaultWindowMillis = 1000L;
+
+	private static class Segment {
+		// start of the window the messages of the segment were sent in
+		final long window;
+		int count;
+
+		Segment(long window) {
+			this.window = window;
+		}
+	}
+
+	private final long windowMillis;
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	private int size;
+
+	public RetentionSegments() {
+		this(defaultWindowMillis);
+	}
+
+	public RetentionSegments(long windowMillis) {
+		if(windowMillis < 1)
+			throw new IllegalArgumentException(String.format("Invalid window %d", windowMillis));
+
+		this.windowMillis = windowMillis;
+	}
+
+	// records a message sent at sentTime behind the others
+	public void addLast(long sentTime) {
+		long window = getWindow(sentTime);
+		Segment segment = segments.peekLast();
+
+		if(segment == null || segment.window != window) {
+			segment = new Segment(window);
+			segments.addLast(segment);
+		}
+
+		segment.count++;
+		size++;
+	}
+
+	// records a message sent at sentTime in front of the others
+	public void addFirst(long sentTime) {
+		long window = getWindow(sentTime);
+		Segment segment = segments.peekFirst();
+
+		if(segment == null || segment.window != window) {
+			segment = new Segment(window);
+			segments.addFirst(segment);
+		}
+
+		segment.count++;
+		size++;
+	}
+
+	// forgets the first message and returns the start of the window it was sent in
+	public long removeFirst() {
+		Segment segment = segments.getFirst();
+
+		if(--segment.count == 0)
+			segments.removeFirst();
+		size--;
+
+		return segment.window;
+	}
+
+	// forgets the leading messages whose window ended at or before cutoff and returns their number; the queue drops
+	// as many messages from the head of its deque
+	public int removeExpired(long cutoff) {
+		int expiredCount = 0;
+
+		while(!segments.isEmpty() && isExpired(segments.getFirst().window, cutoff))
+			expiredCount += segments.removeFirst().count;
+
+		size -= expiredCount;
+		return expiredCount;
+	}
+
+	// time at which the first segment expires with the given retention period; Long.MAX_VALUE if there is none
+	public long getNextExpiryTime(long retentionMillis) {
+		return segments.isEmpty() ? Long.MAX_VALUE : segments.getFirst().window + windowMillis + retentionMillis;
+	}
+
+	// true if a message sent at sentTime is expired at cutoff, i.e., its whole window lies before cutoff
+	public boolean isExpired(long sentTime, long cutoff) {
+		return getWindow(sentTime) + windowMillis <= cutoff;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getNumberOfSegments() {
+		return segments.size();
+	}
+
+	public void clear() {
+		segments.clear();
+		size = 0;
+	}
+
+	private long getWindow(long sentTime) {
+		return sentTime - Math.floorMod(sentTime, windowMillis);
+	}
+}
@@ -1,13 +1,15 @@
 package com.example;
 
-import java.util.TimerTask;
-
-public class ScheduledTask extends TimerTask{
+// A pending refreshQueue() of a queue, ordered by its deadline in the RefreshScheduler
+public class ScheduledTask implements Runnable, Comparable<ScheduledTask> {
 
 	MessageQueue messageQueue;
+	// time in milliseconds at which the queue needs to be refreshed
+	long deadline;
 	
-	public ScheduledTask(MessageQueue messageQueue) {
+	public ScheduledTask(MessageQueue messageQueue, long deadline) {
 		this.messageQueue = messageQueue;
+		this.deadline = deadline;
 	}
 
 	@Override
@@ -15,4 +17,9 @@ public class ScheduledTask extends TimerTask{
 		messageQueue.refreshQueue();
 	}
 
+	@Override
+	public int compareTo(ScheduledTask other) {
+		return Long.compare(deadline, other.deadline);
+	}
+
 }
@@ -0,0 +1,326 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+// Append-only log made of fixed size segment files which are written and read through MappedByteBuffers.
+// A record is addressed by its position, i.e., the base offset of its segment (also the file name) plus its
+// offset within the segment. Record layout: [int length of type and payload][int CRC32 of type and payload][byte type]
+// [payload]. The length is never 0 and a single append writes it last, so an interrupted append leaves a zero length
+// (end of log) or fails the CRC check, and recovery stops at the last complete record of a segment. A batch append
+// writes the lengths along with the records, so there the CRC check alone detects a torn record.
+//
+// Every segment counts its retained records; once all the records of the oldest segments are released those segments
+// are deleted. Only a prefix of the log is ever deleted, so records which refer to earlier positions (e.g., deletes)
+// never outlive the records they refer to. Not thread safe, the owning queue guards it with its monitor.
+public class SegmentedLog {
+
+	// called for every complete record while an existing log is opened, in position order
+	public interface RecordHandler {
+		void handle(long position, byte type, ByteBuffer payload);
+	}
+
+	private static class Segment {
+		private final long baseOffset;
+		private final File file;
+		private MappedByteBuffer buffer;
+		private int retainedRecords;
+
+		private Segment(long baseOffset, File file, MappedByteBuffer buffer) {
+			this.baseOffset = baseOffset;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	public final static int recordHeaderSize = 9;
+	private final static String segmentFileSuffix = ".log";
+	private final static Logger logger = Logger.getLogger(SegmentedLog.class);
+
+	private final File directory;
+	private final int segmentSize;
+	// segments by base offset; the last one is the active segment which receives the appends
+	private final TreeMap<Long, Segment> segments;
+	private Segment activeSegment;
+	private int writeOffset;
+	private final CRC32 crc;
+
+	public SegmentedLog(File directory, int segmentSize, RecordHandler recordHandler) throws IOException {
+		if(segmentSize <= recordHeaderSize)
+			throw new IllegalArgumentException(String.format("Segment size (%d) must exceed the record header", segmentSize));
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.segments = new TreeMap<>();
+		this.crc = new CRC32();
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException(String.format("Failed to create log directory %s", directory));
+
+		recover(recordHandler);
+	}
+
+	// appends a record and returns its position. A retained record keeps its segment alive until it is released.
+	public long append(byte type, byte[] payload, boolean retained) throws IOException {
+		return append(type, ByteBuffer.wrap(payload), retained);
+	}
+
+	// appends the remaining bytes of payload; the payload buffer is consumed
+	public long append(byte type, ByteBuffer payload, boolean retained) throws IOException {
+		int payloadLength = payload.remaining();
+		int recordSize = recordHeaderSize + payloadLength;
+
+		if(recordSize > segmentSize)
+			throw new IllegalArgumentException(String.format("Record of %d bytes exceeds the segment size %d", recordSize, segmentSize));
+
+		if(writeOffset + recordSize > segmentSize)
+			rollSegment();
+
+		MappedByteBuffer buffer = activeSegment.buffer;
+		ByteBuffer recordBuffer = buffer.duplicate();
+		recordBuffer.position(writeOffset + 8);
+		recordBuffer.put(type);
+		recordBuffer.put(payload);
+
+		// the checksum is computed over the mapped bytes, so the payload is copied only once
+		recordBuffer.flip();
+		recordBuffer.position(writeOffset + 8);
+		crc.reset();
+		crc.update(recordBuffer);
+
+		buffer.putInt(writeOffset + 4, (int) crc.getValue());
+		// the length marks the record as complete
+		buffer.putInt(writeOffset, payloadLength + 1);
+
+		long position = activeSegment.baseOffset + writeOffset;
+		writeOffset += recordSize;
+
+		if(retained)
+			activeSegment.retainedRecords++;
+
+		return position;
+	}
+
+	// appends one record of the given type per payload as a single write: payloads holds the payloads back to back,
+	// payloadLengths[i] is the length of the i-th one, and the positions of the records are added to positions in
+	// order. The checksums are computed over the heap bytes and all the records which fit into the active segment
+	// are copied into its mapping in one go; the rest continues in the next segment. payloads must be array backed.
+	public void appendAll(byte type, ByteBuffer payloads, int[] payloadLengths, int count, boolean retained, LongDeque positions) throws IOException {
+		byte[] payloadBytes = payloads.array();
+		int payloadOffset = payloads.arrayOffset() + payloads.position();
+		int index = 0;
+
+		while(index < count) {
+			int batchEnd = index;
+			int batchSize = 0;
+
+			while(batchEnd < count && writeOffset + batchSize + recordHeaderSize + payloadLengths[batchEnd] <= segmentSize)
+				batchSize += recordHeaderSize + payloadLengths[batchEnd++];
+
+			if(batchEnd == index) {
+				if(recordHeaderSize + payloadLengths[index] > segmentSize)
+					throw new IllegalArgumentException(String.format("Record of %d bytes exceeds the segment size %d", recordHeaderSize + payloadLengths[index], segmentSize));
+
+				rollSegment();
+				continue;
+			}
+
+			ByteBuffer recordBuffer = activeSegment.buffer.duplicate();
+			recordBuffer.position(writeOffset);
+
+			for(int i = index; i < batchEnd; i++) {
+				int payloadLength = payloadLengths[i];
+
+				crc.reset();
+				crc.update(type);
+				crc.update(payloadBytes, payloadOffset, payloadLength);
+
+				positions.addLast(activeSegment.baseOffset + recordBuffer.position());
+				recordBuffer.putInt(payloadLength + 1);
+				recordBuffer.putInt((int) crc.getValue());
+				recordBuffer.put(type);
+				recordBuffer.put(payloadBytes, payloadOffset, payloadLength);
+				payloadOffset += payloadLength;
+			}
+
+			writeOffset += batchSize;
+
+			if(retained)
+				activeSegment.retainedRecords += batchEnd - index;
+
+			index = batchEnd;
+		}
+
+		payloads.position(payloadOffset - payloads.arrayOffset());
+	}
+
+	// payload of the record at position, as a read only buffer positioned at its first byte
+	public ByteBuffer read(long position) {
+		Segment segment = getSegment(position);
+		int offset = (int) (position - segment.baseOffset);
+		int length = segment.buffer.getInt(offset);
+
+		ByteBuffer payload = segment.buffer.asReadOnlyBuffer();
+		payload.limit(offset + 8 + length);
+		payload.position(offset + recordHeaderSize);
+
+		return payload.slice();
+	}
+
+	// marks the record at position as retained, e.g., for records which are still live after recovery
+	public void retain(long position) {
+		getSegment(position).retainedRecords++;
+	}
+
+	// releases a retained record and deletes the oldest segments which no longer hold retained records
+	public void release(long position) {
+		Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+
+		if(entry != null)
+			entry.getValue().retainedRecords--;
+
+		deleteReleasedSegments();
+	}
+
+	// deletes the prefix of segments without retained records; the active segment is always kept
+	public void deleteReleasedSegments() {
+		while(segments.size() > 1) {
+			Segment oldestSegment = segments.firstEntry().getValue();
+
+			if(oldestSegment.retainedRecords > 0)
+				break;
+
+			segments.pollFirstEntry();
+			oldestSegment.buffer = null;
+
+			if(!oldestSegment.file.delete())
+				logger.error(String.format("Failed to delete log segment %s", oldestSegment.file));
+		}
+	}
+
+	public int getNumberOfSegments() {
+		return segments.size();
+	}
+
+	// total number of bytes written to the log since its first retained segment
+	public long getSize() {
+		return activeSegment.baseOffset + writeOffset - segments.firstKey();
+	}
+
+	// flushes the dirty pages of all segments to the storage device
+	public void force() {
+		for(Segment segment: segments.values())
+			segment.buffer.force();
+	}
+
+	// flushes and drops the mappings; the files stay on disk and can be opened again
+	public void close() {
+		force();
+
+		// mapped regions are unmapped by the garbage collector once the buffers are unreachable
+		for(Segment segment: segments.values())
+			segment.buffer = null;
+	}
+
+	private Segment getSegment(long position) {
+		Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+
+		if(entry == null || position - entry.getKey() >= segmentSize)
+			throw new IllegalArgumentException(String.format("Position %d is not in the log", position));
+
+		return entry.getValue();
+	}
+
+	private void rollSegment() throws IOException {
+		activeSegment = openSegment(activeSegment.baseOffset + segmentSize);
+		segments.put(activeSegment.baseOffset, activeSegment);
+		writeOffset = 0;
+	}
+
+	private Segment openSegment(long baseOffset) throws IOException {
+		File file = new File(directory, String.format("%020d%s", baseOffset, segmentFileSuffix));
+
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(segmentSize);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+			return new Segment(baseOffset, file, buffer);
+		}
+	}
+
+	// maps the existing segments in position order and replays their complete records
+	private void recover(RecordHandler recordHandler) throws IOException {
+		File[] segmentFiles = directory.listFiles();
+		Arrays.sort(segmentFiles);
+
+		for(File segmentFile: segmentFiles) {
+			String fileName = segmentFile.getName();
+
+			if(!fileName.endsWith(segmentFileSuffix))
+				continue;
+
+			long baseOffset = Long.parseLong(fileName.substring(0, fileName.length() - segmentFileSuffix.length()));
+			activeSegment = openSegment(baseOffset);
+			segments.put(baseOffset, activeSegment);
+			writeOffset = replaySegment(activeSegment, recordHandler);
+		}
+
+		if(activeSegment == null) {
+			activeSegment = openSegment(0L);
+			segments.put(0L, activeSegment);
+			writeOffset = 0;
+		}
+	}
+
+	// returns the offset behind the last complete record; a torn record and everything behind it is zeroed
+	private int replaySegment(Segment segment, RecordHandler recordHandler) {
+		MappedByteBuffer buffer = segment.buffer;
+		int offset = 0;
+
+		while(offset + recordHeaderSize <= segmentSize) {
+			int length = buffer.getInt(offset);
+
+			if(length == 0)
+				return offset;
+
+			if(length < 0 || offset + 8 + length > segmentSize || !hasValidChecksum(buffer, offset, length)) {
+				logger.error(String.format("Truncating torn record at offset %d of log segment %s", offset, segment.file));
+
+				for(int i = offset; i < segmentSize; i++)
+					buffer.put(i, (byte) 0);
+
+				return offset;
+			}
+
+			ByteBuffer payload = buffer.asReadOnlyBuffer();
+			payload.limit(offset + 8 + length);
+			payload.position(offset + recordHeaderSize);
+			recordHandler.handle(segment.baseOffset + offset, buffer.get(offset + 8), payload.slice());
+
+			offset += 8 + length;
+		}
+
+		return offset;
+	}
+
+	private boolean hasValidChecksum(MappedByteBuffer buffer, int offset, int length) {
+		ByteBuffer checkedBytes = buffer.asReadOnlyBuffer();
+		checkedBytes.limit(offset + 8 + length);
+		checkedBytes.position(offset + 8);
+
+		crc.reset();
+		crc.update(checkedBytes);
+
+		return (int) crc.getValue() == buffer.getInt(offset + 4);
+	}
+}
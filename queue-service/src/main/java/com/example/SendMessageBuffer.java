@@ -0,0 +1,177 @@
+package com.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+// Collects the messages pushed to one SQS queue into SendMessageBatch requests, so concurrent producers share a round
+// trip instead of paying one each. A batch is sent once it holds maxBatchSize messages or maxBatchBytes of bodies, or
+// maxLingerMillis after its first message arrived, whichever comes first. Batches are sent on the given executor,
+// which bounds the number of concurrent requests; the future of every message is completed with its message id, or
+// with null if the message could not be sent (the error is logged).
+public class SendMessageBuffer {
+
+	public final static int maxBatchSize = 10;
+	public final static int maxBatchBytes = 256 * 1024;
+
+	private final static Logger logger = Logger.getLogger(SendMessageBuffer.class);
+
+	private static class PendingMessage {
+		final SendMessageBatchRequestEntry entry;
+		final CompletableFuture<String> future = new CompletableFuture<>();
+
+		PendingMessage(SendMessageBatchRequestEntry entry) {
+			this.entry = entry;
+		}
+	}
+
+	private final AmazonSQSClient sqsClient;
+	private final QueueUrlCache queueUrlCache;
+	private final String qName;
+	private final String queueUrl;
+	private final long maxLingerMillis;
+	private final Executor sendExecutor;
+	// the batch being filled, its size in bytes and the task sending it after the linger time; guarded by this
+	private List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+	private int batchBytes;
+	private ScheduledFuture<?> lingerTask;
+
+	public SendMessageBuffer(AmazonSQSClient sqsClient, QueueUrlCache queueUrlCache, String qName, String queueUrl, long maxLingerMillis,
+			Executor sendExecutor) {
+		this.sqsClient = sqsClient;
+		this.queueUrlCache = queueUrlCache;
+		this.qName = qName;
+		this.queueUrl = queueUrl;
+		this.maxLingerMillis = maxLingerMillis;
+		this.sendExecutor = sendExecutor;
+	}
+
+	// buffers a message; a null delaySeconds leaves the delay to the queue
+	public Future<String> add(String messageBody, Integer delaySeconds) {
+		PendingMessage message = new PendingMessage(new SendMessageBatchRequestEntry().withMessageBody(messageBody).withDelaySeconds(delaySeconds));
+		int messageBytes = messageBody.getBytes(StandardCharsets.UTF_8).length;
+		List<List<PendingMessage>> fullBatches = new ArrayList<>(2);
+
+		synchronized(this) {
+			// a message which does not fit any more starts the next batch
+			if(!batch.isEmpty() && batchBytes + messageBytes > maxBatchBytes)
+				fullBatches.add(takeBatch());
+
+			batch.add(message);
+			batchBytes += messageBytes;
+
+			if(batch.size() == maxBatchSize || batchBytes >= maxBatchBytes)
+				fullBatches.add(takeBatch());
+			else if(batch.size() == 1)
+				lingerTask = DaemonExecutors.getScheduler().schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				}, maxLingerMillis, TimeUnit.MILLISECONDS);
+		}
+
+		// sent outside the monitor, a saturated executor blocks this producer but not the others
+		for(List<PendingMessage> fullBatch: fullBatches)
+			send(fullBatch);
+
+		return message.future;
+	}
+
+	// sends the buffered messages without waiting for the linger time
+	public void flush() {
+		List<PendingMessage> pendingBatch;
+
+		synchronized(this) {
+			if(batch.isEmpty())
+				return;
+
+			pendingBatch = takeBatch();
+		}
+
+		send(pendingBatch);
+	}
+
+	public String getQueueUrl() {
+		return queueUrl;
+	}
+
+	public synchronized int getNumberOfBufferedMessages() {
+		return batch.size();
+	}
+
+	private List<PendingMessage> takeBatch() {
+		List<PendingMessage> fullBatch = batch;
+
+		batch = new ArrayList<>(maxBatchSize);
+		batchBytes = 0;
+		if(lingerTask != null) {
+			lingerTask.cancel(false);
+			lingerTask = null;
+		}
+
+		return fullBatch;
+	}
+
+	private void send(final List<PendingMessage> pendingBatch) {
+		try{
+			sendExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					sendBatch(pendingBatch);
+				}
+			});
+		}catch(RejectedExecutionException e) {
+			logger.error(String.format("Failed to push messages into the queue %s, the send executor is shut down", qName));
+			complete(pendingBatch);
+		}
+	}
+
+	// entry ids are the positions of the messages in the batch
+	private void sendBatch(List<PendingMessage> pendingBatch) {
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<>(pendingBatch.size());
+
+		for(int i = 0; i < pendingBatch.size(); i++)
+			entries.add(pendingBatch.get(i).entry.withId(String.valueOf(i)));
+
+		try{
+			SendMessageBatchResult result = sqsClient.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries));
+
+			for(SendMessageBatchResultEntry entry: result.getSuccessful())
+				pendingBatch.get(Integer.parseInt(entry.getId())).future.complete(entry.getMessageId());
+			for(BatchResultErrorEntry entry: result.getFailed())
+				logger.error(String.format("Failed to push message into the queue %s. Error code:%s, Error message: %s ", qName, entry.getCode(), entry.getMessage()));
+		}catch(AmazonServiceException e) {
+			if(SqsQueueService.isNonExistentQueue(e))
+				queueUrlCache.invalidate(qName);
+			logger.error(String.format("Failed to push messages into the queue %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	    }finally {
+			complete(pendingBatch);
+		}
+	}
+
+	// completes the futures of the messages which were not sent with null
+	private void complete(List<PendingMessage> pendingBatch) {
+		for(PendingMessage message: pendingBatch)
+			message.future.complete(null);
+	}
+}
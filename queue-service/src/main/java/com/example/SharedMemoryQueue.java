@@ -0,0 +1,446 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// MessageQueue on a SharedMemoryRing, so that producers and consumers in different JVMs on one host hand messages
+// over through shared memory instead of sockets. The ring holds the available messages and is shared; the visibility
+// deadlines, receipt handles and attributes are local to the process, so a receipt handle is only valid in the
+// process which received the message, and a message whose visibility timeout expires goes back to the tail of the
+// ring. The record of an inflight message stays in a lease of the ring until it is deleted or goes back, so once a
+// process dies, another member recovers its inflight messages (see recoverAbandonedMessages()) and redelivers them;
+// a message may therefore be delivered twice. At most slotCount messages are inflight across all the processes. A
+// push fails (null message id) if the ring is full or the encoded message exceeds the slot size.
+//
+// Push and pull do not take the queue monitor; only the inflight bookkeeping does. A waiting consumer polls the ring,
+// spinning first, then yielding, then parking for short periods, since a producer in another process cannot notify it.
+public class SharedMemoryQueue implements MessageQueue{
+
+	private String name;
+	// queue specific attributes, such as visibility timeout; local to this process
+	private Map<String, String> attributes;
+
+	private final SharedMemoryRing ring;
+	// messages received by this process, indexed by receipt handle and ordered by visibility deadline
+	private InflightMessageIndex inflightMessages;
+	// lease of the ring which holds each inflight message, by receipt handle
+	private Map<String, Integer> inflightLeases;
+	private ScheduledFuture<?> recoveryTask;
+
+	private RefreshScheduler refreshScheduler;
+	private IdGenerator receiptHandleGenerator;
+	// earliest refresh deadline requested from the scheduler; Long.MAX_VALUE if none is pending
+	private long scheduledRefreshTime = Long.MAX_VALUE;
+	// set once the queue is released so that polling consumers return immediately
+	private volatile boolean released;
+
+	private final static int spinPolls = 1000;
+	private final static int yieldPolls = 100;
+	private final static long parkNanos = TimeUnit.MICROSECONDS.toNanos(50);
+	// delay before an expired message which did not fit into the full ring is offered again
+	private final static long redeliveryRetryMillis = 1000L;
+	// how often the messages of processes which died are looked for
+	private final static long recoveryIntervalMillis = 1000L;
+
+	QueueAttributeValidator attributesValidator;
+	private final static Logger logger = Logger.getLogger(SharedMemoryQueue.class);
+
+	public SharedMemoryQueue(String qName, QueueAttributeValidator attributesValidator, SharedMemoryRing ring,
+			RefreshScheduler refreshScheduler, IdGenerator receiptHandleGenerator) {
+		this.name = qName;
+		this.ring = ring;
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
+		this.attributesValidator = attributesValidator;
+		this.attributes = attributesValidator.getDefaultAttributeValues();
+		this.inflightMessages = new InflightMessageIndex();
+		this.inflightLeases = new HashMap<>();
+
+		recoverAbandonedMessages();
+		this.recoveryTask = DaemonExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				recoverAbandonedMessages();
+			}
+		}, recoveryIntervalMillis, recoveryIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// asks the scheduler for a refresh at the given deadline unless an earlier one is already pending.
+	// Must be called while holding the monitor.
+	private void scheduleRefresh(long deadline) {
+		if(released || deadline >= scheduledRefreshTime)
+			return;
+
+		scheduledRefreshTime = deadline;
+		refreshScheduler.schedule(this, deadline);
+	}
+
+	private long getVisibilityTimeoutMillis() {
+		return QueueAttributes.getVisibilityTimeoutMillis(attributes);
+	}
+
+	// messages with a MessageGroupId or MessageDeduplicationId fail (null message id)
+	public void push(Message message) {
+		if(!QueueAttributes.isStandardMessage(message, name)) {
+			message.setMessageId(null);
+			return;
+		}
+		
+		try{
+			if(!offer(message))
+				message.setMessageId(null);
+		}catch(Exception e) {
+			logger.error(String.format("Exception while adding message in queue: %s", name), e);
+			message.setMessageId(null);
+		}
+	}
+
+	// delayed messages are not supported; a push with a delay fails (null message id)
+	@Override
+	public void push(Message message, int delaySeconds) {
+		if(delaySeconds > 0) {
+			logger.error(String.format("Delayed messages are not supported by queue %s", name));
+			message.setMessageId(null);
+			return;
+		}
+		
+		push(message);
+	}
+
+	// every message is offered on its own; the ones which do not fit are reported with a null message id
+	public void pushAll(List<Message> messages) {
+		for(Message message: messages)
+			push(message);
+	}
+
+	private boolean offer(Message message) {
+		byte[] record = MessageJournal.encodePush(message);
+
+		if(record.length > ring.getSlotSize()) {
+			logger.error(String.format("Message of %d bytes exceeds the slot size %d of queue %s", record.length, ring.getSlotSize(), name));
+			return false;
+		}
+
+		if(!ring.offer(record)) {
+			logger.error(String.format("Queue %s is full", name));
+			return false;
+		}
+
+		return true;
+	}
+
+	// pull() long polls for the queue specific ReceiveMessageWaitTimeSeconds; 0 returns immediately.
+	public Message pull() {
+		return pull(QueueAttributes.getReceiveMessageWaitTimeSeconds(attributes));
+	}
+
+	public Message pull(int waitTimeSeconds) {
+		List<Message> messages = pull(1, waitTimeSeconds, QueueAttributes.useQueueVisibilityTimeout);
+
+		return messages.isEmpty() ? null : messages.get(0);
+	}
+
+	public List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds) {
+		return pull(maxNumberOfMessages, waitTimeSeconds, QueueAttributes.useQueueVisibilityTimeout);
+	}
+
+	// takes up to maxNumberOfMessages (capped by MaximumNumberOfMessagesPerReceive) from the ring, waiting up to
+	// waitTimeSeconds only for the first one, and makes them inflight in this process
+	public List<Message> pull(int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout) {
+		List<Message> messages = new ArrayList<>();
+		List<Integer> leases = new ArrayList<>();
+
+		try{
+			int count = QueueAttributes.getReceiveCount(attributes, maxNumberOfMessages);
+			SharedMemoryRing.Lease lease = awaitLease(waitTimeSeconds * 1000L);
+
+			while(lease != null) {
+				messages.add(MessageJournal.decodePush(ByteBuffer.wrap(lease.getRecord())));
+				leases.add(lease.getIndex());
+				lease = messages.size() < count ? ring.pollLease() : null;
+			}
+
+			if(!messages.isEmpty())
+				receiveMessages(messages, leases, visibilityTimeout);
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while pulling messages from queue %s", name), e);
+		}
+
+		return messages;
+	}
+
+	private synchronized void receiveMessages(List<Message> messages, List<Integer> leases, int visibilityTimeout) {
+		long receiptTime = System.currentTimeMillis();
+		boolean fixedDeadline = visibilityTimeout >= 0;
+		long deadline = receiptTime + (fixedDeadline ? visibilityTimeout * 1000L : getVisibilityTimeoutMillis());
+
+		for(int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			message.setReceiptHandle(receiptHandleGenerator.generateId());
+			inflightMessages.add(message, message.getReceiptHandle(), receiptTime, deadline, fixedDeadline);
+			inflightLeases.put(message.getReceiptHandle(), leases.get(i));
+		}
+
+		scheduleRefresh(deadline);
+	}
+
+	// polls the ring until a record arrives, the wait expires or the queue is released
+	private SharedMemoryRing.Lease awaitLease(long waitTimeMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+
+		for(int polls = 0; !released; polls++) {
+			SharedMemoryRing.Lease lease = ring.pollLease();
+
+			if(lease != null || System.nanoTime() - deadline >= 0)
+				return lease;
+
+			if(Thread.interrupted())
+				throw new InterruptedException();
+
+			if(polls >= spinPolls + yieldPolls)
+				LockSupport.parkNanos(parkNanos);
+			else if(polls >= spinPolls)
+				Thread.yield();
+		}
+
+		return null;
+	}
+
+	public synchronized boolean delete(String receiptHandle) {
+		if(inflightMessages.remove(receiptHandle) != null) {
+			releaseLease(receiptHandle);
+			return true;
+		}
+
+		logger.error("ReceiptHandle does not exist.");
+		return false;
+	}
+
+	public synchronized Set<String> delete(Collection<String> receiptHandles) {
+		Set<String> deletedReceiptHandles = new HashSet<>();
+
+		for(String receiptHandle: receiptHandles) {
+			if(inflightMessages.remove(receiptHandle) != null) {
+				releaseLease(receiptHandle);
+				deletedReceiptHandles.add(receiptHandle);
+			}
+		}
+
+		if(deletedReceiptHandles.size() < receiptHandles.size())
+			logger.error(String.format("%d receipt handles do not exist.", receiptHandles.size() - deletedReceiptHandles.size()));
+
+		return deletedReceiptHandles;
+	}
+
+	public synchronized boolean changeMessageVisibility(String receiptHandle, int visibilityTimeout) {
+		boolean status = changeVisibility(receiptHandle, visibilityTimeout, System.currentTimeMillis());
+
+		if(!status)
+			logger.error("ReceiptHandle does not exist.");
+
+		return status;
+	}
+
+	public synchronized Set<String> changeMessageVisibility(Map<String, Integer> visibilityTimeouts) {
+		Set<String> changedReceiptHandles = new HashSet<>();
+		long now = System.currentTimeMillis();
+
+		for(Map.Entry<String, Integer> entry: visibilityTimeouts.entrySet()) {
+			if(changeVisibility(entry.getKey(), entry.getValue(), now))
+				changedReceiptHandles.add(entry.getKey());
+		}
+
+		if(changedReceiptHandles.size() < visibilityTimeouts.size())
+			logger.error(String.format("%d receipt handles do not exist.", visibilityTimeouts.size() - changedReceiptHandles.size()));
+
+		return changedReceiptHandles;
+	}
+
+	// must be called while holding the monitor. A timeout of 0 offers the message to all the processes again.
+	private boolean changeVisibility(String receiptHandle, int visibilityTimeout, long now) {
+		InflightMessageIndex.Entry entry = inflightMessages.get(receiptHandle);
+
+		if(entry == null)
+			return false;
+
+		long deadline = now + visibilityTimeout * 1000L;
+		inflightMessages.updateDeadline(entry, deadline);
+
+		if(visibilityTimeout == 0)
+			refreshQueue();
+		else
+			scheduleRefresh(deadline);
+
+		return true;
+	}
+
+	@Override
+	public int getApproximateNumberOfMessages() {
+		return ring.size();
+	}
+
+	// messages are never delayed
+	@Override
+	public int getApproximateNumberOfMessagesDelayed() {
+		return 0;
+	}
+
+	@Override
+	public int getNumberOfInflightMessages() {
+		return inflightMessages.size();
+	}
+
+	// offers the timed-out messages to the ring again; the ones which do not fit stay inflight a little longer
+	@Override
+	public synchronized void refreshQueue() {
+		long now = System.currentTimeMillis();
+
+		if(now >= scheduledRefreshTime)
+			scheduledRefreshTime = Long.MAX_VALUE;
+
+		try{
+			while(!inflightMessages.isEmpty()) {
+				InflightMessageIndex.Entry entry = inflightMessages.peek();
+
+				if(now < entry.getDeadline()) {
+					scheduleRefresh(entry.getDeadline());
+					break;
+				}
+
+				Message message = entry.getMessage();
+				message.setReceiptHandle(null);
+
+				if(offer(message)) {
+					inflightMessages.poll();
+					releaseLease(entry.getReceiptHandle());
+				}
+				else {
+					inflightMessages.updateDeadline(entry, now + redeliveryRetryMillis);
+					scheduleRefresh(now + redeliveryRetryMillis);
+					break;
+				}
+			}
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while refreshing queue %s", name), e);
+		}
+	}
+
+	// drains the shared ring, i.e., the available messages of all the processes, and the local inflight messages
+	// must be called while holding the monitor
+	private void releaseLease(String receiptHandle) {
+		Integer lease = inflightLeases.remove(receiptHandle);
+
+		if(lease != null)
+			ring.releaseLease(lease);
+	}
+
+	// takes over the inflight messages of the processes which left the ring without deleting them, or died while
+	// taking a message, and makes them inflight here with an expired deadline, so that refreshQueue() offers them to
+	// all the processes again. Runs when the queue is created and every recoveryIntervalMillis.
+	public synchronized void recoverAbandonedMessages() {
+		if(released)
+			return;
+
+		try{
+			List<SharedMemoryRing.Lease> leases = ring.recoverAbandonedSlots();
+
+			if(leases.isEmpty())
+				return;
+
+			long now = System.currentTimeMillis();
+			for(SharedMemoryRing.Lease lease: leases) {
+				Message message = MessageJournal.decodePush(ByteBuffer.wrap(lease.getRecord()));
+				message.setReceiptHandle(receiptHandleGenerator.generateId());
+				inflightMessages.add(message, message.getReceiptHandle(), now, now, true);
+				inflightLeases.put(message.getReceiptHandle(), lease.getIndex());
+			}
+
+			logger.warn(String.format("Recovered %d inflight messages of processes which left queue %s", leases.size(), name));
+			refreshQueue();
+		}catch(Exception e) {
+			logger.error(String.format("Exception caught while recovering the inflight messages of queue %s", name), e);
+		}
+	}
+
+	@Override
+	public synchronized boolean purge() {
+		try{
+			while(ring.poll() != null)
+				;
+
+			inflightMessages.clear();
+			for(int lease: inflightLeases.values())
+				ring.releaseLease(lease);
+			inflightLeases.clear();
+		}catch(Exception e) {
+			logger.error(String.format("Execption caught while purging queue %s", name), e);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized void setAttributes(Map<String, String> attributes) {
+		if(!QueueAttributes.update(this.attributes, attributes, attributesValidator, name))
+			return;
+
+		// a changed VisibilityTimeout moves the deadlines of the inflight messages
+		if(attributes.containsKey(QueueAttributes.visibilityTimeoutAttribute) && !inflightMessages.isEmpty()) {
+			inflightMessages.resetDeadlines(getVisibilityTimeoutMillis());
+			scheduleRefresh(inflightMessages.peek().getDeadline());
+		}
+	}
+
+	@Override
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	private int getIntegerAttribute(String attributeName, int defaultValue) {
+		return QueueAttributes.getIntegerAttribute(attributes, attributeName, defaultValue);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public SharedMemoryRing getRing() {
+		return ring;
+	}
+
+	@Override
+	// leaves the ring; the ring file stays for the other processes (see SharedMemoryQueueFactory.deleteQueueFiles),
+	// which also redeliver the messages still inflight here
+	public synchronized void releaseResources() {
+		if(released)
+			return;
+
+		released = true;
+		refreshScheduler.cancel(this);
+		recoveryTask.cancel(false);
+
+		try{
+			ring.close();
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while closing the ring of queue %s", name), e);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// creates a SharedMemoryQueue on the ring file <directory>/<qName>.ring, joining the ring if another process
+// created it already. The slot geometry only applies to new rings.
+public class SharedMemoryQueueFactory implements QueueFactory{
+	
+	// 4096 slots of 16 KB map 64 MB per queue; the pages are only allocated once the slots are used
+	public final static int defaultSlotCount = 4096;
+	public final static int defaultSlotSize = 16 * 1024;
+	private final static String ringFileSuffix = ".ring";
+	private final static Logger logger = Logger.getLogger(SharedMemoryQueueFactory.class);
+	
+	private final File directory;
+	private final int slotCount;
+	private final int slotSize;
+	private final RefreshScheduler refreshScheduler;
+	private final IdGenerator receiptHandleGenerator;
+	
+	public SharedMemoryQueueFactory(File directory) {
+		this(directory, defaultSlotCount, defaultSlotSize);
+	}
+	
+	public SharedMemoryQueueFactory(File directory, int slotCount, int slotSize) {
+		this(directory, slotCount, slotSize, RefreshScheduler.getDefault(), TimeOrderedIdGenerator.getDefault());
+	}
+	
+	public SharedMemoryQueueFactory(File directory, int slotCount, int slotSize, RefreshScheduler refreshScheduler, 
+			IdGenerator receiptHandleGenerator) {
+		this.directory = directory;
+		this.slotCount = slotCount;
+		this.slotSize = slotSize;
+		this.refreshScheduler = refreshScheduler;
+		this.receiptHandleGenerator = receiptHandleGenerator;
+	}
+
+	@Override
+	public synchronized MessageQueue create(CreateQueueRequest createQueueRequest) {
+		String qName = createQueueRequest.getQueueName();
+		
+		if(!FileQueueFactory.queueNamePattern.matcher(qName).matches()) {
+			logger.error(String.format("Invalid queue name for a shared memory queue: %s", qName));
+			return null;
+		}
+		
+		MessageQueue queue = null;
+		
+		try{
+			if(!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException(String.format("Failed to create ring directory %s", directory));
+			
+			SharedMemoryRing ring = new SharedMemoryRing(getRingFile(qName), slotCount, slotSize);
+			queue = new SharedMemoryQueue(qName, new QueueAttributeValidatorImpl(QueueAttributeValidatorImpl.inMemoryQueueAttributes), ring, 
+					refreshScheduler, receiptHandleGenerator);
+			queue.setAttributes(createQueueRequest.getAttributes());
+		}catch(IOException | IllegalArgumentException e) {
+			logger.error(String.format("Exception caught while opening the ring of queue %s", qName), e);
+		}
+		
+		return queue;
+	}
+	
+	// names of the queues which have a ring file in the directory
+	public List<String> getStoredQueueNames() {
+		List<String> queueNames = new ArrayList<>();
+		String[] fileNames = directory.list();
+		
+		if(fileNames != null) {
+			for(String fileName: fileNames) {
+				String qName = fileName.substring(0, Math.max(0, fileName.length() - ringFileSuffix.length()));
+				
+				if(fileName.endsWith(ringFileSuffix) && FileQueueFactory.queueNamePattern.matcher(qName).matches())
+					queueNames.add(qName);
+			}
+		}
+		
+		return queueNames;
+	}
+	
+	// removes the ring file of a released queue; the file stays while another process still uses the queue. Returns
+	// false if the file could not be checked or deleted.
+	public boolean deleteQueueFiles(String qName) {
+		try{
+			SharedMemoryRing.deleteIfUnused(getRingFile(qName));
+			return true;
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while deleting the ring of queue %s", qName), e);
+			return false;
+		}
+	}
+	
+	private File getRingFile(String qName) {
+		return new File(directory, qName + ringFileSuffix);
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.example;
+
+import java.io.File;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// Queue Service for producers and consumers in different JVMs on the same host: every queue is a ring of message
+// slots in a memory-mapped file (see SharedMemoryQueue), and every process which creates a queue of the same name
+// in the same directory joins the same ring. The service contract is the one of InMemoryQueueService. The rings
+// found in the directory are joined on construction; deleting a queue removes its ring file once no other process
+// uses it.
+public class SharedMemoryQueueService extends InMemoryQueueService {
+	
+	private SharedMemoryQueueFactory queueFactory;
+	private final static Logger logger = Logger.getLogger(SharedMemoryQueueService.class);
+	
+	public SharedMemoryQueueService(File directory) {
+		this(new SharedMemoryQueueFactory(directory));
+	}
+	
+	public SharedMemoryQueueService(SharedMemoryQueueFactory queueFactory) {
+		super(queueFactory);
+		this.queueFactory = queueFactory;
+		
+		for(String qName: queueFactory.getStoredQueueNames())
+			createQueue(new CreateQueueRequest(qName));
+	}
+	
+	@Override
+	public boolean deleteQueue(String qName) {
+		if(!super.deleteQueue(qName))
+			return false;
+		
+		if(!queueFactory.deleteQueueFiles(qName)) {
+			logger.error(String.format("Failed to delete the ring of queue %s", qName));
+			return false;
+		}
+		
+		return true;
+	}
+	
+	// leaves all the rings; the ring files stay for the other processes and the next SharedMemoryQueueService
+	public void close() {
+		for(String qName: getQueueNames())
+			getQueue(qName).releaseResources();
+	}
+}
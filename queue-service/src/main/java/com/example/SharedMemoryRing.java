@@ -0,0 +1,616 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded multi-producer multi-consumer ring of byte records in a memory-mapped file, shared by all the processes
+// which map the same file. Every slot carries a sequence number (Vyukov's bounded MPMC queue): a slot with the
+// sequence tail is free for the producer of tail, tail + 1 marks a published record for the consumer of head = tail,
+// and head + slotCount frees the slot for the next lap. Unlike in Vyukov's queue, producers and consumers claim the
+// slot itself, replacing the sequence by a claim which names the claiming member and the position, before they
+// advance the tail or head counter; whoever finds a claimed slot at the counter advances it for them. So a member
+// which dies within an access leaves a claim which names it. Positions are 56 bits wide.
+//
+// Access: Java 8 has no supported atomic or fenced access to a mapping shared with other processes, so every access to
+// the mapping runs under the ring lock, an exclusive FileLock on the ring lock byte of the header, taken under a
+// ReentrantLock per file, as FileLock does not serialize the rings of one JVM. Taking and releasing the FileLock are
+// system calls, which also order the accesses of the processes to the mapping; a handoff costs two of them.
+//
+// File layout: a header page ([int magic][int slotCount][int slotSize], the tail and the head counters on separate
+// cache lines) followed by slotCount slots and slotCount leases, each [long sequence or owner][int length][int unused]
+// [slotSize bytes].
+//
+// Membership: the file is formatted under an exclusive FileLock on the first header byte, and every open ring holds
+// an exclusive FileLock on one of maxMembers member bytes. The operating system drops the locks of a process which
+// exits, so isOnlyMember() and deleteIfUnused() tell whether any other process (or other ring in this JVM) still uses
+// the file, and recoverAbandonedSlots() repairs the slots which a member claimed but never completed: under the lock
+// of the member which is gone, its unpublished records are skipped and its taken records are moved into leases.
+//
+// Leases: pollLease() copies the record into a lease owned by the member before the slot is freed, so the record of
+// an inflight message stays in the file until releaseLease(). The leases of a member which is gone are taken over by
+// recoverAbandonedSlots() for redelivery. There are slotCount leases for all the members together.
+public class SharedMemoryRing {
+
+	public final static int maxMembers = 64;
+	private final static int magic = 0x51524e48;
+	private final static int headerSize = 4096;
+	private final static int tailOffset = 64;
+	private final static int headOffset = 128;
+	private final static int ringLockOffset = 1;
+	private final static int memberLockOffset = 256;
+	private final static int slotHeaderSize = 16;
+	// a claim: claimFlag | consumerClaimFlag for a consumer | member << memberShift | position
+	private final static long claimFlag = Long.MIN_VALUE;
+	private final static long consumerClaimFlag = 1L << 62;
+	private final static int memberShift = 56;
+	private final static long positionMask = (1L << memberShift) - 1;
+	// the owner of a lease: filledLeaseFlag once the record is written | member + 1; 0 for a free lease
+	private final static long filledLeaseFlag = 1L << 32;
+	// serializes the formatting lock of the rings opened by this JVM, which FileLock does not do
+	private final static Object formatLock = new Object();
+	// the JVM side of the ring lock of every file mapped by this JVM, guarded by formatLock
+	private final static ConcurrentMap<File, ReentrantLock> accessLocks = new ConcurrentHashMap<>();
+
+	// a record held in a lease of this member
+	public static class Lease {
+		private final int index;
+		private final byte[] record;
+
+		Lease(int index, byte[] record) {
+			this.index = index;
+			this.record = record;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public byte[] getRecord() {
+			return record;
+		}
+	}
+
+	private final File file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final ReentrantLock accessLock;
+	private final int slotCount;
+	private final int slotSize;
+	private final int slotStride;
+	private final FileLock memberLock;
+	private final int member;
+	// where the search for a free lease starts, so the consumers of this process spread over the leases
+	private final AtomicInteger nextLease = new AtomicInteger();
+	// set by the first recovery, which also repairs what an earlier member with the same member byte left behind
+	private boolean recoveredOwnClaims;
+
+	// maps the ring at file, formatting it with the given geometry if it is new; an existing ring keeps its geometry
+	public SharedMemoryRing(File file, int slotCount, int slotSize) throws IOException {
+		if(slotCount < 2 || slotSize <= 0)
+			throw new IllegalArgumentException(String.format("Invalid ring geometry: %d slots of %d bytes", slotCount, slotSize));
+
+		this.file = file;
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+
+		try{
+			synchronized(formatLock) {
+				FileLock lock = channel.lock(0, 1, false);
+
+				try{
+					if(channel.size() < headerSize || readHeaderInt(0) != magic)
+						format(slotCount, slotSize);
+
+					this.slotCount = readHeaderInt(4);
+					this.slotSize = readHeaderInt(8);
+					// joins under the formatting lock, so that deleteIfUnused() never removes a ring which is being joined
+					this.memberLock = lockMemberSlot();
+					this.member = (int) (memberLock.position() - memberLockOffset);
+					this.accessLock = accessLocks.computeIfAbsent(file.getCanonicalFile(), key -> new ReentrantLock());
+				}finally {
+					lock.release();
+				}
+			}
+
+			this.slotStride = getSlotStride(this.slotSize);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize(this.slotCount, slotStride));
+			// the ring accesses the mapping in native byte order
+			this.buffer.order(ByteOrder.nativeOrder());
+		}catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// copies record into the next free slot; false if the ring is full or the record exceeds the slot size
+	public boolean offer(byte[] record) {
+		if(record.length > slotSize)
+			return false;
+
+		FileLock lock = lockRing();
+
+		try{
+			long tail = buffer.getLong(tailOffset);
+
+			while(true) {
+				int slot = getSlotOffset(tail);
+				long sequence = buffer.getLong(slot);
+
+				if(sequence == tail) {
+					buffer.putLong(slot, getClaim(tail, false));
+					buffer.putLong(tailOffset, tail + 1);
+					buffer.putInt(slot + 8, record.length);
+					write(slot + slotHeaderSize, record);
+					// publishes the record
+					buffer.putLong(slot, tail + 1);
+
+					return true;
+				}
+				else if(isClaim(sequence) && !isConsumerClaim(sequence) && getClaimPosition(sequence) == tail) {
+					// the claim of a member which died before advancing the tail
+					buffer.putLong(tailOffset, tail + 1);
+				}
+				else if((isClaim(sequence) ? getClaimPosition(sequence) : sequence) < tail) {
+					// the slot still holds the record of the previous lap
+					return false;
+				}
+
+				tail = buffer.getLong(tailOffset);
+			}
+		}finally {
+			unlockRing(lock);
+		}
+	}
+
+	// removes the oldest published record; null if the ring is empty
+	public byte[] poll() {
+		FileLock lock = lockRing();
+
+		try{
+			long position = claimHead();
+
+			if(position < 0)
+				return null;
+
+			int slot = getSlotOffset(position);
+			byte[] record = readRecord(slot);
+			// hands the slot back to the producers of the next lap
+			buffer.putLong(slot, position + slotCount);
+
+			return record;
+		}finally {
+			unlockRing(lock);
+		}
+	}
+
+	// removes the oldest published record and keeps it in a lease of this member until releaseLease(); null if the
+	// ring is empty or all the leases are taken
+	public Lease pollLease() {
+		FileLock lock = lockRing();
+
+		try{
+			if(getSize() == 0)
+				return null;
+
+			int lease = reserveLease();
+
+			if(lease < 0)
+				return null;
+
+			long position = claimHead();
+
+			if(position < 0) {
+				buffer.putLong(getLeaseOffset(lease), 0L);
+				return null;
+			}
+
+			int slot = getSlotOffset(position);
+			byte[] record = moveToLease(slot, lease);
+			buffer.putLong(slot, position + slotCount);
+
+			return new Lease(lease, record);
+		}finally {
+			unlockRing(lock);
+		}
+	}
+
+	public void releaseLease(int lease) {
+		FileLock lock = lockRing();
+
+		try{
+			buffer.putLong(getLeaseOffset(lease), 0L);
+		}finally {
+			unlockRing(lock);
+		}
+	}
+
+	// repairs what members which are gone left behind: a slot claimed by a producer is skipped, the record of a slot
+	// claimed by a consumer is moved into a lease, and the leases are taken over by this member. Returns the leases
+	// taken over, which the caller redelivers and releases. A consumer which died between filling its lease and
+	// freeing the slot has its record recovered twice. The first call also repairs what an earlier member with the
+	// member byte of this one left behind, so it must precede the use of the ring.
+	public synchronized List<Lease> recoverAbandonedSlots() throws IOException {
+		List<Lease> leases = new ArrayList<>();
+		// the locks of the members found gone, held until the end, so that no new member takes over their member byte
+		FileLock[] abandonedMemberLocks = new FileLock[maxMembers];
+		boolean[] liveMembers = new boolean[maxMembers];
+		FileLock ringLock = lockRing();
+
+		try{
+			// the leases first, so that the leases filled from slots below are not taken over a second time
+			for(int i = 0; i < slotCount; i++) {
+				int leaseOffset = getLeaseOffset(i);
+				long owner = buffer.getLong(leaseOffset);
+
+				if(owner == 0 || !isAbandoned((int) (owner & ~filledLeaseFlag) - 1, abandonedMemberLocks, liveMembers))
+					continue;
+
+				if((owner & filledLeaseFlag) == 0) {
+					buffer.putLong(leaseOffset, 0L);
+				}
+				else {
+					buffer.putLong(leaseOffset, getLeaseOwner(true));
+					leases.add(new Lease(i, readRecord(leaseOffset)));
+				}
+			}
+
+			for(int i = 0; i < slotCount; i++) {
+				int slot = headerSize + i * slotStride;
+				long sequence = buffer.getLong(slot);
+
+				if(isClaim(sequence) && isAbandoned(getClaimMember(sequence), abandonedMemberLocks, liveMembers))
+					recoverSlot(slot, sequence, leases);
+			}
+		}finally {
+			for(FileLock lock: abandonedMemberLocks) {
+				if(lock != null)
+					lock.release();
+			}
+			unlockRing(ringLock);
+		}
+
+		recoveredOwnClaims = true;
+		return leases;
+	}
+
+	// number of claimed slots; approximate while producers or consumers are active
+	public int size() {
+		FileLock lock = lockRing();
+
+		try{
+			return getSize();
+		}finally {
+			unlockRing(lock);
+		}
+	}
+
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	// true if no other ring, in this or another process, has the file open
+	public synchronized boolean isOnlyMember() throws IOException {
+		return !hasOtherMembers(channel, memberLock.position());
+	}
+
+	// removes the ring file unless a ring in this or another process has it open; returns false if it is in use
+	public static boolean deleteIfUnused(File file) throws IOException {
+		if(!file.exists())
+			return true;
+
+		synchronized(formatLock) {
+			try(FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+				FileLock lock = channel.lock(0, 1, false);
+
+				try{
+					if(hasOtherMembers(channel, -1))
+						return false;
+
+					if(!file.delete())
+						throw new IOException(String.format("Failed to delete ring %s", file));
+
+					accessLocks.remove(file.getCanonicalFile());
+					return true;
+				}finally {
+					lock.release();
+				}
+			}
+		}
+	}
+
+	// true if a member byte other than ownMemberPosition is locked
+	private static boolean hasOtherMembers(FileChannel channel, long ownMemberPosition) throws IOException {
+		for(int i = 0; i < maxMembers; i++) {
+			if(memberLockOffset + i == ownMemberPosition)
+				continue;
+
+			try{
+				FileLock lock = channel.tryLock(memberLockOffset + i, 1, false);
+
+				if(lock == null)
+					return true;
+
+				lock.release();
+			}catch(OverlappingFileLockException e) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// drops the membership and closes the file; the mapping is released by the garbage collector. The leases of this
+	// member stay behind for the other members to recover.
+	public void close() throws IOException {
+		memberLock.release();
+		channel.close();
+	}
+
+	// claims the oldest published record for a consumer and returns its position; -1 if there is none. Skipped records
+	// are freed on the way. Must be called while holding the ring lock.
+	private long claimHead() {
+		long head = buffer.getLong(headOffset);
+
+		while(true) {
+			int slot = getSlotOffset(head);
+			long sequence = buffer.getLong(slot);
+
+			if(sequence == head + 1) {
+				buffer.putLong(slot, getClaim(head, true));
+				buffer.putLong(headOffset, head + 1);
+
+				if(buffer.getInt(slot + 8) >= 0)
+					return head;
+
+				buffer.putLong(slot, head + slotCount);
+			}
+			else if(isClaim(sequence) && isConsumerClaim(sequence) && getClaimPosition(sequence) == head) {
+				// the claim of a member which died before advancing the head
+				buffer.putLong(headOffset, head + 1);
+			}
+			else if(isClaim(sequence) ? getClaimPosition(sequence) < head || !isConsumerClaim(sequence) && getClaimPosition(sequence) == head
+					: sequence <= head) {
+				// not published yet
+				return -1;
+			}
+
+			head = buffer.getLong(headOffset);
+		}
+	}
+
+	// must be called while holding the ring lock and the lock of the member of the claim
+	private void recoverSlot(int slot, long sequence, List<Lease> leases) {
+		long position = getClaimPosition(sequence);
+
+		if(!isConsumerClaim(sequence)) {
+			// publishes a record which the consumers skip
+			buffer.putInt(slot + 8, -1);
+			if(buffer.getLong(tailOffset) == position)
+				buffer.putLong(tailOffset, position + 1);
+			buffer.putLong(slot, position + 1);
+			return;
+		}
+
+		// without a free lease the slot is left to the next recovery
+		int lease = reserveLease();
+
+		if(lease < 0)
+			return;
+
+		if(buffer.getLong(headOffset) == position)
+			buffer.putLong(headOffset, position + 1);
+
+		if(buffer.getInt(slot + 8) >= 0)
+			leases.add(new Lease(lease, moveToLease(slot, lease)));
+		else
+			buffer.putLong(getLeaseOffset(lease), 0L);
+
+		buffer.putLong(slot, position + slotCount);
+	}
+
+	// true if the member is gone, in which case its lock is added to abandonedMemberLocks
+	private boolean isAbandoned(int otherMember, FileLock[] abandonedMemberLocks, boolean[] liveMembers) throws IOException {
+		if(otherMember == member)
+			return !recoveredOwnClaims;
+
+		if(abandonedMemberLocks[otherMember] != null)
+			return true;
+
+		if(liveMembers[otherMember])
+			return false;
+
+		try{
+			FileLock lock = channel.tryLock(memberLockOffset + otherMember, 1, false);
+
+			if(lock != null) {
+				abandonedMemberLocks[otherMember] = lock;
+				return true;
+			}
+		}catch(OverlappingFileLockException e) {
+			// held by another ring of this JVM
+		}
+
+		liveMembers[otherMember] = true;
+		return false;
+	}
+
+	// takes a free lease for this member; -1 if all the leases are taken. Must be called while holding the ring lock.
+	private int reserveLease() {
+		int start = nextLease.getAndIncrement();
+
+		for(int i = 0; i < slotCount; i++) {
+			int lease = Math.floorMod(start + i, slotCount);
+			int leaseOffset = getLeaseOffset(lease);
+
+			if(buffer.getLong(leaseOffset) == 0L) {
+				buffer.putLong(leaseOffset, getLeaseOwner(false));
+				return lease;
+			}
+		}
+
+		return -1;
+	}
+
+	// copies the record of a claimed slot into a reserved lease and marks the lease filled
+	private byte[] moveToLease(int slot, int lease) {
+		int leaseOffset = getLeaseOffset(lease);
+		byte[] record = readRecord(slot);
+		buffer.putInt(leaseOffset + 8, record.length);
+		write(leaseOffset + slotHeaderSize, record);
+		buffer.putLong(leaseOffset, getLeaseOwner(true));
+
+		return record;
+	}
+
+	// the record of a slot or lease
+	private byte[] readRecord(int slot) {
+		byte[] record = new byte[buffer.getInt(slot + 8)];
+		ByteBuffer source = buffer.duplicate();
+		source.position(slot + slotHeaderSize);
+		source.get(record);
+
+		return record;
+	}
+
+	private void write(int offset, byte[] record) {
+		ByteBuffer destination = buffer.duplicate();
+		destination.position(offset);
+		destination.put(record);
+	}
+
+	// must be called while holding the ring lock
+	private int getSize() {
+		long head = buffer.getLong(headOffset);
+		long tail = buffer.getLong(tailOffset);
+
+		return (int) Math.max(0, Math.min(slotCount, tail - head));
+	}
+
+	// takes the ring lock, which the caller releases with unlockRing() in a finally block. FileChannel.lock() closes
+	// the channel if the thread is interrupted, so a pending interrupt is cleared first and restored afterwards.
+	private FileLock lockRing() {
+		accessLock.lock();
+		boolean interrupted = Thread.interrupted();
+
+		try{
+			return channel.lock(ringLockOffset, 1, false);
+		}catch(IOException e) {
+			accessLock.unlock();
+			throw new UncheckedIOException(String.format("Failed to lock ring %s", file), e);
+		}finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private void unlockRing(FileLock lock) {
+		try{
+			lock.release();
+		}catch(IOException e) {
+			throw new UncheckedIOException(String.format("Failed to unlock ring %s", file), e);
+		}finally {
+			accessLock.unlock();
+		}
+	}
+
+	private long getClaim(long position, boolean consumer) {
+		return claimFlag | (consumer ? consumerClaimFlag : 0L) | ((long) member << memberShift) | position;
+	}
+
+	private long getLeaseOwner(boolean filled) {
+		return (filled ? filledLeaseFlag : 0L) | (member + 1);
+	}
+
+	private static boolean isClaim(long sequence) {
+		return sequence < 0;
+	}
+
+	private static boolean isConsumerClaim(long claim) {
+		return (claim & consumerClaimFlag) != 0;
+	}
+
+	private static long getClaimPosition(long claim) {
+		return claim & positionMask;
+	}
+
+	private static int getClaimMember(long claim) {
+		return (int) (claim >>> memberShift) & (maxMembers - 1);
+	}
+
+	// the mapping is at most Integer.MAX_VALUE bytes, so offsets are ints
+	private int getSlotOffset(long position) {
+		return headerSize + (int) (position % slotCount) * slotStride;
+	}
+
+	private int getLeaseOffset(int lease) {
+		return headerSize + (slotCount + lease) * slotStride;
+	}
+
+	private static int getSlotStride(int slotSize) {
+		return slotHeaderSize + ((slotSize + 7) & ~7);
+	}
+
+	private static long getFileSize(int slotCount, int slotStride) {
+		return headerSize + 2L * slotCount * slotStride;
+	}
+
+	private FileLock lockMemberSlot() throws IOException {
+		for(int i = 0; i < maxMembers; i++) {
+			try{
+				FileLock lock = channel.tryLock(memberLockOffset + i, 1, false);
+				if(lock != null)
+					return lock;
+			}catch(OverlappingFileLockException e) {
+				// held by another ring of this JVM
+			}
+		}
+
+		throw new IOException(String.format("Ring %s already has %d members", file, maxMembers));
+	}
+
+	private int readHeaderInt(int offset) throws IOException {
+		ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+		channel.read(value, offset);
+
+		return value.getInt(0);
+	}
+
+	// writes the header and the initial slot sequences; the leases start out free, as the file is zero filled. The
+	// magic number is written last.
+	private void format(int slotCount, int slotSize) throws IOException {
+		int slotStride = getSlotStride(slotSize);
+		channel.truncate(0);
+		MappedByteBuffer formatBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize(slotCount, slotStride));
+		// the ring accesses the mapping in native byte order
+		formatBuffer.order(ByteOrder.nativeOrder());
+
+		formatBuffer.putInt(4, slotCount).putInt(8, slotSize);
+		formatBuffer.putLong(tailOffset, 0L).putLong(headOffset, 0L);
+		for(int i = 0; i < slotCount; i++)
+			formatBuffer.putLong(headerSize + i * slotStride, i);
+
+		formatBuffer.putInt(0, magic);
+		formatBuffer.force();
+	}
+}
@@ -0,0 +1,439 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Keeps the head and the tail of the queue on the heap and pages the middle out to sequential files once the bodies in
+// memory exceed the spill threshold, so that a backlog far larger than the heap costs disk space instead of an
+// OutOfMemoryError. The order is head, middle (on disk), tail:
+//  - while nothing is spilled a message is appended to the head, so a shallow queue never touches the disk
+//  - a push which takes the memory above the threshold writes the oldest messages of the tail to the current segment
+//    file until a quarter of the threshold is free again
+//  - once the head falls below an eighth of the threshold, the next quarter of the threshold is read back from the
+//    oldest segment by a background thread, so consumers find it decoded by the time they reach it
+// Segment files hold [int length][journal push record payload] records, are at most segmentSize bytes and are deleted
+// once they are read back. A spill which fails keeps the messages in memory. Not thread safe, the owning queue guards
+// it with its monitor; only the prefetch task runs outside of it, on a segment no other thread reads.
+public class SpillingMessageDeque implements MessageDeque {
+
+	public final static long defaultSegmentSize = 64L * 1024 * 1024;
+	private final static Logger logger = Logger.getLogger(SpillingMessageDeque.class);
+
+	// reads spilled messages back for all the queues; a thread of its own rather than the shared scheduler, since a
+	// prefetch reads a large chunk from the disk
+	private final static ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(DaemonExecutors.threadFactory("queue-spill-prefetch"));
+
+	private static class Segment {
+		final File file;
+		long size;
+		int writtenCount;
+		// records which were merged into the head
+		int readCount;
+		// opened by the first prefetch task of the segment
+		DataInputStream input;
+
+		Segment(File file) {
+			this.file = file;
+		}
+	}
+
+	private final File parentDirectory;
+	// created within parentDirectory by the first spill; null until then
+	private File spillDirectory;
+	private final long segmentSize;
+	private long spillThreshold;
+
+	private final ArrayDeque<Message> head = new ArrayDeque<>();
+	private final ArrayDeque<Message> tail = new ArrayDeque<>();
+	private long headBytes;
+	private long tailBytes;
+
+	// spilled segments, oldest first; the last one is written to
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	// segment which spilled messages are appended to, and its stream; null while no segment is open for writing
+	private Segment writeSegment;
+	private DataOutputStream output;
+	private int nextSegmentNumber;
+	// spilled messages which are not merged into the head yet, including the ones being prefetched
+	private int spilledCount;
+	private Future<List<Message>> prefetch;
+
+	// spill files go to a new directory within parentDirectory, which is only created by the first spill
+	public SpillingMessageDeque(File parentDirectory, long spillThreshold) {
+		this(parentDirectory, spillThreshold, defaultSegmentSize);
+	}
+
+	public SpillingMessageDeque(File parentDirectory, long spillThreshold, long segmentSize) {
+		this.parentDirectory = parentDirectory;
+		this.spillThreshold = spillThreshold;
+		this.segmentSize = segmentSize;
+	}
+
+	public void setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	@Override
+	public void addFirst(Message message) {
+		head.addFirst(message);
+		headBytes += QueueCapacity.getBodySize(message);
+	}
+
+	@Override
+	public void addLast(Message message) {
+		long bodySize = QueueCapacity.getBodySize(message);
+
+		if(spilledCount == 0 && tail.isEmpty() && headBytes + bodySize <= spillThreshold) {
+			head.addLast(message);
+			headBytes += bodySize;
+			return;
+		}
+
+		tail.addLast(message);
+		tailBytes += bodySize;
+
+		if(headBytes + tailBytes > spillThreshold)
+			spill();
+	}
+
+	@Override
+	public Message removeFirst() {
+		if(head.isEmpty())
+			refillHead();
+
+		Message message = head.removeFirst();
+		headBytes -= QueueCapacity.getBodySize(message);
+		startPrefetch();
+
+		return message;
+	}
+
+	@Override
+	public int size() {
+		return head.size() + spilledCount + tail.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	// also deletes the spill files
+	@Override
+	public void clear() {
+		awaitPrefetch();
+		head.clear();
+		tail.clear();
+		headBytes = 0;
+		tailBytes = 0;
+		spilledCount = 0;
+		deleteSegments();
+	}
+
+	// number of messages in the spill files
+	public int getSpilledCount() {
+		return spilledCount;
+	}
+
+	// bodies held on the heap
+	public long getMemoryBytes() {
+		return headBytes + tailBytes;
+	}
+
+	// visits the head, then reads the spilled messages from their files, then visits the tail
+	@Override
+	public Iterator<Message> iterator() {
+		mergePrefetch();
+		flushOutput();
+
+		final List<Iterator<Message>> parts = new ArrayList<>();
+		parts.add(head.iterator());
+		for(Segment segment: segments)
+			parts.add(new SegmentIterator(segment));
+		parts.add(tail.iterator());
+
+		return new Iterator<Message>() {
+			private int part;
+
+			@Override
+			public boolean hasNext() {
+				while(part < parts.size() && !parts.get(part).hasNext())
+					part++;
+
+				return part < parts.size();
+			}
+
+			@Override
+			public Message next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+
+				return parts.get(part).next();
+			}
+		};
+	}
+
+	// writes the oldest messages of the tail to the spill files until a quarter of the threshold is free
+	private void spill() {
+		try{
+			while(!tail.isEmpty() && headBytes + tailBytes > spillThreshold - spillThreshold / 4) {
+				Message message = tail.peekFirst();
+				writeRecord(MessageJournal.encodePush(message));
+				tail.removeFirst();
+				tailBytes -= QueueCapacity.getBodySize(message);
+				spilledCount++;
+			}
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while spilling messages to %s; keeping them in memory", parentDirectory), e);
+			// the segment may end with a partial record; readers stop at its last complete one, so later spills go to a new segment
+			closeOutput();
+		}
+	}
+
+	private void writeRecord(byte[] payload) throws IOException {
+		if(writeSegment == null || writeSegment.size >= segmentSize)
+			startSegment();
+
+		output.writeInt(payload.length);
+		output.write(payload);
+		writeSegment.size += 4 + payload.length;
+		writeSegment.writtenCount++;
+	}
+
+	private void startSegment() throws IOException {
+		closeOutput();
+
+		if(spillDirectory == null) {
+			if(!parentDirectory.isDirectory() && !parentDirectory.mkdirs())
+				throw new IOException(String.format("Failed to create spill directory %s", parentDirectory));
+			spillDirectory = Files.createTempDirectory(parentDirectory.toPath(), "queue-spill-").toFile();
+		}
+
+		Segment segment = new Segment(new File(spillDirectory, String.format("%d.spill", nextSegmentNumber++)));
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.file), 64 * 1024));
+		segments.addLast(segment);
+		writeSegment = segment;
+	}
+
+	// makes the head non-empty: from a prefetch, from the spill files or, if nothing is spilled, from the tail
+	private void refillHead() {
+		if(prefetch == null && spilledCount > 0)
+			submitPrefetch(spillThreshold / 4);
+
+		if(prefetch != null) {
+			mergePrefetch();
+		}
+		else {
+			head.addAll(tail);
+			headBytes += tailBytes;
+			tail.clear();
+			tailBytes = 0;
+		}
+	}
+
+	// reads ahead once the head runs low
+	private void startPrefetch() {
+		if(prefetch == null && spilledCount > 0 && headBytes < spillThreshold / 8)
+			submitPrefetch(spillThreshold / 4);
+	}
+
+	private void submitPrefetch(final long chunkBytes) {
+		final Segment segment = segments.peekFirst();
+
+		// the records to read must have left the write buffer
+		if(segment == writeSegment)
+			flushOutput();
+
+		final int count = segment.writtenCount - segment.readCount;
+
+		prefetch = prefetchExecutor.submit(new Callable<List<Message>>() {
+			@Override
+			public List<Message> call() throws IOException {
+				if(segment.input == null)
+					segment.input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 64 * 1024));
+
+				List<Message> messages = new ArrayList<>();
+				long bytes = 0;
+
+				while(messages.size() < count && (messages.isEmpty() || bytes < chunkBytes)) {
+					Message message = readRecord(segment.input);
+					messages.add(message);
+					bytes += QueueCapacity.getBodySize(message);
+				}
+
+				return messages;
+			}
+		});
+	}
+
+	// appends the prefetched messages to the head and deletes the segment once it is read completely
+	private void mergePrefetch() {
+		if(prefetch == null)
+			return;
+
+		List<Message> messages;
+		try{
+			messages = prefetch.get();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while reading spilled messages", e);
+		}catch(ExecutionException e) {
+			throw new UncheckedIOException(new IOException("Exception caught while reading spilled messages", e.getCause()));
+		}finally{
+			prefetch = null;
+		}
+
+		Segment segment = segments.peekFirst();
+		for(Message message: messages) {
+			head.addLast(message);
+			headBytes += QueueCapacity.getBodySize(message);
+		}
+		segment.readCount += messages.size();
+		spilledCount -= messages.size();
+
+		if(segment.readCount == segment.writtenCount && segment != writeSegment)
+			deleteSegment(segments.removeFirst());
+	}
+
+	private void awaitPrefetch() {
+		try{
+			mergePrefetch();
+		}catch(RuntimeException e) {
+			logger.error("Exception caught while discarding spilled messages", e);
+		}
+	}
+
+	private void flushOutput() {
+		if(output == null)
+			return;
+
+		try{
+			output.flush();
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void closeOutput() {
+		if(output == null)
+			return;
+
+		try{
+			output.close();
+		}catch(IOException e) {
+			logger.error("Exception caught while closing a spill file", e);
+		}
+		output = null;
+
+		// a completely read segment was only kept because it was being written
+		if(writeSegment.readCount == writeSegment.writtenCount && segments.peekFirst() == writeSegment)
+			deleteSegment(segments.removeFirst());
+		writeSegment = null;
+	}
+
+	private void deleteSegments() {
+		closeOutput();
+
+		while(!segments.isEmpty())
+			deleteSegment(segments.removeFirst());
+
+		if(spillDirectory != null && !spillDirectory.delete())
+			logger.error(String.format("Failed to delete spill directory %s", spillDirectory));
+		spillDirectory = null;
+	}
+
+	private static void deleteSegment(Segment segment) {
+		try{
+			if(segment.input != null)
+				segment.input.close();
+		}catch(IOException e) {
+			logger.error(String.format("Exception caught while closing spill file %s", segment.file), e);
+		}
+
+		if(!segment.file.delete())
+			logger.error(String.format("Failed to delete spill file %s", segment.file));
+	}
+
+	private static Message readRecord(DataInputStream input) throws IOException {
+		byte[] payload = new byte[input.readInt()];
+		input.readFully(payload);
+
+		return MessageJournal.decodePush(ByteBuffer.wrap(payload));
+	}
+
+	// reads the unread records of a segment through a stream of its own
+	private static class SegmentIterator implements Iterator<Message> {
+		private final Segment segment;
+		private DataInputStream input;
+		private int index;
+
+		SegmentIterator(Segment segment) {
+			this.segment = segment;
+			this.index = segment.readCount;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(index < segment.writtenCount)
+				return true;
+
+			closeInput();
+			return false;
+		}
+
+		@Override
+		public Message next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+
+			try{
+				if(input == null) {
+					input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 64 * 1024));
+
+					// skips the records which are already merged into the head
+					for(int i = 0; i < segment.readCount; i++)
+						input.skipBytes(input.readInt());
+				}
+
+				index++;
+				return readRecord(input);
+			}catch(IOException e) {
+				closeInput();
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void closeInput() {
+			try{
+				if(input != null)
+					input.close();
+			}catch(IOException e) {
+				logger.error(String.format("Exception caught while closing spill file %s", segment.file), e);
+			}
+			input = null;
+		}
+	}
+}
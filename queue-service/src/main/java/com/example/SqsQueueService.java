@@ -1,111 +1,864 @@
 package com.example;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
-import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteQueueRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
 import com.amazonaws.util.StringUtils;
 
 public class SqsQueueService implements QueueService {
   
-	// An adapter for AWS backed queue service - SQS; implemented the push method only. 
+	// An adapter for AWS backed queue service - SQS. Queue URLs are resolved through a QueueUrlCache, so a request 
+	// costs a single round trip once the URL of its queue is known. With buffered sends, the pushes to a queue are 
+	// collected into SendMessageBatch requests by a SendMessageBuffer; push() then waits for the batch of its message.
+	// The queues started with startPrefetch() are pulled from a ReceiveMessageBuffer and deleted from through a 
+	// DeleteMessageBuffer. Every operation of QueueService is implemented; what SQS cannot serve, such as message 
+	// groups, fails with a logged error like a failed request instead of throwing.
 	
 	private AmazonSQSClient sqsClient;
+	private final QueueUrlCache queueUrlCache;
+	// <queue name, buffer> of the buffered sends; null if the sends are not buffered
+	private final ConcurrentMap<String, SendMessageBuffer> sendBuffers;
+	private final long maxLingerMillis;
+	private final ThreadPoolExecutor sendExecutor;
+	// <queue name, buffer> of the queues started with startPrefetch()
+	private final ConcurrentMap<String, ReceiveMessageBuffer> receiveBuffers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, DeleteMessageBuffer> deleteBuffers = new ConcurrentHashMap<>();
+	private final static int maxBatchSize = 10;
+	private final static int maxBatchBytes = 256 * 1024;
+	private final static int useQueueDelaySeconds = -1;
+	private final static int maximumWaitTimeSeconds = 20;
+	private final static int maxConcurrentDeletes = 5;
+	private final static String nonExistentQueueErrorCode = "AWS.SimpleQueueService.NonExistentQueue";
 	private final static Logger logger = Logger.getLogger(SqsQueueService.class);
 	
 	public SqsQueueService(AmazonSQSClient sqsClient) {
+	  this(sqsClient, new QueueUrlCache());
+	}
+	
+	public SqsQueueService(AmazonSQSClient sqsClient, QueueUrlCache queueUrlCache) {
 	  this.sqsClient = sqsClient;
+	  this.queueUrlCache = queueUrlCache;
+	  this.sendBuffers = null;
+	  this.maxLingerMillis = 0;
+	  this.sendExecutor = null;
+	}
+	
+	// buffered sends: a message waits up to maxLingerMillis for others to share its SendMessageBatch, and at most 
+	// maxConcurrentSends batches are sent at a time
+	public SqsQueueService(AmazonSQSClient sqsClient, long maxLingerMillis, int maxConcurrentSends) {
+	  this(sqsClient, new QueueUrlCache(), maxLingerMillis, maxConcurrentSends);
+	}
+	
+	public SqsQueueService(AmazonSQSClient sqsClient, QueueUrlCache queueUrlCache, long maxLingerMillis, int maxConcurrentSends) {
+	  if(maxLingerMillis < 0 || maxConcurrentSends < 1)
+		  throw new IllegalArgumentException(String.format("Invalid linger time %d or number of concurrent sends %d", maxLingerMillis, maxConcurrentSends));
+	  
+	  this.sqsClient = sqsClient;
+	  this.queueUrlCache = queueUrlCache;
+	  this.sendBuffers = new ConcurrentHashMap<>();
+	  this.maxLingerMillis = maxLingerMillis;
+	  this.sendExecutor = createSendExecutor(maxConcurrentSends);
+	}
+	
+	// as many batches may wait as are being sent; beyond that the producers block until a sender is free, so a slow 
+	// SQS throttles them instead of growing the backlog
+	private static ThreadPoolExecutor createSendExecutor(int maxConcurrentSends) {
+		return new ThreadPoolExecutor(maxConcurrentSends, maxConcurrentSends, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxConcurrentSends), 
+				DaemonExecutors.threadFactory("sqs-send"), 
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+						if(executor.isShutdown())
+							throw new RejectedExecutionException("Send executor is shut down");
+						
+						try{
+							executor.getQueue().put(runnable);
+						}catch(InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new RejectedExecutionException(e);
+						}
+					}
+				});
 	}
 
 	@Override
 	public boolean createQueue(CreateQueueRequest createQueueRequest) {
-		throw new UnsupportedOperationException();
+		if(createQueueRequest == null) {
+			logger.error("Queue request is null. Failed to create a queue.");
+			return false;
+		}
+		
+		String qName = createQueueRequest.getQueueName();
+		
+		if(StringUtils.isNullOrEmpty(qName)) {
+			logger.error("Queue name is null or empty. Failed to create a queue.");
+			return false;
+		}
+		
+		try{
+			CreateQueueResult createQueueResult = sqsClient.createQueue(createQueueRequest);
+			queueUrlCache.put(qName, createQueueResult.getQueueUrl(), System.currentTimeMillis());
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to create the queue", qName, e);
+			return false;
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        return false;
+	    }
+		
+		return true;
 	}
 	
 	@Override
 	public boolean deleteQueue(String qName) {
-		throw new UnsupportedOperationException();
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return false;
+		
+		stopPrefetch(qName, false);
+		
+		// the messages pushed before are sent first
+		if(sendBuffers != null) {
+			SendMessageBuffer sendBuffer = sendBuffers.remove(qName);
+			if(sendBuffer != null)
+				sendBuffer.flush();
+		}
+		
+		try{
+			sqsClient.deleteQueue(new DeleteQueueRequest(queueUrl));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to delete the queue", qName, e);
+			return false;
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        return false;
+	    }finally {
+			queueUrlCache.invalidate(qName);
+		}
+		
+		return true;
 	}
 	
+	// the listed URLs are cached as well, so the first request to a listed queue needs no GetQueueUrl; null if the 
+	// queues cannot be listed
 	@Override
 	public List<String> getQueueNames() {
-		throw new UnsupportedOperationException();
+		List<String> queueNames = new ArrayList<>();
+		
+		try{
+			long now = System.currentTimeMillis();
+			
+			for(String queueUrl: sqsClient.listQueues(new ListQueuesRequest()).getQueueUrls()) {
+				String qName = queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+				queueUrlCache.put(qName, queueUrl, now);
+				queueNames.add(qName);
+			}
+		}catch(AmazonServiceException e) {
+			logger.error(String.format("Failed to list the queues. Error code:%s, Error type: %s, Error message: %s ", e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+			return null;
+		}catch (AmazonClientException e) {
+	        logger.error("Unable to list the message queues", e);
+	        return null;
+	    }
+		
+		return queueNames;
 	}
 	
+	// SQS validates the attributes
 	@Override
 	public void setQueueAttributes(String qName, Map<String, String> attributes) {
-		throw new UnsupportedOperationException();
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return;
+		
+		try{
+			sqsClient.setQueueAttributes(new SetQueueAttributesRequest(queueUrl, attributes));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to set the attributes of queue", qName, e);
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	    }
 	}
 	
 	@Override
 	public Map<String, String> getQueueAttributes(String qName) {
-		throw new UnsupportedOperationException();
+		return getQueueAttributes(qName, "All");
+	}
+	
+	// null if the attributes cannot be read
+	private Map<String, String> getQueueAttributes(String qName, String attributeName) {
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return null;
+		
+		try{
+			return sqsClient.getQueueAttributes(new GetQueueAttributesRequest(queueUrl).withAttributeNames(attributeName)).getAttributes();
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to get the attributes of queue", qName, e);
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	    }
+		
+		return null;
 	}
 	
 	@Override
 	public int getApproximateNumberOfMessages(String qName) {
-		throw new UnsupportedOperationException();
+		return getIntegerAttribute(qName, "ApproximateNumberOfMessages");
 	}
 	
 	@Override
 	public boolean purgeQueue(String qName) {
-		throw new UnsupportedOperationException();
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return false;
+		
+		try{
+			sqsClient.purgeQueue(new PurgeQueueRequest(queueUrl));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to purge the queue", qName, e);
+			return false;
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        return false;
+	    }
+		
+		return true;
+	}
+	
+	@Override
+	public int getApproximateNumberOfMessagesDelayed(String qName) {
+		return getIntegerAttribute(qName, "ApproximateNumberOfMessagesDelayed");
+	}
+	
+	// -1 if the count cannot be read
+	private int getIntegerAttribute(String qName, String attributeName) {
+		Map<String, String> attributes = getQueueAttributes(qName, attributeName);
+		
+		if(attributes == null || attributes.get(attributeName) == null)
+			return -1;
+		
+		return Integer.parseInt(attributes.get(attributeName));
 	}
 	
 	@Override
 	public String push(String qName, String messageBody) {
-		String queueUrl = null;
+		return pushMessage(qName, messageBody, useQueueDelaySeconds);
+	}
+	
+	// SQS validates the delay
+	@Override
+	public String push(String qName, String messageBody, int delaySeconds) {
+		return pushMessage(qName, messageBody, delaySeconds);
+	}
+	
+	// this version of the SQS client predates FIFO queues, so a message of a group is not pushed
+	@Override
+	public String push(String qName, String messageBody, String messageGroupId) {
+		logger.error(String.format("Message groups are not supported by the SQS client. Message of group %s not pushed onto queue %s", messageGroupId, qName));
+		return null;
+	}
+	
+	// nor does it know deduplication ids; a push without either is a plain push
+	@Override
+	public String push(String qName, String messageBody, String messageGroupId, String messageDeduplicationId) {
+		if(messageGroupId != null)
+			return push(qName, messageBody, messageGroupId);
+		
+		if(messageDeduplicationId != null) {
+			logger.error(String.format("Message deduplication is not supported by the SQS client. Message with deduplication id %s not pushed onto queue %s", messageDeduplicationId, qName));
+			return null;
+		}
+		
+		return pushMessage(qName, messageBody, useQueueDelaySeconds);
+	}
+	
+	// pushes a message without waiting for SQS. With buffered sends the message is batched with the other pushes to 
+	// the queue, otherwise it is sent right away. The future is completed with the message id, or with null if the 
+	// message could not be pushed.
+	public Future<String> pushAsync(String qName, String messageBody) {
+		if(sendBuffers == null)
+			return CompletableFuture.completedFuture(pushMessage(qName, messageBody, useQueueDelaySeconds));
+		
+		String queueUrl = getPushQueueUrl(qName, messageBody);
+		
+		if(queueUrl == null)
+			return CompletableFuture.completedFuture(null);
+		
+		return getSendBuffer(qName, queueUrl).add(messageBody, null);
+	}
+	
+	// sends the buffered messages of all the queues without waiting for their linger time
+	public void flush() {
+		if(sendBuffers == null)
+			return;
+		
+		for(SendMessageBuffer sendBuffer: sendBuffers.values())
+			sendBuffer.flush();
+	}
+	
+	// flushes the buffered messages, stops the send threads once they are sent and stops all the prefetches
+	public void shutdown() {
+		for(String qName: receiveBuffers.keySet())
+			stopPrefetch(qName, false);
+		
+		if(sendBuffers == null)
+			return;
+		
+		flush();
+		sendExecutor.shutdown();
+	}
+	
+	// Serves the pulls of the queue from a local buffer, which a background thread keeps filled with long polling 
+	// receives of up to 10 messages while fewer than maxPrefetchedMessages are buffered, and coalesces the deletes of 
+	// the queue into DeleteMessageBatch requests. The prefetched messages are invisible for the VisibilityTimeout of 
+	// the queue as it is now; a pull with an explicit visibility timeout bypasses the buffer. Keep maxPrefetchedMessages 
+	// below what the consumers take within that timeout, the messages which outlive it in the buffer are dropped.
+	public boolean startPrefetch(String qName, int maxPrefetchedMessages, int waitTimeSeconds) {
+		if(maxPrefetchedMessages < 1) {
+			logger.error(String.format("Invalid number of prefetched messages (%d). Failed to prefetch messages from %s", maxPrefetchedMessages, qName));
+			return false;
+		}
+		
+		if(waitTimeSeconds < 1 || waitTimeSeconds > maximumWaitTimeSeconds) {
+			logger.error(String.format("Invalid wait time (%d). Failed to prefetch messages from %s", waitTimeSeconds, qName));
+			return false;
+		}
+		
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return false;
+		
+		int visibilityTimeout = getIntegerAttribute(qName, "VisibilityTimeout");
+		
+		if(visibilityTimeout < 1) {
+			logger.error(String.format("Invalid visibility timeout (%d). Failed to prefetch messages from %s", visibilityTimeout, qName));
+			return false;
+		}
+		
+		ReceiveMessageBuffer receiveBuffer = new ReceiveMessageBuffer(sqsClient, queueUrlCache, qName, queueUrl, maxPrefetchedMessages, 
+				waitTimeSeconds, visibilityTimeout);
+		
+		if(receiveBuffers.putIfAbsent(qName, receiveBuffer) != null) {
+			logger.error(String.format("Messages are prefetched from queue %s already", qName));
+			return false;
+		}
+		
+		deleteBuffers.put(qName, new DeleteMessageBuffer(sqsClient, queueUrlCache, qName, queueUrl, maxConcurrentDeletes));
+		receiveBuffer.start();
+		return true;
+	}
+	
+	// stops the prefetch of the queue and makes its buffered messages visible again
+	public boolean stopPrefetch(String qName) {
+		return stopPrefetch(qName, true);
+	}
+	
+	private boolean stopPrefetch(String qName, boolean required) {
+		ReceiveMessageBuffer receiveBuffer = StringUtils.isNullOrEmpty(qName) ? null : receiveBuffers.remove(qName);
+		
+		if(receiveBuffer == null) {
+			if(required)
+				logger.error(String.format("No messages are prefetched from queue %s", qName));
+			return false;
+		}
+		
+		receiveBuffer.stop();
+		deleteBuffers.remove(qName);
+		return true;
+	}
+	
+	// buffer of a queue started with startPrefetch(); null if its messages are not prefetched. A buffer which stopped 
+	// itself, e.g., because the queue was deleted, is dropped.
+	public ReceiveMessageBuffer getReceiveBuffer(String qName) {
+		ReceiveMessageBuffer receiveBuffer = StringUtils.isNullOrEmpty(qName) ? null : receiveBuffers.get(qName);
+		
+		if(receiveBuffer != null && receiveBuffer.isStopped()) {
+			if(receiveBuffers.remove(qName, receiveBuffer))
+				deleteBuffers.remove(qName);
+			return null;
+		}
+		
+		return receiveBuffer;
+	}
+	
+	// useQueueDelaySeconds leaves the delay to the DelaySeconds of the SQS queue
+	private String pushMessage(String qName, String messageBody, int delaySeconds) {
 		String messageId = null;
+		String queueUrl = getPushQueueUrl(qName, messageBody);
 		
-		if(StringUtils.isNullOrEmpty(qName)) {
-			logger.error(String.format("Queue name is null or empty. Failed to push message into %s", qName));
+		if(queueUrl == null)
 			return messageId;
-		}
+		
+		if(sendBuffers != null)
+			return getMessageId(qName, getSendBuffer(qName, queueUrl).add(messageBody, delaySeconds == useQueueDelaySeconds ? null : delaySeconds));
 		
 		try{
-			GetQueueUrlResult getQueueUrlResult = sqsClient.getQueueUrl(qName);
-			queueUrl = getQueueUrlResult.getQueueUrl();
+			SendMessageRequest sendMessageRequest = new SendMessageRequest(queueUrl, messageBody);
+			if(delaySeconds != useQueueDelaySeconds)
+				sendMessageRequest.setDelaySeconds(delaySeconds);
+			
+			SendMessageResult sendMessageResult = sqsClient.sendMessage(sendMessageRequest);
+			messageId = sendMessageResult.getMessageId();
 		}catch(AmazonServiceException e) {
-			logger.error(String.format("Failed to get a valid queue url for queue name %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+			logServiceError("Failed to push message into the queue", qName, e);
 		}catch (AmazonClientException e) {
-	        logger.error(String.format("Unable to get message queue %s", qName), e);
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
 	    }
 		
+		return messageId;
+	}
+	
+	// URL of the queue a message is pushed into; null if the push is invalid
+	private String getPushQueueUrl(String qName, String messageBody) {
+		if(StringUtils.isNullOrEmpty(qName)) {
+			logger.error(String.format("Queue name is null or empty. Failed to push message into %s", qName));
+			return null;
+		}
+		
+		String queueUrl = getQueueUrl(qName);
+		
 		if(StringUtils.isNullOrEmpty(queueUrl))
-			return messageId;
+			return null;
 		
 		if(StringUtils.isNullOrEmpty(messageBody)) {
 			logger.error(String.format("Message body is null or empty. Falied to push the message into queue %s",qName));
-			return messageId;
+			return null;
 		}
 		
+		return queueUrl;
+	}
+	
+	// buffer of the queue; a buffer of an outdated URL is replaced once its messages are sent on their way
+	private SendMessageBuffer getSendBuffer(String qName, String queueUrl) {
+		while(true) {
+			SendMessageBuffer sendBuffer = sendBuffers.get(qName);
+			
+			if(sendBuffer != null && sendBuffer.getQueueUrl().equals(queueUrl))
+				return sendBuffer;
+			
+			SendMessageBuffer newSendBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, qName, queueUrl, maxLingerMillis, sendExecutor);
+			
+			if(sendBuffer == null && sendBuffers.putIfAbsent(qName, newSendBuffer) == null)
+				return newSendBuffer;
+			
+			if(sendBuffer != null && sendBuffers.replace(qName, sendBuffer, newSendBuffer)) {
+				sendBuffer.flush();
+				return newSendBuffer;
+			}
+		}
+	}
+	
+	private String getMessageId(String qName, Future<String> future) {
 		try{
-			SendMessageResult sendMessageResult = sqsClient.sendMessage(queueUrl, messageBody);
-			messageId = sendMessageResult.getMessageId();
+			return future.get();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error(String.format("Interrupted while pushing message into queue %s", qName));
+		}catch(ExecutionException e) {
+			logger.error(String.format("Failed to push message into the queue %s", qName), e.getCause());
+		}
+		
+		return null;
+	}
+	
+	// SendMessageBatch accepts at most 10 entries of at most 256 KB in total, so the bodies are sent in chunks of 
+	// maxBatchSize entries or maxBatchBytes, whichever is reached first. A body larger than maxBatchBytes fails 
+	// without being sent. Entry ids are the positions of the bodies in the given list.
+	@Override
+	public SendMessageBatchResult pushBatch(String qName, List<String> messageBodies) {
+		if(StringUtils.isNullOrEmpty(qName)) {
+			logger.error(String.format("Queue name is null or empty. Failed to push messages into %s", qName));
+			return null;
+		}
+		
+		if(messageBodies == null || messageBodies.isEmpty()) {
+			logger.error(String.format("Message batch is null or empty. Failed to push messages into queue %s", qName));
+			return null;
+		}
+		
+		String queueUrl = getQueueUrl(qName);
+		
+		if(StringUtils.isNullOrEmpty(queueUrl))
+			return null;
+		
+		SendMessageBatchResult result = new SendMessageBatchResult();
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<>(maxBatchSize);
+		int entriesBytes = 0;
+		
+		for(int i = 0; i < messageBodies.size(); i++) {
+			String messageBody = messageBodies.get(i);
+			
+			int messageBytes = StringUtils.isNullOrEmpty(messageBody) ? 0 : messageBody.getBytes(StandardCharsets.UTF_8).length;
+			
+			if(messageBytes == 0)
+				result.withFailed(new BatchResultErrorEntry().withId(String.valueOf(i)).withSenderFault(true)
+						.withCode("InvalidMessageContents").withMessage("Message body is null or empty"));
+			else if(messageBytes > maxBatchBytes)
+				result.withFailed(new BatchResultErrorEntry().withId(String.valueOf(i)).withSenderFault(true)
+						.withCode("InvalidParameterValue").withMessage(String.format("Message body of %d bytes exceeds %d bytes", messageBytes, maxBatchBytes)));
+			else {
+				// a body which does not fit any more starts the next chunk
+				if(!entries.isEmpty() && entriesBytes + messageBytes > maxBatchBytes) {
+					sendMessageBatch(qName, queueUrl, entries, result);
+					entries = new ArrayList<>(maxBatchSize);
+					entriesBytes = 0;
+				}
+				
+				entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), messageBody));
+				entriesBytes += messageBytes;
+			}
+			
+			if(entries.size() == maxBatchSize || entriesBytes >= maxBatchBytes || (i == messageBodies.size() - 1 && !entries.isEmpty())) {
+				sendMessageBatch(qName, queueUrl, entries, result);
+				entries = new ArrayList<>(maxBatchSize);
+				entriesBytes = 0;
+			}
+		}
+		
+		return result;
+	}
+	
+	private void sendMessageBatch(String qName, String queueUrl, List<SendMessageBatchRequestEntry> entries, SendMessageBatchResult result) {
+		try{
+			SendMessageBatchResult batchResult = sqsClient.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries));
+			result.getSuccessful().addAll(batchResult.getSuccessful());
+			result.getFailed().addAll(batchResult.getFailed());
 		}catch(AmazonServiceException e) {
-			logger.error(String.format("Failed to push message into the queue %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+			logServiceError("Failed to push messages into the queue", qName, e);
+			addFailedEntries(entries, e.getErrorCode(), e.getErrorMessage(), result);
 		}catch (AmazonClientException e) {
 	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        addFailedEntries(entries, "ClientError", e.getMessage(), result);
 	    }
+	}
+	
+	private void addFailedEntries(List<SendMessageBatchRequestEntry> entries, String code, String errorMessage, SendMessageBatchResult result) {
+		for(SendMessageBatchRequestEntry entry: entries)
+			result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(false).withCode(code).withMessage(errorMessage));
+	}
+	
+	private void addFailedEntries(List<String> ids, String code, String errorMessage, List<BatchResultErrorEntry> failed) {
+		for(String id: ids)
+			failed.add(new BatchResultErrorEntry().withId(id).withSenderFault(false).withCode(code).withMessage(errorMessage));
+	}
+	
+	// resolves the URL of a queue through the cache; null if the queue name is invalid or the queue does not exist
+	private String getQueueUrl(String qName) {
+		if(StringUtils.isNullOrEmpty(qName)) {
+			logger.error("Queue name is null or empty. Failed to get a valid queue url.");
+			return null;
+		}
 		
-		return messageId;
+		long now = System.currentTimeMillis();
+		String queueUrl = queueUrlCache.get(qName, now);
+		
+		if(queueUrl != null)
+			return queueUrl;
+		
+		try{
+			queueUrl = sqsClient.getQueueUrl(new GetQueueUrlRequest(qName)).getQueueUrl();
+			queueUrlCache.put(qName, queueUrl, now);
+		}catch(AmazonServiceException e) {
+			logger.error(String.format("Failed to get a valid queue url for queue name %s. Error code:%s, Error type: %s, Error message: %s ", qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to get message queue %s", qName), e);
+	    }
+		
+		return queueUrl;
+	}
+	
+	// a queue which was deleted behind the cache's back is forgotten, so the next request resolves it again
+	private void logServiceError(String failure, String qName, AmazonServiceException e) {
+		if(isNonExistentQueue(e))
+			queueUrlCache.invalidate(qName);
+		
+		logger.error(String.format("%s %s. Error code:%s, Error type: %s, Error message: %s ", failure, qName, e.getErrorCode(), e.getErrorType(), e.getErrorMessage()));
 	}
 	
+	static boolean isNonExistentQueue(AmazonServiceException e) {
+		return e instanceof QueueDoesNotExistException || nonExistentQueueErrorCode.equals(e.getErrorCode());
+	}
+	
+	// the queue specific ReceiveMessageWaitTimeSeconds applies; a prefetched queue answers from its buffer right away
 	@Override
 	public Message pull(String qName) {
-		throw new UnsupportedOperationException();
+		ReceiveMessageBuffer receiveBuffer = getReceiveBuffer(qName);
+		List<Message> messages = receiveBuffer == null ? receiveMessages(qName, 1, null, null) : takeMessages(receiveBuffer, qName, 1, 0);
+		
+		return messages == null || messages.isEmpty() ? null : messages.get(0);
+	}
+	
+	@Override
+	public Message pull(String qName, int waitTimeSeconds) {
+		ReceiveMessageBuffer receiveBuffer = getReceiveBuffer(qName);
+		List<Message> messages = receiveBuffer == null ? receiveMessages(qName, 1, waitTimeSeconds, null) 
+				: takeMessages(receiveBuffer, qName, 1, waitTimeSeconds);
+		
+		return messages == null || messages.isEmpty() ? null : messages.get(0);
+	}
+	
+	@Override
+	public List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds) {
+		ReceiveMessageBuffer receiveBuffer = getReceiveBuffer(qName);
+		
+		if(receiveBuffer != null)
+			return takeMessages(receiveBuffer, qName, maxNumberOfMessages, waitTimeSeconds);
+		
+		return receiveMessages(qName, maxNumberOfMessages, waitTimeSeconds, null);
+	}
+	
+	// validated like SQS would; null if the request is invalid
+	private List<Message> takeMessages(ReceiveMessageBuffer receiveBuffer, String qName, int maxNumberOfMessages, int waitTimeSeconds) {
+		if(maxNumberOfMessages < 1 || maxNumberOfMessages > maxBatchSize) {
+			logger.error(String.format("Invalid maximum number of messages (%d). Failed to pull messages from %s", maxNumberOfMessages, qName));
+			return null;
+		}
+		
+		if(waitTimeSeconds < 0 || waitTimeSeconds > maximumWaitTimeSeconds) {
+			logger.error(String.format("Invalid wait time (%d). Failed to pull messages from %s", waitTimeSeconds, qName));
+			return null;
+		}
+		
+		return receiveBuffer.take(maxNumberOfMessages, waitTimeSeconds);
+	}
+	
+	@Override
+	public List<Message> pullBatch(String qName, int maxNumberOfMessages, int waitTimeSeconds, int visibilityTimeout) {
+		return receiveMessages(qName, maxNumberOfMessages, waitTimeSeconds, visibilityTimeout);
 	}
 	
+	// SQS validates the number of messages and the timeouts; a null timeout leaves it to the queue. Returns null if 
+	// the request failed.
+	private List<Message> receiveMessages(String qName, int maxNumberOfMessages, Integer waitTimeSeconds, Integer visibilityTimeout) {
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return null;
+		
+		ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(maxNumberOfMessages)
+				.withWaitTimeSeconds(waitTimeSeconds).withVisibilityTimeout(visibilityTimeout).withAttributeNames("All");
+		
+		try{
+			return sqsClient.receiveMessage(receiveMessageRequest).getMessages();
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to pull messages from the queue", qName, e);
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	    }
+		
+		return null;
+	}
+	
+	// the deletes from a prefetched queue are coalesced into batches
 	@Override
 	public boolean delete(String qName, String receiptHandle) {
-		throw new UnsupportedOperationException();
+		DeleteMessageBuffer deleteBuffer = StringUtils.isNullOrEmpty(qName) ? null : deleteBuffers.get(qName);
+		
+		if(deleteBuffer != null)
+			return deleteBuffer.delete(receiptHandle);
+		
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return false;
+		
+		try{
+			sqsClient.deleteMessage(new DeleteMessageRequest(queueUrl, receiptHandle));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to delete message from the queue", qName, e);
+			return false;
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        return false;
+	    }
+		
+		return true;
+	}
+	
+	// Receipt handles are no valid batch entry ids, so the entries are sent with their positions in the batch and the 
+	// result is reported by receipt handle. At most maxBatchSize entries per DeleteMessageBatch.
+	@Override
+	public DeleteMessageBatchResult deleteBatch(String qName, Collection<String> receiptHandles) {
+		if(receiptHandles == null || receiptHandles.isEmpty()) {
+			logger.error(String.format("Receipt handle batch is null or empty. Failed to delete messages from %s", qName));
+			return null;
+		}
+		
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return null;
+		
+		// receipt handles are the result ids, which must be distinct; a repeated one fails once and is not sent
+		Set<String> distinctReceiptHandles = new HashSet<>();
+		Set<String> repeatedReceiptHandles = new HashSet<>();
+		
+		for(String receiptHandle: receiptHandles) {
+			if(!distinctReceiptHandles.add(receiptHandle))
+				repeatedReceiptHandles.add(receiptHandle);
+		}
+		
+		DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+		List<String> batchReceiptHandles = new ArrayList<>(maxBatchSize);
+		
+		for(String receiptHandle: receiptHandles) {
+			if(repeatedReceiptHandles.contains(receiptHandle)) {
+				if(distinctReceiptHandles.remove(receiptHandle))
+					result.withFailed(new BatchResultErrorEntry().withId(receiptHandle).withSenderFault(true)
+							.withCode("BatchEntryIdsNotDistinct").withMessage("ReceiptHandle is repeated in the batch."));
+				continue;
+			}
+			
+			batchReceiptHandles.add(receiptHandle);
+			
+			if(batchReceiptHandles.size() == maxBatchSize) {
+				deleteMessageBatch(qName, queueUrl, batchReceiptHandles, result);
+				batchReceiptHandles = new ArrayList<>(maxBatchSize);
+			}
+		}
+		
+		if(!batchReceiptHandles.isEmpty())
+			deleteMessageBatch(qName, queueUrl, batchReceiptHandles, result);
+		
+		return result;
+	}
+	
+	private void deleteMessageBatch(String qName, String queueUrl, List<String> receiptHandles, DeleteMessageBatchResult result) {
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(receiptHandles.size());
+		
+		for(int i = 0; i < receiptHandles.size(); i++)
+			entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), receiptHandles.get(i)));
+		
+		try{
+			DeleteMessageBatchResult batchResult = sqsClient.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries));
+			
+			for(DeleteMessageBatchResultEntry entry: batchResult.getSuccessful())
+				result.withSuccessful(entry.withId(receiptHandles.get(Integer.parseInt(entry.getId()))));
+			for(BatchResultErrorEntry entry: batchResult.getFailed())
+				result.withFailed(entry.withId(receiptHandles.get(Integer.parseInt(entry.getId()))));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to delete messages from the queue", qName, e);
+			addFailedEntries(receiptHandles, e.getErrorCode(), e.getErrorMessage(), result.getFailed());
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        addFailedEntries(receiptHandles, "ClientError", e.getMessage(), result.getFailed());
+	    }
+	}
+	
+	// SQS validates the visibility timeout
+	@Override
+	public boolean changeMessageVisibility(String qName, String receiptHandle, int visibilityTimeout) {
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return false;
+		
+		try{
+			sqsClient.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, receiptHandle, visibilityTimeout));
+		}catch(AmazonServiceException e) {
+			logServiceError("Failed to change message visibility in the queue", qName, e);
+			return false;
+		}catch (AmazonClientException e) {
+	        logger.error(String.format("Unable to reach message queue %s", qName), e);
+	        return false;
+	    }
+		
+		return true;
+	}
+	
+	// the entries are sent in chunks of maxBatchSize with the ids given by the caller
+	@Override
+	public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(String qName, List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		if(entries == null || entries.isEmpty()) {
+			logger.error(String.format("Visibility change batch is null or empty. Failed to change message visibility in %s", qName));
+			return null;
+		}
+		
+		String queueUrl = getQueueUrl(qName);
+		
+		if(queueUrl == null)
+			return null;
+		
+		ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+		
+		for(int i = 0; i < entries.size(); i += maxBatchSize) {
+			List<ChangeMessageVisibilityBatchRequestEntry> batchEntries = entries.subList(i, Math.min(i + maxBatchSize, entries.size()));
+			
+			try{
+				ChangeMessageVisibilityBatchResult batchResult = sqsClient.changeMessageVisibilityBatch(
+						new ChangeMessageVisibilityBatchRequest(queueUrl, new ArrayList<>(batchEntries)));
+				result.getSuccessful().addAll(batchResult.getSuccessful());
+				result.getFailed().addAll(batchResult.getFailed());
+			}catch(AmazonServiceException e) {
+				logServiceError("Failed to change message visibility in the queue", qName, e);
+				addFailedEntries(getIds(batchEntries), e.getErrorCode(), e.getErrorMessage(), result.getFailed());
+			}catch (AmazonClientException e) {
+		        logger.error(String.format("Unable to reach message queue %s", qName), e);
+		        addFailedEntries(getIds(batchEntries), "ClientError", e.getMessage(), result.getFailed());
+		    }
+		}
+		
+		return result;
+	}
+	
+	private List<String> getIds(List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+		List<String> ids = new ArrayList<>(entries.size());
+		
+		for(ChangeMessageVisibilityBatchRequestEntry entry: entries)
+			ids.add(entry.getId());
+		
+		return ids;
 	}
 }
@@ -0,0 +1,97 @@
+package com.example;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Default IdGenerator. Ids are 128 bits rendered in the 36 character UUID layout (8-4-4-4-12 hex digits):
+// the upper 64 bits hold the creation time in milliseconds followed by a 16 bit per thread sequence, so ids of one
+// thread sort by creation time, and the lower 64 bits are random. Unlike UUID.randomUUID() no shared SecureRandom
+// is involved: every thread draws the random part from its own SecureRandom, seeded once from the shared one, and
+// fills a buffer of random bytes in bulk, so concurrent callers never contend and a SecureRandom call is paid only
+// once every randomBufferSize / 8 ids. Receipt handles thus cannot be predicted from the ones seen before.
+public class TimeOrderedIdGenerator implements IdGenerator {
+	
+	private final static char[] hexDigits = "0123456789abcdef".toCharArray();
+	private final static int idLength = 36;
+	private final static int randomBufferSize = 512;
+	private final static int seedSize = 32;
+	private final static TimeOrderedIdGenerator defaultGenerator = new TimeOrderedIdGenerator();
+	// seeds the per thread generators; the default SecureRandom of the platform, which may serialize its callers
+	private final static SecureRandom seedGenerator = new SecureRandom();
+	
+	private static class ThreadState {
+		private final char[] buffer = new char[idLength];
+		private int sequence = ThreadLocalRandom.current().nextInt();
+		private final SecureRandom random = newRandom();
+		private final byte[] randomBytes = new byte[randomBufferSize];
+		private int randomPosition = randomBufferSize;
+		
+		private long nextRandomLong() {
+			if(randomPosition == randomBufferSize) {
+				random.nextBytes(randomBytes);
+				randomPosition = 0;
+			}
+			
+			long value = 0;
+			for(int i = 0; i < 8; i++)
+				value = (value << 8) | (randomBytes[randomPosition++] & 0xFF);
+			
+			return value;
+		}
+	}
+	
+	private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+	
+	// generator shared by the queues and MessageCreator unless another one is given
+	public static TimeOrderedIdGenerator getDefault() {
+		return defaultGenerator;
+	}
+	
+	// SHA1PRNG keeps its state in the instance, unlike the native generators which share one source; seeded before
+	// its first use so that it never reads the blocking seed source itself
+	private static SecureRandom newRandom() {
+		byte[] seed = new byte[seedSize];
+		seedGenerator.nextBytes(seed);
+		
+		try{
+			SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+			random.setSeed(seed);
+			return random;
+		}catch(NoSuchAlgorithmException e) {
+			return new SecureRandom(seed);
+		}
+	}
+	
+	public String generateId() {
+		ThreadState state = threadState.get();
+		long mostSignificantBits = (System.currentTimeMillis() << 16) | (state.sequence++ & 0xFFFF);
+		long leastSignificantBits = state.nextRandomLong();
+		char[] buffer = state.buffer;
+		
+		writeHex(buffer, 0, mostSignificantBits >>> 32, 8);
+		buffer[8] = '-';
+		writeHex(buffer, 9, mostSignificantBits >>> 16, 4);
+		buffer[13] = '-';
+		writeHex(buffer, 14, mostSignificantBits, 4);
+		buffer[18] = '-';
+		writeHex(buffer, 19, leastSignificantBits >>> 48, 4);
+		buffer[23] = '-';
+		writeHex(buffer, 24, leastSignificantBits, 12);
+		
+		return new String(buffer);
+	}
+	
+	// writes the lowest (digits * 4) bits of value as hex digits to buffer[offset, offset + digits)
+	private static void writeHex(char[] buffer, int offset, long value, int digits) {
+		for(int i = offset + digits - 1; i >= offset; i--) {
+			buffer[i] = hexDigits[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+	}
+}
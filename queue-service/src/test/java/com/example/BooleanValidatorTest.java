@@ -0,0 +1,70 @@
+package com.example;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BooleanValidatorTest {
+	BooleanValidator booleanValidator = new BooleanValidator(true);
+	
+	@Mock
+    private Appender mockAppender;
+    @Captor
+    private ArgumentCaptor<LoggingEvent> captorLoggingEvent;
+    
+    @Before
+    public void setUp() {
+       	LogManager.getRootLogger().addAppender(mockAppender);
+    }
+    
+    @After
+    public void teardown() {
+        LogManager.getRootLogger().removeAppender(mockAppender);
+    }
+    
+	@Test
+	public void testValidateForTrueAndFalse() {
+		assertTrue(booleanValidator.validate("true"));
+		assertTrue(booleanValidator.validate("FALSE"));
+	}
+	
+	@Test
+	public void testValidateForInvalidValue() {
+		String value = "yes";
+		String expectedError = String.format("Invalid value - expected true or false %s", value);
+		
+		boolean validationStatus = booleanValidator.validate(value);
+		assertFalse(validationStatus);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testGetDefault() {
+		assertEquals("true", booleanValidator.getDefault());
+		assertEquals("false", new BooleanValidator(false).getDefault());
+	}
+	
+	private void verifyLoggedMessage(String expectedMessage, Level expectedLevel) {
+		verify(mockAppender).doAppend(captorLoggingEvent.capture());
+		LoggingEvent loggingEvent = captorLoggingEvent.getValue();
+        assertThat(loggingEvent.getLevel(), is(expectedLevel));
+        assertThat(loggingEvent.getRenderedMessage(), is(expectedMessage));
+	}
+}
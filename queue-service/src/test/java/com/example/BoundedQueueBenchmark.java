@@ -0,0 +1,99 @@
+package com.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+// Measures the cost of the capacity accounting of InMemoryQueue: push + pull + delete throughput of an unbounded
+// queue, of a bounded queue which never fills up and of a small bounded queue whose producers block on every push.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.BoundedQueueBenchmark
+public class BoundedQueueBenchmark {
+
+	private static final int[] threadCounts = {1, 4, 16};
+	private static final int messagesPerRun = 400000;
+	private static final String[] limits = {"0", "100000000", "100"};
+
+	public static void main(String[] args) throws InterruptedException {
+		RefreshScheduler refreshScheduler = new RefreshScheduler(10L);
+		for(String limit: limits)
+			run(refreshScheduler, limit, 4);
+
+		System.out.println(String.format("%-8s %16s %16s %16s", "threads", "unbounded", "never full", "100, block"));
+
+		for(int threads: threadCounts) {
+			StringBuilder line = new StringBuilder(String.format("%-8d", threads));
+			for(String limit: limits)
+				line.append(String.format(" %16d", run(refreshScheduler, limit, threads)));
+			System.out.println(line);
+		}
+
+		refreshScheduler.shutdown();
+	}
+
+	// returns the number of messages pushed, pulled and deleted per second
+	private static long run(RefreshScheduler refreshScheduler, String maximumNumberOfMessages, int threads) throws InterruptedException {
+		final String qName = "BenchmarkQueue";
+		final QueueService queueService = new InMemoryQueueService(new InMemoryQueueFactory(refreshScheduler));
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", maximumNumberOfMessages);
+		attributes.put("OverflowPolicy", "block");
+		attributes.put("ComputeMD5OfBody", "false");
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+
+		final int messagesPerProducer = messagesPerRun / threads;
+		final int totalMessages = messagesPerProducer * threads;
+		final AtomicInteger consumed = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+
+		for(int i = 0; i < threads; i++) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					await(start);
+					for(int j = 0; j < messagesPerProducer; j++) {
+						if(queueService.push(qName, "benchmark message body") == null)
+							throw new IllegalStateException("push failed");
+					}
+				}
+			});
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					await(start);
+					while(consumed.get() < totalMessages) {
+						Message message = queueService.pull(qName, 1);
+						if(message != null) {
+							queueService.delete(qName, message.getReceiptHandle());
+							consumed.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.MINUTES);
+		long elapsedNanos = System.nanoTime() - startTime;
+
+		queueService.deleteQueue(qName);
+		return (long) (totalMessages / (elapsedNanos / 1e9));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try{
+			latch.await();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
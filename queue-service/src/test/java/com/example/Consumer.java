@@ -7,6 +7,7 @@ public class Consumer implements Runnable{
 	private final QueueService queueService;
 	private final String qName;
 	private String name;
+	private final int waitTimeSeconds = 20;
 	
 	public Consumer(String name, QueueService queueService, String qName) {
 		this.name = name;
@@ -18,7 +19,8 @@ public class Consumer implements Runnable{
 	public void run() {
 		while(!Thread.interrupted()) {
 			try{
-				Message message = queueService.pull(qName);
+				// long poll so that idle consumers park instead of spinning
+				Message message = queueService.pull(qName, waitTimeSeconds);
 				
 				if(message != null) {
 					System.out.println(name + " pulled message: " + message.getReceiptHandle());
@@ -30,6 +32,7 @@ public class Consumer implements Runnable{
 				
 			}catch(InterruptedException e) {
 				e.printStackTrace();
+				Thread.currentThread().interrupt();
 			}
 		}
 		
@@ -0,0 +1,45 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DaemonExecutorsTest {
+
+	@Test
+	public void testThreadFactoryCreatesNamedDaemonThreads() {
+		ThreadFactory threadFactory = DaemonExecutors.threadFactory("test-worker");
+		Runnable runnable = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+
+		Thread firstThread = threadFactory.newThread(runnable);
+		Thread secondThread = threadFactory.newThread(runnable);
+
+		assertTrue(firstThread.isDaemon());
+		assertEquals("test-worker-1", firstThread.getName());
+		assertEquals("test-worker-2", secondThread.getName());
+	}
+
+	@Test
+	public void testSchedulerIsSharedAndRunsOnDaemonThreads() throws Exception {
+		assertSame(DaemonExecutors.getScheduler(), DaemonExecutors.getScheduler());
+
+		boolean daemon = DaemonExecutors.getScheduler().schedule(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return Thread.currentThread().isDaemon();
+			}
+		}, 1, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+
+		assertTrue(daemon);
+	}
+}
@@ -0,0 +1,86 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeduplicationCacheTest {
+	DeduplicationCache deduplicationCache;
+	
+	@Before
+	public void setUp() {
+		deduplicationCache = new DeduplicationCache(1000L, 100L, 100);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBucket() {
+		new DeduplicationCache(1000L, 0L, 100);
+	}
+	
+	@Test
+	public void testDuplicateWithinWindowGetsOriginalId() {
+		assertNull(deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L));
+		
+		assertEquals("Message 1", deduplicationCache.putIfAbsent("Id 1", "Message 2", 10999L));
+		assertEquals("Message 1", deduplicationCache.get("Id 1", 10999L));
+		assertEquals(1, deduplicationCache.size());
+	}
+	
+	@Test
+	public void testIdIsAcceptedAgainAfterWindow() {
+		deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L);
+		
+		assertNull(deduplicationCache.get("Id 1", 11000L));
+		assertNull(deduplicationCache.putIfAbsent("Id 1", "Message 2", 11000L));
+		assertEquals("Message 2", deduplicationCache.get("Id 1", 11000L));
+		assertEquals(1, deduplicationCache.size());
+	}
+	
+	@Test
+	public void testExpiredBucketsAreEvicted() {
+		deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L);
+		deduplicationCache.putIfAbsent("Id 2", "Message 2", 10500L);
+		
+		deduplicationCache.putIfAbsent("Id 3", "Message 3", 11000L);
+		
+		assertEquals(2, deduplicationCache.size());
+		assertEquals("Message 2", deduplicationCache.get("Id 2", 11000L));
+	}
+	
+	@Test
+	public void testOldestBucketIsEvictedBeyondMaximumSize() {
+		deduplicationCache = new DeduplicationCache(1000L, 100L, 2);
+		deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L);
+		deduplicationCache.putIfAbsent("Id 2", "Message 2", 10100L);
+		
+		deduplicationCache.putIfAbsent("Id 3", "Message 3", 10200L);
+		
+		assertEquals(2, deduplicationCache.size());
+		assertNull(deduplicationCache.get("Id 1", 10200L));
+		assertEquals("Message 2", deduplicationCache.get("Id 2", 10200L));
+	}
+	
+	@Test
+	public void testRemoveOnlyForgetsTheGivenMessage() {
+		deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L);
+		
+		deduplicationCache.remove("Id 1", "Message 2");
+		assertEquals("Message 1", deduplicationCache.get("Id 1", 10000L));
+		deduplicationCache.remove("Id 1", "Message 1");
+		
+		assertNull(deduplicationCache.get("Id 1", 10000L));
+		assertEquals(0, deduplicationCache.size());
+	}
+	
+	@Test
+	public void testClear() {
+		deduplicationCache.putIfAbsent("Id 1", "Message 1", 10000L);
+		
+		deduplicationCache.clear();
+		
+		assertEquals(0, deduplicationCache.size());
+		assertNull(deduplicationCache.putIfAbsent("Id 1", "Message 2", 10000L));
+	}
+}
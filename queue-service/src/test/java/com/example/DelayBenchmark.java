@@ -0,0 +1,56 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// Pushes a backlog of messages with random per-message delays of 1 to 5 seconds into an InMemoryQueue, then receives
+// them all and reports the push rate and how late the messages became visible compared to their due time.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.DelayBenchmark
+public class DelayBenchmark {
+
+	private static final String qName = "BenchmarkQueue";
+	private static final int backlog = 1000000;
+	private static final int batchSize = 100;
+	private static final int maximumDelaySeconds = 5;
+
+	public static void main(String[] args) {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ComputeMD5OfBody", "false");
+		attributes.put("MaximumNumberOfMessagesPerReceive", String.valueOf(batchSize));
+		InMemoryQueue queue = new InMemoryQueue(qName, new QueueAttributeValidatorImpl());
+		queue.setAttributes(attributes);
+		Random random = new Random(42);
+
+		long startTime = System.nanoTime();
+		for(int i = 0; i < backlog; i++) {
+			int delaySeconds = 1 + random.nextInt(maximumDelaySeconds);
+			long dueTime = System.currentTimeMillis() + delaySeconds * 1000L;
+			queue.push(MessageCreator.createMessage(String.valueOf(dueTime), TimeOrderedIdGenerator.getDefault(), false), delaySeconds);
+		}
+		double pushRate = backlog / ((System.nanoTime() - startTime) / 1e9);
+		int delayedCount = queue.getApproximateNumberOfMessagesDelayed();
+
+		long[] lateness = new long[backlog];
+		int received = 0;
+		while(received < backlog) {
+			List<Message> messages = queue.pull(batchSize, 20);
+			long now = System.currentTimeMillis();
+
+			for(Message message: messages) {
+				lateness[received++] = now - Long.parseLong(message.getBody());
+				queue.delete(message.getReceiptHandle());
+			}
+		}
+		Arrays.sort(lateness);
+
+		System.out.println(String.format("pushed %d delayed messages at %.0f msg/s, %d pending after the push", backlog, pushRate, delayedCount));
+		System.out.println(String.format("lateness ms: min %d, median %d, p99 %d, max %d", lateness[0], lateness[backlog / 2],
+				lateness[backlog * 99 / 100], lateness[backlog - 1]));
+		queue.releaseResources();
+	}
+}
@@ -0,0 +1,86 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class DelayedMessageSetTest {
+	DelayedMessageSet delayedMessages;
+	
+	@Before
+	public void setUp() {
+		delayedMessages = new DelayedMessageSet(10L);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidResolution() {
+		new DelayedMessageSet(0L);
+	}
+	
+	@Test
+	public void testDueTimeIsRoundedUpToResolution() {
+		assertEquals(1010L, delayedMessages.add(MessageCreator.createMessage("Message 1"), 1001L));
+		assertEquals(1010L, delayedMessages.add(MessageCreator.createMessage("Message 2"), 1010L));
+		assertEquals(1010L, delayedMessages.getNextDueTime());
+		assertEquals(2, delayedMessages.size());
+	}
+	
+	@Test
+	public void testEmptySetHasNoDueTime() {
+		assertTrue(delayedMessages.isEmpty());
+		assertEquals(Long.MAX_VALUE, delayedMessages.getNextDueTime());
+		assertTrue(delayedMessages.pollDue(Long.MAX_VALUE).isEmpty());
+	}
+	
+	@Test
+	public void testPollDueReturnsDueMessagesInDueTimeOrder() {
+		delayedMessages.add(MessageCreator.createMessage("Message 3"), 3000L);
+		delayedMessages.add(MessageCreator.createMessage("Message 1"), 1000L);
+		delayedMessages.add(MessageCreator.createMessage("Message 2"), 2000L);
+		delayedMessages.add(MessageCreator.createMessage("Message 2b"), 2000L);
+		
+		assertTrue(delayedMessages.pollDue(999L).isEmpty());
+		
+		List<Message> dueMessages = delayedMessages.pollDue(2000L);
+		
+		assertEquals(3, dueMessages.size());
+		assertEquals("Message 1", dueMessages.get(0).getBody());
+		assertEquals("Message 2", dueMessages.get(1).getBody());
+		assertEquals("Message 2b", dueMessages.get(2).getBody());
+		assertEquals(1, delayedMessages.size());
+		assertEquals(3000L, delayedMessages.getNextDueTime());
+	}
+	
+	@Test
+	public void testIteratorVisitsMessagesInDueTimeOrder() {
+		delayedMessages.add(MessageCreator.createMessage("Message 2"), 2000L);
+		delayedMessages.add(MessageCreator.createMessage("Message 1"), 1000L);
+		delayedMessages.add(MessageCreator.createMessage("Message 3"), 2000L);
+		List<String> bodies = new ArrayList<>();
+		
+		for(Message message: delayedMessages)
+			bodies.add(message.getBody());
+		
+		assertEquals("Message 1", bodies.get(0));
+		assertEquals("Message 2", bodies.get(1));
+		assertEquals("Message 3", bodies.get(2));
+		assertEquals(3, delayedMessages.size());
+	}
+	
+	@Test
+	public void testClear() {
+		delayedMessages.add(MessageCreator.createMessage("Message 1"), 1000L);
+		
+		delayedMessages.clear();
+		
+		assertTrue(delayedMessages.isEmpty());
+		assertEquals(Long.MAX_VALUE, delayedMessages.getNextDueTime());
+	}
+}
@@ -0,0 +1,101 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+public class DeleteMessageBufferTest {
+	LocalSqsClient sqsClient;
+	QueueUrlCache queueUrlCache;
+	String queueUrl;
+	
+	@Before
+	public void setUp() {
+		sqsClient = new LocalSqsClient();
+		queueUrlCache = new QueueUrlCache();
+		queueUrl = sqsClient.createQueue(new CreateQueueRequest("MyQueue")).getQueueUrl();
+	}
+	
+	@Test
+	public void testLoneDeleteIsSentRightAway() {
+		DeleteMessageBuffer deleteMessageBuffer = new DeleteMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 5);
+		List<String> receiptHandles = receiveMessages(2);
+		sqsClient.resetRequestCounts();
+		
+		assertTrue(deleteMessageBuffer.delete(receiptHandles.get(0)));
+		assertTrue(deleteMessageBuffer.delete(receiptHandles.get(1)));
+		assertFalse(deleteMessageBuffer.delete(receiptHandles.get(1)));
+		
+		assertEquals(3, sqsClient.getRequestCount("DeleteMessageBatch"));
+		assertEquals(0, deleteMessageBuffer.getNumberOfPendingDeletes());
+	}
+	
+	@Test
+	public void testConcurrentDeletesShareBatches() throws Exception {
+		final DeleteMessageBuffer deleteMessageBuffer = new DeleteMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 1);
+		List<String> receiptHandles = receiveMessages(30);
+		ExecutorService consumers = Executors.newFixedThreadPool(30);
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+		sqsClient.resetRequestCounts();
+		sqsClient.setLatencyMillis(20L);
+		
+		for(final String receiptHandle: receiptHandles) {
+			results.add(consumers.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					startSignal.await();
+					return deleteMessageBuffer.delete(receiptHandle);
+				}
+			}));
+		}
+		startSignal.countDown();
+		
+		for(Future<Boolean> result: results)
+			assertTrue(result.get(5, TimeUnit.SECONDS));
+		consumers.shutdown();
+		
+		assertTrue(sqsClient.getRequestCount("DeleteMessageBatch") < 30);
+		assertEquals(1, sqsClient.getMaxConcurrentRequests());
+	}
+	
+	@Test
+	public void testDeleteFromDeletedQueue() {
+		DeleteMessageBuffer deleteMessageBuffer = new DeleteMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 5);
+		String receiptHandle = receiveMessages(1).get(0);
+		queueUrlCache.put("MyQueue", queueUrl, System.currentTimeMillis());
+		sqsClient.deleteQueueDirectly("MyQueue");
+		
+		assertFalse(deleteMessageBuffer.delete(receiptHandle));
+		assertEquals(0, queueUrlCache.size());
+	}
+	
+	private List<String> receiveMessages(int numberOfMessages) {
+		List<String> receiptHandles = new ArrayList<>();
+		
+		for(int i = 0; i < numberOfMessages; i++)
+			sqsClient.sendMessage(queueUrl, "Message " + i);
+		
+		while(receiptHandles.size() < numberOfMessages)
+			for(Message message: sqsClient.receiveMessage(new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(10)).getMessages())
+				receiptHandles.add(message.getReceiptHandle());
+		
+		return receiptHandles;
+	}
+}
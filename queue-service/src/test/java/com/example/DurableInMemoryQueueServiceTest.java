@@ -0,0 +1,92 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+public class DurableInMemoryQueueServiceTest {
+	String qName = "MyQueue1";
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testQueuesAndMessagesSurviveRestart() {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("VisibilityTimeout", "60");
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		queueService.pushBatch(qName, Arrays.asList("Message 1", "Message 2", "Message 3"));
+		Message deletedMessage = queueService.pull(qName);
+		Message inflightMessage = queueService.pull(qName);
+		queueService.delete(qName, deletedMessage.getReceiptHandle());
+		queueService.close();
+		
+		DurableInMemoryQueueService restartedService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		
+		assertEquals(Arrays.asList(qName), restartedService.getQueueNames());
+		assertEquals("60", restartedService.getQueueAttributes(qName).get("VisibilityTimeout"));
+		assertEquals("interval", restartedService.getQueueAttributes(qName).get("Durability"));
+		assertEquals(1, restartedService.getApproximateNumberOfMessages(qName));
+		assertEquals("Message 3", restartedService.pull(qName).getBody());
+		assertTrue(restartedService.delete(qName, inflightMessage.getReceiptHandle()));
+		restartedService.close();
+	}
+	
+	@Test
+	public void testCheckpointMakesStateDurableWithoutClose() {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		queueService.createQueue(new CreateQueueRequest(qName));
+		assertNotNull(queueService.push(qName, "Hello Queue!"));
+		
+		queueService.checkpoint();
+		
+		DurableInMemoryQueueService restartedService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		assertEquals(1, restartedService.getApproximateNumberOfMessages(qName));
+		restartedService.close();
+		queueService.close();
+	}
+	
+	@Test
+	public void testQueueWithoutDurabilityIsNotPersisted() {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "none");
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		queueService.push(qName, "Hello Queue!");
+		queueService.close();
+		
+		assertTrue(new DurableInMemoryQueueService(temporaryFolder.getRoot()).getQueueNames().isEmpty());
+	}
+	
+	@Test
+	public void testDeleteQueueRemovesFiles() {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		queueService.createQueue(new CreateQueueRequest(qName));
+		assertNotNull(queueService.push(qName, "Hello Queue!"));
+		
+		assertTrue(queueService.deleteQueue(qName));
+		
+		assertEquals(0, temporaryFolder.getRoot().list().length);
+		assertTrue(new DurableInMemoryQueueService(temporaryFolder.getRoot()).getQueueNames().isEmpty());
+	}
+	
+	@Test
+	public void testCreateQueueWithNameUnsafeForFile() {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(temporaryFolder.getRoot());
+		
+		assertFalse(queueService.createQueue(new CreateQueueRequest("../MyQueue")));
+	}
+}
@@ -0,0 +1,236 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.services.sqs.model.Message;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileMessageQueueTest {
+	String validAttributeName = "VisibilityTimeout";
+	String validAttributeMinValue = "0";
+	String validAttributeDefaultValue = "30";
+	Map<String, String> validAttributeValues;
+	
+	String qName = "MyQueue";
+	int segmentSize = 256;
+	File directory;
+	FileMessageQueue queue;
+	RefreshScheduler refreshScheduler;
+	
+	QueueAttributeValidator validator;
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Before
+	public void setUp() throws IOException {
+		validAttributeValues = new HashMap<>();
+		validAttributeValues.put(validAttributeName, validAttributeDefaultValue);
+		validator = mock(QueueAttributeValidator.class);
+		when(validator.getDefaultValue(validAttributeName)).thenReturn(validAttributeDefaultValue);
+		when(validator.getDefaultAttributeValues()).thenReturn(validAttributeValues);
+		when(validator.validateAttributeName(validAttributeName)).thenReturn(true);
+		when(validator.validateAttributeValue(validAttributeName, validAttributeMinValue)).thenReturn(true);
+		when(validator.validateAttributeValue(validAttributeName, validAttributeDefaultValue)).thenReturn(true);
+		
+		directory = new File(temporaryFolder.getRoot(), qName);
+		refreshScheduler = new RefreshScheduler(10L);
+		queue = openQueue();
+	}
+	
+	@After
+	public void teardown() {
+		queue.releaseResources();
+		refreshScheduler.shutdown();
+	}
+	
+	@Test
+    public void testPushAndPullMessage() {
+		Message message = MessageCreator.createMessage("Hello Queue!");
+		queue.push(message);
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+		
+		Message actualMessage = queue.pull();
+		
+		assertEquals("Hello Queue!", actualMessage.getBody());
+		assertEquals(message.getMessageId(), actualMessage.getMessageId());
+		assertEquals(message.getMD5OfBody(), actualMessage.getMD5OfBody());
+		assertEquals(36, actualMessage.getReceiptHandle().length());
+		assertEquals(0, queue.getApproximateNumberOfMessages());
+		assertEquals(1, queue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testPullMessageForEmptyQueue() {
+		assertNull(queue.pull());
+	}
+	
+	@Test
+    public void testPushMessageLargerThanSegmentFails() {
+		char[] body = new char[segmentSize];
+		Arrays.fill(body, 'a');
+		Message message = MessageCreator.createMessage(new String(body));
+		
+		queue.push(message);
+		
+		assertNull(message.getMessageId());
+		assertEquals(0, queue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testDeleteMessage() {
+		queue.push(MessageCreator.createMessage("Hello Queue!"));
+		Message receivedMessage = queue.pull();
+		
+		assertTrue(queue.delete(receivedMessage.getReceiptHandle()));
+		assertFalse(queue.delete(receivedMessage.getReceiptHandle()));
+		assertEquals(0, queue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testRefreshQueueForExpiredVisibilityTimeout() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.push(MessageCreator.createMessage("Message 2"));
+		Message receivedMessage = queue.pull();
+		
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put(validAttributeName, validAttributeMinValue);
+		queue.setAttributes(attributes);
+		queue.refreshQueue();
+		
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertFalse(queue.delete(receivedMessage.getReceiptHandle()));
+		assertEquals("Message 1", queue.pull().getBody());
+	}
+	
+	@Test
+    public void testChangeMessageVisibilityToZeroReleasesMessage() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.push(MessageCreator.createMessage("Message 2"));
+		Message receivedMessage = queue.pull();
+		
+		assertTrue(queue.changeMessageVisibility(receivedMessage.getReceiptHandle(), 0));
+		
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertEquals("Message 1", queue.pull().getBody());
+	}
+	
+	@Test
+    public void testReopenRestoresUndeletedMessagesInOrder() throws IOException {
+		for(int i = 0; i < 10; i++)
+			queue.push(MessageCreator.createMessage("Message " + i));
+		List<Message> receivedMessages = queue.pull(3, 0);
+		queue.delete(receivedMessages.get(0).getReceiptHandle());
+		queue.releaseResources();
+		
+		queue = openQueue();
+		
+		assertEquals(9, queue.getApproximateNumberOfMessages());
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertEquals("Message 1", queue.pull().getBody());
+	}
+	
+	@Test
+    public void testReopenAfterPurge() throws IOException {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.pull();
+		queue.push(MessageCreator.createMessage("Message 2"));
+		assertTrue(queue.purge());
+		queue.push(MessageCreator.createMessage("Message 3"));
+		queue.releaseResources();
+		
+		queue = openQueue();
+		
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+		assertEquals("Message 3", queue.pull().getBody());
+	}
+	
+	@Test
+    public void testReopenRestoresAttributes() throws IOException {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put(validAttributeName, validAttributeMinValue);
+		queue.setAttributes(attributes);
+		queue.releaseResources();
+		
+		queue = openQueue();
+		
+		assertEquals(validAttributeMinValue, queue.getAttributes().get(validAttributeName));
+	}
+	
+	@Test
+    public void testSegmentsAreDeletedOnceAllTheirMessagesAreDeleted() {
+		List<Message> messages = new ArrayList<>();
+		for(int i = 0; i < 20; i++)
+			messages.add(MessageCreator.createMessage("Message " + i));
+		queue.pushAll(messages);
+		int segmentsBeforeDelete = queue.getNumberOfSegments();
+		
+		List<String> receiptHandles = new ArrayList<>();
+		for(int i = 0; i < 20; i++)
+			receiptHandles.add(queue.pull().getReceiptHandle());
+		queue.delete(receiptHandles);
+		
+		assertTrue(segmentsBeforeDelete > 2);
+		assertEquals(1, queue.getNumberOfSegments());
+	}
+	
+	@Test
+    public void testOpenLockedDirectoryFails() throws IOException {
+		try{
+			openQueue();
+			fail("Opened a queue directory which is in use");
+		}catch(IOException e) {
+			assertEquals(String.format("Queue directory %s is locked by another queue", directory), e.getMessage());
+		}
+		
+		queue.push(MessageCreator.createMessage("Hello Queue!"));
+		queue.releaseResources();
+		queue = openQueue();
+		
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+	}
+	
+	private FileMessageQueue openQueue() throws IOException {
+		return new FileMessageQueue(qName, validator, directory, segmentSize, refreshScheduler, TimeOrderedIdGenerator.getDefault());
+	}
+	
+	@Test
+    public void testPushMessagesWithGroupOrDeduplicationIdFails() {
+		Message groupMessage = MessageCreator.createMessage("Message 1");
+		groupMessage.getAttributes().put("MessageGroupId", "A");
+		Message deduplicatedMessage = MessageCreator.createMessage("Message 2");
+		deduplicatedMessage.getAttributes().put("MessageDeduplicationId", "Message-2");
+		Message message = MessageCreator.createMessage("Message 3");
+		
+		queue.push(groupMessage);
+		queue.pushAll(Arrays.asList(deduplicatedMessage, message));
+		
+		assertNull(groupMessage.getMessageId());
+		assertNull(deduplicatedMessage.getMessageId());
+		assertEquals(36, message.getMessageId().length());
+		assertEquals("Message 3", queue.pull().getBody());
+		assertNull(queue.pull());
+	}
+}
@@ -0,0 +1,108 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// Compares the sustained push throughput of FileQueueService with a plain sequential FileChannel write of the same
+// number of bytes, single and batched pushes. Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.FileQueueBenchmark
+public class FileQueueBenchmark {
+	
+	private static final int[] bodySizes = {256, 4096};
+	private static final long bytesPerRun = 256L * 1024 * 1024;
+	private static final int batchSize = 10;
+	private static final int runs = 3;
+	
+	public static void main(String[] args) throws IOException {
+		File baseDirectory = Files.createTempDirectory("file-queue-benchmark").toFile();
+		
+		// warm up both push paths before measuring
+		runPush(baseDirectory, 1024, false);
+		runPush(baseDirectory, 1024, true);
+		
+		System.out.println(String.format("%-10s %22s %22s %22s", "body size", "sequential write MB/s", "push MB/s", "pushBatch MB/s"));
+		
+		// the best of a few runs, since a single run of a few hundred milliseconds is dominated by page cache noise
+		for(int bodySize: bodySizes) {
+			double sequential = 0, push = 0, pushBatch = 0;
+			
+			for(int run = 0; run < runs; run++) {
+				sequential = Math.max(sequential, runSequentialWrite(baseDirectory, bodySize));
+				push = Math.max(push, runPush(baseDirectory, bodySize, false));
+				pushBatch = Math.max(pushBatch, runPush(baseDirectory, bodySize, true));
+			}
+			System.out.println(String.format("%-10d %22.1f %22.1f %22.1f", bodySize, sequential, push, pushBatch));
+		}
+		
+		baseDirectory.delete();
+	}
+	
+	// MB of message bodies pushed per second, including the mapped page writes but no force()
+	private static double runPush(File baseDirectory, int bodySize, boolean batched) {
+		String qName = "BenchmarkQueue";
+		FileQueueService queueService = new FileQueueService(baseDirectory);
+		// the MD5OfBody digest is measured by MessageDigestBenchmark; here it would hide the cost of the log
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ComputeMD5OfBody", "false");
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		String messageBody = createBody(bodySize);
+		long messages = bytesPerRun / bodySize;
+		List<String> batch = new ArrayList<>();
+		for(int i = 0; i < batchSize; i++)
+			batch.add(messageBody);
+		
+		long startTime = System.nanoTime();
+		if(batched) {
+			for(long i = 0; i < messages; i += batchSize)
+				queueService.pushBatch(qName, batch);
+		}
+		else {
+			for(long i = 0; i < messages; i++)
+				queueService.push(qName, messageBody);
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		
+		queueService.deleteQueue(qName);
+		return megabytesPerSecond(messages * bodySize, elapsedNanos);
+	}
+	
+	// MB per second of plain FileChannel writes in chunks of bodySize, for comparison with the queue numbers
+	private static double runSequentialWrite(File baseDirectory, int bodySize) throws IOException {
+		File file = new File(baseDirectory, "sequential.dat");
+		ByteBuffer chunk = ByteBuffer.wrap(createBody(bodySize).getBytes("UTF-8"));
+		long chunks = bytesPerRun / bodySize;
+		
+		long startTime = System.nanoTime();
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			for(long i = 0; i < chunks; i++) {
+				chunk.rewind();
+				channel.write(chunk);
+			}
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		
+		file.delete();
+		return megabytesPerSecond(chunks * bodySize, elapsedNanos);
+	}
+	
+	private static String createBody(int bodySize) {
+		StringBuilder body = new StringBuilder(bodySize);
+		for(int i = 0; i < bodySize; i++)
+			body.append((char) ('a' + i % 26));
+		return body.toString();
+	}
+	
+	private static double megabytesPerSecond(long bytes, long elapsedNanos) {
+		return bytes / (1024.0 * 1024.0) / (elapsedNanos / 1e9);
+	}
+}
@@ -0,0 +1,99 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+public class FileQueueServiceTest {
+	String qName = "MyQueue1";
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testQueuesAndMessagesSurviveRestart() {
+		FileQueueService fileQueueService = new FileQueueService(temporaryFolder.getRoot());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("VisibilityTimeout", "60");
+		fileQueueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		fileQueueService.pushBatch(qName, Arrays.asList("Message 1", "Message 2"));
+		Message receivedMessage = fileQueueService.pull(qName);
+		fileQueueService.delete(qName, receivedMessage.getReceiptHandle());
+		fileQueueService.close();
+		
+		FileQueueService restartedService = new FileQueueService(temporaryFolder.getRoot());
+		
+		assertEquals(Arrays.asList(qName), restartedService.getQueueNames());
+		assertEquals("60", restartedService.getQueueAttributes(qName).get("VisibilityTimeout"));
+		assertEquals(1, restartedService.getApproximateNumberOfMessages(qName));
+		assertEquals("Message 2", restartedService.pull(qName).getBody());
+		restartedService.close();
+	}
+	
+	@Test
+	public void testDeleteQueueRemovesFiles() {
+		FileQueueService fileQueueService = new FileQueueService(temporaryFolder.getRoot());
+		fileQueueService.createQueue(new CreateQueueRequest(qName));
+		assertNotNull(fileQueueService.push(qName, "Hello Queue!"));
+		
+		assertTrue(fileQueueService.deleteQueue(qName));
+		
+		assertFalse(new File(temporaryFolder.getRoot(), qName).exists());
+		assertTrue(new FileQueueService(temporaryFolder.getRoot()).getQueueNames().isEmpty());
+	}
+	
+	@Test
+	public void testCreateQueueWithNameUnsafeForDirectory() {
+		FileQueueService fileQueueService = new FileQueueService(temporaryFolder.getRoot());
+		
+		assertFalse(fileQueueService.createQueue(new CreateQueueRequest("../MyQueue")));
+	}
+	
+	@Test
+	public void testFifoAttributesAndMessagesAreRejected() {
+		FileQueueService fileQueueService = new FileQueueService(temporaryFolder.getRoot());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("FifoQueue", "true");
+		attributes.put("ContentBasedDeduplication", "true");
+		fileQueueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		
+		assertNull(fileQueueService.getQueueAttributes(qName).get("FifoQueue"));
+		assertNull(fileQueueService.getQueueAttributes(qName).get("ContentBasedDeduplication"));
+		assertNull(fileQueueService.push(qName, "Message 1", "A"));
+		assertNull(fileQueueService.push(qName, "Message 2", "A", "Message-2"));
+		assertEquals(0, fileQueueService.getApproximateNumberOfMessages(qName));
+		fileQueueService.close();
+	}
+	
+	@Test
+	public void testAttributesOfInMemoryQueuesAreRejected() {
+		FileQueueService fileQueueService = new FileQueueService(temporaryFolder.getRoot());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("VisibilityTimeout", "60");
+		attributes.put("DelaySeconds", "10");
+		attributes.put("MessageRetentionPeriod", "60");
+		attributes.put("RedrivePolicy", "{\"maxReceiveCount\":\"1\",\"deadLetterTargetArn\":\"MyDeadLetterQueue\"}");
+		fileQueueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		
+		Map<String, String> result = fileQueueService.getQueueAttributes(qName);
+		assertEquals("60", result.get("VisibilityTimeout"));
+		assertNull(result.get("DelaySeconds"));
+		assertNull(result.get("MessageRetentionPeriod"));
+		assertNull(result.get("RedrivePolicy"));
+		fileQueueService.close();
+	}
+}
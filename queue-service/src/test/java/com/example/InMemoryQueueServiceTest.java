@@ -7,13 +7,20 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -30,8 +37,12 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 
 @RunWith(MockitoJUnitRunner.class)
 public class InMemoryQueueServiceTest {
@@ -175,6 +186,42 @@ public class InMemoryQueueServiceTest {
 		verifyLoggedMessage(expectedError, Level.ERROR);
 	}
 	
+	@Test
+	public void testPushSetsMD5OfBody() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		ArgumentCaptor<Message> pushedMessage = ArgumentCaptor.forClass(Message.class);
+		
+		inMemoryQueueService.push(qName, "Hello Queue!");
+		
+		verify(queue1).push(pushedMessage.capture());
+		assertEquals("366ab2ec69945bf1c6b81051ce6a139c", pushedMessage.getValue().getMD5OfBody());
+	}
+	
+	@Test
+	public void testPushSkipsMD5OfBodyWhenDisabledForQueue() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ComputeMD5OfBody", "false");
+		when(queue1.getAttributes()).thenReturn(attributes);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		ArgumentCaptor<Message> pushedMessage = ArgumentCaptor.forClass(Message.class);
+		
+		String receivedMessageId = inMemoryQueueService.push(qName, "Hello Queue!");
+		
+		verify(queue1).push(pushedMessage.capture());
+		assertEquals(receivedMessageId, pushedMessage.getValue().getMessageId());
+		assertNull(pushedMessage.getValue().getMD5OfBody());
+	}
+	
 	@Test
 	public void testPushNullMessageIntoValidQueueName() {
 		String messageBody = null;
@@ -224,6 +271,54 @@ public class InMemoryQueueServiceTest {
 		assertEquals(36, receivedMessageId.length());
 	}
 	
+	@Test
+	public void testPushBatchIntoValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		SendMessageBatchResult result = inMemoryQueueService.pushBatch(qName, Arrays.asList("Message 0", "", "Message 2"));
+		
+		verify(queue1, times(1)).pushAll(anyListOf(Message.class));
+		assertEquals(2, result.getSuccessful().size());
+		assertEquals("0", result.getSuccessful().get(0).getId());
+		assertEquals(36, result.getSuccessful().get(0).getMessageId().length());
+		assertEquals("2", result.getSuccessful().get(1).getId());
+		assertEquals(1, result.getFailed().size());
+		assertEquals("1", result.getFailed().get(0).getId());
+	}
+	
+	@Test
+	public void testPushEmptyBatchIntoValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Message batch is null or empty. Failed to push messages into queue %s", qName);
+		
+		SendMessageBatchResult result = inMemoryQueueService.pushBatch(qName, new ArrayList<String>());
+		assertNull(result);
+		verify(queue1, times(0)).pushAll(anyListOf(Message.class));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPushBatchIntoInvalidQueueName() {
+		String invalidQName = "NonExistentQ";
+		QueueFactory queueFactory = createMockQueueFactory();
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		String expectedError = String.format("Queue name not found. Failed to push messages into %s", invalidQName);
+		
+		SendMessageBatchResult result = inMemoryQueueService.pushBatch(invalidQName, Arrays.asList("Message 0"));
+		assertNull(result);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
 	@Test
 	public void testPushNullMessageIntoInvalidQueueName() {
 		String messageBody = null;
@@ -294,6 +389,82 @@ public class InMemoryQueueServiceTest {
 		verifyLoggedMessage(expectedError, Level.ERROR);
 	}
 	
+	@Test
+	public void testLongPollMessageFromValidQueueName() {
+		String messageBody = "Hello queue";
+		String qName = "MyQueue1";
+		int waitTimeSeconds = 20;
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		Message message = MessageCreator.createMessage(messageBody);
+		when(queue1.pull(waitTimeSeconds)).thenReturn(message);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		Message receivedMessage = inMemoryQueueService.pull(qName, waitTimeSeconds);
+		assertEquals(message, receivedMessage);
+	}
+	
+	@Test
+	public void testLongPollMessageWithInvalidWaitTime() {
+		String qName = "MyQueue1";
+		int waitTimeSeconds = 21;
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid wait time (%d). Failed to pull message from %s", waitTimeSeconds, qName);
+		
+		Message receivedMessage = inMemoryQueueService.pull(qName, waitTimeSeconds);
+		assertNull(receivedMessage);
+		verify(queue1, times(0)).pull(waitTimeSeconds);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPullBatchFromValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		List<Message> messages = Arrays.asList(MessageCreator.createMessage("Message 0"), MessageCreator.createMessage("Message 1"));
+		when(queue1.pull(10, 5)).thenReturn(messages);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		List<Message> receivedMessages = inMemoryQueueService.pullBatch(qName, 10, 5);
+		assertEquals(messages, receivedMessages);
+	}
+	
+	@Test
+	public void testPullBatchWithInvalidMaximumNumberOfMessages() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid maximum number of messages (%d). Failed to pull messages from %s", 0, qName);
+		
+		List<Message> receivedMessages = inMemoryQueueService.pullBatch(qName, 0, 0);
+		assertNull(receivedMessages);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPullBatchFromInvalidQueueName() {
+		String invalidQName = "NonExistentQ";
+		QueueFactory queueFactory = createMockQueueFactory();
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		String expectedError = String.format("Queue name not found. Failed to pull messages from %s", invalidQName);
+		
+		List<Message> receivedMessages = inMemoryQueueService.pullBatch(invalidQName, 10, 0);
+		assertNull(receivedMessages);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
 	@Test
 	public void testDeleteMessageFromValidQueueName() {
 		String qName = "MyQueue1";
@@ -309,6 +480,156 @@ public class InMemoryQueueServiceTest {
 		assertTrue(deleteMessageStatus);
 	}
 	
+	@Test
+	public void testDeleteBatchFromValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		String validReceiptHandle = String.valueOf(UUID.randomUUID());
+		String invalidReceiptHandle = String.valueOf(UUID.randomUUID());
+		List<String> receiptHandles = Arrays.asList(validReceiptHandle, invalidReceiptHandle);
+		when(queue1.delete(receiptHandles)).thenReturn(new HashSet<>(Arrays.asList(validReceiptHandle)));
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		DeleteMessageBatchResult result = inMemoryQueueService.deleteBatch(qName, receiptHandles);
+		assertEquals(1, result.getSuccessful().size());
+		assertEquals(validReceiptHandle, result.getSuccessful().get(0).getId());
+		assertEquals(1, result.getFailed().size());
+		assertEquals(invalidReceiptHandle, result.getFailed().get(0).getId());
+	}
+	
+	@Test
+	public void testDeleteBatchWithRepeatedReceiptHandle() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		String repeatedReceiptHandle = String.valueOf(UUID.randomUUID());
+		String validReceiptHandle = String.valueOf(UUID.randomUUID());
+		when(queue1.delete(Arrays.asList(validReceiptHandle))).thenReturn(new HashSet<>(Arrays.asList(validReceiptHandle)));
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		DeleteMessageBatchResult result = inMemoryQueueService.deleteBatch(qName, Arrays.asList(repeatedReceiptHandle, validReceiptHandle, repeatedReceiptHandle));
+		assertEquals(1, result.getSuccessful().size());
+		assertEquals(validReceiptHandle, result.getSuccessful().get(0).getId());
+		assertEquals(1, result.getFailed().size());
+		assertEquals(repeatedReceiptHandle, result.getFailed().get(0).getId());
+		assertEquals("BatchEntryIdsNotDistinct", result.getFailed().get(0).getCode());
+	}
+	
+	@Test
+	public void testDeleteBatchFromInvalidQueueName() {
+		String invalidQName = "NonExistentQ";
+		QueueFactory queueFactory = createMockQueueFactory();
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		String expectedError = String.format("Queue name not found. Failed to delete messages from %s", invalidQName);
+		
+		DeleteMessageBatchResult result = inMemoryQueueService.deleteBatch(invalidQName, Arrays.asList(String.valueOf(UUID.randomUUID())));
+		assertNull(result);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testChangeMessageVisibilityInValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		String receiptHandle = String.valueOf(UUID.randomUUID());
+		when(queue1.changeMessageVisibility(receiptHandle, 60)).thenReturn(true);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		assertTrue(inMemoryQueueService.changeMessageVisibility(qName, receiptHandle, 60));
+	}
+	
+	@Test
+	public void testChangeMessageVisibilityWithInvalidTimeout() {
+		String qName = "MyQueue1";
+		int visibilityTimeout = 43201;
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid visibility timeout (%d). Failed to change message visibility in %s", visibilityTimeout, qName);
+		
+		assertFalse(inMemoryQueueService.changeMessageVisibility(qName, String.valueOf(UUID.randomUUID()), visibilityTimeout));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testChangeMessageVisibilityBatchInValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		String validReceiptHandle = String.valueOf(UUID.randomUUID());
+		String invalidReceiptHandle = String.valueOf(UUID.randomUUID());
+		Map<String, Integer> visibilityTimeouts = new HashMap<>();
+		visibilityTimeouts.put(validReceiptHandle, 60);
+		visibilityTimeouts.put(invalidReceiptHandle, 60);
+		when(queue1.changeMessageVisibility(visibilityTimeouts)).thenReturn(new HashSet<>(Arrays.asList(validReceiptHandle)));
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		List<ChangeMessageVisibilityBatchRequestEntry> entries = Arrays.asList(
+				new ChangeMessageVisibilityBatchRequestEntry("0", validReceiptHandle).withVisibilityTimeout(60),
+				new ChangeMessageVisibilityBatchRequestEntry("1", invalidReceiptHandle).withVisibilityTimeout(60),
+				new ChangeMessageVisibilityBatchRequestEntry("2", String.valueOf(UUID.randomUUID())).withVisibilityTimeout(-5));
+		
+		ChangeMessageVisibilityBatchResult result = inMemoryQueueService.changeMessageVisibilityBatch(qName, entries);
+		
+		assertEquals(1, result.getSuccessful().size());
+		assertEquals("0", result.getSuccessful().get(0).getId());
+		assertEquals(2, result.getFailed().size());
+	}
+	
+	@Test
+	public void testChangeMessageVisibilityBatchWithRepeatedReceiptHandle() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		String repeatedReceiptHandle = String.valueOf(UUID.randomUUID());
+		String receiptHandle = String.valueOf(UUID.randomUUID());
+		Map<String, Integer> visibilityTimeouts = new HashMap<>();
+		visibilityTimeouts.put(receiptHandle, 60);
+		when(queue1.changeMessageVisibility(visibilityTimeouts)).thenReturn(new HashSet<>(Arrays.asList(receiptHandle)));
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		List<ChangeMessageVisibilityBatchRequestEntry> entries = Arrays.asList(
+				new ChangeMessageVisibilityBatchRequestEntry("0", repeatedReceiptHandle).withVisibilityTimeout(60),
+				new ChangeMessageVisibilityBatchRequestEntry("1", receiptHandle).withVisibilityTimeout(60),
+				new ChangeMessageVisibilityBatchRequestEntry("2", repeatedReceiptHandle).withVisibilityTimeout(0));
+		
+		ChangeMessageVisibilityBatchResult result = inMemoryQueueService.changeMessageVisibilityBatch(qName, entries);
+		
+		verify(queue1).changeMessageVisibility(visibilityTimeouts);
+		assertEquals(1, result.getSuccessful().size());
+		assertEquals("1", result.getSuccessful().get(0).getId());
+		assertEquals(2, result.getFailed().size());
+		assertEquals("0", result.getFailed().get(0).getId());
+		assertEquals("2", result.getFailed().get(1).getId());
+		assertEquals("InvalidParameterValue", result.getFailed().get(0).getCode());
+	}
+	
+	@Test
+	public void testPullBatchWithVisibilityTimeoutOverride() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		List<Message> messages = Arrays.asList(MessageCreator.createMessage("Message 0"));
+		when(queue1.pull(10, 0, 300)).thenReturn(messages);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		assertEquals(messages, inMemoryQueueService.pullBatch(qName, 10, 0, 300));
+	}
+	
 	@Test
 	public void testDeleteMessageFromInvalidQueueName() {
 		String invalidQName = "NonExistentQ";
@@ -438,6 +759,212 @@ public class InMemoryQueueServiceTest {
 		assertEquals(mockedCount, receivedCount);
 	}
 	
+	@Test
+	public void testGetApproximateNumberOfMessagesDelayedForInvalidQueueName() {
+		String invalidQName = "NonExistentQ";
+		QueueFactory queueFactory = createMockQueueFactory();
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		String expectedError = String.format("Queue name not found. Failed to count delayed messages in %s", invalidQName);
+		
+		int receivedCount = inMemoryQueueService.getApproximateNumberOfMessagesDelayed(invalidQName);
+		assertEquals(-1, receivedCount);
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPushDelayedMessageIntoValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		
+		String receivedMessageId = inMemoryQueueService.push(qName, "Hello Queue!", 60);
+		
+		assertEquals(36, receivedMessageId.length());
+		verify(queue1).push(any(Message.class), eq(60));
+	}
+	
+	@Test
+	public void testPushMessageWithInvalidDelay() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid delay (%d seconds). Failed to push message into queue %s", 901, qName);
+		
+		assertNull(inMemoryQueueService.push(qName, "Hello Queue!", 901));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPushMessageWithGroupIntoValidQueueName() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+		
+		String receivedMessageId = inMemoryQueueService.push(qName, "Hello Queue!", "Group1");
+		
+		assertEquals(36, receivedMessageId.length());
+		verify(queue1).push(captor.capture());
+		assertEquals("Group1", captor.getValue().getAttributes().get("MessageGroupId"));
+	}
+	
+	@Test
+	public void testPushMessageWithEmptyGroup() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid message group id (%s). Failed to push message into queue %s", "", qName);
+		
+		assertNull(inMemoryQueueService.push(qName, "Hello Queue!", ""));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPushMessageWithDeduplicationId() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+		
+		inMemoryQueueService.push(qName, "Hello Queue!", null, "Id1");
+		
+		verify(queue1).push(captor.capture());
+		assertEquals("Id1", captor.getValue().getAttributes().get("MessageDeduplicationId"));
+		assertNull(captor.getValue().getAttributes().get("MessageGroupId"));
+	}
+	
+	@Test
+	public void testPushMessageWithoutDeduplicationId() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		MessageQueue queue1 = createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+		
+		inMemoryQueueService.push(qName, "Hello Queue!", "Group1", null);
+		inMemoryQueueService.push(qName, "Hello Queue!", null, null);
+		
+		verify(queue1, times(2)).push(captor.capture());
+		assertEquals("Group1", captor.getAllValues().get(0).getAttributes().get("MessageGroupId"));
+		assertNull(captor.getAllValues().get(0).getAttributes().get("MessageDeduplicationId"));
+		assertTrue(captor.getAllValues().get(1).getAttributes().isEmpty());
+	}
+	
+	@Test
+	public void testPushMessageWithEmptyDeduplicationId() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String expectedError = String.format("Invalid message deduplication id (%s). Failed to push message into queue %s", "", qName);
+		
+		assertNull(inMemoryQueueService.push(qName, "Hello Queue!", null, ""));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testPushMessageWithTooLongDeduplicationId() {
+		String qName = "MyQueue1";
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest(qName);
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		QueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		String messageDeduplicationId = new String(new char[129]).replace('\0', 'a');
+		String expectedError = String.format("Invalid message deduplication id (%s). Failed to push message into queue %s", messageDeduplicationId, qName);
+		
+		assertNull(inMemoryQueueService.push(qName, "Hello Queue!", null, messageDeduplicationId));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testDeadLetterQueueIsResolvedByName() {
+		InMemoryQueueService inMemoryQueueService = new InMemoryQueueService(new InMemoryQueueFactory());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("RedrivePolicy", "{\"maxReceiveCount\":\"1\",\"deadLetterTargetArn\":\"arn:aws:sqs:us-east-1:123456789012:MyDeadLetterQueue\"}");
+		inMemoryQueueService.createQueue(new CreateQueueRequest("MyQueue1").withAttributes(attributes));
+		attributes.remove("RedrivePolicy");
+		attributes.put("VisibilityTimeout", "30");
+		inMemoryQueueService.createQueue(new CreateQueueRequest("MyDeadLetterQueue").withAttributes(attributes));
+		String messageId = inMemoryQueueService.push("MyQueue1", "Hello Queue!");
+		
+		Message message = inMemoryQueueService.pull("MyQueue1");
+		inMemoryQueueService.changeMessageVisibility("MyQueue1", message.getReceiptHandle(), 0);
+		
+		assertEquals(messageId, inMemoryQueueService.pull("MyDeadLetterQueue", 5).getMessageId());
+		verify(mockAppender, timeout(1000)).doAppend(captorLoggingEvent.capture());
+		assertThat(captorLoggingEvent.getValue().getRenderedMessage(),
+				is(String.format("Moved %d messages of queue %s to dead-letter queue %s", 1, "MyQueue1", "MyDeadLetterQueue")));
+		inMemoryQueueService.deleteQueue("MyQueue1");
+		inMemoryQueueService.deleteQueue("MyDeadLetterQueue");
+	}
+	
+	@Test
+	public void testMessageMoveTaskDrainsSourceQueue() throws InterruptedException {
+		InMemoryQueueService inMemoryQueueService = new InMemoryQueueService(new InMemoryQueueFactory());
+		inMemoryQueueService.createQueue(new CreateQueueRequest("MyQueue1"));
+		inMemoryQueueService.createQueue(new CreateQueueRequest("MyDeadLetterQueue"));
+		inMemoryQueueService.pushBatch("MyDeadLetterQueue", Arrays.asList("Message 1", "Message 2", "Message 3"));
+		
+		assertTrue(inMemoryQueueService.startMessageMoveTask("MyDeadLetterQueue", "MyQueue1", 10));
+		List<Message> messages = new ArrayList<>();
+		for(int i = 0; i < 3; i++)
+			messages.add(inMemoryQueueService.pull("MyQueue1", 5));
+		
+		assertEquals("Message 1", messages.get(0).getBody());
+		assertEquals("Message 3", messages.get(2).getBody());
+		assertEquals(0, inMemoryQueueService.getApproximateNumberOfMessages("MyDeadLetterQueue"));
+		Thread.sleep(500);
+		assertTrue(inMemoryQueueService.getMessageMoveTask("MyDeadLetterQueue").isFinished());
+		assertEquals(3, inMemoryQueueService.getMessageMoveTask("MyDeadLetterQueue").getMovedCount());
+		inMemoryQueueService.deleteQueue("MyQueue1");
+		inMemoryQueueService.deleteQueue("MyDeadLetterQueue");
+	}
+	
+	@Test
+	public void testStartMessageMoveTaskWithInvalidRate() {
+		CreateQueueRequest createQueueRequest = new CreateQueueRequest("MyQueue1");
+		CreateQueueRequest createDeadLetterQueueRequest = new CreateQueueRequest("MyDeadLetterQueue");
+		QueueFactory queueFactory = createMockQueueFactory();
+		createMockMessageQueue(createQueueRequest, queueFactory);
+		when(queueFactory.create(createDeadLetterQueueRequest)).thenReturn(mock(InMemoryQueue.class));
+		InMemoryQueueService inMemoryQueueService = new InMemoryQueueService(queueFactory);
+		inMemoryQueueService.createQueue(createQueueRequest);
+		inMemoryQueueService.createQueue(createDeadLetterQueueRequest);
+		String expectedError = String.format("Invalid rate (%d messages per second). Failed to move messages from %s", 501, "MyDeadLetterQueue");
+		
+		assertFalse(inMemoryQueueService.startMessageMoveTask("MyDeadLetterQueue", "MyQueue1", 501));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+	public void testCancelMessageMoveTaskWithoutTask() {
+		InMemoryQueueService inMemoryQueueService = new InMemoryQueueService(new InMemoryQueueFactory());
+		String expectedError = String.format("No message move task is running for queue %s", "MyDeadLetterQueue");
+		
+		assertFalse(inMemoryQueueService.cancelMessageMoveTask("MyDeadLetterQueue"));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
 	// testGetQueueNames - empty service, nonempty service
 	
 	private QueueFactory createMockQueueFactory() {
@@ -7,11 +7,18 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.log4j.Appender;
@@ -20,7 +27,9 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.spi.LoggingEvent;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -43,6 +52,9 @@ public class InMemoryQueueTest {
 	
 	QueueAttributeValidator validator;
 	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
 	@Mock
     private Appender mockAppender;
     @Captor
@@ -80,6 +92,21 @@ public class InMemoryQueueTest {
 		assertEquals(1, queue.getApproximateNumberOfMessages());
 	}
 	
+	@Test
+    public void testPushAllMessages() {
+		List<Message> messages = new ArrayList<>();
+		messages.add(MessageCreator.createMessage("Message 1"));
+		messages.add(MessageCreator.createMessage("Message 2"));
+		messages.add(MessageCreator.createMessage("Message 3"));
+		
+		queue.pushAll(messages);
+		
+		assertEquals(3, queue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", queue.pull().getBody());
+		assertEquals("Message 2", queue.pull().getBody());
+		assertEquals("Message 3", queue.pull().getBody());
+	}
+	
 	@Test
     public void testPullMessageForNonEmptyQueue() {
 		String msgBody = "Hello Queue!";
@@ -94,6 +121,38 @@ public class InMemoryQueueTest {
 		assertEquals(1, queue.getNumberOfInflightMessages());
 	}
 	
+	@Test
+    public void testPullMultipleMessagesForNonEmptyQueue() {
+		for(int i = 0; i < 5; i++)
+			queue.push(MessageCreator.createMessage("Message " + i));
+		
+		List<Message> receivedMessages = queue.pull(3, 0);
+		
+		assertEquals(3, receivedMessages.size());
+		assertEquals("Message 0", receivedMessages.get(0).getBody());
+		assertEquals("Message 2", receivedMessages.get(2).getBody());
+		assertEquals(2, queue.getApproximateNumberOfMessages());
+		assertEquals(3, queue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testPullMultipleMessagesIsCappedByDefaultMaximum() {
+		for(int i = 0; i < 15; i++)
+			queue.push(MessageCreator.createMessage("Message " + i));
+		
+		List<Message> receivedMessages = queue.pull(100, 0);
+		
+		assertEquals(10, receivedMessages.size());
+		assertEquals(5, queue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testPullMultipleMessagesForEmptyQueue() {
+		List<Message> receivedMessages = queue.pull(10, 0);
+		
+		assertTrue(receivedMessages.isEmpty());
+	}
+	
 	@Test
     public void testPullMessageForEmptyQueue() {
 		Message actualMessage = queue.pull();
@@ -101,6 +160,107 @@ public class InMemoryQueueTest {
 		assertNull(actualMessage);
 	}
 	
+	@Test
+    public void testLongPollForEmptyQueueTimesOut() {
+		long start = System.currentTimeMillis();
+		Message actualMessage = queue.pull(1);
+		
+		assertNull(actualMessage);
+		assertTrue(System.currentTimeMillis() - start >= 900);
+	}
+	
+	@Test
+    public void testLongPollReturnsMessagePushedWhileWaiting() throws InterruptedException {
+		String msgBody = "Hello Queue!";
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(200);
+				}catch(InterruptedException e) {
+					return;
+				}
+				queue.push(MessageCreator.createMessage(msgBody));
+			}
+		});
+		producer.start();
+		
+		long start = System.currentTimeMillis();
+		Message actualMessage = queue.pull(10);
+		producer.join();
+		
+		assertEquals(msgBody, actualMessage.getBody());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, queue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testLongPollReturnsMessageMadeVisibleByRefresh() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put(validAttributeName, validAttributeMinValue);
+		queue.setAttributes(attributes);
+		queue.push(MessageCreator.createMessage("Hello Queue!"));
+		Message firstReceipt = queue.pull();
+		
+		Message secondReceipt = queue.pull(5);
+		
+		assertEquals(firstReceipt.getMessageId(), secondReceipt.getMessageId());
+	}
+	
+	@Test
+    public void testRefreshIsOnlyScheduledForInflightMessages() {
+		RefreshScheduler refreshScheduler = new RefreshScheduler(10L);
+		MessageQueue scheduledQueue = new InMemoryQueue(qName, validator, refreshScheduler);
+		
+		scheduledQueue.push(MessageCreator.createMessage("Hello Queue!"));
+		assertEquals(0, refreshScheduler.getNumberOfScheduledTasks());
+		
+		scheduledQueue.pull();
+		assertEquals(1, refreshScheduler.getNumberOfScheduledTasks());
+		
+		scheduledQueue.releaseResources();
+		assertEquals(0, refreshScheduler.getNumberOfScheduledTasks());
+		refreshScheduler.shutdown();
+	}
+	
+	@Test
+    public void testReceiptHandlesComeFromGivenIdGenerator() {
+		RefreshScheduler refreshScheduler = new RefreshScheduler(10L);
+		IdGenerator receiptHandleGenerator = mock(IdGenerator.class);
+		when(receiptHandleGenerator.generateId()).thenReturn("receipt-handle-1");
+		MessageQueue generatorQueue = new InMemoryQueue(qName, validator, refreshScheduler, receiptHandleGenerator);
+		generatorQueue.push(MessageCreator.createMessage("Hello Queue!"));
+		
+		assertEquals("receipt-handle-1", generatorQueue.pull().getReceiptHandle());
+		assertTrue(generatorQueue.delete("receipt-handle-1"));
+		
+		generatorQueue.releaseResources();
+		refreshScheduler.shutdown();
+	}
+	
+	@Test
+    public void testLongPollReturnsWhenQueueReleased() throws InterruptedException {
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(200);
+				}catch(InterruptedException e) {
+					return;
+				}
+				queue.releaseResources();
+			}
+		});
+		releaser.start();
+		
+		long start = System.currentTimeMillis();
+		Message actualMessage = queue.pull(10);
+		releaser.join();
+		
+		assertNull(actualMessage);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+	
 	@Test
     public void testDeleteMessageWithValidReceiptHandle() {
 		String msgBody = "Hello Queue!";
@@ -115,6 +275,20 @@ public class InMemoryQueueTest {
 		assertEquals(0, queue.getNumberOfInflightMessages());
 	}
 	
+	@Test
+    public void testDeleteMessagesWithEqualBodiesOutOfOrder() {
+		String msgBody = "Hello Queue!";
+		queue.push(MessageCreator.createMessage(msgBody));
+		queue.push(MessageCreator.createMessage(msgBody));
+		Message receivedMessage1 = queue.pull();
+		Message receivedMessage2 = queue.pull();
+		
+		assertTrue(queue.delete(receivedMessage2.getReceiptHandle()));
+		assertEquals(1, queue.getNumberOfInflightMessages());
+		assertTrue(queue.delete(receivedMessage1.getReceiptHandle()));
+		assertEquals(0, queue.getNumberOfInflightMessages());
+	}
+	
 	@Test
     public void testDeleteMessageWithInvalidReceiptHandle() {
 		String expectedError = "ReceiptHandle does not exist.";
@@ -124,6 +298,25 @@ public class InMemoryQueueTest {
 		verifyLoggedMessage(expectedError, Level.ERROR);	
 	}
 	
+	@Test
+    public void testDeleteMultipleMessagesWithValidAndInvalidReceiptHandles() {
+		String expectedError = "1 receipt handles do not exist.";
+		for(int i = 0; i < 3; i++)
+			queue.push(MessageCreator.createMessage("Message " + i));
+		List<Message> receivedMessages = queue.pull(3, 0);
+		String invalidReceiptHandle = String.valueOf(UUID.randomUUID());
+		List<String> receiptHandles = Arrays.asList(receivedMessages.get(0).getReceiptHandle(), 
+				receivedMessages.get(2).getReceiptHandle(), invalidReceiptHandle);
+		
+		Set<String> deletedReceiptHandles = queue.delete(receiptHandles);
+		
+		assertEquals(2, deletedReceiptHandles.size());
+		assertFalse(deletedReceiptHandles.contains(invalidReceiptHandle));
+		assertEquals(1, queue.getNumberOfInflightMessages());
+		assertTrue(queue.delete(receivedMessages.get(1).getReceiptHandle()));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
 	@Test
     public void testPurgeForNonEmptyAvailableMessageQueueEmptyInflightMessageQueue() {
 		String msgBody1 = "Hello Queue!";
@@ -225,6 +418,73 @@ public class InMemoryQueueTest {
 		assertEquals(0, queue.getApproximateNumberOfMessages());
 	}
 	
+	@Test
+    public void testChangeMessageVisibilityToZeroReleasesMessage() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.push(MessageCreator.createMessage("Message 2"));
+		Message receivedMessage = queue.pull();
+		
+		assertTrue(queue.changeMessageVisibility(receivedMessage.getReceiptHandle(), 0));
+		
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertEquals(2, queue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", queue.pull().getBody());
+	}
+	
+	@Test
+    public void testChangeMessageVisibilityExtendsDeadlineBeyondQueueTimeout() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.push(MessageCreator.createMessage("Message 2"));
+		Message extendedMessage = queue.pull();
+		queue.pull();
+		
+		assertTrue(queue.changeMessageVisibility(extendedMessage.getReceiptHandle(), 600));
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put(validAttributeName, validAttributeMinValue);
+		queue.setAttributes(attributes);
+		queue.refreshQueue();
+		
+		assertEquals(1, queue.getNumberOfInflightMessages());
+		assertEquals("Message 2", queue.pull().getBody());
+		assertTrue(queue.delete(extendedMessage.getReceiptHandle()));
+	}
+	
+	@Test
+    public void testChangeMessageVisibilityWithInvalidReceiptHandle() {
+		String expectedError = "ReceiptHandle does not exist.";
+		
+		assertFalse(queue.changeMessageVisibility(String.valueOf(UUID.randomUUID()), 10));
+		verifyLoggedMessage(expectedError, Level.ERROR);
+	}
+	
+	@Test
+    public void testChangeMessageVisibilityOfMultipleMessages() {
+		for(int i = 0; i < 3; i++)
+			queue.push(MessageCreator.createMessage("Message " + i));
+		List<Message> receivedMessages = queue.pull(3, 0);
+		Map<String, Integer> visibilityTimeouts = new HashMap<>();
+		visibilityTimeouts.put(receivedMessages.get(0).getReceiptHandle(), 0);
+		visibilityTimeouts.put(receivedMessages.get(1).getReceiptHandle(), 120);
+		
+		Set<String> changedReceiptHandles = queue.changeMessageVisibility(visibilityTimeouts);
+		
+		assertEquals(visibilityTimeouts.keySet(), changedReceiptHandles);
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+		assertEquals(2, queue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testPullWithVisibilityTimeoutOverride() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		
+		List<Message> receivedMessages = queue.pull(1, 0, 0);
+		queue.refreshQueue();
+		
+		assertEquals(1, receivedMessages.size());
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+	}
+	
 	@Test
     public void testSetAttributeWithNullAttributes() {
 		String expectedWarning = String.format("No attributes to set for queue %s", qName);
@@ -268,6 +528,761 @@ public class InMemoryQueueTest {
 		assertFalse(receivedAttributes.containsKey(invalidAttributeName));
 	}
 	
+	@Test
+    public void testDurableQueueIsRestoredFromJournal() throws IOException {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "group-commit");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		durableQueue.push(MessageCreator.createMessage("Message 2"));
+		durableQueue.push(MessageCreator.createMessage("Message 3"));
+		Message deletedMessage = durableQueue.pull();
+		Message inflightMessage = durableQueue.pull();
+		durableQueue.delete(deletedMessage.getReceiptHandle());
+		// receives and deletes are made durable by the periodic sync in group-commit mode
+		durableQueue.getJournal().commit();
+		
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		
+		assertEquals(1, restoredQueue.getApproximateNumberOfMessages());
+		assertEquals(1, restoredQueue.getNumberOfInflightMessages());
+		assertEquals("Message 3", restoredQueue.pull().getBody());
+		assertTrue(restoredQueue.delete(inflightMessage.getReceiptHandle()));
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testPurgeIsRestoredFromJournal() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "per-message");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		durableQueue.purge();
+		durableQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		
+		assertEquals(1, restoredQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 2", restoredQueue.pull().getBody());
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testCheckpointReplacesJournalsWithSnapshot() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "group-commit");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		durableQueue.push(MessageCreator.createMessage("Message 2"));
+		Message inflightMessage = durableQueue.pull();
+		
+		assertTrue(durableQueue.checkpoint());
+		durableQueue.push(MessageCreator.createMessage("Message 3"));
+		
+		String[] files = journalDirectory.list();
+		Arrays.sort(files);
+		assertEquals(Arrays.asList(qName + ".2.journal", qName + ".snapshot"), Arrays.asList(files));
+		
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		
+		assertEquals(2, restoredQueue.getApproximateNumberOfMessages());
+		assertEquals(1, restoredQueue.getNumberOfInflightMessages());
+		assertEquals("Message 2", restoredQueue.pull().getBody());
+		assertTrue(restoredQueue.delete(inflightMessage.getReceiptHandle()));
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testCloseKeepsSnapshot() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "interval");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		
+		durableQueue.close();
+		
+		assertNull(durableQueue.getJournal());
+		assertFalse(durableQueue.checkpoint());
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		assertEquals(1, restoredQueue.getApproximateNumberOfMessages());
+		restoredQueue.releaseResources();
+		assertEquals(0, journalDirectory.list().length);
+	}
+	
+	@Test
+    public void testCheckpointWithoutJournal() {
+		assertFalse(((InMemoryQueue) queue).checkpoint());
+	}
+	
+	@Test
+    public void testDurabilityNoneDeletesJournal() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "interval");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		assertTrue(durableQueue.getJournal() != null);
+		
+		attributes.put("Durability", "none");
+		durableQueue.setAttributes(attributes);
+		
+		assertNull(durableQueue.getJournal());
+		assertEquals(0, journalDirectory.list().length);
+		assertEquals(1, durableQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testDurabilityWithoutJournalDirectory() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "group-commit");
+		String expectedError = String.format("No journal directory configured. Durability %s is ignored for queue %s", "group-commit", qName);
+		
+		InMemoryQueue durableQueue = createDurableQueue(null, attributes);
+		
+		verifyLoggedMessage(expectedError, Level.ERROR);
+		assertNull(durableQueue.getJournal());
+	}
+	
+	@Test
+    public void testOffHeapStorageKeepsMessages() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MessageStorage", "offheap");
+		InMemoryQueue offHeapQueue = createDurableQueue(null, attributes);
+		Message message = MessageCreator.createMessage("Message 1");
+		offHeapQueue.push(message);
+		offHeapQueue.pushAll(Arrays.asList(MessageCreator.createMessage("Message 2"), MessageCreator.createMessage("Message 3")));
+		
+		Message receivedMessage = offHeapQueue.pull();
+		
+		assertEquals(message.getMessageId(), receivedMessage.getMessageId());
+		assertEquals(message.getMD5OfBody(), receivedMessage.getMD5OfBody());
+		assertEquals("Message 1", receivedMessage.getBody());
+		assertTrue(offHeapQueue.changeMessageVisibility(receivedMessage.getReceiptHandle(), 0));
+		assertEquals(3, offHeapQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", offHeapQueue.pull().getBody());
+		assertEquals("Message 2", offHeapQueue.pull().getBody());
+		offHeapQueue.releaseResources();
+	}
+	
+	@Test
+    public void testChangingMessageStorageMovesMessages() {
+		Map<String, String> attributes = new HashMap<>();
+		InMemoryQueue storageQueue = createDurableQueue(null, attributes);
+		storageQueue.push(MessageCreator.createMessage("Message 1"));
+		storageQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		attributes.put("MessageStorage", "offheap");
+		storageQueue.setAttributes(attributes);
+		storageQueue.push(MessageCreator.createMessage("Message 3"));
+		assertEquals("Message 1", storageQueue.pull().getBody());
+		
+		attributes.put("MessageStorage", "heap");
+		storageQueue.setAttributes(attributes);
+		
+		assertEquals(2, storageQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 2", storageQueue.pull().getBody());
+		assertEquals("Message 3", storageQueue.pull().getBody());
+		storageQueue.releaseResources();
+	}
+	
+	@Test
+    public void testOffHeapDurableQueueIsRestoredFromSnapshot() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "interval");
+		attributes.put("MessageStorage", "offheap");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"));
+		durableQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		durableQueue.close();
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		
+		assertEquals(2, restoredQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", restoredQueue.pull().getBody());
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testPushToFullQueueIsRejected() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "2");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		boundedQueue.push(MessageCreator.createMessage("Message 1"));
+		boundedQueue.push(MessageCreator.createMessage("Message 2"));
+		Message rejectedMessage = MessageCreator.createMessage("Message 3");
+		
+		boundedQueue.push(rejectedMessage);
+		
+		verifyLoggedMessage(String.format("Queue %s is full", qName), Level.ERROR);
+		assertNull(rejectedMessage.getMessageId());
+		assertEquals(2, boundedQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testInflightMessagesCountUntilDeleted() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumQueueKilobytes", "1");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		char[] body = new char[600];
+		Arrays.fill(body, 'x');
+		boundedQueue.push(MessageCreator.createMessage(new String(body)));
+		Message receivedMessage = boundedQueue.pull();
+		
+		Message message = MessageCreator.createMessage(new String(body));
+		boundedQueue.push(message);
+		assertNull(message.getMessageId());
+		
+		boundedQueue.delete(receivedMessage.getReceiptHandle());
+		message = MessageCreator.createMessage(new String(body));
+		boundedQueue.push(message);
+		assertEquals(1, boundedQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testBatchWhichDoesNotFitIsRejected() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "2");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		List<Message> messages = Arrays.asList(MessageCreator.createMessage("Message 1"), MessageCreator.createMessage("Message 2"),
+				MessageCreator.createMessage("Message 3"));
+		
+		boundedQueue.pushAll(messages);
+		
+		assertNull(messages.get(0).getMessageId());
+		assertEquals(0, boundedQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testDropOldestPolicy() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "2");
+		attributes.put("OverflowPolicy", "drop-oldest");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		boundedQueue.push(MessageCreator.createMessage("Message 1"));
+		boundedQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		Message message = MessageCreator.createMessage("Message 3");
+		boundedQueue.push(message);
+		
+		verifyLoggedMessage(String.format("Dropped the %d oldest messages of queue %s", 1, qName), Level.WARN);
+		assertEquals(36, message.getMessageId().length());
+		assertEquals(2, boundedQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 2", boundedQueue.pull().getBody());
+	}
+	
+	@Test
+    public void testBlockPolicyWaitsForConsumer() throws InterruptedException {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		attributes.put("OverflowPolicy", "block");
+		final InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		boundedQueue.push(MessageCreator.createMessage("Message 1"));
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(200);
+				}catch(InterruptedException e) {
+					return;
+				}
+				boundedQueue.delete(boundedQueue.pull().getReceiptHandle());
+			}
+		});
+		consumer.start();
+		
+		Message message = MessageCreator.createMessage("Message 2");
+		boundedQueue.push(message);
+		consumer.join();
+		
+		assertEquals(36, message.getMessageId().length());
+		assertEquals("Message 2", boundedQueue.pull().getBody());
+	}
+	
+	@Test
+    public void testPurgeReleasesCapacity() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		boundedQueue.push(MessageCreator.createMessage("Message 1"));
+		boundedQueue.pull();
+		
+		boundedQueue.purge();
+		Message message = MessageCreator.createMessage("Message 2");
+		boundedQueue.push(message);
+		
+		assertEquals(36, message.getMessageId().length());
+	}
+	
+	@Test
+    public void testSpillStorageKeepsBacklogBeyondThreshold() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MessageStorage", "spill");
+		attributes.put("SpillThresholdKilobytes", "1");
+		InMemoryQueue spillingQueue = new InMemoryQueue(qName, new QueueAttributeValidatorImpl(), RefreshScheduler.getDefault(),
+				TimeOrderedIdGenerator.getDefault(), null, temporaryFolder.getRoot());
+		spillingQueue.setAttributes(attributes);
+		
+		for(int i = 0; i < 1000; i++)
+			spillingQueue.push(MessageCreator.createMessage("Message " + i));
+		
+		assertEquals(1000, spillingQueue.getApproximateNumberOfMessages());
+		assertEquals(1, temporaryFolder.getRoot().list().length);
+		for(int i = 0; i < 1000; i++)
+			assertEquals("Message " + i, spillingQueue.pull().getBody());
+		
+		spillingQueue.releaseResources();
+		assertEquals(0, temporaryFolder.getRoot().list().length);
+	}
+	
+	@Test
+    public void testDelayedMessageBecomesAvailableWhenDue() {
+		InMemoryQueue delayQueue = createDurableQueue(null, new HashMap<String, String>());
+		Message message = MessageCreator.createMessage("Message 1");
+		long pushTime = System.currentTimeMillis();
+		
+		delayQueue.push(message, 1);
+		
+		assertEquals(36, message.getMessageId().length());
+		assertEquals(0, delayQueue.getApproximateNumberOfMessages());
+		assertEquals(1, delayQueue.getApproximateNumberOfMessagesDelayed());
+		assertNull(delayQueue.pull(0));
+		
+		Message receivedMessage = delayQueue.pull(5);
+		
+		assertEquals(message.getMessageId(), receivedMessage.getMessageId());
+		assertTrue(System.currentTimeMillis() - pushTime >= 1000);
+		assertEquals(0, delayQueue.getApproximateNumberOfMessagesDelayed());
+		delayQueue.releaseResources();
+	}
+	
+	@Test
+    public void testQueueDelaySecondsDelaysBatch() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("DelaySeconds", "1");
+		InMemoryQueue delayQueue = createDurableQueue(null, attributes);
+		
+		delayQueue.pushAll(Arrays.asList(MessageCreator.createMessage("Message 1"), MessageCreator.createMessage("Message 2")));
+		
+		assertEquals(2, delayQueue.getApproximateNumberOfMessagesDelayed());
+		List<Message> messages = delayQueue.pull(10, 5);
+		assertEquals(2, messages.size());
+		assertEquals("Message 1", messages.get(0).getBody());
+		delayQueue.releaseResources();
+	}
+	
+	@Test
+    public void testMessageDelayOverridesQueueDelaySeconds() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("DelaySeconds", "900");
+		InMemoryQueue delayQueue = createDurableQueue(null, attributes);
+		
+		delayQueue.push(MessageCreator.createMessage("Message 1"), 0);
+		delayQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		assertEquals(1, delayQueue.getApproximateNumberOfMessages());
+		assertEquals(1, delayQueue.getApproximateNumberOfMessagesDelayed());
+		assertEquals("Message 1", delayQueue.pull().getBody());
+		delayQueue.releaseResources();
+	}
+	
+	@Test
+    public void testPurgeDropsDelayedMessages() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		InMemoryQueue delayQueue = createDurableQueue(null, attributes);
+		delayQueue.push(MessageCreator.createMessage("Message 1"), 900);
+		
+		delayQueue.purge();
+		Message message = MessageCreator.createMessage("Message 2");
+		delayQueue.push(message);
+		
+		assertEquals(0, delayQueue.getApproximateNumberOfMessagesDelayed());
+		assertEquals(36, message.getMessageId().length());
+		delayQueue.releaseResources();
+	}
+	
+	@Test
+    public void testDelayedMessagesAreKeptBySnapshot() {
+		File journalDirectory = temporaryFolder.getRoot();
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "group-commit");
+		InMemoryQueue durableQueue = createDurableQueue(journalDirectory, attributes);
+		durableQueue.push(MessageCreator.createMessage("Message 1"), 900);
+		
+		durableQueue.close();
+		InMemoryQueue restoredQueue = createDurableQueue(journalDirectory, attributes);
+		
+		assertEquals(1, restoredQueue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", restoredQueue.pull().getBody());
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testAvailableMessagesAreDroppedAfterRetentionPeriod() throws InterruptedException {
+		setShortRetentionPeriod();
+		queue.pushAll(Arrays.asList(MessageCreator.createMessage("Message 1"), MessageCreator.createMessage("Message 2")));
+		
+		Thread.sleep(2500);
+		
+		assertEquals(0, queue.getApproximateNumberOfMessages());
+		verifyLoggedMessage(String.format("Dropped %d messages of queue %s after the retention period", 2, qName), Level.WARN);
+	}
+	
+	@Test
+    public void testInflightMessageIsDroppedWhenItTimesOutAfterRetentionPeriod() throws InterruptedException {
+		setShortRetentionPeriod();
+		queue.push(MessageCreator.createMessage("Message 1"));
+		queue.pull(1, 0, 3);
+		
+		Thread.sleep(3500);
+		
+		assertEquals(0, queue.getNumberOfInflightMessages());
+		assertEquals(0, queue.getApproximateNumberOfMessages());
+		verifyLoggedMessage(String.format("Dropped %d messages of queue %s after the retention period", 1, qName), Level.WARN);
+	}
+	
+	@Test
+    public void testInflightMessageCanBeDeletedAfterRetentionPeriod() throws InterruptedException {
+		setShortRetentionPeriod();
+		queue.push(MessageCreator.createMessage("Message 1"));
+		Message message = queue.pull(1, 0, 5).get(0);
+		
+		Thread.sleep(2500);
+		
+		assertTrue(queue.delete(message.getReceiptHandle()));
+	}
+	
+	@Test
+    public void testReceiveCountIsCountedPerMessage() {
+		queue.push(MessageCreator.createMessage("Message 1"));
+		
+		Message message = queue.pull();
+		assertEquals("1", message.getAttributes().get("ApproximateReceiveCount"));
+		queue.changeMessageVisibility(message.getReceiptHandle(), 0);
+		message = queue.pull();
+		
+		assertEquals("2", message.getAttributes().get("ApproximateReceiveCount"));
+	}
+	
+	@Test
+    public void testMessageMovesToDeadLetterQueueAfterMaxReceiveCount() {
+		InMemoryQueue deadLetterQueue = new InMemoryQueue("MyDeadLetterQueue", new QueueAttributeValidatorImpl());
+		InMemoryQueue sourceQueue = createRedriveQueue(deadLetterQueue, 2);
+		Message message = MessageCreator.createMessage("Message 1");
+		sourceQueue.push(message);
+		
+		sourceQueue.changeMessageVisibility(sourceQueue.pull().getReceiptHandle(), 0);
+		sourceQueue.changeMessageVisibility(sourceQueue.pull().getReceiptHandle(), 0);
+		Message deadLetter = deadLetterQueue.pull(5);
+		
+		assertEquals(message.getMessageId(), deadLetter.getMessageId());
+		assertEquals("1", deadLetter.getAttributes().get("ApproximateReceiveCount"));
+		assertEquals(0, sourceQueue.getApproximateNumberOfMessages());
+		assertEquals(0, sourceQueue.getNumberOfInflightMessages());
+		verify(mockAppender, timeout(1000)).doAppend(captorLoggingEvent.capture());
+		assertThat(captorLoggingEvent.getValue().getRenderedMessage(),
+				is(String.format("Moved %d messages of queue %s to dead-letter queue %s", 1, qName, "MyDeadLetterQueue")));
+		sourceQueue.releaseResources();
+		deadLetterQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFullBlockingDeadLetterQueueDoesNotDelayOtherQueues() {
+		InMemoryQueue deadLetterQueue = new InMemoryQueue("MyDeadLetterQueue", new QueueAttributeValidatorImpl());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		attributes.put("OverflowPolicy", "block");
+		attributes.put("OverflowWaitTimeSeconds", "300");
+		deadLetterQueue.setAttributes(attributes);
+		deadLetterQueue.push(MessageCreator.createMessage("Message 0"));
+		InMemoryQueue sourceQueue = createRedriveQueue(deadLetterQueue, 1);
+		sourceQueue.push(MessageCreator.createMessage("Message 1"));
+		queue.push(MessageCreator.createMessage("Message 2"));
+		
+		sourceQueue.pull(1, 0, 1);
+		queue.pull(1, 0, 2);
+		long start = System.currentTimeMillis();
+		Message message = queue.pull(10);
+		
+		assertEquals("Message 2", message.getBody());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, deadLetterQueue.getApproximateNumberOfMessages());
+		assertEquals(1, sourceQueue.getApproximateNumberOfMessages());
+		sourceQueue.releaseResources();
+		deadLetterQueue.releaseResources();
+	}
+	
+	@Test
+    public void testMessageStaysWithoutDeadLetterQueue() {
+		InMemoryQueue sourceQueue = createRedriveQueue(null, 1);
+		sourceQueue.push(MessageCreator.createMessage("Message 1"));
+		
+		sourceQueue.changeMessageVisibility(sourceQueue.pull().getReceiptHandle(), 0);
+		
+		assertEquals(1, sourceQueue.getApproximateNumberOfMessages());
+		sourceQueue.releaseResources();
+	}
+	
+	@Test
+    public void testMoveAvailableMessagesKeepsOrderAndIds() {
+		InMemoryQueue targetQueue = new InMemoryQueue("MyTargetQueue", new QueueAttributeValidatorImpl());
+		List<Message> messages = Arrays.asList(MessageCreator.createMessage("Message 1"), MessageCreator.createMessage("Message 2"),
+				MessageCreator.createMessage("Message 3"));
+		queue.pushAll(messages);
+		
+		assertEquals(2, ((InMemoryQueue) queue).moveAvailableMessages(targetQueue, 2));
+		
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+		assertEquals(messages.get(0).getMessageId(), targetQueue.pull().getMessageId());
+		assertEquals(messages.get(1).getMessageId(), targetQueue.pull().getMessageId());
+		targetQueue.releaseResources();
+	}
+	
+	@Test
+    public void testRejectedMessagesStayAtTheHead() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		InMemoryQueue targetQueue = createDurableQueue(null, attributes);
+		targetQueue.push(MessageCreator.createMessage("Message 0"));
+		queue.pushAll(Arrays.asList(MessageCreator.createMessage("Message 1"), MessageCreator.createMessage("Message 2")));
+		
+		assertEquals(0, ((InMemoryQueue) queue).moveAvailableMessages(targetQueue, 2));
+		
+		assertEquals(2, queue.getApproximateNumberOfMessages());
+		assertEquals("Message 1", queue.pull().getBody());
+		targetQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFifoQueueDeliversOneMessagePerGroup() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "heap");
+		fifoQueue.pushAll(Arrays.asList(createGroupMessage("Message A1", "A"), createGroupMessage("Message A2", "A"),
+				createGroupMessage("Message B1", "B")));
+		
+		List<Message> messages = fifoQueue.pull(10, 0);
+		
+		assertEquals(2, messages.size());
+		assertEquals("Message A1", messages.get(0).getBody());
+		assertEquals("Message B1", messages.get(1).getBody());
+		assertEquals(1, fifoQueue.getApproximateNumberOfMessages());
+		assertTrue(fifoQueue.pull(10, 0).isEmpty());
+		fifoQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFifoQueueReleasesGroupOnDelete() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "offheap");
+		fifoQueue.push(createGroupMessage("Message A1", "A"));
+		fifoQueue.push(createGroupMessage("Message A2", "A"));
+		
+		Message message = fifoQueue.pull();
+		assertEquals("A", message.getAttributes().get("MessageGroupId"));
+		fifoQueue.delete(message.getReceiptHandle());
+		
+		assertEquals("Message A2", fifoQueue.pull().getBody());
+		fifoQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFifoQueueRedeliversTimedOutMessageFirst() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "heap");
+		fifoQueue.push(createGroupMessage("Message A1", "A"));
+		fifoQueue.push(createGroupMessage("Message A2", "A"));
+		
+		fifoQueue.changeMessageVisibility(fifoQueue.pull().getReceiptHandle(), 0);
+		
+		assertEquals("Message A1", fifoQueue.pull().getBody());
+	}
+	
+	@Test
+    public void testFifoQueuePurgeDropsWaitingMessagesAndReleasesGroups() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "heap");
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "2");
+		fifoQueue.setAttributes(attributes);
+		fifoQueue.push(createGroupMessage("Message A1", "A"));
+		fifoQueue.push(createGroupMessage("Message A2", "A"));
+		fifoQueue.pull();
+		
+		assertTrue(fifoQueue.purge());
+		assertEquals(0, fifoQueue.getApproximateNumberOfMessages());
+		
+		Message message = createGroupMessage("Message A3", "A");
+		fifoQueue.push(message);
+		fifoQueue.push(createGroupMessage("Message A4", "A"));
+		Message rejectedMessage = createGroupMessage("Message A5", "A");
+		fifoQueue.push(rejectedMessage);
+		
+		assertEquals(36, message.getMessageId().length());
+		assertNull(rejectedMessage.getMessageId());
+		assertEquals("Message A3", fifoQueue.pull().getBody());
+		fifoQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFifoQueueRejectsMessageWithoutGroup() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "heap");
+		Message message = MessageCreator.createMessage("Message 1");
+		
+		fifoQueue.push(message);
+		
+		assertNull(message.getMessageId());
+		verifyLoggedMessage(String.format("MessageGroupId is required by FIFO queue %s", qName), Level.ERROR);
+	}
+	
+	@Test
+    public void testFifoQueueCannotBeChangedWhileHoldingMessages() {
+		InMemoryQueue fifoQueue = createFifoQueue(null, "heap");
+		fifoQueue.push(createGroupMessage("Message A1", "A"));
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("FifoQueue", "false");
+		
+		fifoQueue.setAttributes(attributes);
+		
+		assertEquals("true", fifoQueue.getAttributes().get("FifoQueue"));
+		verifyLoggedMessage(String.format("FifoQueue cannot be changed for queue %s which holds messages", qName), Level.ERROR);
+	}
+	
+	@Test
+    public void testFifoQueueGroupsAreRestored() {
+		File journalDirectory = temporaryFolder.getRoot();
+		InMemoryQueue fifoQueue = createFifoQueue(journalDirectory, "heap");
+		fifoQueue.push(createGroupMessage("Message A1", "A"));
+		fifoQueue.push(createGroupMessage("Message A2", "A"));
+		fifoQueue.pull();
+		
+		fifoQueue.close();
+		InMemoryQueue restoredQueue = createFifoQueue(journalDirectory, "heap");
+		
+		assertEquals(1, restoredQueue.getNumberOfInflightMessages());
+		assertEquals(1, restoredQueue.getApproximateNumberOfMessages());
+		assertTrue(restoredQueue.pull(10, 0).isEmpty());
+		restoredQueue.releaseResources();
+	}
+	
+	@Test
+    public void testDuplicateMessageGetsIdOfOriginal() {
+		Message message = createDeduplicatedMessage("Message 1", "Id 1");
+		Message duplicate = createDeduplicatedMessage("Message 2", "Id 1");
+		
+		queue.push(message);
+		queue.push(duplicate);
+		
+		assertEquals(message.getMessageId(), duplicate.getMessageId());
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testDuplicatesWithinBatchAreSkipped() {
+		List<Message> messages = Arrays.asList(createDeduplicatedMessage("Message 1", "Id 1"), createDeduplicatedMessage("Message 2", "Id 1"),
+				createDeduplicatedMessage("Message 3", "Id 2"));
+		
+		queue.pushAll(messages);
+		
+		assertEquals(messages.get(0).getMessageId(), messages.get(1).getMessageId());
+		assertEquals(2, queue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testContentBasedDeduplication() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ContentBasedDeduplication", "true");
+		InMemoryQueue deduplicatingQueue = createDurableQueue(null, attributes);
+		
+		deduplicatingQueue.push(MessageCreator.createMessage("Message 1"));
+		deduplicatingQueue.push(MessageCreator.createMessage("Message 1"));
+		deduplicatingQueue.push(MessageCreator.createMessage("Message 2"));
+		
+		assertEquals(2, deduplicatingQueue.getApproximateNumberOfMessages());
+		deduplicatingQueue.releaseResources();
+	}
+	
+	@Test
+    public void testFailedPushForgetsDeduplicationId() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MaximumNumberOfMessages", "1");
+		InMemoryQueue boundedQueue = createDurableQueue(null, attributes);
+		boundedQueue.push(MessageCreator.createMessage("Message 1"));
+		Message message = createDeduplicatedMessage("Message 2", "Id 1");
+		boundedQueue.push(message);
+		assertNull(message.getMessageId());
+		
+		boundedQueue.delete(boundedQueue.pull().getReceiptHandle());
+		message = createDeduplicatedMessage("Message 2", "Id 1");
+		boundedQueue.push(message);
+		
+		assertEquals(36, message.getMessageId().length());
+		assertEquals(1, boundedQueue.getApproximateNumberOfMessages());
+		boundedQueue.releaseResources();
+	}
+	
+	@Test
+    public void testMovedMessagesAreNotDeduplicated() {
+		InMemoryQueue targetQueue = new InMemoryQueue("MyTargetQueue", new QueueAttributeValidatorImpl());
+		queue.push(createDeduplicatedMessage("Message 1", "Id 1"));
+		
+		((InMemoryQueue) queue).moveAvailableMessages(targetQueue, 1);
+		
+		assertEquals(1, targetQueue.moveAvailableMessages(queue, 1));
+		assertEquals(1, queue.getApproximateNumberOfMessages());
+		targetQueue.releaseResources();
+	}
+	
+	private Message createDeduplicatedMessage(String messageBody, String messageDeduplicationId) {
+		Message message = MessageCreator.createMessage(messageBody);
+		message.getAttributes().put("MessageDeduplicationId", messageDeduplicationId);
+		
+		return message;
+	}
+	
+	private InMemoryQueue createFifoQueue(File journalDirectory, String messageStorage) {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("FifoQueue", "true");
+		attributes.put("MessageStorage", messageStorage);
+		if(journalDirectory != null)
+			attributes.put("Durability", "group-commit");
+		
+		return createDurableQueue(journalDirectory, attributes);
+	}
+	
+	private Message createGroupMessage(String messageBody, String messageGroupId) {
+		Message message = MessageCreator.createMessage(messageBody);
+		message.getAttributes().put("MessageGroupId", messageGroupId);
+		
+		return message;
+	}
+	
+	private InMemoryQueue createRedriveQueue(InMemoryQueue deadLetterQueue, int maxReceiveCount) {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("RedrivePolicy", String.format("{\"maxReceiveCount\":\"%d\",\"deadLetterTargetArn\":\"MyDeadLetterQueue\"}", maxReceiveCount));
+		InMemoryQueue sourceQueue = createDurableQueue(null, attributes);
+		sourceQueue.setDeadLetterQueue(deadLetterQueue);
+		
+		return sourceQueue;
+	}
+	
+	// the validator does not allow less than 60 seconds
+	private void setShortRetentionPeriod() {
+		when(validator.validateAttributeName("MessageRetentionPeriod")).thenReturn(true);
+		when(validator.validateAttributeValue("MessageRetentionPeriod", "1")).thenReturn(true);
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MessageRetentionPeriod", "1");
+		queue.setAttributes(attributes);
+	}
+	
+	private InMemoryQueue createDurableQueue(File journalDirectory, Map<String, String> attributes) {
+		InMemoryQueue durableQueue = new InMemoryQueue(qName, new QueueAttributeValidatorImpl(), RefreshScheduler.getDefault(),
+				TimeOrderedIdGenerator.getDefault(), journalDirectory);
+		durableQueue.setAttributes(attributes);
+		
+		return durableQueue;
+	}
+	
 	private void verifyLoggedMessage(String expectedMessage, Level expectedLevel) {
 		verify(mockAppender).doAppend(captorLoggingEvent.capture());
 		LoggingEvent loggingEvent = captorLoggingEvent.getValue();
@@ -0,0 +1,129 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class InflightMessageIndexTest {
+	InflightMessageIndex index;
+	
+	@Before
+	public void setUp() {
+		index = new InflightMessageIndex();
+	}
+	
+	@Test
+	public void testPeekReturnsEarliestDeadline() {
+		index.add(createMessage("Message 1"), "handle1", 0L, 300L);
+		index.add(createMessage("Message 2"), "handle2", 0L, 100L);
+		index.add(createMessage("Message 3"), "handle3", 0L, 200L);
+		
+		assertEquals("handle2", index.peek().getReceiptHandle());
+		assertEquals(3, index.size());
+	}
+	
+	@Test
+	public void testRemoveByReceiptHandle() {
+		Message message = createMessage("Message 1");
+		index.add(message, "handle1", 0L, 100L);
+		index.add(createMessage("Message 2"), "handle2", 0L, 200L);
+		
+		InflightMessageIndex.Entry entry = index.remove("handle1");
+		
+		assertSame(message, entry.getMessage());
+		assertNull(index.get("handle1"));
+		assertNull(index.remove("handle1"));
+		assertEquals("handle2", index.peek().getReceiptHandle());
+		assertEquals(1, index.size());
+	}
+	
+	@Test
+	public void testMessagesWithEqualBodiesAreTrackedSeparately() {
+		index.add(createMessage("Same body"), "handle1", 0L, 100L);
+		index.add(createMessage("Same body"), "handle2", 0L, 100L);
+		
+		index.remove("handle2");
+		
+		assertEquals("handle1", index.peek().getReceiptHandle());
+	}
+	
+	@Test
+	public void testUpdateDeadlineReordersEntries() {
+		InflightMessageIndex.Entry entry = index.add(createMessage("Message 1"), "handle1", 0L, 100L);
+		index.add(createMessage("Message 2"), "handle2", 0L, 200L);
+		
+		index.updateDeadline(entry, 300L);
+		assertEquals("handle2", index.peek().getReceiptHandle());
+		
+		index.updateDeadline(entry, 50L);
+		assertEquals("handle1", index.peek().getReceiptHandle());
+	}
+	
+	@Test
+	public void testResetDeadlinesUsesReceiptTime() {
+		index.add(createMessage("Message 1"), "handle1", 20L, 100L);
+		index.add(createMessage("Message 2"), "handle2", 10L, 200L);
+		
+		index.resetDeadlines(0L);
+		
+		assertEquals("handle2", index.peek().getReceiptHandle());
+		assertEquals(10L, index.peek().getDeadline());
+	}
+	
+	@Test
+	public void testResetDeadlinesKeepsFixedDeadlines() {
+		index.add(createMessage("Message 1"), "handle1", 10L, 100L);
+		InflightMessageIndex.Entry fixedEntry = index.add(createMessage("Message 2"), "handle2", 10L, 100L);
+		index.updateDeadline(fixedEntry, 500L);
+		
+		index.resetDeadlines(0L);
+		
+		assertTrue(fixedEntry.hasFixedDeadline());
+		assertEquals(500L, fixedEntry.getDeadline());
+		assertEquals("handle1", index.poll().getReceiptHandle());
+		assertSame(fixedEntry, index.peek());
+	}
+	
+	@Test
+	public void testPollReturnsEntriesInDeadlineOrderAfterRandomRemovals() {
+		Random random = new Random(42);
+		List<String> removedHandles = new ArrayList<>();
+		
+		for(int i = 0; i < 1000; i++)
+			index.add(createMessage("Message " + i), "handle" + i, 0L, random.nextInt(10000));
+		
+		for(int i = 0; i < 1000; i += 3) {
+			index.remove("handle" + i);
+			removedHandles.add("handle" + i);
+		}
+		
+		List<Long> deadlines = new ArrayList<>();
+		InflightMessageIndex.Entry entry = null;
+		
+		while((entry = index.poll()) != null) {
+			assertTrue(!removedHandles.contains(entry.getReceiptHandle()));
+			deadlines.add(entry.getDeadline());
+		}
+		
+		List<Long> sortedDeadlines = new ArrayList<>(deadlines);
+		Collections.sort(sortedDeadlines);
+		assertEquals(sortedDeadlines, deadlines);
+		assertEquals(1000 - removedHandles.size(), deadlines.size());
+		assertTrue(index.isEmpty());
+	}
+	
+	private Message createMessage(String body) {
+		return new Message().withBody(body);
+	}
+}
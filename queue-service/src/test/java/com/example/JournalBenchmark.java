@@ -0,0 +1,72 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Measures the push throughput of a journaled InMemoryQueue for every Durability mode, with one and with many pushing
+// threads, together with the commit batch size and force() latency of the journal.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.JournalBenchmark
+public class JournalBenchmark {
+	
+	private static final String[] durabilities = {"none", "interval", "group-commit", "per-message"};
+	private static final int[] threadCounts = {1, 16};
+	private static final int pushesPerThread = 2000;
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File journalDirectory = Files.createTempDirectory("journal-benchmark").toFile();
+		
+		// warm up before measuring
+		run(journalDirectory, "interval", 4);
+		
+		System.out.println(String.format("%-14s %8s %14s %16s %18s %18s", "durability", "threads", "pushes/s",
+				"avg batch size", "avg force us", "max force us"));
+		
+		for(String durability: durabilities) {
+			for(int threads: threadCounts)
+				run(journalDirectory, durability, threads);
+		}
+		
+		journalDirectory.delete();
+	}
+	
+	private static void run(File journalDirectory, String durability, int threads) throws InterruptedException {
+		final InMemoryQueue queue = new InMemoryQueue("BenchmarkQueue", new QueueAttributeValidatorImpl(),
+				RefreshScheduler.getDefault(), TimeOrderedIdGenerator.getDefault(), journalDirectory);
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", durability);
+		attributes.put("ComputeMD5OfBody", "false");
+		queue.setAttributes(attributes);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		long startTime = System.nanoTime();
+		for(int i = 0; i < threads; i++) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for(int j = 0; j < pushesPerThread; j++)
+						queue.push(MessageCreator.createMessage("Benchmark message body"));
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.MINUTES);
+		long elapsedNanos = System.nanoTime() - startTime;
+		
+		MessageJournal journal = queue.getJournal();
+		double pushesPerSecond = threads * pushesPerThread * 1e9 / elapsedNanos;
+		
+		if(journal == null)
+			System.out.println(String.format("%-14s %8d %14.0f %16s %18s %18s", durability, threads, pushesPerSecond, "-", "-", "-"));
+		else
+			System.out.println(String.format("%-14s %8d %14.0f %16.1f %18d %18d", durability, threads, pushesPerSecond,
+					journal.getAverageCommitBatchSize(), journal.getAverageSyncLatencyMicros(), journal.getMaxSyncLatencyMicros()));
+		
+		queue.releaseResources();
+	}
+}
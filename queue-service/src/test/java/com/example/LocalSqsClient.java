@@ -0,0 +1,295 @@
+package com.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchRequestTooLongException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteQueueRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.ReceiptHandleIsInvalidException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
+
+// A local stand-in for SQS: the requests of an AmazonSQSClient are served by an InMemoryQueueService instead of
+// the network, and every request is counted by its operation name, so tests can check how many round trips an
+// SqsQueueService operation would cost. An optional latency emulates the round trip; the highest number of requests
+// in flight at once is recorded.
+public class LocalSqsClient extends AmazonSQSClient {
+
+	public final static String queueUrlPrefix = "http://localhost:9324/000000000000/";
+
+	// the HTTP stack of the client is never used, but it logs at debug level when the client is finalized, which would
+	// reach the appenders of unrelated tests
+	static {
+		Logger.getLogger("org.apache.http").setLevel(Level.INFO);
+		Logger.getLogger("com.amazonaws").setLevel(Level.INFO);
+	}
+
+	private final InMemoryQueueService queueService = new InMemoryQueueService(new InMemoryQueueFactory());
+	private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	private volatile long latencyMillis;
+
+	public LocalSqsClient() {
+		super(new BasicAWSCredentials("local", "local"));
+	}
+
+	// number of requests of the given operation, e.g., "SendMessage"
+	public int getRequestCount(String operation) {
+		AtomicInteger requestCount = requestCounts.get(operation);
+		return requestCount == null ? 0 : requestCount.get();
+	}
+
+	public int getTotalRequestCount() {
+		int totalRequestCount = 0;
+
+		for(AtomicInteger requestCount: requestCounts.values())
+			totalRequestCount += requestCount.get();
+
+		return totalRequestCount;
+	}
+
+	public void resetRequestCounts() {
+		requestCounts.clear();
+		maxConcurrentRequests.set(0);
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests.get();
+	}
+
+	// deletes a queue behind the back of the clients, as another application would
+	public void deleteQueueDirectly(String qName) {
+		queueService.deleteQueue(qName);
+	}
+
+	@Override
+	public CreateQueueResult createQueue(CreateQueueRequest createQueueRequest) {
+		count("CreateQueue");
+
+		// like SQS, creating an existing queue returns its URL
+		if(!queueService.getQueueNames().contains(createQueueRequest.getQueueName()))
+			queueService.createQueue(createQueueRequest);
+
+		return new CreateQueueResult().withQueueUrl(queueUrlPrefix + createQueueRequest.getQueueName());
+	}
+
+	@Override
+	public GetQueueUrlResult getQueueUrl(GetQueueUrlRequest getQueueUrlRequest) {
+		count("GetQueueUrl");
+		return new GetQueueUrlResult().withQueueUrl(queueUrlPrefix + getQueueName(queueUrlPrefix + getQueueUrlRequest.getQueueName()));
+	}
+
+	@Override
+	public ListQueuesResult listQueues(ListQueuesRequest listQueuesRequest) {
+		count("ListQueues");
+		ListQueuesResult result = new ListQueuesResult();
+
+		for(String qName: queueService.getQueueNames())
+			result.withQueueUrls(queueUrlPrefix + qName);
+
+		return result;
+	}
+
+	@Override
+	public void deleteQueue(DeleteQueueRequest deleteQueueRequest) {
+		count("DeleteQueue");
+		queueService.deleteQueue(getQueueName(deleteQueueRequest.getQueueUrl()));
+	}
+
+	@Override
+	public void purgeQueue(PurgeQueueRequest purgeQueueRequest) {
+		count("PurgeQueue");
+		queueService.purgeQueue(getQueueName(purgeQueueRequest.getQueueUrl()));
+	}
+
+	@Override
+	public void setQueueAttributes(SetQueueAttributesRequest setQueueAttributesRequest) {
+		count("SetQueueAttributes");
+		queueService.setQueueAttributes(getQueueName(setQueueAttributesRequest.getQueueUrl()), setQueueAttributesRequest.getAttributes());
+	}
+
+	@Override
+	public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest getQueueAttributesRequest) {
+		count("GetQueueAttributes");
+		String qName = getQueueName(getQueueAttributesRequest.getQueueUrl());
+		Map<String, String> attributes = new HashMap<>(queueService.getQueueAttributes(qName));
+
+		attributes.put("ApproximateNumberOfMessages", String.valueOf(queueService.getApproximateNumberOfMessages(qName)));
+		attributes.put("ApproximateNumberOfMessagesDelayed", String.valueOf(queueService.getApproximateNumberOfMessagesDelayed(qName)));
+
+		return new GetQueueAttributesResult().withAttributes(attributes);
+	}
+
+	@Override
+	public SendMessageResult sendMessage(SendMessageRequest sendMessageRequest) {
+		count("SendMessage");
+		String qName = getQueueName(sendMessageRequest.getQueueUrl());
+		Integer delaySeconds = sendMessageRequest.getDelaySeconds();
+		String messageId = delaySeconds == null ? queueService.push(qName, sendMessageRequest.getMessageBody())
+				: queueService.push(qName, sendMessageRequest.getMessageBody(), delaySeconds);
+
+		return new SendMessageResult().withMessageId(messageId);
+	}
+
+	@Override
+	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+		count("SendMessageBatch");
+		String qName = getQueueName(sendMessageBatchRequest.getQueueUrl());
+		SendMessageBatchResult result = new SendMessageBatchResult();
+		int batchBytes = 0;
+
+		for(SendMessageBatchRequestEntry entry: sendMessageBatchRequest.getEntries())
+			batchBytes += entry.getMessageBody().getBytes(StandardCharsets.UTF_8).length;
+
+		// like SQS, a batch above 256 KB fails as a whole
+		if(batchBytes > 256 * 1024) {
+			BatchRequestTooLongException e = new BatchRequestTooLongException("Batch requests cannot be longer than 262144 bytes.");
+			e.setErrorCode("AWS.SimpleQueueService.BatchRequestTooLong");
+			throw e;
+		}
+
+		for(SendMessageBatchRequestEntry entry: sendMessageBatchRequest.getEntries()) {
+			String messageId = entry.getDelaySeconds() == null ? queueService.push(qName, entry.getMessageBody())
+					: queueService.push(qName, entry.getMessageBody(), entry.getDelaySeconds());
+			result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(messageId));
+		}
+
+		return result;
+	}
+
+	@Override
+	public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+		count("ReceiveMessage");
+		String qName = getQueueName(receiveMessageRequest.getQueueUrl());
+		int maxNumberOfMessages = receiveMessageRequest.getMaxNumberOfMessages() == null ? 1 : receiveMessageRequest.getMaxNumberOfMessages();
+		int waitTimeSeconds = receiveMessageRequest.getWaitTimeSeconds() == null ? 0 : receiveMessageRequest.getWaitTimeSeconds();
+		List<Message> messages = receiveMessageRequest.getVisibilityTimeout() == null
+				? queueService.pullBatch(qName, maxNumberOfMessages, waitTimeSeconds)
+				: queueService.pullBatch(qName, maxNumberOfMessages, waitTimeSeconds, receiveMessageRequest.getVisibilityTimeout());
+
+		return new ReceiveMessageResult().withMessages(messages == null ? new ArrayList<Message>() : messages);
+	}
+
+	@Override
+	public void deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+		count("DeleteMessage");
+
+		if(!queueService.delete(getQueueName(deleteMessageRequest.getQueueUrl()), deleteMessageRequest.getReceiptHandle()))
+			throw new ReceiptHandleIsInvalidException("ReceiptHandle does not exist.");
+	}
+
+	@Override
+	public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+		count("DeleteMessageBatch");
+		String qName = getQueueName(deleteMessageBatchRequest.getQueueUrl());
+		DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+
+		for(DeleteMessageBatchRequestEntry entry: deleteMessageBatchRequest.getEntries()) {
+			if(queueService.delete(qName, entry.getReceiptHandle()))
+				result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+			else
+				result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+						.withCode("ReceiptHandleIsInvalid").withMessage("ReceiptHandle does not exist."));
+		}
+
+		return result;
+	}
+
+	@Override
+	public void changeMessageVisibility(ChangeMessageVisibilityRequest changeMessageVisibilityRequest) {
+		count("ChangeMessageVisibility");
+
+		if(!queueService.changeMessageVisibility(getQueueName(changeMessageVisibilityRequest.getQueueUrl()),
+				changeMessageVisibilityRequest.getReceiptHandle(), changeMessageVisibilityRequest.getVisibilityTimeout()))
+			throw new ReceiptHandleIsInvalidException("ReceiptHandle does not exist.");
+	}
+
+	@Override
+	public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
+		count("ChangeMessageVisibilityBatch");
+		return queueService.changeMessageVisibilityBatch(getQueueName(changeMessageVisibilityBatchRequest.getQueueUrl()),
+				changeMessageVisibilityBatchRequest.getEntries());
+	}
+
+	private void count(String operation) {
+		AtomicInteger requestCount = requestCounts.get(operation);
+
+		if(requestCount == null) {
+			requestCounts.putIfAbsent(operation, new AtomicInteger());
+			requestCount = requestCounts.get(operation);
+		}
+
+		requestCount.incrementAndGet();
+
+		int requests = concurrentRequests.incrementAndGet();
+		int maxRequests;
+
+		while(requests > (maxRequests = maxConcurrentRequests.get()) && !maxConcurrentRequests.compareAndSet(maxRequests, requests))
+			;
+
+		try{
+			if(latencyMillis > 0)
+				Thread.sleep(latencyMillis);
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}finally {
+			concurrentRequests.decrementAndGet();
+		}
+	}
+
+	// name of the queue addressed by the URL; throws the exception of SQS if there is no such queue
+	private String getQueueName(String queueUrl) {
+		String qName = queueUrl == null ? "" : queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+
+		if(!queueService.getQueueNames().contains(qName)) {
+			QueueDoesNotExistException e = new QueueDoesNotExistException("The specified queue does not exist for this wsdl version.");
+			e.setErrorCode("AWS.SimpleQueueService.NonExistentQueue");
+			throw e;
+		}
+
+		return qName;
+	}
+}
@@ -0,0 +1,40 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class LongDequeTest {
+	LongDeque deque = new LongDeque();
+	
+	@Test
+	public void testAddFirstAndLastAcrossGrowth() {
+		for(long i = 0; i < 20; i++)
+			deque.addLast(i);
+		for(long i = -1; i >= -20; i--)
+			deque.addFirst(i);
+		
+		assertEquals(40, deque.size());
+		for(long i = -20; i < 20; i++)
+			assertEquals(i, deque.pollFirst());
+		assertTrue(deque.isEmpty());
+	}
+	
+	@Test
+	public void testGetCountsFromHead() {
+		deque.addLast(1L);
+		deque.addLast(2L);
+		deque.addFirst(0L);
+		
+		assertEquals(0L, deque.get(0));
+		assertEquals(2L, deque.get(2));
+	}
+	
+	@Test(expected = NoSuchElementException.class)
+	public void testPollFirstOnEmptyDeque() {
+		deque.pollFirst();
+	}
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class MessageCreatorTest {
+	
+	@Test
+	public void testCreateMessageSetsHexMD5OfBody() {
+		Message message = MessageCreator.createMessage("Hello Queue!");
+		
+		assertEquals("Hello Queue!", message.getBody());
+		assertEquals("366ab2ec69945bf1c6b81051ce6a139c", message.getMD5OfBody());
+		assertEquals(36, message.getMessageId().length());
+	}
+	
+	@Test
+	public void testMD5OfBodyUsesUtf8Bytes() {
+		Message message = MessageCreator.createMessage("\u00e9t\u00e9");
+		
+		assertEquals("deaf6a1e9612a4d8c221e68ee23d58d2", message.getMD5OfBody());
+	}
+	
+	@Test
+	public void testReusedDigestDoesNotCarryState() {
+		MessageCreator.createMessage("Some other body");
+		
+		assertEquals("366ab2ec69945bf1c6b81051ce6a139c", MessageCreator.createMessage("Hello Queue!").getMD5OfBody());
+	}
+	
+	@Test
+	public void testCreateMessageWithoutDigest() {
+		Message message = MessageCreator.createMessage("Hello Queue!", TimeOrderedIdGenerator.getDefault(), false);
+		
+		assertEquals("Hello Queue!", message.getBody());
+		assertNull(message.getMD5OfBody());
+	}
+}
@@ -0,0 +1,83 @@
+package com.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+// Measures the cost of a push with the MD5OfBody digest switched on and off (queue attribute ComputeMD5OfBody) for
+// small and large bodies. Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.MessageDigestBenchmark
+public class MessageDigestBenchmark {
+	
+	private static final int[] bodySizes = {64, 4096, 65536};
+	private static final int[] threadCounts = {1, 4};
+	private static final int pushesPerRun = 200000;
+	
+	public static void main(String[] args) throws InterruptedException {
+		RefreshScheduler refreshScheduler = new RefreshScheduler(10L);
+		QueueFactory queueFactory = new InMemoryQueueFactory(refreshScheduler);
+		
+		// warm up both code paths before measuring
+		run(queueFactory, 1, 1024, true);
+		run(queueFactory, 1, 1024, false);
+		
+		System.out.println(String.format("%-8s %10s %20s %20s", "threads", "body size", "digest on ns/push", "digest off ns/push"));
+		
+		for(int threads: threadCounts) {
+			for(int bodySize: bodySizes) {
+				long digestOn = run(queueFactory, threads, bodySize, true);
+				long digestOff = run(queueFactory, threads, bodySize, false);
+				System.out.println(String.format("%-8d %10d %20d %20d", threads, bodySize, digestOn, digestOff));
+			}
+		}
+		
+		refreshScheduler.shutdown();
+	}
+	
+	// returns the average wall clock time of a push in nanoseconds
+	private static long run(QueueFactory queueFactory, int threads, int bodySize, boolean computeMD5OfBody) throws InterruptedException {
+		final String qName = "BenchmarkQueue";
+		final QueueService queueService = new InMemoryQueueService(queueFactory);
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ComputeMD5OfBody", String.valueOf(computeMD5OfBody));
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+		
+		StringBuilder body = new StringBuilder(bodySize);
+		for(int i = 0; i < bodySize; i++)
+			body.append((char) ('a' + i % 26));
+		final String messageBody = body.toString();
+		
+		final int pushesPerThread = pushesPerRun / threads;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						start.await();
+					}catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for(int j = 0; j < pushesPerThread; j++)
+						queueService.push(qName, messageBody);
+				}
+			});
+		}
+		
+		long startTime = System.nanoTime();
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.MINUTES);
+		long elapsedNanos = System.nanoTime() - startTime;
+		
+		queueService.deleteQueue(qName);
+		return elapsedNanos / (pushesPerThread * threads);
+	}
+}
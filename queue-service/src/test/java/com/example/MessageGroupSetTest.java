@@ -0,0 +1,89 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class MessageGroupSetTest {
+	MessageGroupSet messageGroups;
+	
+	@Before
+	public void setUp() {
+		messageGroups = new MessageGroupSet();
+	}
+	
+	@Test
+	public void testReleaseReturnsWaitingMessagesInOrder() {
+		messageGroups.activate("A");
+		messageGroups.add("A", MessageCreator.createMessage("Message 1"), 1000L);
+		messageGroups.add("A", MessageCreator.createMessage("Message 2"), 2000L);
+		
+		MessageGroupSet.Entry entry = messageGroups.release("A");
+		assertEquals("Message 1", entry.getMessage().getBody());
+		assertEquals(1000L, entry.getSentTime());
+		assertEquals("Message 2", messageGroups.release("A").getMessage().getBody());
+		assertTrue(messageGroups.isActive("A"));
+		assertNull(messageGroups.release("A"));
+		assertFalse(messageGroups.isActive("A"));
+	}
+	
+	@Test
+	public void testGroupsAreIndependent() {
+		messageGroups.activate("A");
+		messageGroups.activate("B");
+		messageGroups.add("B", MessageCreator.createMessage("Message 1"), 1000L);
+		
+		assertNull(messageGroups.release("A"));
+		
+		assertEquals(1, messageGroups.getNumberOfActiveGroups());
+		assertEquals(1, messageGroups.size());
+		assertEquals("Message 1", messageGroups.release("B").getMessage().getBody());
+	}
+	
+	@Test
+	public void testReleaseOfInactiveGroup() {
+		assertNull(messageGroups.release("A"));
+		assertEquals(0, messageGroups.getNumberOfActiveGroups());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testAddToInactiveGroup() {
+		messageGroups.add("A", MessageCreator.createMessage("Message 1"), 1000L);
+	}
+	
+	@Test
+	public void testIteratorVisitsWaitingMessages() {
+		messageGroups.activate("A");
+		messageGroups.activate("B");
+		messageGroups.add("A", MessageCreator.createMessage("Message 1"), 1000L);
+		messageGroups.add("A", MessageCreator.createMessage("Message 2"), 1000L);
+		messageGroups.add("B", MessageCreator.createMessage("Message 3"), 1000L);
+		List<String> bodies = new ArrayList<>();
+		
+		for(Message message: messageGroups)
+			bodies.add(message.getBody());
+		
+		assertEquals(3, bodies.size());
+		assertTrue(bodies.indexOf("Message 1") < bodies.indexOf("Message 2"));
+	}
+	
+	@Test
+	public void testClear() {
+		messageGroups.activate("A");
+		messageGroups.add("A", MessageCreator.createMessage("Message 1"), 1000L);
+		
+		messageGroups.clear();
+		
+		assertEquals(0, messageGroups.size());
+		assertFalse(messageGroups.isActive("A"));
+	}
+}
@@ -0,0 +1,183 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class MessageJournalTest {
+	private final static long syncIntervalMillis = 60000L;
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	File journalFile;
+	List<String> replayedEvents = new ArrayList<>();
+	MessageJournal.JournalHandler journalHandler = new MessageJournal.JournalHandler() {
+		@Override
+		public void onPush(Message message) {
+			replayedEvents.add("push " + message.getMessageId() + " " + message.getMD5OfBody() + " " + message.getBody());
+		}
+		
+		@Override
+		public void onReceive(String messageId, String receiptHandle, long receiptTime, long deadline) {
+			replayedEvents.add("receive " + messageId + " " + receiptHandle + " " + receiptTime + " " + deadline);
+		}
+		
+		@Override
+		public void onDelete(String messageId) {
+			replayedEvents.add("delete " + messageId);
+		}
+		
+		@Override
+		public void onPurge() {
+			replayedEvents.add("purge");
+		}
+	};
+	
+	@Before
+	public void setUp() {
+		journalFile = new File(temporaryFolder.getRoot(), "MyQueue.journal");
+	}
+	
+	@Test
+	public void testReplayReturnsEventsInOrder() throws IOException {
+		MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.GROUP_COMMIT, syncIntervalMillis);
+		journal.appendPush(createMessage("id1", "Hello Queue!"));
+		journal.appendReceive("id1", "handle1", 10L, 20L);
+		journal.appendDelete("id1");
+		journal.appendPurge();
+		journal.publish();
+		journal.close();
+		
+		assertTrue(MessageJournal.replay(journalFile, journalHandler));
+		
+		assertEquals(4, replayedEvents.size());
+		assertEquals("push id1 null Hello Queue!", replayedEvents.get(0));
+		assertEquals("receive id1 handle1 10 20", replayedEvents.get(1));
+		assertEquals("delete id1", replayedEvents.get(2));
+		assertEquals("purge", replayedEvents.get(3));
+	}
+	
+	@Test
+	public void testReplayWithoutJournal() throws IOException {
+		assertFalse(MessageJournal.replay(journalFile, journalHandler));
+	}
+	
+	@Test
+	public void testJournalIsOnlyVisibleOncePublished() throws IOException {
+		MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.GROUP_COMMIT, syncIntervalMillis);
+		journal.awaitDurable(journal.appendPush(createMessage("id1", "Hello Queue!")));
+		
+		assertFalse(journalFile.exists());
+		
+		journal.publish();
+		assertTrue(journalFile.exists());
+		journal.delete();
+		assertFalse(journalFile.exists());
+	}
+	
+	@Test
+	public void testReplayTruncatesTornTail() throws IOException {
+		MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.GROUP_COMMIT, syncIntervalMillis);
+		journal.appendPush(createMessage("id1", "complete"));
+		journal.appendPush(createMessage("id2", "torn"));
+		journal.publish();
+		journal.close();
+		
+		long completeLength;
+		try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+			file.setLength(file.length() - 2);
+			completeLength = file.length() - (MessageJournal.recordHeaderSize + MessageJournal.encodePush(createMessage("id2", "torn")).length - 2);
+		}
+		
+		MessageJournal.replay(journalFile, journalHandler);
+		
+		assertEquals(1, replayedEvents.size());
+		assertEquals("push id1 null complete", replayedEvents.get(0));
+		assertEquals(completeLength, journalFile.length());
+	}
+	
+	@Test
+	public void testAwaitDurableCommitsEverythingAppendedInOneForce() throws IOException {
+		MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.GROUP_COMMIT, syncIntervalMillis);
+		journal.appendPush(createMessage("id1", "Message 1"));
+		journal.appendPush(createMessage("id2", "Message 2"));
+		long sequence = journal.appendPush(createMessage("id3", "Message 3"));
+		
+		journal.awaitDurable(sequence);
+		journal.awaitDurable(1);
+		
+		assertEquals(1, journal.getCommitCount());
+		assertEquals(3.0, journal.getAverageCommitBatchSize(), 0.0);
+		journal.delete();
+	}
+	
+	@Test
+	public void testPerMessageDurabilityCommitsEveryAppend() throws IOException {
+		MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.PER_MESSAGE, syncIntervalMillis);
+		
+		journal.appendPush(createMessage("id1", "Message 1"));
+		journal.appendPush(createMessage("id2", "Message 2"));
+		
+		assertEquals(2, journal.getCommitCount());
+		journal.delete();
+	}
+	
+	@Test
+	public void testConcurrentPushersAreAllDurable() throws InterruptedException, IOException {
+		final MessageJournal journal = new MessageJournal(journalFile, MessageJournal.Durability.GROUP_COMMIT, syncIntervalMillis);
+		final int threads = 8;
+		final int pushesPerThread = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			final int threadId = i;
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for(int j = 0; j < pushesPerThread; j++) {
+						try{
+							journal.awaitDurable(journal.appendPush(createMessage(threadId + "-" + j, "body")));
+						}catch(IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			});
+		}
+		
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+		journal.publish();
+		journal.close();
+		
+		MessageJournal.replay(journalFile, journalHandler);
+		assertEquals(threads * pushesPerThread, replayedEvents.size());
+		assertTrue(journal.getCommitCount() <= threads * pushesPerThread);
+	}
+	
+	private static Message createMessage(String messageId, String body) {
+		Message message = new Message();
+		message.setMessageId(messageId);
+		message.setBody(body);
+		assertNull(message.getMD5OfBody());
+		return message;
+	}
+}
@@ -0,0 +1,59 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class OffHeapMessageDequeTest {
+	OffHeapMessageDeque deque = new OffHeapMessageDeque(new OffHeapMessageStore(1024));
+	
+	@Test
+	public void testAddFirstAndLast() {
+		deque.addLast(MessageCreator.createMessage("Message 1"));
+		deque.addLast(MessageCreator.createMessage("Message 2"));
+		deque.addFirst(MessageCreator.createMessage("Message 0"));
+		
+		assertEquals(3, deque.size());
+		assertEquals("Message 0", deque.removeFirst().getBody());
+		assertEquals("Message 1", deque.removeFirst().getBody());
+		assertEquals("Message 2", deque.removeFirst().getBody());
+		assertTrue(deque.isEmpty());
+		assertEquals(0, deque.getStore().size());
+	}
+	
+	@Test
+	public void testIteratorKeepsMessages() {
+		deque.addLast(MessageCreator.createMessage("Message 1"));
+		deque.addLast(MessageCreator.createMessage("Message 2"));
+		
+		List<String> bodies = new ArrayList<>();
+		for(Message message: deque)
+			bodies.add(message.getBody());
+		
+		assertEquals(2, bodies.size());
+		assertEquals("Message 2", bodies.get(1));
+		assertEquals(2, deque.size());
+	}
+	
+	@Test
+	public void testClearFreesStore() {
+		deque.addLast(MessageCreator.createMessage("Message 1"));
+		
+		deque.clear();
+		
+		assertTrue(deque.isEmpty());
+		assertEquals(0, deque.getStore().getAllocatedBytes());
+	}
+	
+	@Test(expected = NoSuchElementException.class)
+	public void testRemoveFirstOnEmptyDeque() {
+		deque.removeFirst();
+	}
+}
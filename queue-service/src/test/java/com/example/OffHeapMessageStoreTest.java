@@ -0,0 +1,128 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class OffHeapMessageStoreTest {
+	int slabSize = 1024;
+	OffHeapMessageStore store = new OffHeapMessageStore(slabSize);
+	
+	@Test
+	public void testAddAndGet() {
+		Message message = MessageCreator.createMessage("Hello Queue! é中");
+		message.setMessageId("message-1");
+		
+		int handle = store.add(message);
+		Message storedMessage = store.get(handle);
+		
+		assertEquals("message-1", storedMessage.getMessageId());
+		assertEquals(message.getBody(), storedMessage.getBody());
+		assertEquals(message.getMD5OfBody(), storedMessage.getMD5OfBody());
+		assertNull(storedMessage.getReceiptHandle());
+		assertEquals(1, store.size());
+	}
+	
+	@Test
+	public void testRemovedHandleIsReused() {
+		int firstHandle = store.add(createMessage(0));
+		store.add(createMessage(1));
+		
+		store.remove(firstHandle);
+		int handle = store.add(createMessage(2));
+		
+		assertEquals(firstHandle, handle);
+		assertEquals("Message 2", store.get(handle).getBody());
+		assertEquals(2, store.size());
+	}
+	
+	@Test
+	public void testDrainedSlabsAreFreed() {
+		List<Integer> handles = new ArrayList<>();
+		for(int i = 0; i < 200; i++)
+			handles.add(store.add(createMessage(i)));
+		assertTrue(store.getAllocatedBytes() > 5 * slabSize);
+		
+		for(int handle: handles)
+			store.remove(handle);
+		
+		assertEquals(0, store.size());
+		assertEquals(0, store.getLiveBytes());
+		assertTrue(store.getAllocatedBytes() <= slabSize);
+	}
+	
+	@Test
+	public void testFreedSlabsAreReused() {
+		List<Integer> handles = new ArrayList<>();
+		for(int i = 0; i < 200; i++)
+			handles.add(store.add(createMessage(i)));
+		for(int handle: handles)
+			store.remove(handle);
+		
+		handles.clear();
+		for(int i = 0; i < 200; i++)
+			handles.add(store.add(createMessage(i)));
+		
+		assertEquals(200, store.size());
+		for(int i = 0; i < handles.size(); i++)
+			assertEquals("Message " + i, store.get(handles.get(i)).getBody());
+	}
+	
+	@Test
+	public void testHolesAreCompacted() {
+		List<Integer> handles = new ArrayList<>();
+		for(int i = 0; i < 400; i++)
+			handles.add(store.add(createMessage(i)));
+		long allocatedBytes = store.getAllocatedBytes();
+		
+		// keeps every fourth message, so that no slab drains completely
+		for(int i = 0; i < handles.size(); i++) {
+			if(i % 4 != 0)
+				store.remove(handles.get(i));
+		}
+		
+		assertTrue(store.getAllocatedBytes() < allocatedBytes / 2);
+		assertTrue(store.getAllocatedBytes() - store.getLiveBytes() <= Math.max(2 * slabSize, store.getAllocatedBytes() / 2));
+		for(int i = 0; i < handles.size(); i += 4)
+			assertEquals("Message " + i, store.get(handles.get(i)).getBody());
+	}
+	
+	@Test
+	public void testMessageLargerThanSlab() {
+		char[] body = new char[4 * slabSize];
+		Arrays.fill(body, 'x');
+		
+		int handle = store.add(MessageCreator.createMessage(new String(body)));
+		
+		assertEquals(new String(body), store.get(handle).getBody());
+		store.remove(handle);
+		assertEquals(0, store.getLiveBytes());
+	}
+	
+	@Test
+	public void testClearFreesAllSlabs() {
+		for(int i = 0; i < 100; i++)
+			store.add(createMessage(i));
+		
+		store.clear();
+		
+		assertEquals(0, store.size());
+		assertEquals(0, store.getAllocatedBytes());
+		assertEquals("Message 0", store.get(store.add(createMessage(0))).getBody());
+	}
+	
+	private Message createMessage(int i) {
+		Message message = MessageCreator.createMessage("Message " + i);
+		message.setMessageId(String.valueOf(i));
+		
+		return message;
+	}
+}
@@ -0,0 +1,93 @@
+package com.example;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+// Compares the heap and off-heap MessageStorage of InMemoryQueue with a deep backlog: heap bytes per queued message
+// after a full collection, the duration of a full collection with the backlog in place, and the push and pull rates.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.OffHeapStorageBenchmark
+// (give it a heap of a few GB, e.g., MAVEN_OPTS=-Xmx4g)
+public class OffHeapStorageBenchmark {
+
+	private static final String qName = "BenchmarkQueue";
+	private static final int backlog = 2000000;
+	private static final int batchSize = 10;
+	private static final int bodySize = 256;
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-8s %12s %14s %12s %12s", "storage", "heap B/msg", "full GC ms", "push/s", "pull/s"));
+
+		for(String storage: new String[] {"heap", "offheap", "heap", "offheap"})
+			run(storage);
+	}
+
+	private static void run(String storage) {
+		char[] bodyChars = new char[bodySize];
+		Arrays.fill(bodyChars, 'x');
+
+		long emptyHeap = usedHeapAfterGc();
+		InMemoryQueueService queueService = new InMemoryQueueService(new InMemoryQueueFactory());
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("MessageStorage", storage);
+		attributes.put("ComputeMD5OfBody", "false");
+		attributes.put("MaximumNumberOfMessagesPerReceive", String.valueOf(batchSize));
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+
+		long startTime = System.nanoTime();
+		for(int i = 0; i < backlog; i += batchSize) {
+			// distinct bodies, as real producers send
+			List<String> batch = new ArrayList<>();
+			for(int j = 0; j < batchSize; j++)
+				batch.add(new String(bodyChars));
+			queueService.pushBatch(qName, batch);
+		}
+		double pushRate = backlog / ((System.nanoTime() - startTime) / 1e9);
+
+		long heapPerMessage = (usedHeapAfterGc() - emptyHeap) / backlog;
+		long gcMillis = fullGcMillis();
+
+		startTime = System.nanoTime();
+		for(int i = 0; i < backlog; i += batchSize) {
+			List<String> receiptHandles = new ArrayList<>();
+			for(Message message: queueService.pullBatch(qName, batchSize, 0))
+				receiptHandles.add(message.getReceiptHandle());
+			queueService.deleteBatch(qName, receiptHandles);
+		}
+		double pullRate = backlog / ((System.nanoTime() - startTime) / 1e9);
+
+		queueService.deleteQueue(qName);
+		System.out.println(String.format("%-8s %12d %14d %12.0f %12.0f", storage, heapPerMessage, gcMillis, pushRate, pullRate));
+	}
+
+	private static long usedHeapAfterGc() {
+		System.gc();
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// time spent by the collectors in one full collection
+	private static long fullGcMillis() {
+		long before = totalGcMillis();
+		System.gc();
+
+		return totalGcMillis() - before;
+	}
+
+	private static long totalGcMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans())
+			millis += collector.getCollectionTime();
+
+		return millis;
+	}
+}
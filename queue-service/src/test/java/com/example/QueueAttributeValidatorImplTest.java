@@ -51,6 +51,84 @@ public class QueueAttributeValidatorImplTest {
 		assertTrue(validationStatus);
 	}
 	
+	@Test
+	public void testValidateAttributeNameForReceiveMessageWaitTimeSeconds() {
+		boolean validationStatus = queueAttributeValidator.validateAttributeName("ReceiveMessageWaitTimeSeconds");
+		assertTrue(validationStatus);
+	}
+	
+	@Test
+	public void testGetDefaultValueForMaximumNumberOfMessagesPerReceive() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("MaximumNumberOfMessagesPerReceive");
+		assertEquals("10", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForComputeMD5OfBody() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("ComputeMD5OfBody");
+		assertEquals("true", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForDurability() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("Durability");
+		assertEquals("none", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForMessageStorage() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("MessageStorage");
+		assertEquals("heap", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForOverflowPolicy() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("OverflowPolicy");
+		assertEquals("reject", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForMaximumNumberOfMessages() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("MaximumNumberOfMessages");
+		assertEquals("0", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForSpillThresholdKilobytes() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("SpillThresholdKilobytes");
+		assertEquals("65536", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForDelaySeconds() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("DelaySeconds");
+		assertEquals("0", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForMessageRetentionPeriod() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("MessageRetentionPeriod");
+		assertEquals("345600", receivedValue);
+	}
+
+	@Test
+	public void testGetDefaultValueForFifoQueue() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("FifoQueue");
+		assertEquals("false", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForContentBasedDeduplication() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("ContentBasedDeduplication");
+		assertEquals("false", receivedValue);
+	}
+	
+	@Test
+	public void testGetDefaultValueForRedrivePolicy() {
+		String receivedValue = queueAttributeValidator.getDefaultValue("RedrivePolicy");
+		assertEquals("", receivedValue);
+	}
+	
 	@Test
 	public void testValidateAttributeNameForInvalidAttributeName() {
 		boolean validationStatus = queueAttributeValidator.validateAttributeName(invalidAttributeName);
@@ -116,5 +194,17 @@ public class QueueAttributeValidatorImplTest {
         assertThat(loggingEvent.getLevel(), is(expectedLevel));
         assertThat(loggingEvent.getRenderedMessage(), is(expectedMessage));
 	}
-
+	@Test
+	public void testValidatorWithoutInMemoryQueueAttributes() {
+		QueueAttributeValidator validator = new QueueAttributeValidatorImpl(QueueAttributeValidatorImpl.inMemoryQueueAttributes);
+		
+		assertTrue(validator.validateAttributeName("VisibilityTimeout"));
+		assertFalse(validator.validateAttributeName("FifoQueue"));
+		assertFalse(validator.validateAttributeName("ContentBasedDeduplication"));
+		assertFalse(validator.validateAttributeName("DelaySeconds"));
+		assertFalse(validator.validateAttributeName("MessageRetentionPeriod"));
+		assertFalse(validator.validateAttributeName("RedrivePolicy"));
+		assertFalse(validator.getDefaultAttributeValues().containsKey("FifoQueue"));
+	}
+	
 }
@@ -0,0 +1,102 @@
+package com.example;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueueAttributesTest {
+	QueueAttributeValidator validator = new QueueAttributeValidatorImpl();
+	Map<String, String> attributes;
+
+	@Mock
+    private Appender mockAppender;
+    @Captor
+    private ArgumentCaptor<LoggingEvent> captorLoggingEvent;
+
+    @Before
+    public void setUp() {
+    	attributes = new HashMap<>(validator.getDefaultAttributeValues());
+       	LogManager.getRootLogger().addAppender(mockAppender);
+    }
+
+    @After
+    public void teardown() {
+        LogManager.getRootLogger().removeAppender(mockAppender);
+    }
+
+	@Test
+	public void testUpdateWithValidValue() {
+		assertTrue(QueueAttributes.update(attributes, Collections.singletonMap("VisibilityTimeout", "60"), validator, "MyQueue"));
+
+		assertEquals(60000L, QueueAttributes.getVisibilityTimeoutMillis(attributes));
+	}
+
+	@Test
+	public void testUpdateWithInvalidValueSetsDefault() {
+		attributes.put("VisibilityTimeout", "60");
+
+		assertTrue(QueueAttributes.update(attributes, Collections.singletonMap("VisibilityTimeout", "-1"), validator, "MyQueue"));
+
+		assertEquals("30", attributes.get("VisibilityTimeout"));
+	}
+
+	@Test
+	public void testUpdateWithInvalidName() {
+		assertTrue(QueueAttributes.update(attributes, Collections.singletonMap("NoSuchAttribute", "1"), validator, "MyQueue"));
+
+		assertFalse(attributes.containsKey("NoSuchAttribute"));
+		verifyLoggedMessage("Invalid attribute name (NoSuchAttribute) found while setting attributes for queue MyQueue", Level.ERROR);
+	}
+
+	@Test
+	public void testUpdateWithoutAttributes() {
+		assertFalse(QueueAttributes.update(attributes, new HashMap<String, String>(), validator, "MyQueue"));
+
+		verifyLoggedMessage("No attributes to set for queue MyQueue", Level.WARN);
+	}
+
+	@Test
+	public void testReceiveCountIsCapped() {
+		attributes.put("MaximumNumberOfMessagesPerReceive", "5");
+
+		assertEquals(3, QueueAttributes.getReceiveCount(attributes, 3));
+		assertEquals(5, QueueAttributes.getReceiveCount(attributes, 10));
+	}
+
+	@Test
+	public void testMissingAttributeFallsBackToDefault() {
+		attributes.clear();
+
+		assertEquals(30000L, QueueAttributes.getVisibilityTimeoutMillis(attributes));
+		assertEquals(0, QueueAttributes.getReceiveMessageWaitTimeSeconds(attributes));
+		assertEquals(10, QueueAttributes.getReceiveCount(attributes, 20));
+	}
+
+	private void verifyLoggedMessage(String expectedMessage, Level expectedLevel) {
+		verify(mockAppender).doAppend(captorLoggingEvent.capture());
+		LoggingEvent loggingEvent = captorLoggingEvent.getValue();
+        assertThat(loggingEvent.getLevel(), is(expectedLevel));
+        assertThat(loggingEvent.getRenderedMessage(), is(expectedMessage));
+	}
+}
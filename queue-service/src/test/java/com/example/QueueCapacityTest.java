@@ -0,0 +1,117 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class QueueCapacityTest {
+	QueueCapacity capacity = new QueueCapacity();
+	
+	@Test
+	public void testUnboundedCapacityCounts() {
+		assertTrue(capacity.tryReserve(1000, 1000000));
+		
+		assertEquals(1000, capacity.getMessages());
+		assertEquals(1000000, capacity.getBytes());
+	}
+	
+	@Test
+	public void testMessageLimit() {
+		capacity.setLimits(2, 0);
+		
+		assertTrue(capacity.tryReserve(2, 10));
+		assertFalse(capacity.tryReserve(1, 10));
+		assertEquals(2, capacity.getMessages());
+		
+		capacity.release(1, 10);
+		assertTrue(capacity.tryReserve(1, 10));
+	}
+	
+	@Test
+	public void testByteLimitRollsBackMessageCount() {
+		capacity.setLimits(10, 100);
+		
+		assertTrue(capacity.tryReserve(1, 60));
+		assertFalse(capacity.tryReserve(1, 60));
+		
+		assertEquals(1, capacity.getMessages());
+		assertEquals(60, capacity.getBytes());
+	}
+	
+	@Test
+	public void testReserveTimesOut() throws InterruptedException {
+		capacity.setLimits(1, 0);
+		capacity.tryReserve(1, 0);
+		long start = System.currentTimeMillis();
+		
+		assertFalse(capacity.reserve(1, 0, 200));
+		assertTrue(System.currentTimeMillis() - start >= 200);
+	}
+	
+	@Test
+	public void testReleaseWakesBlockedProducer() throws InterruptedException {
+		capacity.setLimits(1, 0);
+		capacity.tryReserve(1, 0);
+		final AtomicBoolean reserved = new AtomicBoolean();
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					reserved.set(capacity.reserve(1, 0, 10000));
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		producer.start();
+		
+		Thread.sleep(100);
+		capacity.release(1, 0);
+		producer.join(5000);
+		
+		assertTrue(reserved.get());
+		assertEquals(1, capacity.getMessages());
+	}
+	
+	@Test
+	public void testCloseWakesBlockedProducer() throws InterruptedException {
+		capacity.setLimits(1, 0);
+		capacity.tryReserve(1, 0);
+		final AtomicBoolean reserved = new AtomicBoolean(true);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					reserved.set(capacity.reserve(1, 0, 10000));
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		producer.start();
+		
+		Thread.sleep(100);
+		capacity.close();
+		producer.join(5000);
+		
+		assertFalse(reserved.get());
+	}
+	
+	@Test
+	public void testGetBodySizeCountsUtf8Bytes() {
+		assertEquals(5, QueueCapacity.getBodySize(MessageCreator.createMessage("Hello")));
+		assertEquals(2, QueueCapacity.getBodySize(MessageCreator.createMessage("é")));
+		assertEquals(3, QueueCapacity.getBodySize(MessageCreator.createMessage("中")));
+		assertEquals(4, QueueCapacity.getBodySize(MessageCreator.createMessage("😀")));
+	}
+	
+	@Test
+	public void testOverflowPolicyFromAttributeValue() {
+		assertEquals(QueueCapacity.OverflowPolicy.DROP_OLDEST, QueueCapacity.OverflowPolicy.fromAttributeValue("drop-oldest"));
+		assertEquals(QueueCapacity.OverflowPolicy.REJECT, QueueCapacity.OverflowPolicy.fromAttributeValue(null));
+	}
+}
@@ -0,0 +1,97 @@
+package com.example;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueueJournalTest {
+	String qName = "MyQueue";
+	InMemoryQueue queue;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+    private Appender mockAppender;
+    @Captor
+    private ArgumentCaptor<LoggingEvent> captorLoggingEvent;
+
+    @Before
+    public void setUp() {
+    	queue = new InMemoryQueue(qName, new QueueAttributeValidatorImpl(), RefreshScheduler.getDefault());
+       	LogManager.getRootLogger().addAppender(mockAppender);
+    }
+
+    @After
+    public void teardown() {
+        LogManager.getRootLogger().removeAppender(mockAppender);
+        queue.releaseResources();
+    }
+
+	@Test
+	public void testCheckpointWritesSnapshotAndDropsOlderJournals() {
+		File journalDirectory = temporaryFolder.getRoot();
+		QueueJournal queueJournal = new QueueJournal(queue, qName, journalDirectory);
+
+		synchronized(queue) {
+			queueJournal.update(MessageJournal.Durability.PER_MESSAGE);
+			assertNotNull(queueJournal.getJournal());
+		}
+		assertTrue(queueJournal.checkpoint());
+
+		String[] fileNames = journalDirectory.list();
+		Arrays.sort(fileNames);
+		assertArrayEquals(new String[] {"MyQueue.2.journal", "MyQueue.snapshot"}, fileNames);
+
+		synchronized(queue) {
+			queueJournal.delete();
+			assertNull(queueJournal.getJournal());
+		}
+		assertArrayEquals(new String[0], journalDirectory.list());
+	}
+
+	@Test
+	public void testCheckpointWithoutJournal() {
+		QueueJournal queueJournal = new QueueJournal(queue, qName, temporaryFolder.getRoot());
+
+		assertFalse(queueJournal.checkpoint());
+	}
+
+	@Test
+	public void testUpdateWithoutJournalDirectory() {
+		QueueJournal queueJournal = new QueueJournal(queue, qName, null);
+
+		synchronized(queue) {
+			queueJournal.update(MessageJournal.Durability.PER_MESSAGE);
+			assertNull(queueJournal.getJournal());
+		}
+		verify(mockAppender).doAppend(captorLoggingEvent.capture());
+		LoggingEvent loggingEvent = captorLoggingEvent.getValue();
+        assertThat(loggingEvent.getLevel(), is(Level.ERROR));
+        assertThat(loggingEvent.getRenderedMessage(), is("No journal directory configured. Durability per-message is ignored for queue MyQueue"));
+	}
+}
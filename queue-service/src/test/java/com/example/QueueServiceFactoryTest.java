@@ -0,0 +1,74 @@
+package com.example;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueueServiceFactoryTest {
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testDefaultIsInMemoryQueueService() {
+		assertTrue(QueueServiceFactory.create(new Properties()) instanceof InMemoryQueueService);
+	}
+	
+	@Test
+	public void testCreateFileQueueService() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.typeProperty, "file");
+		properties.setProperty(QueueServiceFactory.fileDirectoryProperty, temporaryFolder.getRoot().getPath());
+		properties.setProperty(QueueServiceFactory.fileSegmentSizeProperty, "65536");
+		
+		assertTrue(QueueServiceFactory.create(properties) instanceof FileQueueService);
+	}
+	
+	@Test
+	public void testCreateDurableInMemoryQueueService() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.journalDirectoryProperty, temporaryFolder.getRoot().getPath());
+		
+		assertTrue(QueueServiceFactory.create(properties) instanceof DurableInMemoryQueueService);
+	}
+	
+	@Test
+	public void testCreateSharedMemoryQueueService() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.typeProperty, "shared");
+		properties.setProperty(QueueServiceFactory.sharedDirectoryProperty, temporaryFolder.getRoot().getPath());
+		properties.setProperty(QueueServiceFactory.sharedSlotCountProperty, "16");
+		
+		assertTrue(QueueServiceFactory.create(properties) instanceof SharedMemoryQueueService);
+	}
+	
+	@Test
+	public void testFileQueueServiceWithoutDirectory() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.typeProperty, "file");
+		
+		assertNull(QueueServiceFactory.create(properties));
+	}
+	
+	@Test
+	public void testUnknownType() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.typeProperty, "carrier-pigeon");
+		
+		assertNull(QueueServiceFactory.create(properties));
+	}
+	
+	@Test
+	public void testSqsQueueServiceWithInvalidSendLinger() {
+		Properties properties = new Properties();
+		properties.setProperty(QueueServiceFactory.typeProperty, "sqs");
+		properties.setProperty(QueueServiceFactory.sqsSendLingerMillisProperty, "-1");
+		
+		assertNull(QueueServiceFactory.create(properties));
+	}
+}
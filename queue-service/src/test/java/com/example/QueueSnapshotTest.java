@@ -0,0 +1,148 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class QueueSnapshotTest {
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	File snapshotFile;
+	Map<String, String> attributes;
+	List<String> replayedEvents = new ArrayList<>();
+	MessageJournal.JournalHandler journalHandler = new MessageJournal.JournalHandler() {
+		@Override
+		public void onPush(Message message) {
+			replayedEvents.add("push " + message.getMessageId() + " " + message.getBody());
+		}
+		
+		@Override
+		public void onReceive(String messageId, String receiptHandle, long receiptTime, long deadline) {
+			replayedEvents.add("receive " + messageId + " " + receiptHandle + " " + receiptTime + " " + deadline);
+		}
+		
+		@Override
+		public void onDelete(String messageId) {
+			replayedEvents.add("delete " + messageId);
+		}
+		
+		@Override
+		public void onPurge() {
+			replayedEvents.add("purge");
+		}
+	};
+	
+	@Before
+	public void setUp() {
+		snapshotFile = new File(temporaryFolder.getRoot(), "MyQueue.snapshot");
+		attributes = new HashMap<>();
+		attributes.put("VisibilityTimeout", "60");
+		attributes.put("Durability", "interval");
+	}
+	
+	@Test
+	public void testWriteAndRead() throws IOException {
+		QueueSnapshot snapshot = new QueueSnapshot(7L, attributes);
+		snapshot.addInflightMessage(createMessage("id1", "Message 1"), "handle1", 10L, 20L);
+		snapshot.addAvailableMessage(createMessage("id2", "Message 2"));
+		snapshot.write(snapshotFile);
+		
+		QueueSnapshot readSnapshot = QueueSnapshot.read(snapshotFile);
+		readSnapshot.replay(journalHandler);
+		
+		assertEquals(7L, readSnapshot.getGeneration());
+		assertEquals(attributes, readSnapshot.getAttributes());
+		assertEquals(2, readSnapshot.getNumberOfMessages());
+		assertEquals(3, replayedEvents.size());
+		assertEquals("push id1 Message 1", replayedEvents.get(0));
+		assertEquals("receive id1 handle1 10 20", replayedEvents.get(1));
+		assertEquals("push id2 Message 2", replayedEvents.get(2));
+	}
+	
+	@Test
+	public void testReadAttributes() throws IOException {
+		QueueSnapshot snapshot = new QueueSnapshot(1L, attributes);
+		snapshot.addAvailableMessage(createMessage("id1", "Message 1"));
+		snapshot.write(snapshotFile);
+		
+		assertEquals(attributes, QueueSnapshot.readAttributes(snapshotFile));
+	}
+	
+	@Test
+	public void testReadWithoutSnapshot() throws IOException {
+		assertNull(QueueSnapshot.read(snapshotFile));
+	}
+	
+	@Test
+	public void testTornSnapshotIsRejected() throws IOException {
+		QueueSnapshot snapshot = new QueueSnapshot(1L, attributes);
+		snapshot.addAvailableMessage(createMessage("id1", "Message 1"));
+		snapshot.addAvailableMessage(createMessage("id2", "Message 2"));
+		snapshot.write(snapshotFile);
+		
+		try(RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+			file.setLength(file.length() - 3);
+		}
+		
+		assertNull(QueueSnapshot.read(snapshotFile));
+	}
+	
+	@Test
+	public void testCorruptSnapshotIsRejected() throws IOException {
+		QueueSnapshot snapshot = new QueueSnapshot(1L, attributes);
+		snapshot.addAvailableMessage(createMessage("id1", "Message 1"));
+		snapshot.write(snapshotFile);
+		
+		try(RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+			file.seek(file.length() - 10);
+			file.write(0xFF);
+		}
+		
+		assertNull(QueueSnapshot.read(snapshotFile));
+	}
+	
+	@Test
+	public void testUnpublishedSnapshotKeepsPreviousOne() throws IOException {
+		QueueSnapshot previousSnapshot = new QueueSnapshot(1L, attributes);
+		previousSnapshot.write(snapshotFile);
+		QueueSnapshot nextSnapshot = new QueueSnapshot(2L, attributes);
+		nextSnapshot.addAvailableMessage(createMessage("id1", "Message 1"));
+		
+		nextSnapshot.writeTemporary(snapshotFile);
+		assertEquals(1L, QueueSnapshot.read(snapshotFile).getGeneration());
+		
+		nextSnapshot.discard(snapshotFile);
+		assertEquals(1, temporaryFolder.getRoot().list().length);
+		assertFalse(QueueSnapshot.read(snapshotFile).getNumberOfMessages() > 0);
+		
+		nextSnapshot.writeTemporary(snapshotFile);
+		nextSnapshot.publish(snapshotFile);
+		assertEquals(2L, QueueSnapshot.read(snapshotFile).getGeneration());
+		assertTrue(snapshotFile.isFile());
+	}
+	
+	private static Message createMessage(String messageId, String body) {
+		Message message = new Message();
+		message.setMessageId(messageId);
+		message.setBody(body);
+		return message;
+	}
+}
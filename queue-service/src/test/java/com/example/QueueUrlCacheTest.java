@@ -0,0 +1,48 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class QueueUrlCacheTest {
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new QueueUrlCache(1000L, 0);
+	}
+	
+	@Test
+	public void testUrlIsCachedUntilItExpires() {
+		QueueUrlCache queueUrlCache = new QueueUrlCache(1000L, 10);
+		queueUrlCache.put("MyQueue", "http://localhost/MyQueue", 10000L);
+		
+		assertEquals("http://localhost/MyQueue", queueUrlCache.get("MyQueue", 10999L));
+		assertNull(queueUrlCache.get("MyQueue", 11000L));
+		assertEquals(0, queueUrlCache.size());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedUrlIsEvicted() {
+		QueueUrlCache queueUrlCache = new QueueUrlCache(1000L, 2);
+		queueUrlCache.put("MyQueue1", "http://localhost/MyQueue1", 10000L);
+		queueUrlCache.put("MyQueue2", "http://localhost/MyQueue2", 10000L);
+		queueUrlCache.get("MyQueue1", 10000L);
+		
+		queueUrlCache.put("MyQueue3", "http://localhost/MyQueue3", 10000L);
+		
+		assertEquals(2, queueUrlCache.size());
+		assertEquals("http://localhost/MyQueue1", queueUrlCache.get("MyQueue1", 10000L));
+		assertNull(queueUrlCache.get("MyQueue2", 10000L));
+	}
+	
+	@Test
+	public void testInvalidate() {
+		QueueUrlCache queueUrlCache = new QueueUrlCache();
+		queueUrlCache.put("MyQueue", "http://localhost/MyQueue", 10000L);
+		
+		queueUrlCache.invalidate("MyQueue");
+		
+		assertNull(queueUrlCache.get("MyQueue", 10000L));
+	}
+}
@@ -0,0 +1,145 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+public class ReceiveMessageBufferTest {
+	LocalSqsClient sqsClient;
+	String queueUrl;
+	ReceiveMessageBuffer receiveMessageBuffer;
+	
+	@Before
+	public void setUp() {
+		sqsClient = new LocalSqsClient();
+		queueUrl = sqsClient.createQueue(new CreateQueueRequest("MyQueue")).getQueueUrl();
+	}
+	
+	@After
+	public void tearDown() {
+		if(receiveMessageBuffer != null)
+			receiveMessageBuffer.stop();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidVisibilityTimeout() {
+		new ReceiveMessageBuffer(sqsClient, new QueueUrlCache(), "MyQueue", queueUrl, 10, 1, 0);
+	}
+	
+	@Test
+	public void testBufferIsFilledInBatchesUpToItsBound() throws Exception {
+		pushMessages(25);
+		receiveMessageBuffer = startBuffer(20, 30);
+		
+		awaitBufferedMessages(20);
+		assertEquals(2, sqsClient.getRequestCount("ReceiveMessage"));
+		
+		List<Message> messages = receiveMessageBuffer.take(10, 0);
+		
+		assertEquals(10, messages.size());
+		assertEquals("Message 0", messages.get(0).getBody());
+		awaitBufferedMessages(15);
+	}
+	
+	@Test
+	public void testTakeWaitsForMessages() throws Exception {
+		receiveMessageBuffer = startBuffer(10, 30);
+		
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(100);
+				}catch(InterruptedException e) {
+					return;
+				}
+				pushMessages(1);
+			}
+		}).start();
+		List<Message> messages = receiveMessageBuffer.take(10, 3);
+		
+		assertEquals(1, messages.size());
+		assertEquals(0, receiveMessageBuffer.take(10, 0).size());
+	}
+	
+	@Test
+	public void testExpiredMessagesAreDroppedAndReceivedAgain() throws Exception {
+		pushMessages(1);
+		receiveMessageBuffer = startBuffer(1, 1);
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(receiveMessageBuffer.getNumberOfExpiredMessages() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		
+		assertTrue(receiveMessageBuffer.getNumberOfExpiredMessages() > 0);
+		assertEquals("Message 0", receiveMessageBuffer.take(1, 3).get(0).getBody());
+	}
+	
+	@Test
+	public void testStopReleasesBufferedMessages() throws Exception {
+		pushMessages(3);
+		receiveMessageBuffer = startBuffer(10, 30);
+		awaitBufferedMessages(3);
+		
+		receiveMessageBuffer.stop();
+		
+		// a receive in flight may take the released messages once more, it releases them as well
+		long deadline = System.currentTimeMillis() + 5000;
+		while(getApproximateNumberOfMessages() != 3 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		
+		assertTrue(receiveMessageBuffer.isStopped());
+		assertTrue(sqsClient.getRequestCount("ChangeMessageVisibilityBatch") > 0);
+		assertEquals(3, getApproximateNumberOfMessages());
+		assertEquals(0, receiveMessageBuffer.getNumberOfBufferedMessages());
+	}
+	
+	@Test
+	public void testBufferStopsWhenQueueIsDeleted() throws Exception {
+		QueueUrlCache queueUrlCache = new QueueUrlCache();
+		queueUrlCache.put("MyQueue", queueUrl, System.currentTimeMillis());
+		sqsClient.deleteQueueDirectly("MyQueue");
+		receiveMessageBuffer = new ReceiveMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 10, 1, 30);
+		
+		receiveMessageBuffer.start();
+		receiveMessageBuffer.take(1, 1);
+		
+		assertTrue(receiveMessageBuffer.isStopped());
+		assertEquals(0, queueUrlCache.size());
+	}
+	
+	private ReceiveMessageBuffer startBuffer(int maxPrefetchedMessages, int visibilityTimeoutSeconds) {
+		ReceiveMessageBuffer buffer = new ReceiveMessageBuffer(sqsClient, new QueueUrlCache(), "MyQueue", queueUrl, maxPrefetchedMessages, 1, 
+				visibilityTimeoutSeconds);
+		buffer.start();
+		
+		return buffer;
+	}
+	
+	private int getApproximateNumberOfMessages() {
+		return Integer.parseInt(sqsClient.getQueueAttributes(queueUrl, Arrays.asList("All")).getAttributes().get("ApproximateNumberOfMessages"));
+	}
+	
+	private void pushMessages(int numberOfMessages) {
+		for(int i = 0; i < numberOfMessages; i++)
+			sqsClient.sendMessage(queueUrl, "Message " + i);
+	}
+	
+	private void awaitBufferedMessages(int numberOfMessages) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		
+		while(receiveMessageBuffer.getNumberOfBufferedMessages() != numberOfMessages && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		
+		assertEquals(numberOfMessages, receiveMessageBuffer.getNumberOfBufferedMessages());
+	}
+}
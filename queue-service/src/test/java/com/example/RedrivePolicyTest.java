@@ -0,0 +1,51 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RedrivePolicyTest {
+	
+	@Test
+	public void testParseQueueArn() {
+		RedrivePolicy redrivePolicy = RedrivePolicy.parse("{\"maxReceiveCount\":\"5\",\"deadLetterTargetArn\":\"arn:aws:sqs:us-east-1:123456789012:MyDeadLetterQueue\"}");
+		
+		assertEquals(5, redrivePolicy.getMaxReceiveCount());
+		assertEquals("MyDeadLetterQueue", redrivePolicy.getDeadLetterTargetQueue());
+	}
+	
+	@Test
+	public void testParseQueueNameAndNumericCount() {
+		RedrivePolicy redrivePolicy = RedrivePolicy.parse("{\"maxReceiveCount\":3,\"deadLetterTargetArn\":\"MyDeadLetterQueue\"}");
+		
+		assertEquals(3, redrivePolicy.getMaxReceiveCount());
+		assertEquals("MyDeadLetterQueue", redrivePolicy.getDeadLetterTargetQueue());
+	}
+	
+	@Test
+	public void testParseEmptyValue() {
+		assertNull(RedrivePolicy.parse(""));
+		assertNull(RedrivePolicy.parse(null));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidJson() {
+		RedrivePolicy.parse("{maxReceiveCount");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseMissingTarget() {
+		RedrivePolicy.parse("{\"maxReceiveCount\":\"5\"}");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseMaxReceiveCountOutOfRange() {
+		RedrivePolicy.parse("{\"maxReceiveCount\":\"1001\",\"deadLetterTargetArn\":\"MyDeadLetterQueue\"}");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidMaxReceiveCount() {
+		RedrivePolicy.parse("{\"maxReceiveCount\":\"five\",\"deadLetterTargetArn\":\"MyDeadLetterQueue\"}");
+	}
+}
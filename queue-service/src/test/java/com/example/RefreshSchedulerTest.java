@@ -0,0 +1,69 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RefreshSchedulerTest {
+	RefreshScheduler refreshScheduler;
+	
+	@Before
+	public void setUp() {
+		refreshScheduler = new RefreshScheduler(10L);
+	}
+	
+	@After
+	public void teardown() {
+		refreshScheduler.shutdown();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateWithInvalidTickResolution() {
+		new RefreshScheduler(0L);
+	}
+	
+	@Test
+	public void testScheduledQueueIsRefreshedOnceDue() {
+		MessageQueue queue = mock(MessageQueue.class);
+		
+		refreshScheduler.schedule(queue, System.currentTimeMillis() + 50);
+		
+		verify(queue, timeout(2000).times(1)).refreshQueue();
+		assertEquals(0, refreshScheduler.getNumberOfScheduledTasks());
+	}
+	
+	@Test
+	public void testEarlierDeadlineIsRefreshedFirst() throws InterruptedException {
+		MessageQueue lateQueue = mock(MessageQueue.class);
+		MessageQueue earlyQueue = mock(MessageQueue.class);
+		
+		refreshScheduler.schedule(lateQueue, System.currentTimeMillis() + 60000);
+		refreshScheduler.schedule(earlyQueue, System.currentTimeMillis() + 20);
+		
+		verify(earlyQueue, timeout(2000).times(1)).refreshQueue();
+		verify(lateQueue, never()).refreshQueue();
+		assertEquals(1, refreshScheduler.getNumberOfScheduledTasks());
+	}
+	
+	@Test
+	public void testCancelledQueueIsNotRefreshed() throws InterruptedException {
+		MessageQueue queue = mock(MessageQueue.class);
+		
+		refreshScheduler.schedule(queue, System.currentTimeMillis() + 100);
+		refreshScheduler.cancel(queue);
+		Thread.sleep(300);
+		
+		verify(queue, times(0)).refreshQueue();
+		assertEquals(0, refreshScheduler.getNumberOfScheduledTasks());
+	}
+}
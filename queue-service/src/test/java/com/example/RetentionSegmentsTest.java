@@ -0,0 +1,94 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetentionSegmentsTest {
+	RetentionSegments sentTimes;
+	
+	@Before
+	public void setUp() {
+		sentTimes = new RetentionSegments(1000L);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new RetentionSegments(0L);
+	}
+	
+	@Test
+	public void testMessagesOfOneWindowShareASegment() {
+		sentTimes.addLast(1000L);
+		sentTimes.addLast(1500L);
+		sentTimes.addLast(1999L);
+		sentTimes.addLast(2000L);
+		
+		assertEquals(4, sentTimes.size());
+		assertEquals(2, sentTimes.getNumberOfSegments());
+	}
+	
+	@Test
+	public void testRemoveFirstReturnsWindowOfFirstMessage() {
+		sentTimes.addLast(1500L);
+		sentTimes.addLast(2500L);
+		sentTimes.addFirst(700L);
+		
+		assertEquals(0L, sentTimes.removeFirst());
+		assertEquals(1000L, sentTimes.removeFirst());
+		assertEquals(2000L, sentTimes.removeFirst());
+		assertEquals(0, sentTimes.size());
+		assertEquals(0, sentTimes.getNumberOfSegments());
+	}
+	
+	@Test
+	public void testRemoveExpiredDropsLeadingSegments() {
+		sentTimes.addLast(1000L);
+		sentTimes.addLast(1100L);
+		sentTimes.addLast(2100L);
+		sentTimes.addLast(3100L);
+		
+		assertEquals(0, sentTimes.removeExpired(1999L));
+		assertEquals(3, sentTimes.removeExpired(3000L));
+		assertEquals(1, sentTimes.size());
+		assertEquals(3000L, sentTimes.removeFirst());
+	}
+	
+	@Test
+	public void testExpiredSegmentBehindLiveOneWaitsForHead() {
+		sentTimes.addLast(5000L);
+		sentTimes.addLast(1000L);
+		
+		assertEquals(0, sentTimes.removeExpired(3000L));
+		sentTimes.removeFirst();
+		assertEquals(1, sentTimes.removeExpired(3000L));
+	}
+	
+	@Test
+	public void testNextExpiryTime() {
+		assertEquals(Long.MAX_VALUE, sentTimes.getNextExpiryTime(60000L));
+		
+		sentTimes.addLast(1500L);
+		
+		assertEquals(62000L, sentTimes.getNextExpiryTime(60000L));
+	}
+	
+	@Test
+	public void testIsExpired() {
+		assertFalse(sentTimes.isExpired(1500L, 1999L));
+		assertTrue(sentTimes.isExpired(1500L, 2000L));
+	}
+	
+	@Test
+	public void testClear() {
+		sentTimes.addLast(1000L);
+		
+		sentTimes.clear();
+		
+		assertEquals(0, sentTimes.size());
+		assertEquals(Long.MAX_VALUE, sentTimes.getNextExpiryTime(60000L));
+	}
+}
@@ -0,0 +1,133 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedLogTest {
+	private final static int segmentSize = 64;
+	private final static byte recordType = 1;
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	List<String> replayedPayloads = new ArrayList<>();
+	SegmentedLog.RecordHandler recordHandler = new SegmentedLog.RecordHandler() {
+		@Override
+		public void handle(long position, byte type, ByteBuffer payload) {
+			replayedPayloads.add(toString(payload));
+		}
+		
+		private String toString(ByteBuffer payload) {
+			byte[] bytes = new byte[payload.remaining()];
+			payload.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+	
+	@Test
+	public void testAppendAndRead() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		
+		long firstPosition = log.append(recordType, bytes("first"), true);
+		long secondPosition = log.append(recordType, bytes("second"), true);
+		
+		assertEquals(0L, firstPosition);
+		assertEquals(SegmentedLog.recordHeaderSize + 5, secondPosition);
+		assertEquals("second", string(log.read(secondPosition)));
+		assertEquals("first", string(log.read(firstPosition)));
+	}
+	
+	@Test
+	public void testAppendRollsOverToNewSegment() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		
+		log.append(recordType, new byte[40], true);
+		long position = log.append(recordType, bytes("next segment"), true);
+		
+		assertEquals(segmentSize, position);
+		assertEquals(2, log.getNumberOfSegments());
+		assertEquals("next segment", string(log.read(position)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAppendRecordLargerThanSegment() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		
+		log.append(recordType, new byte[segmentSize], true);
+	}
+	
+	@Test
+	public void testReleaseDeletesOnlyPrefixOfSegments() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		long firstPosition = log.append(recordType, new byte[40], true);
+		long secondPosition = log.append(recordType, new byte[40], true);
+		log.append(recordType, new byte[40], true);
+		
+		log.release(secondPosition);
+		assertEquals(3, log.getNumberOfSegments());
+		
+		log.release(firstPosition);
+		assertEquals(1, log.getNumberOfSegments());
+		assertEquals(1, temporaryFolder.getRoot().list().length);
+	}
+	
+	@Test
+	public void testReopenReplaysRecordsAndContinuesAppending() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		log.append(recordType, bytes("first"), true);
+		log.append(recordType, new byte[40], true);
+		log.append(recordType, bytes("third"), true);
+		log.close();
+		
+		SegmentedLog reopenedLog = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		long position = reopenedLog.append(recordType, bytes("fourth"), true);
+		
+		assertEquals(3, replayedPayloads.size());
+		assertEquals("first", replayedPayloads.get(0));
+		assertEquals("third", replayedPayloads.get(2));
+		assertEquals("fourth", string(reopenedLog.read(position)));
+	}
+	
+	@Test
+	public void testReopenTruncatesTornRecord() throws IOException {
+		SegmentedLog log = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		log.append(recordType, bytes("complete"), true);
+		long tornPosition = log.append(recordType, bytes("torn"), true);
+		log.close();
+		corruptPayload(new File(temporaryFolder.getRoot(), String.format("%020d.log", 0)), tornPosition);
+		
+		SegmentedLog reopenedLog = new SegmentedLog(temporaryFolder.getRoot(), segmentSize, recordHandler);
+		
+		assertEquals(1, replayedPayloads.size());
+		assertEquals("complete", replayedPayloads.get(0));
+		assertEquals(tornPosition, reopenedLog.append(recordType, bytes("after"), true));
+	}
+	
+	private void corruptPayload(File segmentFile, long position) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+			file.seek(position + SegmentedLog.recordHeaderSize);
+			file.write('X');
+		}
+	}
+	
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static String string(ByteBuffer payload) {
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+
+public class SendMessageBufferTest {
+	LocalSqsClient sqsClient;
+	QueueUrlCache queueUrlCache;
+	ExecutorService sendExecutor;
+	String queueUrl;
+	
+	@Before
+	public void setUp() {
+		sqsClient = new LocalSqsClient();
+		queueUrlCache = new QueueUrlCache();
+		sendExecutor = Executors.newFixedThreadPool(2);
+		queueUrl = sqsClient.createQueue(new CreateQueueRequest("MyQueue")).getQueueUrl();
+		sqsClient.resetRequestCounts();
+	}
+	
+	@After
+	public void tearDown() {
+		sendExecutor.shutdown();
+	}
+	
+	@Test
+	public void testFullBatchesAreSentRightAway() throws Exception {
+		SendMessageBuffer sendMessageBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 60000L, sendExecutor);
+		List<Future<String>> futures = new ArrayList<>();
+		
+		for(int i = 0; i < 25; i++)
+			futures.add(sendMessageBuffer.add("Message " + i, null));
+		
+		for(Future<String> future: futures.subList(0, 20))
+			assertNotNull(future.get(1, TimeUnit.SECONDS));
+		assertEquals(2, sqsClient.getRequestCount("SendMessageBatch"));
+		assertEquals(5, sendMessageBuffer.getNumberOfBufferedMessages());
+		
+		sendMessageBuffer.flush();
+		
+		for(Future<String> future: futures.subList(20, 25))
+			assertNotNull(future.get(1, TimeUnit.SECONDS));
+		assertEquals(3, sqsClient.getRequestCount("SendMessageBatch"));
+		assertEquals(0, sqsClient.getRequestCount("SendMessage"));
+	}
+	
+	@Test
+	public void testBatchIsSentAfterLingerTime() throws Exception {
+		SendMessageBuffer sendMessageBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 20L, sendExecutor);
+		
+		Future<String> future1 = sendMessageBuffer.add("Message 1", null);
+		Future<String> future2 = sendMessageBuffer.add("Message 2", 60);
+		
+		assertNotNull(future1.get(1, TimeUnit.SECONDS));
+		assertNotNull(future2.get(1, TimeUnit.SECONDS));
+		assertEquals(1, sqsClient.getRequestCount("SendMessageBatch"));
+		assertEquals("1", sqsClient.getQueueAttributes(queueUrl, Arrays.asList("All")).getAttributes().get("ApproximateNumberOfMessagesDelayed"));
+	}
+	
+	@Test
+	public void testBatchIsSentWhenBodiesExceedMaximumBytes() throws Exception {
+		SendMessageBuffer sendMessageBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 60000L, sendExecutor);
+		String messageBody = new String(new char[100 * 1024]).replace('\0', 'a');
+		
+		Future<String> future1 = sendMessageBuffer.add(messageBody, null);
+		sendMessageBuffer.add(messageBody, null);
+		sendMessageBuffer.add(messageBody, null);
+		
+		assertNotNull(future1.get(1, TimeUnit.SECONDS));
+		assertEquals(1, sqsClient.getRequestCount("SendMessageBatch"));
+		assertEquals(1, sendMessageBuffer.getNumberOfBufferedMessages());
+	}
+	
+	@Test
+	public void testFailedBatchCompletesWithNullAndInvalidatesUrl() throws Exception {
+		SendMessageBuffer sendMessageBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 60000L, sendExecutor);
+		queueUrlCache.put("MyQueue", queueUrl, System.currentTimeMillis());
+		sqsClient.deleteQueueDirectly("MyQueue");
+		
+		Future<String> future = sendMessageBuffer.add("Message 1", null);
+		sendMessageBuffer.flush();
+		
+		assertNull(future.get(1, TimeUnit.SECONDS));
+		assertNull(queueUrlCache.get("MyQueue", System.currentTimeMillis()));
+	}
+	
+	@Test
+	public void testMessagesAreNotSentAfterExecutorShutdown() throws Exception {
+		SendMessageBuffer sendMessageBuffer = new SendMessageBuffer(sqsClient, queueUrlCache, "MyQueue", queueUrl, 60000L, sendExecutor);
+		sendExecutor.shutdown();
+		
+		Future<String> future = sendMessageBuffer.add("Message 1", null);
+		sendMessageBuffer.flush();
+		
+		assertTrue(future.isDone());
+		assertNull(future.get());
+	}
+}
@@ -0,0 +1,115 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+// Measures the round trip of a message between two JVMs through SharedMemoryQueueService: the parent pushes a
+// request, a child JVM echoes it back on a second queue, and the parent receives and deletes the reply. Reports the
+// median and the 99th percentile round trip time, followed by the one-way throughput of a burst pushed by the parent
+// and received by the child.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.SharedMemoryBenchmark
+public class SharedMemoryBenchmark {
+
+	private static final String requestQueueName = "RequestQueue";
+	private static final String replyQueueName = "ReplyQueue";
+	private static final int warmupRoundTrips = 20000;
+	private static final int roundTrips = 100000;
+	private static final int burstSize = 200000;
+	private static final int bodySize = 128;
+	private static final String stopBody = "STOP";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length == 2 && args[0].equals("child")) {
+			runChild(new File(args[1]));
+			return;
+		}
+
+		File directory = Files.createTempDirectory("shared-memory-benchmark").toFile();
+		SharedMemoryQueueService queueService = new SharedMemoryQueueService(new SharedMemoryQueueFactory(directory, 1024, 1024));
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("ComputeMD5OfBody", "false");
+		queueService.createQueue(new CreateQueueRequest(requestQueueName).withAttributes(attributes));
+		queueService.createQueue(new CreateQueueRequest(replyQueueName).withAttributes(attributes));
+
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SharedMemoryBenchmark.class.getName(),
+				"child", directory.getPath()).inheritIO().start();
+
+		char[] bodyChars = new char[bodySize];
+		Arrays.fill(bodyChars, 'x');
+		String body = new String(bodyChars);
+
+		roundTrips(queueService, body, warmupRoundTrips);
+		long[] roundTripNanos = roundTrips(queueService, body, roundTrips);
+		Arrays.sort(roundTripNanos);
+		System.out.println(String.format("round trip: median %.1f us, p99 %.1f us", roundTripNanos[roundTrips / 2] / 1e3,
+				roundTripNanos[roundTrips * 99 / 100] / 1e3));
+
+		// one-way burst; the child replies once it has received all of it
+		long startTime = System.nanoTime();
+		for(int i = 0; i < burstSize; i++) {
+			while(queueService.push(requestQueueName, body) == null)
+				Thread.yield();
+		}
+		receiveAndDelete(queueService);
+		long burstNanos = System.nanoTime() - startTime;
+		System.out.println(String.format("throughput: %.0f messages/s", burstSize / (burstNanos / 1e9)));
+
+		queueService.push(requestQueueName, stopBody);
+		child.waitFor();
+		queueService.deleteQueue(requestQueueName);
+		queueService.deleteQueue(replyQueueName);
+		queueService.close();
+		directory.delete();
+	}
+
+	private static long[] roundTrips(SharedMemoryQueueService queueService, String body, int count) {
+		long[] roundTripNanos = new long[count];
+
+		for(int i = 0; i < count; i++) {
+			long startTime = System.nanoTime();
+			queueService.push(requestQueueName, body);
+			receiveAndDelete(queueService);
+			roundTripNanos[i] = System.nanoTime() - startTime;
+		}
+
+		return roundTripNanos;
+	}
+
+	private static void receiveAndDelete(SharedMemoryQueueService queueService) {
+		Message reply = queueService.pull(replyQueueName, 20);
+		queueService.delete(replyQueueName, reply.getReceiptHandle());
+	}
+
+	// echoes the round trip requests, then acknowledges the burst once it is received completely
+	private static void runChild(File directory) {
+		SharedMemoryQueueService queueService = new SharedMemoryQueueService(directory);
+
+		for(int i = 0; i < warmupRoundTrips + roundTrips; i++)
+			echo(queueService);
+
+		for(int i = 0; i < burstSize; i++) {
+			Message message = queueService.pull(requestQueueName, 20);
+			queueService.delete(requestQueueName, message.getReceiptHandle());
+		}
+		queueService.push(replyQueueName, "DONE");
+
+		while(!stopBody.equals(queueService.pull(requestQueueName, 20).getBody()))
+			;
+
+		queueService.close();
+	}
+
+	private static void echo(SharedMemoryQueueService queueService) {
+		Message message = queueService.pull(requestQueueName, 20);
+		queueService.push(replyQueueName, message.getBody());
+		queueService.delete(requestQueueName, message.getReceiptHandle());
+	}
+}
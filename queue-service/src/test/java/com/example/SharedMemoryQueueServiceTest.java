@@ -0,0 +1,100 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+public class SharedMemoryQueueServiceTest {
+	String qName = "MyQueue1";
+	String replyQueueName = "MyQueue2";
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testServicesOnSameDirectoryShareQueues() {
+		SharedMemoryQueueService producerService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		producerService.createQueue(new CreateQueueRequest(qName));
+		SharedMemoryQueueService consumerService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		
+		assertEquals(Arrays.asList(qName), consumerService.getQueueNames());
+		assertNotNull(producerService.push(qName, "Hello Queue!"));
+		Message receivedMessage = consumerService.pull(qName);
+		assertEquals("Hello Queue!", receivedMessage.getBody());
+		assertTrue(consumerService.delete(qName, receivedMessage.getReceiptHandle()));
+		
+		producerService.close();
+		consumerService.close();
+	}
+	
+	@Test
+	public void testDeleteQueueKeepsRingWhileInUse() {
+		SharedMemoryQueueService producerService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		producerService.createQueue(new CreateQueueRequest(qName));
+		SharedMemoryQueueService consumerService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		File ringFile = new File(temporaryFolder.getRoot(), qName + ".ring");
+		
+		assertTrue(producerService.deleteQueue(qName));
+		assertTrue(ringFile.exists());
+		
+		assertTrue(consumerService.deleteQueue(qName));
+		assertFalse(ringFile.exists());
+	}
+	
+	@Test
+	public void testCreateQueueWithNameUnsafeForFile() {
+		SharedMemoryQueueService queueService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		
+		assertFalse(queueService.createQueue(new CreateQueueRequest("../MyQueue")));
+	}
+	
+	@Test
+	public void testMessagesAreExchangedWithAnotherJvm() throws Exception {
+		SharedMemoryQueueService queueService = new SharedMemoryQueueService(temporaryFolder.getRoot());
+		queueService.createQueue(new CreateQueueRequest(qName));
+		queueService.createQueue(new CreateQueueRequest(replyQueueName));
+		
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process echoProcess = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SharedMemoryQueueServiceTest.class.getName(),
+				temporaryFolder.getRoot().getPath(), qName, replyQueueName).inheritIO().start();
+		
+		for(int i = 0; i < 3; i++)
+			assertNotNull(queueService.push(qName, "Message " + i));
+		
+		for(int i = 0; i < 3; i++) {
+			Message reply = queueService.pull(replyQueueName, 20);
+			assertNotNull(reply);
+			assertEquals("echo Message " + i, reply.getBody());
+			queueService.delete(replyQueueName, reply.getReceiptHandle());
+		}
+		
+		assertTrue(echoProcess.waitFor(20, TimeUnit.SECONDS));
+		assertEquals(0, echoProcess.exitValue());
+		queueService.close();
+	}
+	
+	// echoes three messages from the queue args[1] to the queue args[2] of the shared directory args[0]
+	public static void main(String[] args) {
+		SharedMemoryQueueService queueService = new SharedMemoryQueueService(new File(args[0]));
+		
+		for(int i = 0; i < 3; i++) {
+			Message message = queueService.pull(args[1], 20);
+			queueService.push(args[2], "echo " + message.getBody());
+			queueService.delete(args[1], message.getReceiptHandle());
+		}
+		
+		queueService.close();
+	}
+}
@@ -0,0 +1,234 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.services.sqs.model.Message;
+
+// the producer and the consumer queue map the same ring, as two processes would
+@RunWith(MockitoJUnitRunner.class)
+public class SharedMemoryQueueTest {
+	String validAttributeName = "VisibilityTimeout";
+	String validAttributeMinValue = "0";
+	String validAttributeDefaultValue = "30";
+	Map<String, String> validAttributeValues;
+	
+	String qName = "MyQueue";
+	int slotCount = 4;
+	int slotSize = 256;
+	File ringFile;
+	SharedMemoryQueue producerQueue;
+	SharedMemoryQueue consumerQueue;
+	RefreshScheduler refreshScheduler;
+	
+	QueueAttributeValidator validator;
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Before
+	public void setUp() throws IOException {
+		validAttributeValues = new HashMap<>();
+		validAttributeValues.put(validAttributeName, validAttributeDefaultValue);
+		validator = mock(QueueAttributeValidator.class);
+		when(validator.getDefaultValue(validAttributeName)).thenReturn(validAttributeDefaultValue);
+		when(validator.getDefaultAttributeValues()).thenReturn(validAttributeValues);
+		when(validator.validateAttributeName(validAttributeName)).thenReturn(true);
+		when(validator.validateAttributeValue(validAttributeName, validAttributeMinValue)).thenReturn(true);
+		when(validator.validateAttributeValue(validAttributeName, validAttributeDefaultValue)).thenReturn(true);
+		
+		ringFile = new File(temporaryFolder.getRoot(), qName + ".ring");
+		refreshScheduler = new RefreshScheduler(10L);
+		producerQueue = openQueue();
+		consumerQueue = openQueue();
+	}
+	
+	@After
+	public void teardown() {
+		producerQueue.releaseResources();
+		consumerQueue.releaseResources();
+		refreshScheduler.shutdown();
+	}
+	
+	private SharedMemoryQueue openQueue() throws IOException {
+		return new SharedMemoryQueue(qName, validator, new SharedMemoryRing(ringFile, slotCount, slotSize), refreshScheduler, 
+				TimeOrderedIdGenerator.getDefault());
+	}
+	
+	@Test
+    public void testPushAndPullAcrossRings() {
+		Message message = MessageCreator.createMessage("Hello Queue!");
+		producerQueue.push(message);
+		assertEquals(1, consumerQueue.getApproximateNumberOfMessages());
+		
+		Message receivedMessage = consumerQueue.pull();
+		
+		assertEquals("Hello Queue!", receivedMessage.getBody());
+		assertEquals(message.getMessageId(), receivedMessage.getMessageId());
+		assertEquals(0, producerQueue.getApproximateNumberOfMessages());
+		assertEquals(1, consumerQueue.getNumberOfInflightMessages());
+		assertEquals(0, producerQueue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testPullMultipleMessages() {
+		producerQueue.pushAll(Arrays.asList(MessageCreator.createMessage("Message 0"), MessageCreator.createMessage("Message 1"),
+				MessageCreator.createMessage("Message 2")));
+		
+		List<Message> receivedMessages = consumerQueue.pull(2, 0);
+		
+		assertEquals(2, receivedMessages.size());
+		assertEquals("Message 0", receivedMessages.get(0).getBody());
+		assertEquals("Message 1", receivedMessages.get(1).getBody());
+		assertEquals(1, consumerQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testPushToFullQueueFails() {
+		for(int i = 0; i < slotCount; i++)
+			producerQueue.push(MessageCreator.createMessage("Message " + i));
+		Message message = MessageCreator.createMessage("One too many");
+		
+		producerQueue.push(message);
+		
+		assertNull(message.getMessageId());
+		assertEquals(slotCount, consumerQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testPushMessageExceedingSlotSizeFails() {
+		char[] body = new char[slotSize];
+		Arrays.fill(body, 'x');
+		Message message = MessageCreator.createMessage(new String(body));
+		
+		producerQueue.push(message);
+		
+		assertNull(message.getMessageId());
+		assertEquals(0, consumerQueue.getApproximateNumberOfMessages());
+	}
+	
+	@Test
+    public void testReceiptHandleIsOnlyValidInReceivingProcess() {
+		producerQueue.push(MessageCreator.createMessage("Hello Queue!"));
+		Message receivedMessage = consumerQueue.pull();
+		
+		assertFalse(producerQueue.delete(receivedMessage.getReceiptHandle()));
+		assertTrue(consumerQueue.delete(receivedMessage.getReceiptHandle()));
+		assertEquals(0, consumerQueue.getNumberOfInflightMessages());
+	}
+	
+	@Test
+    public void testExpiredMessageIsOfferedToAllProcessesAgain() {
+		producerQueue.push(MessageCreator.createMessage("Hello Queue!"));
+		Message receivedMessage = consumerQueue.pull(1, 0, 0).get(0);
+		
+		consumerQueue.refreshQueue();
+		
+		assertEquals(0, consumerQueue.getNumberOfInflightMessages());
+		assertFalse(consumerQueue.delete(receivedMessage.getReceiptHandle()));
+		assertEquals("Hello Queue!", producerQueue.pull().getBody());
+	}
+	
+	@Test
+    public void testChangeMessageVisibilityToZeroReleasesMessage() {
+		producerQueue.push(MessageCreator.createMessage("Hello Queue!"));
+		Message receivedMessage = consumerQueue.pull();
+		
+		assertTrue(consumerQueue.changeMessageVisibility(receivedMessage.getReceiptHandle(), 0));
+		
+		assertEquals(0, consumerQueue.getNumberOfInflightMessages());
+		assertEquals("Hello Queue!", producerQueue.pull().getBody());
+	}
+	
+	@Test
+    public void testLongPollReturnsMessagePushedByOtherProcess() throws InterruptedException {
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(200);
+				}catch(InterruptedException e) {
+					return;
+				}
+				producerQueue.push(MessageCreator.createMessage("Hello Queue!"));
+			}
+		});
+		producer.start();
+		
+		Message receivedMessage = consumerQueue.pull(10);
+		producer.join();
+		
+		assertNotNull(receivedMessage);
+		assertEquals("Hello Queue!", receivedMessage.getBody());
+	}
+	
+	@Test
+    public void testLongPollForEmptyQueueTimesOut() {
+		long start = System.currentTimeMillis();
+		
+		assertNull(consumerQueue.pull(1));
+		assertTrue(System.currentTimeMillis() - start >= 900);
+	}
+	
+	@Test
+    public void testPurgeDrainsSharedRing() {
+		producerQueue.push(MessageCreator.createMessage("Message 1"));
+		producerQueue.push(MessageCreator.createMessage("Message 2"));
+		Message receivedMessage = consumerQueue.pull();
+		
+		assertTrue(consumerQueue.purge());
+		
+		assertEquals(0, producerQueue.getApproximateNumberOfMessages());
+		assertEquals(0, consumerQueue.getNumberOfInflightMessages());
+		assertFalse(consumerQueue.delete(receivedMessage.getReceiptHandle()));
+	}
+	
+	@Test
+    public void testInflightMessagesOfReleasedQueueAreRedelivered() {
+		producerQueue.push(MessageCreator.createMessage("Message 1"));
+		producerQueue.push(MessageCreator.createMessage("Message 2"));
+		Message deletedMessage = consumerQueue.pull();
+		consumerQueue.pull();
+		assertTrue(consumerQueue.delete(deletedMessage.getReceiptHandle()));
+		
+		consumerQueue.releaseResources();
+		producerQueue.recoverAbandonedMessages();
+		
+		assertEquals("Message 2", producerQueue.pull().getBody());
+		assertNull(producerQueue.pull(0));
+	}
+	
+	@Test
+    public void testPushMessageWithGroupOrDeduplicationIdFails() {
+		Message groupMessage = MessageCreator.createMessage("Message 1");
+		groupMessage.getAttributes().put("MessageGroupId", "A");
+		Message deduplicatedMessage = MessageCreator.createMessage("Message 2");
+		deduplicatedMessage.getAttributes().put("MessageDeduplicationId", "Message-2");
+		
+		producerQueue.pushAll(Arrays.asList(groupMessage, deduplicatedMessage));
+		
+		assertNull(groupMessage.getMessageId());
+		assertNull(deduplicatedMessage.getMessageId());
+		assertEquals(0, consumerQueue.getApproximateNumberOfMessages());
+	}
+}
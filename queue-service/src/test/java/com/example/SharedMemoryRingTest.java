@@ -0,0 +1,260 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedMemoryRingTest {
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	File ringFile;
+	
+	@Before
+	public void setUp() {
+		ringFile = new File(temporaryFolder.getRoot(), "MyQueue.ring");
+	}
+	
+	@Test
+	public void testOfferAndPollInOrder() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		
+		assertTrue(ring.offer(new byte[] {1}));
+		assertTrue(ring.offer(new byte[] {2, 2}));
+		assertEquals(2, ring.size());
+		
+		assertArrayEquals(new byte[] {1}, ring.poll());
+		assertArrayEquals(new byte[] {2, 2}, ring.poll());
+		assertNull(ring.poll());
+		assertEquals(0, ring.size());
+		ring.close();
+	}
+	
+	@Test
+	public void testOfferToFullRing() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 2, 16);
+		
+		assertTrue(ring.offer(new byte[] {1}));
+		assertTrue(ring.offer(new byte[] {2}));
+		assertFalse(ring.offer(new byte[] {3}));
+		
+		ring.poll();
+		assertTrue(ring.offer(new byte[] {3}));
+		assertArrayEquals(new byte[] {2}, ring.poll());
+		assertArrayEquals(new byte[] {3}, ring.poll());
+		ring.close();
+	}
+	
+	@Test
+	public void testInterruptedThreadKeepsRingOpen() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 2, 16);
+		
+		Thread.currentThread().interrupt();
+		try{
+			assertTrue(ring.offer(new byte[] {1}));
+			assertTrue(Thread.currentThread().isInterrupted());
+		}finally {
+			Thread.interrupted();
+		}
+		
+		assertArrayEquals(new byte[] {1}, ring.poll());
+		ring.close();
+	}
+	
+	@Test
+	public void testOfferRecordExceedingSlotSize() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 2, 16);
+		
+		assertFalse(ring.offer(new byte[17]));
+		assertTrue(ring.offer(new byte[16]));
+		ring.close();
+	}
+	
+	@Test
+	public void testRingsOnSameFileShareRecordsAndGeometry() throws IOException {
+		SharedMemoryRing producerRing = new SharedMemoryRing(ringFile, 8, 32);
+		SharedMemoryRing consumerRing = new SharedMemoryRing(ringFile, 1024, 1024);
+		
+		assertEquals(8, consumerRing.getSlotCount());
+		assertEquals(32, consumerRing.getSlotSize());
+		
+		producerRing.offer(new byte[] {42});
+		assertArrayEquals(new byte[] {42}, consumerRing.poll());
+		producerRing.close();
+		consumerRing.close();
+	}
+	
+	@Test
+	public void testRecordsSurviveReopen() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		ring.offer(new byte[] {7});
+		ring.close();
+		
+		SharedMemoryRing reopenedRing = new SharedMemoryRing(ringFile, 4, 16);
+		assertArrayEquals(new byte[] {7}, reopenedRing.poll());
+		reopenedRing.close();
+	}
+	
+	@Test
+	public void testMembership() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		SharedMemoryRing otherRing = new SharedMemoryRing(ringFile, 4, 16);
+		
+		assertFalse(ring.isOnlyMember());
+		assertFalse(SharedMemoryRing.deleteIfUnused(ringFile));
+		
+		otherRing.close();
+		assertTrue(ring.isOnlyMember());
+		
+		ring.close();
+		assertTrue(SharedMemoryRing.deleteIfUnused(ringFile));
+		assertFalse(ringFile.exists());
+	}
+	
+	@Test
+	public void testLeasesOfClosedMemberAreRecovered() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		SharedMemoryRing otherRing = new SharedMemoryRing(ringFile, 4, 16);
+		ring.offer(new byte[] {1});
+		ring.offer(new byte[] {2});
+		
+		SharedMemoryRing.Lease lease = ring.pollLease();
+		SharedMemoryRing.Lease releasedLease = ring.pollLease();
+		ring.releaseLease(releasedLease.getIndex());
+		assertArrayEquals(new byte[] {1}, lease.getRecord());
+		assertEquals(0, ring.size());
+		assertTrue(otherRing.recoverAbandonedSlots().isEmpty());
+		
+		ring.close();
+		List<SharedMemoryRing.Lease> leases = otherRing.recoverAbandonedSlots();
+		
+		assertEquals(1, leases.size());
+		assertEquals(lease.getIndex(), leases.get(0).getIndex());
+		assertArrayEquals(new byte[] {1}, leases.get(0).getRecord());
+		assertTrue(otherRing.recoverAbandonedSlots().isEmpty());
+		otherRing.close();
+	}
+	
+	@Test
+	public void testAllLeasesTaken() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 2, 16);
+		ring.offer(new byte[] {1});
+		ring.offer(new byte[] {2});
+		SharedMemoryRing.Lease lease = ring.pollLease();
+		ring.pollLease();
+		ring.offer(new byte[] {3});
+		
+		assertNull(ring.pollLease());
+		
+		ring.releaseLease(lease.getIndex());
+		assertArrayEquals(new byte[] {3}, ring.pollLease().getRecord());
+		ring.close();
+	}
+	
+	@Test
+	public void testSlotOfDeadProducerIsSkipped() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		claimSlot(0, Long.MIN_VALUE | 5L << 56);
+		
+		assertTrue(ring.offer(new byte[] {2}));
+		assertNull(ring.poll());
+		assertEquals(2, ring.size());
+		
+		assertTrue(ring.recoverAbandonedSlots().isEmpty());
+		assertArrayEquals(new byte[] {2}, ring.poll());
+		assertNull(ring.poll());
+		ring.close();
+	}
+	
+	@Test
+	public void testRecordOfDeadConsumerIsRecovered() throws IOException {
+		SharedMemoryRing ring = new SharedMemoryRing(ringFile, 4, 16);
+		ring.offer(new byte[] {1});
+		claimSlot(0, Long.MIN_VALUE | 1L << 62 | 5L << 56);
+		
+		assertNull(ring.poll());
+		List<SharedMemoryRing.Lease> leases = ring.recoverAbandonedSlots();
+		
+		assertEquals(1, leases.size());
+		assertArrayEquals(new byte[] {1}, leases.get(0).getRecord());
+		assertEquals(0, ring.size());
+		assertTrue(ring.offer(new byte[] {2}));
+		assertArrayEquals(new byte[] {2}, ring.poll());
+		ring.close();
+	}
+	
+	// replaces the sequence of a slot by a claim at position 0, as a member which died right after claiming leaves it
+	private void claimSlot(int slot, long claim) throws IOException {
+		try(FileChannel channel = new RandomAccessFile(ringFile, "rw").getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			buffer.order(ByteOrder.nativeOrder()).putLong(4096 + slot * 32, claim);
+		}
+	}
+	
+	@Test
+	public void testConcurrentProducersAndConsumersOnSeparateMappings() throws Exception {
+		final int threads = 4;
+		final int recordsPerProducer = 20000;
+		final Set<Integer> received = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+		final SharedMemoryRing[] rings = new SharedMemoryRing[threads];
+		for(int i = 0; i < threads; i++)
+			rings[i] = new SharedMemoryRing(ringFile, 64, 8);
+		
+		for(int i = 0; i < threads; i++) {
+			final SharedMemoryRing ring = rings[i];
+			final int producerId = i;
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for(int j = 0; j < recordsPerProducer; j++) {
+						byte[] record = ByteBuffer.allocate(4).putInt(producerId * recordsPerProducer + j).array();
+						while(!ring.offer(record))
+							Thread.yield();
+					}
+				}
+			});
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					while(received.size() < threads * recordsPerProducer) {
+						byte[] record = ring.poll();
+						if(record != null)
+							assertTrue(received.add(ByteBuffer.wrap(record).getInt()));
+						else
+							Thread.yield();
+					}
+				}
+			});
+		}
+		
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+		assertEquals(threads * recordsPerProducer, received.size());
+		for(SharedMemoryRing ring: rings)
+			ring.close();
+	}
+}
@@ -0,0 +1,119 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+// Measures the restart time of DurableInMemoryQueueService after the process was killed in the middle of a
+// snapshot. A child JVM builds a queue with a given backlog after a given amount of history (messages pushed,
+// received and deleted), announces that it starts checkpointing in a loop and is killed a few milliseconds later.
+// The parent then restores the queue, checks that no message is lost and reports the restore time.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.SnapshotRecoveryBenchmark
+public class SnapshotRecoveryBenchmark {
+
+	private static final String qName = "BenchmarkQueue";
+	private static final String checkpointingLine = "CHECKPOINTING";
+	private static final int batchSize = 10;
+	private static final int bodySize = 256;
+	// {backlog, history} in messages
+	private static final int[][] scenarios = {{10000, 0}, {10000, 200000}, {200000, 0}, {200000, 200000}};
+	private static final int runsPerScenario = 3;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length == 4 && args[0].equals("child")) {
+			runChild(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			return;
+		}
+
+		System.out.println(String.format("%-10s %10s %14s %14s %12s %10s", "backlog", "history", "snapshot KB", "journals KB", "restore ms", "restored"));
+
+		for(int[] scenario: scenarios) {
+			for(int run = 0; run < runsPerScenario; run++)
+				runScenario(scenario[0], scenario[1]);
+		}
+	}
+
+	private static void runScenario(int backlog, int history) throws IOException, InterruptedException {
+		File journalDirectory = Files.createTempDirectory("snapshot-recovery-benchmark").toFile();
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SnapshotRecoveryBenchmark.class.getName(),
+				"child", journalDirectory.getPath(), String.valueOf(backlog), String.valueOf(history)).redirectErrorStream(true).start();
+
+		BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream(), "UTF-8"));
+		String line;
+		while((line = output.readLine()) != null && !line.equals(checkpointingLine))
+			;
+
+		// kill the child somewhere within its next snapshots
+		Thread.sleep(ThreadLocalRandom.current().nextInt(1, 50));
+		child.destroyForcibly().waitFor();
+
+		long snapshotBytes = 0;
+		long journalBytes = 0;
+		for(File file: journalDirectory.listFiles()) {
+			if(file.getName().endsWith(".snapshot"))
+				snapshotBytes += file.length();
+			else if(file.getName().endsWith(".journal"))
+				journalBytes += file.length();
+		}
+
+		long startTime = System.nanoTime();
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(journalDirectory);
+		long restoreNanos = System.nanoTime() - startTime;
+		int restored = queueService.getApproximateNumberOfMessages(qName);
+		queueService.deleteQueue(qName);
+		
+		if(journalDirectory.list().length > 0)
+			System.out.println(String.format("Files left behind: %s", Arrays.toString(journalDirectory.list())));
+
+		System.out.println(String.format("%-10d %10d %14d %14d %12.1f %10s", backlog, history, snapshotBytes / 1024, journalBytes / 1024,
+				restoreNanos / 1e6, restored == backlog ? "complete" : "LOST " + (backlog - restored)));
+
+		queueService.close();
+		journalDirectory.delete();
+	}
+
+	// pushes and consumes history messages, leaves backlog messages in the queue and checkpoints until it is killed;
+	// group-commit makes every push durable before it returns
+	private static void runChild(File journalDirectory, int backlog, int history) {
+		DurableInMemoryQueueService queueService = new DurableInMemoryQueueService(journalDirectory);
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("Durability", "group-commit");
+		attributes.put("ComputeMD5OfBody", "false");
+		queueService.createQueue(new CreateQueueRequest(qName).withAttributes(attributes));
+
+		char[] body = new char[bodySize];
+		Arrays.fill(body, 'x');
+		List<String> batch = new ArrayList<>();
+		for(int i = 0; i < batchSize; i++)
+			batch.add(new String(body));
+
+		for(int i = 0; i < history; i += batchSize) {
+			queueService.pushBatch(qName, batch);
+			List<String> receiptHandles = new ArrayList<>();
+			for(Message message: queueService.pullBatch(qName, batchSize, 0))
+				receiptHandles.add(message.getReceiptHandle());
+			queueService.deleteBatch(qName, receiptHandles);
+		}
+
+		for(int i = 0; i < backlog; i += batchSize)
+			queueService.pushBatch(qName, batch);
+
+		System.out.println(checkpointingLine);
+		System.out.flush();
+
+		while(true)
+			queueService.checkpoint();
+	}
+}
@@ -0,0 +1,146 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.sqs.model.Message;
+
+public class SpillingMessageDequeTest {
+	// "Message nnn" bodies are 11 or 12 bytes, so the threshold keeps about 80 messages in memory
+	long spillThreshold = 1024;
+	long segmentSize = 512;
+	SpillingMessageDeque deque;
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Before
+	public void setUp() {
+		deque = new SpillingMessageDeque(temporaryFolder.getRoot(), spillThreshold, segmentSize);
+	}
+	
+	@After
+	public void teardown() {
+		deque.clear();
+	}
+	
+	@Test
+	public void testShallowQueueStaysInMemory() {
+		for(int i = 0; i < 50; i++)
+			deque.addLast(createMessage(i));
+		
+		assertEquals(50, deque.size());
+		assertEquals(0, deque.getSpilledCount());
+		assertEquals(0, temporaryFolder.getRoot().list().length);
+	}
+	
+	@Test
+	public void testDeepBacklogIsSpilledAndReadBackInOrder() {
+		for(int i = 0; i < 1000; i++)
+			deque.addLast(createMessage(i));
+		
+		assertEquals(1000, deque.size());
+		assertTrue(deque.getSpilledCount() > 800);
+		assertTrue(deque.getMemoryBytes() <= spillThreshold);
+		
+		for(int i = 0; i < 1000; i++) {
+			assertEquals("Message " + i, deque.removeFirst().getBody());
+			assertTrue(deque.getMemoryBytes() <= spillThreshold);
+		}
+		assertTrue(deque.isEmpty());
+	}
+	
+	@Test
+	public void testSpillFilesAreDeletedOnceRead() {
+		for(int i = 0; i < 1000; i++)
+			deque.addLast(createMessage(i));
+		File spillDirectory = temporaryFolder.getRoot().listFiles()[0];
+		assertTrue(spillDirectory.list().length > 1);
+		
+		while(!deque.isEmpty())
+			deque.removeFirst();
+		deque.addLast(createMessage(0));
+		
+		assertTrue(spillDirectory.list().length <= 1);
+		deque.clear();
+		assertEquals(0, temporaryFolder.getRoot().list().length);
+	}
+	
+	@Test
+	public void testAddFirstGoesAheadOfSpilledMessages() {
+		for(int i = 0; i < 500; i++)
+			deque.addLast(createMessage(i));
+		
+		Message message = deque.removeFirst();
+		deque.addFirst(message);
+		
+		assertEquals("Message 0", deque.removeFirst().getBody());
+		assertEquals("Message 1", deque.removeFirst().getBody());
+	}
+	
+	@Test
+	public void testIteratorVisitsSpilledMessages() {
+		for(int i = 0; i < 500; i++)
+			deque.addLast(createMessage(i));
+		for(int i = 0; i < 100; i++)
+			deque.removeFirst();
+		
+		List<String> bodies = new ArrayList<>();
+		for(Message message: deque)
+			bodies.add(message.getBody());
+		
+		assertEquals(400, bodies.size());
+		for(int i = 0; i < 400; i++)
+			assertEquals("Message " + (i + 100), bodies.get(i));
+		assertEquals(400, deque.size());
+		assertEquals("Message 100", deque.removeFirst().getBody());
+	}
+	
+	@Test
+	public void testInterleavedOperationsKeepOrder() {
+		ArrayDeque<String> expected = new ArrayDeque<>();
+		Random random = new Random(17);
+		int next = 0;
+		
+		for(int i = 0; i < 20000; i++) {
+			int operation = random.nextInt(10);
+			
+			if(operation < 6) {
+				deque.addLast(createMessage(next));
+				expected.addLast("Message " + next++);
+			}
+			else if(operation < 9 && !expected.isEmpty()) {
+				assertEquals(expected.removeFirst(), deque.removeFirst().getBody());
+			}
+			else if(!expected.isEmpty()) {
+				Message message = deque.removeFirst();
+				deque.addFirst(message);
+				assertEquals(expected.peekFirst(), message.getBody());
+			}
+			
+			assertEquals(expected.size(), deque.size());
+		}
+		
+		while(!expected.isEmpty())
+			assertEquals(expected.removeFirst(), deque.removeFirst().getBody());
+	}
+	
+	private Message createMessage(int i) {
+		Message message = MessageCreator.createMessage("Message " + i);
+		message.setMessageId(String.valueOf(i));
+		
+		return message;
+	}
+}
@@ -0,0 +1,405 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+
+// runs the adapter against LocalSqsClient and counts the requests every operation costs
+public class SqsQueueServiceTest {
+	LocalSqsClient sqsClient;
+	QueueService sqsQueueService;
+	
+	@Before
+	public void setUp() {
+		sqsClient = new LocalSqsClient();
+		sqsQueueService = new SqsQueueService(sqsClient);
+		sqsQueueService.createQueue(new CreateQueueRequest("MyQueue"));
+		sqsClient.resetRequestCounts();
+	}
+	
+	@Test
+	public void testCreatedQueueUrlIsCached() {
+		sqsQueueService.push("MyQueue", "Message 1");
+		sqsQueueService.push("MyQueue", "Message 2");
+		
+		assertEquals(0, sqsClient.getRequestCount("GetQueueUrl"));
+		assertEquals(2, sqsClient.getRequestCount("SendMessage"));
+	}
+	
+	@Test
+	public void testQueueUrlIsResolvedOnce() {
+		QueueService otherQueueService = new SqsQueueService(sqsClient);
+		
+		for(int i = 0; i < 5; i++)
+			assertNotNull(otherQueueService.push("MyQueue", "Message " + i));
+		
+		assertEquals(1, sqsClient.getRequestCount("GetQueueUrl"));
+		assertEquals(6, sqsClient.getTotalRequestCount());
+	}
+	
+	@Test
+	public void testQueueUrlIsInvalidatedWhenQueueDoesNotExist() {
+		sqsClient.deleteQueueDirectly("MyQueue");
+		
+		assertNull(sqsQueueService.push("MyQueue", "Message 1"));
+		assertNull(sqsQueueService.push("MyQueue", "Message 2"));
+		
+		assertEquals(1, sqsClient.getRequestCount("SendMessage"));
+		assertEquals(1, sqsClient.getRequestCount("GetQueueUrl"));
+	}
+	
+	@Test
+	public void testGetQueueNamesCachesUrls() {
+		QueueService otherQueueService = new SqsQueueService(sqsClient);
+		
+		assertEquals(Arrays.asList("MyQueue"), otherQueueService.getQueueNames());
+		otherQueueService.push("MyQueue", "Message 1");
+		
+		assertEquals(0, sqsClient.getRequestCount("GetQueueUrl"));
+	}
+	
+	@Test
+	public void testDeleteQueue() {
+		assertTrue(sqsQueueService.deleteQueue("MyQueue"));
+		
+		assertEquals(0, sqsQueueService.getQueueNames().size());
+		assertFalse(sqsQueueService.deleteQueue("MyQueue"));
+		assertEquals(1, sqsClient.getRequestCount("DeleteQueue"));
+	}
+	
+	@Test
+	public void testPullAndDelete() {
+		sqsQueueService.push("MyQueue", "Message 1");
+		
+		Message message = sqsQueueService.pull("MyQueue");
+		
+		assertEquals("Message 1", message.getBody());
+		assertNull(sqsQueueService.pull("MyQueue", 0));
+		assertTrue(sqsQueueService.delete("MyQueue", message.getReceiptHandle()));
+		assertFalse(sqsQueueService.delete("MyQueue", message.getReceiptHandle()));
+		assertEquals(0, sqsQueueService.getApproximateNumberOfMessages("MyQueue"));
+	}
+	
+	@Test
+	public void testPullBatchIsSingleRequest() {
+		for(int i = 0; i < 5; i++)
+			sqsQueueService.push("MyQueue", "Message " + i);
+		
+		List<Message> messages = sqsQueueService.pullBatch("MyQueue", 10, 0);
+		
+		assertEquals(5, messages.size());
+		assertEquals(1, sqsClient.getRequestCount("ReceiveMessage"));
+	}
+	
+	@Test
+	public void testDeleteBatchIsReportedByReceiptHandle() {
+		List<String> bodies = new ArrayList<>();
+		for(int i = 0; i < 12; i++)
+			bodies.add("Message " + i);
+		sqsQueueService.pushBatch("MyQueue", bodies);
+		List<String> receiptHandles = new ArrayList<>();
+		for(Message message: sqsQueueService.pullBatch("MyQueue", 10, 0))
+			receiptHandles.add(message.getReceiptHandle());
+		for(Message message: sqsQueueService.pullBatch("MyQueue", 10, 0))
+			receiptHandles.add(message.getReceiptHandle());
+		receiptHandles.add("InvalidHandle");
+		
+		DeleteMessageBatchResult result = sqsQueueService.deleteBatch("MyQueue", receiptHandles);
+		
+		assertEquals(2, sqsClient.getRequestCount("SendMessageBatch"));
+		assertEquals(2, sqsClient.getRequestCount("DeleteMessageBatch"));
+		assertEquals(12, result.getSuccessful().size());
+		assertEquals(receiptHandles.get(0), result.getSuccessful().get(0).getId());
+		assertEquals("InvalidHandle", result.getFailed().get(0).getId());
+	}
+	
+	@Test
+	public void testDeleteBatchWithRepeatedReceiptHandle() {
+		sqsQueueService.push("MyQueue", "Message 1");
+		String receiptHandle = sqsQueueService.pull("MyQueue").getReceiptHandle();
+		
+		DeleteMessageBatchResult result = sqsQueueService.deleteBatch("MyQueue", Arrays.asList(receiptHandle, receiptHandle));
+		
+		assertEquals(0, result.getSuccessful().size());
+		assertEquals(1, result.getFailed().size());
+		assertEquals("BatchEntryIdsNotDistinct", result.getFailed().get(0).getCode());
+		assertEquals(0, sqsClient.getRequestCount("DeleteMessageBatch"));
+	}
+	
+	@Test
+	public void testPushBatchSplitsLargeBodiesBySize() {
+		char[] body = new char[100 * 1024];
+		Arrays.fill(body, 'a');
+		List<String> bodies = Collections.nCopies(10, new String(body));
+		
+		assertEquals(10, sqsQueueService.pushBatch("MyQueue", bodies).getSuccessful().size());
+		
+		// two 100 KB bodies fit into a 256 KB request
+		assertEquals(5, sqsClient.getRequestCount("SendMessageBatch"));
+	}
+	
+	@Test
+	public void testPushBatchRejectsBodyLargerThanBatch() {
+		char[] body = new char[256 * 1024 + 1];
+		Arrays.fill(body, 'a');
+		
+		SendMessageBatchResult result = sqsQueueService.pushBatch("MyQueue", Arrays.asList("Message 0", new String(body), "Message 2"));
+		
+		assertEquals(2, result.getSuccessful().size());
+		assertEquals(1, result.getFailed().size());
+		assertEquals("1", result.getFailed().get(0).getId());
+		assertEquals("InvalidParameterValue", result.getFailed().get(0).getCode());
+		assertEquals(1, sqsClient.getRequestCount("SendMessageBatch"));
+	}
+	
+	@Test
+	public void testPushWithMessageGroupFails() {
+		assertNull(sqsQueueService.push("MyQueue", "Message 1", "Group 1"));
+		
+		assertEquals(0, sqsClient.getTotalRequestCount());
+	}
+	
+	@Test
+	public void testPushWithDeduplicationIdFails() {
+		assertNull(sqsQueueService.push("MyQueue", "Message 1", null, "Id 1"));
+		assertNull(sqsQueueService.push("MyQueue", "Message 1", "Group 1", "Id 1"));
+		assertNull(sqsQueueService.push("MyQueue", "Message 1", null, ""));
+		
+		assertEquals(0, sqsClient.getTotalRequestCount());
+	}
+	
+	@Test
+	public void testPushWithoutGroupAndDeduplicationIdIsPlainPush() {
+		assertNotNull(sqsQueueService.push("MyQueue", "Message 1", null, null));
+		
+		assertEquals(1, sqsClient.getRequestCount("SendMessage"));
+		assertEquals("Message 1", sqsQueueService.pull("MyQueue").getBody());
+	}
+	
+	@Test
+	public void testOperationsOnMissingQueueFailWithoutThrowing() {
+		String qName = "MissingQueue";
+		
+		assertNull(sqsQueueService.push(qName, "Message 1"));
+		assertNull(sqsQueueService.push(qName, "Message 1", 0));
+		assertNull(sqsQueueService.push(qName, "Message 1", "Group 1"));
+		assertNull(sqsQueueService.push(qName, "Message 1", null, null));
+		assertNull(sqsQueueService.pushBatch(qName, Arrays.asList("Message 1")));
+		assertNull(sqsQueueService.pull(qName));
+		assertNull(sqsQueueService.pullBatch(qName, 10, 0));
+		assertFalse(sqsQueueService.delete(qName, "ReceiptHandle"));
+		assertNull(sqsQueueService.deleteBatch(qName, Arrays.asList("ReceiptHandle")));
+		assertFalse(sqsQueueService.changeMessageVisibility(qName, "ReceiptHandle", 0));
+		assertFalse(sqsQueueService.purgeQueue(qName));
+		sqsQueueService.getApproximateNumberOfMessages(qName);
+		sqsQueueService.getQueueAttributes(qName);
+	}
+	
+	@Test
+	public void testChangeMessageVisibility() {
+		sqsQueueService.push("MyQueue", "Message 1");
+		Message message = sqsQueueService.pull("MyQueue");
+		
+		assertTrue(sqsQueueService.changeMessageVisibility("MyQueue", message.getReceiptHandle(), 0));
+		
+		assertEquals("Message 1", sqsQueueService.pull("MyQueue").getBody());
+	}
+	
+	@Test
+	public void testQueueAttributes() {
+		sqsQueueService.setQueueAttributes("MyQueue", Collections.singletonMap("VisibilityTimeout", "60"));
+		
+		Map<String, String> attributes = sqsQueueService.getQueueAttributes("MyQueue");
+		
+		assertEquals("60", attributes.get("VisibilityTimeout"));
+		assertEquals(0, sqsQueueService.getApproximateNumberOfMessagesDelayed("MyQueue"));
+	}
+	
+	@Test
+	public void testPurgeQueue() {
+		sqsQueueService.push("MyQueue", "Message 1");
+		sqsQueueService.push("MyQueue", "Message 2", 60);
+		
+		assertEquals(1, sqsQueueService.getApproximateNumberOfMessagesDelayed("MyQueue"));
+		assertTrue(sqsQueueService.purgeQueue("MyQueue"));
+		
+		assertEquals(0, sqsQueueService.getApproximateNumberOfMessages("MyQueue"));
+	}
+	
+	@Test
+	public void testUnknownQueue() {
+		assertNull(sqsQueueService.pull("UnknownQueue"));
+		assertEquals(-1, sqsQueueService.getApproximateNumberOfMessages("UnknownQueue"));
+		assertFalse(sqsQueueService.purgeQueue("UnknownQueue"));
+		assertEquals(3, sqsClient.getRequestCount("GetQueueUrl"));
+		assertEquals(3, sqsClient.getTotalRequestCount());
+	}
+	
+	@Test
+	public void testCreateQueueWithNullRequest() {
+		assertFalse(sqsQueueService.createQueue(null));
+		assertEquals(0, sqsClient.getTotalRequestCount());
+	}
+	
+	@Test
+	public void testCreateQueueWithAttributes() {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put("DelaySeconds", "5");
+		
+		assertTrue(sqsQueueService.createQueue(new CreateQueueRequest("MyQueue2").withAttributes(attributes)));
+		
+		assertEquals("5", sqsQueueService.getQueueAttributes("MyQueue2").get("DelaySeconds"));
+		assertEquals(0, sqsClient.getRequestCount("GetQueueUrl"));
+	}
+	
+	@Test
+	public void testPushAsyncWithoutBufferingSendsRightAway() throws Exception {
+		Future<String> future = ((SqsQueueService) sqsQueueService).pushAsync("MyQueue", "Message 1");
+		
+		assertTrue(future.isDone());
+		assertNotNull(future.get());
+		assertEquals(1, sqsClient.getRequestCount("SendMessage"));
+	}
+	
+	@Test
+	public void testBufferedPushesShareBatches() throws Exception {
+		final SqsQueueService bufferedQueueService = new SqsQueueService(sqsClient, 50L, 2);
+		ExecutorService producers = Executors.newFixedThreadPool(20);
+		List<Future<String>> messageIds = new ArrayList<>();
+		bufferedQueueService.getQueueNames();
+		sqsClient.resetRequestCounts();
+		sqsClient.setLatencyMillis(20L);
+		
+		for(int i = 0; i < 40; i++) {
+			final String messageBody = "Message " + i;
+			messageIds.add(producers.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					return bufferedQueueService.push("MyQueue", messageBody);
+				}
+			}));
+		}
+		
+		for(Future<String> messageId: messageIds)
+			assertNotNull(messageId.get(5, TimeUnit.SECONDS));
+		producers.shutdown();
+		bufferedQueueService.shutdown();
+		
+		assertEquals(0, sqsClient.getRequestCount("SendMessage"));
+		assertTrue(sqsClient.getRequestCount("SendMessageBatch") < 40);
+		assertTrue(sqsClient.getMaxConcurrentRequests() <= 2);
+		assertEquals(40, sqsQueueService.getApproximateNumberOfMessages("MyQueue"));
+	}
+	
+	@Test
+	public void testBufferedPushAsyncIsSentOnFlush() throws Exception {
+		SqsQueueService bufferedQueueService = new SqsQueueService(sqsClient, 60000L, 1);
+		
+		Future<String> future = bufferedQueueService.pushAsync("MyQueue", "Message 1");
+		assertEquals(0, sqsClient.getRequestCount("SendMessageBatch"));
+		bufferedQueueService.flush();
+		
+		assertNotNull(future.get(1, TimeUnit.SECONDS));
+		assertEquals(1, sqsClient.getRequestCount("SendMessageBatch"));
+		bufferedQueueService.shutdown();
+	}
+	
+	@Test
+	public void testBufferedPushToUnknownQueue() throws Exception {
+		SqsQueueService bufferedQueueService = new SqsQueueService(sqsClient, 10L, 1);
+		
+		assertNull(bufferedQueueService.pushAsync("UnknownQueue", "Message 1").get());
+		assertNull(bufferedQueueService.push("UnknownQueue", "Message 1"));
+		assertEquals(0, sqsClient.getRequestCount("SendMessageBatch"));
+		bufferedQueueService.shutdown();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidNumberOfConcurrentSends() {
+		new SqsQueueService(sqsClient, 10L, 0);
+	}
+	
+	@Test
+	public void testPrefetchedPullsAreServedLocally() throws Exception {
+		SqsQueueService prefetchingQueueService = (SqsQueueService) sqsQueueService;
+		for(int i = 0; i < 10; i++)
+			sqsQueueService.push("MyQueue", "Message " + i);
+		
+		assertTrue(prefetchingQueueService.startPrefetch("MyQueue", 10, 1));
+		awaitBufferedMessages(prefetchingQueueService.getReceiveBuffer("MyQueue"), 10);
+		sqsClient.resetRequestCounts();
+		sqsClient.setLatencyMillis(50L);
+		long startTime = System.currentTimeMillis();
+		List<Message> messages = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+			messages.add(sqsQueueService.pull("MyQueue"));
+		long pullMillis = System.currentTimeMillis() - startTime;
+		
+		assertTrue(pullMillis < 50);
+		assertEquals("Message 0", messages.get(0).getBody());
+		for(Message message: messages)
+			assertTrue(sqsQueueService.delete("MyQueue", message.getReceiptHandle()));
+		assertEquals(10, sqsClient.getRequestCount("DeleteMessageBatch"));
+		assertEquals(0, sqsClient.getRequestCount("DeleteMessage"));
+		assertTrue(prefetchingQueueService.stopPrefetch("MyQueue"));
+	}
+	
+	@Test
+	public void testPrefetchedPullBatchWaitsForMessages() throws Exception {
+		SqsQueueService prefetchingQueueService = (SqsQueueService) sqsQueueService;
+		prefetchingQueueService.startPrefetch("MyQueue", 10, 1);
+		
+		assertEquals(0, sqsQueueService.pullBatch("MyQueue", 10, 0).size());
+		assertNull(sqsQueueService.pullBatch("MyQueue", 11, 0));
+		sqsClient.sendMessage(LocalSqsClient.queueUrlPrefix + "MyQueue", "Message 1");
+		
+		assertEquals("Message 1", sqsQueueService.pullBatch("MyQueue", 10, 3).get(0).getBody());
+		prefetchingQueueService.shutdown();
+		assertNull(prefetchingQueueService.getReceiveBuffer("MyQueue"));
+	}
+	
+	@Test
+	public void testStartPrefetchTwice() {
+		SqsQueueService prefetchingQueueService = (SqsQueueService) sqsQueueService;
+		
+		assertTrue(prefetchingQueueService.startPrefetch("MyQueue", 10, 1));
+		assertFalse(prefetchingQueueService.startPrefetch("MyQueue", 10, 1));
+		assertFalse(prefetchingQueueService.startPrefetch("MyQueue", 10, 21));
+		assertFalse(prefetchingQueueService.startPrefetch("UnknownQueue", 10, 1));
+		
+		assertTrue(sqsQueueService.deleteQueue("MyQueue"));
+		assertNull(prefetchingQueueService.getReceiveBuffer("MyQueue"));
+		assertFalse(prefetchingQueueService.stopPrefetch("MyQueue"));
+	}
+	
+	private void awaitBufferedMessages(ReceiveMessageBuffer receiveBuffer, int numberOfMessages) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		
+		while(receiveBuffer.getNumberOfBufferedMessages() != numberOfMessages && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		
+		assertEquals(numberOfMessages, receiveBuffer.getNumberOfBufferedMessages());
+	}
+}
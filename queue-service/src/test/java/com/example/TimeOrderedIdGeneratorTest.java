@@ -0,0 +1,61 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeOrderedIdGeneratorTest {
+	IdGenerator idGenerator = new TimeOrderedIdGenerator();
+	
+	@Test
+	public void testIdHasUuidLayout() {
+		String id = idGenerator.generateId();
+		
+		assertEquals(36, id.length());
+		assertEquals(id, String.valueOf(UUID.fromString(id)));
+	}
+	
+	@Test
+	public void testIdsOfOneThreadAreUniqueAndTimeOrdered() {
+		Set<String> ids = new HashSet<>();
+		long before = System.currentTimeMillis();
+		
+		for(int i = 0; i < 10000; i++)
+			assertTrue(ids.add(idGenerator.generateId()));
+		
+		long creationTime = UUID.fromString(idGenerator.generateId()).getMostSignificantBits() >>> 16;
+		assertTrue(creationTime >= before && creationTime <= System.currentTimeMillis());
+	}
+	
+	@Test
+	public void testIdsAreUniqueAcrossThreads() throws InterruptedException {
+		final int threads = 8;
+		final int idsPerThread = 5000;
+		final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for(int j = 0; j < idsPerThread; j++)
+						ids.add(idGenerator.generateId());
+				}
+			});
+		}
+		
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(threads * idsPerThread, ids.size());
+	}
+}